@@ -0,0 +1,41 @@
+#!/usr/bin/env bash
+# Runs R, mdr and Munin report files without the gui, e.g.
+# ./ride-batch.sh --parallel 4 --out /var/reports nightly/
+# run with --help for all options
+
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )"
+
+PROPERTY_FILE=${DIR}/version.properties
+
+function getProperty {
+   PROP_KEY=$1
+   PROP_VALUE=$(cat $PROPERTY_FILE | grep "$PROP_KEY" | cut -d'=' -f2)
+   echo "$PROP_VALUE" | xargs
+}
+
+JAR_NAME=$(getProperty "jar.name")
+LIB_DIR=${DIR}/lib
+
+BLAS=com.github.fommil.netlib.F2jBLAS
+LAPACK=com.github.fommil.netlib.F2jLAPACK
+ARPACK=com.github.fommil.netlib.F2jARPACK
+
+BLAS_PROPS=( "-Dcom.github.fommil.netlib.BLAS=${BLAS}" "-Dcom.github.fommil.netlib.LAPACK=${LAPACK}" "-Dcom.github.fommil.netlib.ARPACK=${ARPACK}" )
+
+if [[ -f $DIR/env.sh ]]; then
+  source "$DIR/env.sh"
+fi
+
+JAVA_CMD=java
+if [[ ! -z ${JAVA_HOME+x} ]] && [[ -d ${JAVA_HOME} ]]; then
+  JAVA_CMD=${JAVA_HOME}/bin/java
+fi
+
+if [[ "${OSTYPE}" == "msys" ]]; then
+  CLASSPATH="${DIR}/${JAR_NAME};${LIB_DIR}/*"
+else
+  CLASSPATH="${DIR}/${JAR_NAME}:${LIB_DIR}/*"
+fi
+
+# shellcheck disable=SC2068
+exec ${JAVA_CMD} -Djava.awt.headless=true -Djava.library.path="${LIB_DIR}" -cp "${CLASSPATH}" ${BLAS_PROPS[@]} $JAVA_OPTS se.alipsa.ride.batch.BatchRunner "$@"
@@ -2,6 +2,7 @@ package se.alipsa.ride;
 
 import static se.alipsa.ride.Constants.BRIGHT_THEME;
 import static se.alipsa.ride.Constants.THEME;
+import static se.alipsa.ride.menu.GlobalOptions.SNAPSHOT_ON_EXIT;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -23,13 +24,17 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.util.FS;
 import se.alipsa.ride.code.CodeComponent;
 import se.alipsa.ride.console.ConsoleComponent;
 import se.alipsa.ride.environment.EnvironmentComponent;
+import se.alipsa.ride.environment.connections.ConnectionPool;
 import se.alipsa.ride.inout.FileOpener;
 import se.alipsa.ride.inout.InoutComponent;
 import se.alipsa.ride.menu.MainMenu;
+import se.alipsa.ride.metrics.Metrics;
 import se.alipsa.ride.utils.FileUtils;
+import se.alipsa.ride.utils.TikaUtils;
 
 import java.io.File;
 import java.net.URL;
@@ -46,6 +51,7 @@ public class Ride extends Application {
   private Stage primaryStage;
   private Scene scene;
   private MainMenu mainMenu;
+  private StartupProfile startupProfile;
   private Preferences preferences;
   private final Map<String, Object> sessionMap = new HashMap<>();
 
@@ -75,9 +81,15 @@ public class Ride extends Application {
         + "\nerrorEnabled = " + log.isErrorEnabled()
     );*/
 
+    startupProfile = new StartupProfile();
     preferences = Preferences.userRoot().node(Ride.class.getName());
     this.primaryStage = primaryStage;
 
+    // these take a while to initialize the first time they are used so do that while the gui is being built
+    startupProfile.background("Tika", TikaUtils::instance);
+    startupProfile.background("JGit", () -> FS.DETECTED.userHome());
+    startupProfile.background("Metrics", Metrics::registerMBean);
+
     BorderPane root = new BorderPane();
     VBox main = new VBox();
     main.setAlignment(Pos.CENTER);
@@ -85,23 +97,25 @@ public class Ride extends Application {
 
     root.setCenter(main);
 
-    mainMenu = new MainMenu(this);
+    mainMenu = startupProfile.time("Main menu", () -> new MainMenu(this));
     root.setTop(mainMenu);
 
     scene = new Scene(root, 1366, 768);
 
-    addStyleSheet(getPrefs().get(THEME, BRIGHT_THEME));
+    startupProfile.time("Style sheet", () -> addStyleSheet(getPrefs().get(THEME, BRIGHT_THEME)));
 
     SplitPane leftSplitPane = new SplitPane();
     leftSplitPane.setOrientation(Orientation.VERTICAL);
 
-    consoleComponent = new ConsoleComponent(this);
+    consoleComponent = startupProfile.time("Console", () -> new ConsoleComponent(this));
     stretch(consoleComponent, root);
+    // the R session is created in the background while the rest of the gui is built
+    consoleComponent.initRenjin(Ride.this.getClass().getClassLoader());
 
-    environmentComponent = new EnvironmentComponent(this);
+    environmentComponent = startupProfile.time("Environment", () -> new EnvironmentComponent(this));
     stretch(environmentComponent, root);
 
-    codeComponent = new CodeComponent(this);
+    codeComponent = startupProfile.time("Code", () -> new CodeComponent(this));
     stretch(codeComponent, root);
     leftSplitPane.getItems().addAll(codeComponent, consoleComponent);
 
@@ -111,7 +125,7 @@ public class Ride extends Application {
     rightSplitPane.setOrientation(Orientation.VERTICAL);
 
 
-    inoutComponent = new InoutComponent(this);
+    inoutComponent = startupProfile.time("Inout", () -> new InoutComponent(this));
     stretch(inoutComponent, root);
 
     rightSplitPane.getItems().addAll(environmentComponent, inoutComponent);
@@ -153,7 +167,15 @@ public class Ride extends Application {
     primaryStage.getIcons().add(new Image(FileUtils.getResourceUrl("image/logo.png").toExternalForm()));
     primaryStage.setScene(scene);
     enableDragDrop(scene);
-    consoleComponent.initRenjin(Ride.this.getClass().getClassLoader());
+    long showStart = startupProfile.now();
+    primaryStage.setOnShown(e -> {
+      startupProfile.record("Show window", showStart);
+      // runs after the window has been laid out and painted
+      Platform.runLater(() -> {
+        startupProfile.interactive();
+        startupProfile.time("File tree", inoutComponent::loadFileTree);
+      });
+    });
     primaryStage.show();
   }
 
@@ -193,6 +215,10 @@ public class Ride extends Application {
   }
 
   public void endProgram() {
+    if (getPrefs().getBoolean(SNAPSHOT_ON_EXIT, false)) {
+      consoleComponent.snapshotOnExit();
+    }
+    ConnectionPool.closeAll();
     Platform.exit();
     // Allow some time before calling system exist so stop() can be used to do stuff if neeed
     Timer timer = new Timer();
@@ -256,6 +282,10 @@ public class Ride extends Application {
     });
   }
 
+  public StartupProfile getStartupProfile() {
+    return startupProfile;
+  }
+
   public Preferences getPrefs() {
     return preferences;
   }
@@ -0,0 +1,119 @@
+package se.alipsa.ride;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Timings of the phases of starting Ride, both the ones building the gui on the fx thread and the ones
+ * running in the background at the same time. The report is logged when the window is interactive and can
+ * be viewed from the help menu.
+ */
+public class StartupProfile {
+
+  private static final Logger log = LogManager.getLogger(StartupProfile.class);
+
+  private final long startNanos = System.nanoTime();
+  private final long jvmStartupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+  private final List<Phase> phases = new ArrayList<>();
+  private volatile long interactiveMillis = -1;
+
+  public long now() {
+    return System.nanoTime();
+  }
+
+  public <T> T time(String phase, Supplier<T> supplier) {
+    long start = now();
+    T result = supplier.get();
+    record(phase, start);
+    return result;
+  }
+
+  public void time(String phase, Runnable runnable) {
+    long start = now();
+    runnable.run();
+    record(phase, start);
+  }
+
+  /**
+   * Run the task on a background thread so that it does not hold up the gui.
+   */
+  public void background(String phase, Runnable task) {
+    Thread thread = new Thread(() -> {
+      try {
+        time(phase, task);
+      } catch (RuntimeException e) {
+        log.warn("Startup phase {} failed", phase, e);
+      }
+    }, "ride-startup-" + phase.toLowerCase().replace(' ', '-'));
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Record a phase that started at startNanos (as returned by now()) and ended now. Only the first
+   * occurrence of a phase is kept, e.g. the R session is created again on every restart.
+   */
+  public void record(String phase, long startNanos) {
+    long end = now();
+    synchronized (phases) {
+      for (Phase p : phases) {
+        if (p.name.equals(phase)) {
+          return;
+        }
+      }
+      phases.add(new Phase(phase, Thread.currentThread().getName(), toMillis(startNanos - this.startNanos),
+          toMillis(end - startNanos)));
+    }
+  }
+
+  /**
+   * Called when the window is showing and responds to input.
+   */
+  public void interactive() {
+    if (interactiveMillis < 0) {
+      interactiveMillis = toMillis(now() - startNanos);
+      log.info(report());
+    }
+  }
+
+  public String report() {
+    StringBuilder sb = new StringBuilder("Startup report\n");
+    sb.append(String.format("JVM start until Ride.start: %d ms%n%n", jvmStartupMillis));
+    sb.append(String.format("%-24s %8s %10s  %s%n", "Phase", "Start", "Duration", "Thread"));
+    synchronized (phases) {
+      for (Phase p : phases) {
+        sb.append(String.format("%-24s %5d ms %7d ms  %s%n", p.name, p.startMillis, p.durationMillis, p.thread));
+      }
+    }
+    if (interactiveMillis < 0) {
+      sb.append("\nThe window is not interactive yet\n");
+    } else {
+      sb.append(String.format("%nTime to interactive window: %d ms (%d ms since JVM start)%n",
+          interactiveMillis, jvmStartupMillis + interactiveMillis));
+    }
+    return sb.toString();
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos / 1_000_000;
+  }
+
+  private static class Phase {
+    final String name;
+    final String thread;
+    final long startMillis;
+    final long durationMillis;
+
+    Phase(String name, String thread, long startMillis, long durationMillis) {
+      this.name = name;
+      this.thread = thread;
+      this.startMillis = startMillis;
+      this.durationMillis = durationMillis;
+    }
+  }
+}
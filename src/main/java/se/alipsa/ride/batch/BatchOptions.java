@@ -0,0 +1,190 @@
+package se.alipsa.ride.batch;
+
+import se.alipsa.ride.model.MuninReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The command line of the batch runner.
+ */
+public class BatchOptions {
+
+  static final String USAGE = "Usage: ride-batch [options] file|dir...\n"
+      + "Runs R (.R), mdr (.mdr) and Munin report (.mr) files without the gui, directories are searched recursively.\n"
+      + "Options:\n"
+      + "  -o, --out <dir>          where to write the html and output of each file, default is ./output\n"
+      + "  -p, --parallel <n>       how many files to run at the same time (each in its own R session),\n"
+      + "                           default is the number of cores - 1\n"
+      + "  --project <dir>          the project dir whose build dirs (or pom dependencies) are added to the classpath,\n"
+      + "                           default is the current dir\n"
+      + "  --maven                  use the dependencies of the pom in the project dir as the classpath\n"
+      + "  --param <name>=<value>   a variable to set in each session before the file is run, can be repeated\n"
+      + "  --munin-url <url>        the value of muninBaseUrl when running Munin reports\n"
+      + "  -h, --help               show this help";
+
+  private File outputDir = new File("output");
+  private int parallel = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  private File projectDir = new File(".");
+  private boolean useMavenClassloader;
+  private final Map<String, Object> params = new LinkedHashMap<>();
+  private String muninBaseUrl = "not configured";
+  private final List<File> inputs = new ArrayList<>();
+  private boolean help;
+
+  /**
+   * @throws IllegalArgumentException if the arguments are not valid, the message says why
+   */
+  public static BatchOptions parse(String... args) {
+    BatchOptions options = new BatchOptions();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-o":
+        case "--out":
+          options.outputDir = new File(value(args, ++i, arg));
+          break;
+        case "-p":
+        case "--parallel":
+          options.parallel = parallel(value(args, ++i, arg));
+          break;
+        case "--project":
+          options.projectDir = new File(value(args, ++i, arg));
+          break;
+        case "--maven":
+          options.useMavenClassloader = true;
+          break;
+        case "--param":
+          String param = value(args, ++i, arg);
+          int eq = param.indexOf('=');
+          if (eq < 1) {
+            throw new IllegalArgumentException("Expected name=value for --param but got " + param);
+          }
+          options.params.put(param.substring(0, eq), param.substring(eq + 1));
+          break;
+        case "--munin-url":
+          options.muninBaseUrl = value(args, ++i, arg);
+          break;
+        case "-h":
+        case "--help":
+          options.help = true;
+          break;
+        default:
+          if (arg.startsWith("-")) {
+            throw new IllegalArgumentException("Unknown option " + arg);
+          }
+          options.inputs.add(new File(arg));
+      }
+    }
+    if (options.inputs.isEmpty() && !options.help) {
+      throw new IllegalArgumentException("No files to run");
+    }
+    return options;
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing value for " + option);
+    }
+    return args[index];
+  }
+
+  private static int parallel(String value) {
+    try {
+      int parallel = Integer.parseInt(value);
+      if (parallel < 1) {
+        throw new IllegalArgumentException("--parallel must be at least 1 but was " + value);
+      }
+      return parallel;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("--parallel must be a number but was " + value);
+    }
+  }
+
+  /**
+   * @return the files to run (in the order given, directories sorted by path) mapped to the name of their output
+   * files, i.e. the path relative to the directory given or just the file name for a file given
+   * @throws IllegalArgumentException if an input does not exist or two files would write to the same output
+   */
+  public Map<File, String> collectFiles() throws IOException {
+    Map<File, String> files = new LinkedHashMap<>();
+    Map<String, File> outputNames = new LinkedHashMap<>();
+    for (File input : inputs) {
+      if (input.isDirectory()) {
+        Path dir = input.toPath();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+          paths = walk.filter(p -> Files.isRegularFile(p) && isRunnable(p.toFile())).sorted().collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+          add(files, outputNames, path.toFile(), baseName(dir.relativize(path).toString().replace('\\', '/')));
+        }
+      } else if (input.isFile()) {
+        add(files, outputNames, input, baseName(input.getName()));
+      } else {
+        throw new IllegalArgumentException(input + " does not exist");
+      }
+    }
+    return files;
+  }
+
+  private static void add(Map<File, String> files, Map<String, File> outputNames, File file, String outputName) {
+    File other = outputNames.put(outputName, file);
+    if (other != null && !other.equals(file)) {
+      throw new IllegalArgumentException(other + " and " + file + " would both write to " + outputName);
+    }
+    files.put(file, outputName);
+  }
+
+  static boolean isRunnable(File file) {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    return name.endsWith(".r") || name.endsWith(".s") || name.endsWith(".mdr")
+        || name.endsWith(MuninReport.FILE_EXTENSION);
+  }
+
+  private static String baseName(String path) {
+    int dot = path.lastIndexOf('.');
+    return dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+  }
+
+  public File getOutputDir() {
+    return outputDir;
+  }
+
+  public int getParallel() {
+    return parallel;
+  }
+
+  public File getProjectDir() {
+    return projectDir;
+  }
+
+  public boolean isUseMavenClassloader() {
+    return useMavenClassloader;
+  }
+
+  public Map<String, Object> getParams() {
+    return params;
+  }
+
+  public String getMuninBaseUrl() {
+    return muninBaseUrl;
+  }
+
+  public List<File> getInputs() {
+    return inputs;
+  }
+
+  public boolean isHelp() {
+    return help;
+  }
+}
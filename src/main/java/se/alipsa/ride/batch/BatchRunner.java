@@ -0,0 +1,341 @@
+package se.alipsa.ride.batch;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.renjin.eval.Session;
+import org.renjin.primitives.packaging.PackageLoader;
+import org.renjin.script.RenjinScriptEngine;
+import org.renjin.script.RenjinScriptEngineFactory;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringArrayVector;
+import se.alipsa.ride.Ride;
+import se.alipsa.ride.code.munin.ReportType;
+import se.alipsa.ride.console.ScriptSession;
+import se.alipsa.ride.console.SessionFactory;
+import se.alipsa.ride.model.MuninReport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
+import javax.script.ScriptException;
+import javax.xml.bind.JAXBContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Runs R, mdr and Munin report files without starting the gui, e.g. to render reports on a server.
+ * The sessions are set up as in the console (same package loader, remote repositories and project classpath).
+ * Each file is run in a fresh session so nothing (variables, attached packages, options, sinks) carries over
+ * from one file to the next, only the package loader and class loader are shared. For each file the output of
+ * the script is written to name.out.txt and the html of mdr files and Munin reports to name.html in the output dir.
+ */
+public class BatchRunner {
+
+  private static final Logger log = LogManager.getLogger(BatchRunner.class);
+  private static final String BOOTSTRAP_CSS = "META-INF/resources/webjars/bootstrap/4.6.0/css/bootstrap.css";
+
+  private final BatchOptions options;
+  private final AtomicInteger threadCount = new AtomicInteger();
+  private PackageLoader packageLoader;
+  private ClassLoader sessionClassLoader;
+  private String bootstrapCss;
+
+  public BatchRunner(BatchOptions options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) {
+    BatchOptions options;
+    try {
+      options = BatchOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(BatchOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+    if (options.isHelp()) {
+      System.out.println(BatchOptions.USAGE);
+      return;
+    }
+    int failures;
+    try {
+      List<Result> results = new BatchRunner(options).run();
+      failures = (int) results.stream().filter(r -> !r.isSuccess()).count();
+      System.out.println(String.format("Ran %d files, %d failed", results.size(), failures));
+    } catch (Exception e) {
+      log.error("Batch run failed", e);
+      System.err.println("Batch run failed: " + e);
+      failures = 1;
+    }
+    System.exit(failures == 0 ? 0 : 1);
+  }
+
+  /**
+   * Run all the files, a file that fails does not stop the others.
+   *
+   * @return the result of each file in the order given
+   */
+  public List<Result> run() throws Exception {
+    Map<File, String> files = options.collectFiles();
+    Files.createDirectories(options.getOutputDir().toPath());
+    initPackageLoader();
+    bootstrapCss = readBootstrapCss();
+
+    int threads = Math.min(options.getParallel(), Math.max(1, files.size()));
+    log.info("Running {} files with {} threads", files.size(), threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "ride-batch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (Map.Entry<File, String> entry : files.entrySet()) {
+        futures.add(executor.submit(() -> runFile(entry.getKey(), entry.getValue())));
+      }
+      List<Result> results = new ArrayList<>();
+      for (Future<Result> future : futures) {
+        Result result = future.get();
+        System.out.println(result);
+        results.add(result);
+      }
+      return results;
+    } catch (ExecutionException e) {
+      throw new Exception("Unexpected failure running the batch", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The same setup as ConsoleComponent.createSession but with the options instead of the file tree and the
+   * progress going to the log. The package loader is shared by all sessions just as the parallel sessions of
+   * the console share the one of the main session.
+   */
+  private void initPackageLoader() throws Exception {
+    Preferences prefs = Preferences.userRoot().node(Ride.class.getName());
+    List<RemoteRepository> repositories = SessionFactory.asRemoteRepositories(
+        SessionFactory.storedRemoteRepositories(prefs));
+    ClassLoader cl = SessionFactory.projectClassLoader(prefs, options.getProjectDir(),
+        options.isUseMavenClassloader(), BatchRunner.class.getClassLoader(), log::info);
+    packageLoader = SessionFactory.packageLoader(cl, SessionFactory.packageLoaderName(prefs), repositories);
+    sessionClassLoader = SessionFactory.sessionClassLoader(packageLoader, cl);
+  }
+
+  private ScriptSession newSession(File file) {
+    long start = System.currentTimeMillis();
+    Session session = SessionFactory.newSession(packageLoader, sessionClassLoader);
+    RenjinScriptEngine engine = new RenjinScriptEngineFactory().getScriptEngine(session);
+    log.debug("Created R session for {} in {} ms", file, System.currentTimeMillis() - start);
+    return new ScriptSession(file.getName(), session, engine);
+  }
+
+  private Result runFile(File file, String outputName) {
+    long start = System.currentTimeMillis();
+    File outputFile = new File(options.getOutputDir(), outputName + ".out.txt");
+    File htmlFile = new File(options.getOutputDir(), outputName + ".html");
+    try {
+      Files.createDirectories(outputFile.getParentFile().toPath());
+    } catch (IOException e) {
+      return new Result(file, null, System.currentTimeMillis() - start, e);
+    }
+    ScriptSession scriptSession;
+    try {
+      scriptSession = newSession(file);
+    } catch (RuntimeException e) {
+      log.warn("Failed to create an R session for {}", file, e);
+      return new Result(file, null, System.currentTimeMillis() - start, e);
+    }
+    RenjinScriptEngine engine = scriptSession.getEngine();
+    Session session = scriptSession.getSession();
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(outputFile.toPath(), StandardCharsets.UTF_8))) {
+      try {
+        session.setWorkingDirectory(file.getAbsoluteFile().getParentFile());
+        session.setStdOut(out);
+        session.setStdErr(out);
+        for (Map.Entry<String, Object> param : options.getParams().entrySet()) {
+          engine.put(param.getKey(), param.getValue());
+        }
+        String html = evaluate(scriptSession, file);
+        if (html != null) {
+          writeHtml(htmlFile, file.getName(), html);
+        }
+        return new Result(file, html == null ? null : htmlFile, System.currentTimeMillis() - start, null);
+      } catch (Exception | StackOverflowError e) {
+        log.warn("Failed to run {}", file, e);
+        out.println();
+        e.printStackTrace(out);
+        return new Result(file, null, System.currentTimeMillis() - start, e);
+      } finally {
+        out.flush();
+        session.setStdOut(new PrintWriter(System.out));
+        session.setStdErr(new PrintWriter(System.err));
+      }
+    } catch (IOException e) {
+      return new Result(file, null, System.currentTimeMillis() - start, e);
+    }
+  }
+
+  /**
+   * @return the html rendered or null if the file is an R script
+   */
+  private String evaluate(ScriptSession scriptSession, File file) throws Exception {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    if (name.endsWith(MuninReport.FILE_EXTENSION)) {
+      return evaluateMuninReport(scriptSession, readMuninReport(file));
+    }
+    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    if (name.endsWith(".mdr")) {
+      return renderMdr(scriptSession, content);
+    }
+    scriptSession.getEngine().eval(content);
+    return null;
+  }
+
+  /**
+   * As in MdrViewerUtil.viewMdr
+   */
+  private String renderMdr(ScriptSession scriptSession, String mdrContent) throws ScriptException {
+    scriptSession.getEngine().put("mdrContent", mdrContent);
+    SEXP html = (SEXP) scriptSession.getEngine().eval("library('se.alipsa:mdr2html')\n renderMdr(mdrContent)");
+    return html == null ? "" : html.asString();
+  }
+
+  /**
+   * As in MuninRTab.viewAction and MuninMdrTab.viewAction. There is no one to ask for the input parameters of
+   * the report so they have to be given as --param options.
+   */
+  private String evaluateMuninReport(ScriptSession scriptSession, MuninReport report) throws ScriptException {
+    RenjinScriptEngine engine = scriptSession.getEngine();
+    engine.put("muninBaseUrl", options.getMuninBaseUrl());
+    if (ReportType.MDR.equals(report.getReportType())) {
+      return renderMdr(scriptSession, report.getDefinition());
+    }
+    if (!ReportType.UNMANAGED.equals(report.getReportType())) {
+      throw new IllegalArgumentException("Unknown report type " + report.getReportType());
+    }
+    SEXP result = (SEXP) engine.eval(report.getDefinition());
+    if (result == null) {
+      return "";
+    }
+    if (!(result instanceof StringArrayVector)) {
+      // e.g. when the last statement is html.add(), see MuninRTab
+      engine.put(".muninUnmanagedReportResult", result);
+      result = (SEXP) engine.eval("as.character(.muninUnmanagedReportResult)");
+    }
+    return result.asString();
+  }
+
+  private static MuninReport readMuninReport(File file) throws Exception {
+    JAXBContext context = JAXBContext.newInstance(MuninReport.class);
+    XMLInputFactory xmlInFact = XMLInputFactory.newInstance();
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      XMLStreamReader xmlReader = xmlInFact.createXMLStreamReader(reader);
+      return context.createUnmarshaller().unmarshal(xmlReader, MuninReport.class).getValue();
+    }
+  }
+
+  /**
+   * The viewer adds bootstrap as the user style sheet, here it is inlined so the page can be viewed anywhere.
+   */
+  private void writeHtml(File htmlFile, String title, String content) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(htmlFile.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>");
+      writer.write(escapeHtml4(title));
+      writer.write("</title>\n");
+      if (bootstrapCss != null) {
+        writer.write("<style>\n");
+        writer.write(bootstrapCss);
+        writer.write("\n</style>\n");
+      }
+      writer.write("</head>\n<body>\n");
+      writer.write(content);
+      writer.write("\n</body>\n</html>\n");
+    }
+  }
+
+  private static String readBootstrapCss() {
+    try (InputStream in = BatchRunner.class.getClassLoader().getResourceAsStream(BOOTSTRAP_CSS)) {
+      if (in == null) {
+        log.warn("{} not found, the html will be written without it", BOOTSTRAP_CSS);
+        return null;
+      }
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      byte[] bytes = new byte[8192];
+      int read;
+      while ((read = in.read(bytes)) != -1) {
+        buf.write(bytes, 0, read);
+      }
+      return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      log.warn("Failed to read {}, the html will be written without it", BOOTSTRAP_CSS, e);
+      return null;
+    }
+  }
+
+  /**
+   * How running a file went
+   */
+  public static class Result {
+    private final File file;
+    private final File htmlFile;
+    private final long millis;
+    private final Throwable error;
+
+    Result(File file, File htmlFile, long millis, Throwable error) {
+      this.file = file;
+      this.htmlFile = htmlFile;
+      this.millis = millis;
+      this.error = error;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * @return the html written or null if the file is an R script or failed
+     */
+    public File getHtmlFile() {
+      return htmlFile;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+
+    public Throwable getError() {
+      return error;
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    @Override
+    public String toString() {
+      return (isSuccess() ? "OK   " : "FAIL ") + file + " (" + millis + " ms)"
+          + (isSuccess() ? "" : ": " + error.getMessage());
+    }
+  }
+}
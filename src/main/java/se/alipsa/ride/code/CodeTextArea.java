@@ -11,7 +11,6 @@ import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import org.fxmisc.richtext.LineNumberFactory;
-import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.wellbehaved.event.EventPattern;
 import org.fxmisc.wellbehaved.event.InputMap;
 import org.fxmisc.wellbehaved.event.Nodes;
@@ -39,24 +38,30 @@ public abstract class CodeTextArea extends UnStyledCodeArea implements TabTextAr
 
   private final Pattern whiteSpace = Pattern.compile( "^\\s+" );
 
+  private final IncrementalHighlighter highlighter;
+
   public CodeTextArea() {
 
     getStyleClass().add("codeTextArea");
     setUseInitialStyleForInsertion(true);
 
     setParagraphGraphicFactory(LineNumberFactory.get(this));
-    // recompute the syntax highlighting 400 ms after user stops editing area
+    highlighter = new IncrementalHighlighter(this, getLexer());
 
     // plain changes = ignore style changes that are emitted when syntax highlighting is reapplied
     // multi plain changes = save computation by not rerunning the code multiple times
     //   when making multiple changes (e.g. renaming a method at multiple parts in file)
+    // keep track of which paragraphs have changed as they change
+    multiPlainChanges().subscribe(highlighter::textChanged);
+
+    // recompute the syntax highlighting of the changed paragraphs 400 ms after user stops editing area
     multiPlainChanges()
 
         // do not emit an event until 400 ms have passed since the last emission of previous stream
         .successionEnds(Duration.ofMillis(400))
 
         // run the following code block when previous stream emits an event
-        .subscribe(ignore -> setStyleSpans(0, computeHighlighting(getText())));
+        .subscribe(ignore -> highlighter.highlight());
 
     /*
     Iterator<String> it = getStylesheets().iterator();
@@ -213,7 +218,11 @@ public abstract class CodeTextArea extends UnStyledCodeArea implements TabTextAr
     return String.join("\n", tabbed);
   }
 
-  protected abstract StyleSpans<Collection<String>> computeHighlighting(String text);
+  /**
+   * @return the lexer used for the syntax highlighting, it is called from the constructor so it must not depend
+   * on any instance state and it must be thread safe as the lexing is done in a background thread
+   */
+  protected abstract LineLexer getLexer();
 
   @Override
   public File getFile() {
@@ -264,20 +273,36 @@ public abstract class CodeTextArea extends UnStyledCodeArea implements TabTextAr
   protected void suggestCompletion(String lastWord, TreeSet<String> keyWords, ContextMenu suggestionsPopup) {
     List<CustomMenuItem> menuItems = new LinkedList<>();
     for (String result : keyWords) {
-      Label entryLabel = new Label(result);
-      CustomMenuItem item = new CustomMenuItem(entryLabel, true);
-      item.setOnAction(actionEvent -> {
+      menuItems.add(suggestionItem(new Label(result), suggestionsPopup, () -> {
         String replacement = result.substring(lastWord.length());
         insertText(getCaretPosition(), replacement);
         int currentParagraph = getCurrentParagraph();
         int lineEnd = getParagraphLength(currentParagraph);
         int colIdx = replacement.endsWith(")") ?  lineEnd-1 : lineEnd;
         moveTo(currentParagraph, colIdx);
-        suggestionsPopup.hide();
-        requestFocus();
-      });
-      menuItems.add(item);
+      }));
     }
+    showSuggestions(menuItems, suggestionsPopup);
+  }
+
+  /**
+   * Create a menu item for the suggestions popup that runs the action, hides the popup and gives focus back to
+   * this area when picked
+   */
+  protected CustomMenuItem suggestionItem(Label entryLabel, ContextMenu suggestionsPopup, Runnable action) {
+    CustomMenuItem item = new CustomMenuItem(entryLabel, true);
+    item.setOnAction(actionEvent -> {
+      action.run();
+      suggestionsPopup.hide();
+      requestFocus();
+    });
+    return item;
+  }
+
+  /**
+   * Show the suggestions popup at the caret
+   */
+  protected void showSuggestions(List<CustomMenuItem> menuItems, ContextMenu suggestionsPopup) {
     suggestionsPopup.getItems().clear();
     suggestionsPopup.getItems().addAll(menuItems);
     double screenX = 0;
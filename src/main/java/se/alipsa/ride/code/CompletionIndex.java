@@ -0,0 +1,284 @@
+package se.alipsa.ride.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An index of names (keywords, functions and objects) used for code completion.
+ * The names are kept in two arrays, one sorted case insensitively on the name and one on the "humps" of the name,
+ * i.e. the first character of each word where words are separated by dots, underscores or camel case
+ * (rdf for both read.data.frame and readDataFrame). Both prefix and hump matches are found with a binary search
+ * so a lookup only touches the names it returns no matter how many names there are.
+ * Prefix matches come before hump matches and within each of them the most used names come first.
+ * Updates only touch the names that have changed and can be done while completions are looked up.
+ */
+public class CompletionIndex {
+
+  public enum Kind {
+    KEYWORD, FUNCTION, OBJECT
+  }
+
+  private static final Comparator<Entry> BY_KEY = Comparator.comparing((Entry e) -> e.key)
+      .thenComparing(e -> e.name)
+      .thenComparing(e -> e.kind);
+
+  private static final Comparator<Entry> BY_HUMPS = Comparator.comparing((Entry e) -> e.humps)
+      .thenComparing(BY_KEY);
+
+  private final Map<Kind, Set<String>> names = new EnumMap<>(Kind.class);
+  private final Map<String, Integer> usage = new ConcurrentHashMap<>();
+  private final Map<String, String> signatures = new ConcurrentHashMap<>();
+  private volatile Entry[][] sorted = {new Entry[0], new Entry[0]};
+
+  public CompletionIndex() {
+    for (Kind kind : Kind.values()) {
+      names.put(kind, new HashSet<>());
+    }
+  }
+
+  /**
+   * Replace the names of the given kind, only the names that have been added or removed since the last
+   * update are changed in the index.
+   *
+   * @return true if the index changed
+   */
+  public synchronized boolean update(Kind kind, Collection<String> newNames) {
+    Set<String> current = names.get(kind);
+    Set<String> wanted = newNames instanceof Set ? (Set<String>) newNames : new HashSet<>(newNames);
+    List<String> added = new ArrayList<>();
+    for (String name : wanted) {
+      if (!current.contains(name)) {
+        added.add(name);
+      }
+    }
+    Set<String> removed = new HashSet<>();
+    for (String name : current) {
+      if (!wanted.contains(name)) {
+        removed.add(name);
+      }
+    }
+    return update(kind, added, removed);
+  }
+
+  /**
+   * Add and remove names of the given kind, the cost only depends on the number of names changed (and a merge
+   * of the sorted arrays), not on comparing all the names in the index.
+   *
+   * @return true if the index changed
+   */
+  public synchronized boolean update(Kind kind, Collection<String> addedNames, Collection<String> removedNames) {
+    Set<String> current = names.get(kind);
+    List<Entry> added = new ArrayList<>();
+    for (String name : new LinkedHashSet<>(addedNames)) {
+      if (!current.contains(name)) {
+        added.add(new Entry(name, kind));
+      }
+    }
+    Set<String> removed = new HashSet<>();
+    for (String name : removedNames) {
+      if (current.contains(name)) {
+        removed.add(name);
+      }
+    }
+    if (added.isEmpty() && removed.isEmpty()) {
+      return false;
+    }
+    Entry[][] old = sorted;
+    Entry[] byKey = merge(old[0], added, kind, removed, BY_KEY);
+    Entry[] byHumps = merge(old[1], added, kind, removed, BY_HUMPS);
+    current.removeAll(removed);
+    for (Entry entry : added) {
+      current.add(entry.name);
+    }
+    sorted = new Entry[][]{byKey, byHumps};
+    return true;
+  }
+
+  /**
+   * Add names of the given kind keeping the ones already in the index
+   */
+  public synchronized void add(Kind kind, String... newNames) {
+    Set<String> all = new HashSet<>(names.get(kind));
+    all.addAll(Arrays.asList(newNames));
+    update(kind, all);
+  }
+
+  public int size() {
+    return sorted[0].length;
+  }
+
+  public synchronized int size(Kind kind) {
+    return names.get(kind).size();
+  }
+
+  /**
+   * Find the best matches for the text typed so far
+   *
+   * @param text the (start of the) word to complete
+   * @param max the max number of matches to return
+   * @return the matches, best match first
+   */
+  public List<Entry> complete(String text, int max) {
+    if (text == null || text.isEmpty() || max <= 0) {
+      return Collections.emptyList();
+    }
+    Entry[][] snapshot = sorted;
+    String lcText = text.toLowerCase();
+    Set<Entry> result = new LinkedHashSet<>();
+    collect(snapshot[0], snapshot[0], e -> e.key, lcText, max, result);
+    if (lcText.length() > 1) {
+      collect(snapshot[0], snapshot[1], e -> e.humps, lcText, max, result);
+    }
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Add the entries where the key starts with the text, the used ones first (most used first) and then
+   * the rest in alphabetical order until there are max entries in the result
+   */
+  private void collect(Entry[] byKey, Entry[] entries, Function<Entry, String> key, String lcText, int max,
+                       Set<Entry> result) {
+    if (result.size() >= max) {
+      return;
+    }
+    if (!usage.isEmpty()) {
+      // the names that have been picked before are few so they are looked up one by one
+      List<Entry> used = new ArrayList<>();
+      for (String name : usage.keySet()) {
+        String lcName = name.toLowerCase();
+        for (int i = lowerBound(byKey, e -> e.key, lcName); i < byKey.length && byKey[i].key.equals(lcName); i++) {
+          if (byKey[i].name.equals(name) && key.apply(byKey[i]).startsWith(lcText)) {
+            used.add(byKey[i]);
+          }
+        }
+      }
+      used.sort(Comparator.comparing((Entry e) -> getUsage(e.name)).reversed().thenComparing(BY_KEY));
+      for (Entry entry : used) {
+        if (result.size() >= max) {
+          return;
+        }
+        result.add(entry);
+      }
+    }
+    int start = lowerBound(entries, key, lcText);
+    for (int i = start; i < entries.length && result.size() < max && key.apply(entries[i]).startsWith(lcText); i++) {
+      result.add(entries[i]);
+    }
+  }
+
+  /**
+   * Register that a name was picked from the completions, frequently used names are ranked higher
+   */
+  public void recordUsage(String name) {
+    usage.merge(name, 1, Integer::sum);
+  }
+
+  public int getUsage(String name) {
+    return usage.getOrDefault(name, 0);
+  }
+
+  /**
+   * @return the argument list of the function (without the parenthesis), or null if not known
+   */
+  public String getSignature(String name) {
+    return signatures.get(name);
+  }
+
+  public void setSignature(String name, String signature) {
+    signatures.put(name, signature == null ? "" : signature);
+  }
+
+  public boolean hasSignature(String name) {
+    return signatures.containsKey(name);
+  }
+
+  private static Entry[] merge(Entry[] old, List<Entry> added, Kind kind, Set<String> removed,
+                               Comparator<Entry> order) {
+    List<Entry> toAdd = new ArrayList<>(added);
+    toAdd.sort(order);
+    Entry[] merged = new Entry[old.length - removed.size() + toAdd.size()];
+    int i = 0;
+    int a = 0;
+    int m = 0;
+    while (i < old.length || a < toAdd.size()) {
+      if (i < old.length && old[i].kind == kind && removed.contains(old[i].name)) {
+        i++;
+      } else if (a >= toAdd.size() || (i < old.length && order.compare(old[i], toAdd.get(a)) <= 0)) {
+        merged[m++] = old[i++];
+      } else {
+        merged[m++] = toAdd.get(a++);
+      }
+    }
+    return merged;
+  }
+
+  private static int lowerBound(Entry[] entries, Function<Entry, String> key, String value) {
+    int low = 0;
+    int high = entries.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (key.apply(entries[mid]).compareTo(value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the lower case first character of each word in the name, e.g. rdf for read.data.frame or readDataFrame
+   */
+  static String humps(String name) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.' || c == '_') {
+        continue;
+      }
+      char prev = i == 0 ? '.' : name.charAt(i - 1);
+      if (prev == '.' || prev == '_' || (Character.isUpperCase(c) && !Character.isUpperCase(prev))) {
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    return sb.toString();
+  }
+
+  public static class Entry {
+    private final String name;
+    private final String key;
+    private final String humps;
+    private final Kind kind;
+
+    Entry(String name, Kind kind) {
+      this.name = name;
+      this.key = name.toLowerCase();
+      this.humps = humps(name);
+      this.kind = kind;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
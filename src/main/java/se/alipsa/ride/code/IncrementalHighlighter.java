@@ -0,0 +1,285 @@
+package se.alipsa.ride.code;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the syntax highlighting of a code area up to date by only lexing the paragraphs that have changed
+ * (and the ones after it as long as the lexer state at the end of the line differs from before, e.g. when a block
+ * comment is opened) and only restyling the paragraphs whose style actually changed, visible paragraphs first.
+ * Only a window of paragraphs is copied for the lexer at a time, the next window is only scheduled when the
+ * lexer state has not converged by the end of it.
+ * The lexing is done in a background thread, all other methods must be called on the javafx thread.
+ */
+public class IncrementalHighlighter {
+
+  private static final Logger log = LogManager.getLogger(IncrementalHighlighter.class);
+
+  /** The max number of paragraphs to restyle in one go before yielding to the javafx thread */
+  private static final int CHUNK_SIZE = 1000;
+
+  /** The number of paragraphs after the last changed one to copy, most changes converge well within it */
+  private static final int LOOKAHEAD = 50;
+
+  /** The max number of paragraphs to lex in one window, e.g. when the whole document is highlighted */
+  private static final int MAX_WINDOW = 5000;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ride-highlighter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final CodeArea area;
+  private final LineLexer lexer;
+
+  /** The lexer state at the end of each paragraph */
+  private final List<Integer> endStates = new ArrayList<>();
+  private int dirtyFrom = -1;
+  private int dirtyTo = -1;
+  private long version = 0;
+
+  public IncrementalHighlighter(CodeArea area, LineLexer lexer) {
+    this.area = area;
+    this.lexer = lexer;
+    for (int i = 0; i < area.getParagraphs().size(); i++) {
+      endStates.add(LineLexer.DEFAULT_STATE);
+    }
+    markDirty(0, endStates.size() - 1);
+  }
+
+  /**
+   * Register the changes (as emitted by multiPlainChanges) so that the affected paragraphs are lexed
+   * the next time highlight is called
+   */
+  public void textChanged(List<PlainTextChange> changes) {
+    version++;
+    if (changes.size() != 1) {
+      invalidateAll();
+      return;
+    }
+    PlainTextChange change = changes.get(0);
+    int par = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward).getMajor();
+    int removedLines = countLines(change.getRemoved());
+    int insertedLines = countLines(change.getInserted());
+    if (par >= endStates.size() || par + removedLines >= endStates.size()) {
+      invalidateAll();
+      return;
+    }
+    // the last line of the change ends the way the last removed line used to end
+    endStates.subList(par, par + removedLines).clear();
+    endStates.addAll(par, Collections.nCopies(insertedLines, LineLexer.DEFAULT_STATE));
+    if (endStates.size() != area.getParagraphs().size()) {
+      invalidateAll();
+      return;
+    }
+    if (dirtyTo > par) {
+      dirtyTo = Math.max(par, dirtyTo + insertedLines - removedLines);
+    }
+    markDirty(par, par + insertedLines);
+  }
+
+  /**
+   * Lex the changed paragraphs in the background and restyle the ones whose style changed
+   */
+  public void highlight() {
+    if (dirtyFrom < 0) {
+      return;
+    }
+    final long startVersion = version;
+    final int start = dirtyFrom;
+    final int lastDirty = dirtyTo;
+    final int startState = start == 0 ? LineLexer.DEFAULT_STATE : endStates.get(start - 1);
+    final int end = Math.min(area.getParagraphs().size(), Math.min(lastDirty + 1 + LOOKAHEAD, start + MAX_WINDOW));
+    final List<String> lines = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      lines.add(area.getParagraph(i).getText());
+    }
+    final List<Integer> oldStates = new ArrayList<>(endStates.subList(start, end));
+    final boolean[] converged = {false};
+
+    Task<List<StyleSpans<Collection<String>>>> task = new Task<List<StyleSpans<Collection<String>>>>() {
+      @Override
+      protected List<StyleSpans<Collection<String>>> call() {
+        List<StyleSpans<Collection<String>>> result = new ArrayList<>();
+        int state = startState;
+        for (int i = 0; i < lines.size(); i++) {
+          StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+          state = lexer.lex(lines.get(i), state, spansBuilder);
+          result.add(spansBuilder.create());
+          converged[0] = start + i >= lastDirty && state == oldStates.get(i);
+          oldStates.set(i, state);
+          if (converged[0]) {
+            break;
+          }
+        }
+        return result;
+      }
+    };
+    task.setOnSucceeded(e -> {
+      if (version != startVersion) {
+        // the text has changed since, the next highlight will take care of it
+        return;
+      }
+      List<StyleSpans<Collection<String>>> lineSpans = task.getValue();
+      for (int i = 0; i < lineSpans.size(); i++) {
+        endStates.set(start + i, oldStates.get(i));
+      }
+      dirtyFrom = -1;
+      dirtyTo = -1;
+      int next = start + lineSpans.size();
+      if (!converged[0] && next < endStates.size()) {
+        // not converged within the window, the next paragraph starts in a different state than before
+        markDirty(next, Math.max(next, lastDirty));
+      }
+      applyStyles(start, lineSpans, startVersion);
+      highlight();
+    });
+    task.setOnFailed(e -> log.warn("Failed to compute highlighting", task.getException()));
+    executor.execute(task);
+  }
+
+  private void applyStyles(int start, List<StyleSpans<Collection<String>>> lineSpans, long startVersion) {
+    // group the paragraphs whose style has changed into runs of consecutive paragraphs
+    List<int[]> runs = new ArrayList<>();
+    int[] run = null;
+    for (int i = 0; i < lineSpans.size(); i++) {
+      if (sameStyles(lineSpans.get(i), area.getParagraph(start + i).getStyleSpans())) {
+        run = null;
+      } else if (run == null) {
+        run = new int[]{start + i, start + i};
+        runs.add(run);
+      } else {
+        run[1] = start + i;
+      }
+    }
+    if (runs.isEmpty()) {
+      return;
+    }
+    int firstVisible = 0;
+    int lastVisible = -1;
+    try {
+      firstVisible = area.firstVisibleParToAllParIndex();
+      lastVisible = area.lastVisibleParToAllParIndex();
+    } catch (RuntimeException e) {
+      // nothing is visible (e.g. the tab is not showing), just restyle in document order
+    }
+    List<int[]> ordered = new ArrayList<>(runs.size());
+    List<int[]> rest = new ArrayList<>(runs.size());
+    for (int[] r : runs) {
+      if (r[1] >= firstVisible && r[0] <= lastVisible) {
+        ordered.add(r);
+      } else {
+        rest.add(r);
+      }
+    }
+    ordered.addAll(rest);
+    applyChunk(ordered, 0, start, lineSpans, startVersion);
+  }
+
+  private void applyChunk(List<int[]> runs, int runIdx, int start, List<StyleSpans<Collection<String>>> lineSpans,
+                          long startVersion) {
+    if (version != startVersion) {
+      // the paragraph indexes are no longer valid, start over on the next highlight
+      invalidateAll();
+      return;
+    }
+    int styled = 0;
+    int idx = runIdx;
+    while (idx < runs.size() && styled < CHUNK_SIZE) {
+      int[] run = runs.get(idx++);
+      StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+      for (int par = run[0]; par <= run[1]; par++) {
+        if (par > run[0]) {
+          spansBuilder.add(Collections.emptyList(), 1);
+        }
+        spansBuilder.addAll(lineSpans.get(par - start));
+      }
+      area.setStyleSpans(area.getAbsolutePosition(run[0], 0), spansBuilder.create());
+      styled += run[1] - run[0] + 1;
+    }
+    if (idx < runs.size()) {
+      final int nextIdx = idx;
+      Platform.runLater(() -> applyChunk(runs, nextIdx, start, lineSpans, startVersion));
+    }
+  }
+
+  private void invalidateAll() {
+    endStates.clear();
+    endStates.addAll(Collections.nCopies(area.getParagraphs().size(), LineLexer.DEFAULT_STATE));
+    dirtyFrom = -1;
+    dirtyTo = -1;
+    markDirty(0, endStates.size() - 1);
+  }
+
+  private void markDirty(int from, int to) {
+    dirtyFrom = dirtyFrom < 0 ? from : Math.min(dirtyFrom, from);
+    dirtyTo = Math.max(dirtyTo, to);
+  }
+
+  private static int countLines(String text) {
+    int count = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Compare the styles ignoring how the spans are split up, i.e. adjacent spans with the same style
+   * are treated as one span
+   */
+  static boolean sameStyles(StyleSpans<Collection<String>> spans, StyleSpans<Collection<String>> other) {
+    List<StyleSpan<Collection<String>>> merged = merge(spans);
+    List<StyleSpan<Collection<String>>> otherMerged = merge(other);
+    if (merged.size() != otherMerged.size()) {
+      return false;
+    }
+    for (int i = 0; i < merged.size(); i++) {
+      StyleSpan<Collection<String>> span = merged.get(i);
+      StyleSpan<Collection<String>> otherSpan = otherMerged.get(i);
+      if (span.getLength() != otherSpan.getLength() || !sameStyle(span.getStyle(), otherSpan.getStyle())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<StyleSpan<Collection<String>>> merge(StyleSpans<Collection<String>> spans) {
+    List<StyleSpan<Collection<String>>> merged = new ArrayList<>();
+    for (StyleSpan<Collection<String>> span : spans) {
+      if (span.getLength() == 0) {
+        continue;
+      }
+      int last = merged.size() - 1;
+      if (last >= 0 && sameStyle(merged.get(last).getStyle(), span.getStyle())) {
+        StyleSpan<Collection<String>> prev = merged.get(last);
+        merged.set(last, new StyleSpan<>(prev.getStyle(), prev.getLength() + span.getLength()));
+      } else {
+        merged.add(span);
+      }
+    }
+    return merged;
+  }
+
+  private static boolean sameStyle(Collection<String> style, Collection<String> other) {
+    return style.size() == other.size() && style.containsAll(other);
+  }
+}
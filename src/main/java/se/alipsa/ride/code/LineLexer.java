@@ -0,0 +1,25 @@
+package se.alipsa.ride.code;
+
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.Collection;
+
+/**
+ * Computes the syntax highlighting one line (paragraph) at a time. Constructs that can span several lines
+ * (block comments, strings etc.) are carried over to the next line as the state returned from lex.
+ */
+public interface LineLexer {
+
+  /** The state at the start of the document, i.e. not inside any multi line construct */
+  int DEFAULT_STATE = 0;
+
+  /**
+   * Add the style spans for the line to the builder, the spans must cover the whole line
+   * (and at least one span must be added even if the line is empty).
+   *
+   * @param line the text of the line without the line terminator
+   * @param state the state at the end of the previous line
+   * @return the state at the end of this line
+   */
+  int lex(String line, int state, StyleSpansBuilder<Collection<String>> spansBuilder);
+}
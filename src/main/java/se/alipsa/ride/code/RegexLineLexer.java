@@ -0,0 +1,125 @@
+package se.alipsa.ride.code;
+
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A line lexer based on a pattern with one named group per kind of token.
+ * Tokens that can span several lines (e.g. block comments and strings) are added as blocks where the group
+ * in the pattern matches the start of the block and a separate pattern matches the rest of it,
+ * if the rest is not found on the same line the block continues on the next line.
+ */
+public class RegexLineLexer implements LineLexer {
+
+  private final Pattern pattern;
+  private final List<String[]> tokens = new ArrayList<>();
+  private final List<Block> blocks = new ArrayList<>();
+
+  /**
+   * @param pattern the pattern with named groups for the tokens and block starts
+   * @param groupsAndStyles pairs of group name and style class, e.g. "KEYWORD", "keyword", "STRING", "string"
+   */
+  public RegexLineLexer(Pattern pattern, String... groupsAndStyles) {
+    this.pattern = pattern;
+    for (int i = 0; i + 1 < groupsAndStyles.length; i += 2) {
+      tokens.add(new String[]{groupsAndStyles[i], groupsAndStyles[i + 1]});
+    }
+  }
+
+  /**
+   * @param group the group in the pattern that matches the start of the block, e.g. the start of a block comment
+   * @param rest the pattern matching the remainder of the block up to and including the end of it
+   * @param styleClass the style of the whole block
+   */
+  public RegexLineLexer addBlock(String group, String rest, String styleClass) {
+    blocks.add(new Block(group, Pattern.compile(rest), styleClass));
+    return this;
+  }
+
+  @Override
+  public int lex(String line, int state, StyleSpansBuilder<Collection<String>> spansBuilder) {
+    int pos = 0;
+    if (state > DEFAULT_STATE && state <= blocks.size()) {
+      Block block = blocks.get(state - 1);
+      Matcher rest = block.rest.matcher(line);
+      if (!rest.lookingAt()) {
+        spansBuilder.add(block.style, line.length());
+        return state;
+      }
+      spansBuilder.add(block.style, rest.end());
+      pos = rest.end();
+    }
+    int lastEnd = pos;
+    Matcher matcher = pattern.matcher(line);
+    while (pos < line.length() && matcher.find(pos)) {
+      if (matcher.end() == matcher.start()) {
+        pos = matcher.end() + 1;
+        continue;
+      }
+      int blockIdx = blockIndex(matcher);
+      if (blockIdx > -1) {
+        Block block = blocks.get(blockIdx);
+        int start = matcher.start(block.group);
+        spansBuilder.add(Collections.emptyList(), start - lastEnd);
+        Matcher rest = block.rest.matcher(line);
+        rest.region(matcher.end(block.group), line.length());
+        if (!rest.lookingAt()) {
+          spansBuilder.add(block.style, line.length() - start);
+          return blockIdx + 1;
+        }
+        spansBuilder.add(block.style, rest.end() - start);
+        lastEnd = pos = rest.end();
+      } else {
+        String[] token = token(matcher);
+        if (token == null) {
+          pos = matcher.end();
+          continue;
+        }
+        int start = matcher.start(token[0]);
+        int end = matcher.end(token[0]);
+        spansBuilder.add(Collections.emptyList(), start - lastEnd);
+        spansBuilder.add(Collections.singleton(token[1]), end - start);
+        lastEnd = end;
+        pos = matcher.end();
+      }
+    }
+    spansBuilder.add(Collections.emptyList(), line.length() - lastEnd);
+    return DEFAULT_STATE;
+  }
+
+  private int blockIndex(Matcher matcher) {
+    for (int i = 0; i < blocks.size(); i++) {
+      if (matcher.group(blocks.get(i).group) != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String[] token(Matcher matcher) {
+    for (String[] token : tokens) {
+      if (matcher.group(token[0]) != null) {
+        return token;
+      }
+    }
+    return null;
+  }
+
+  private static class Block {
+    final String group;
+    final Pattern rest;
+    final Collection<String> style;
+
+    Block(String group, Pattern rest, String styleClass) {
+      this.group = group;
+      this.rest = rest;
+      this.style = Collections.singleton(styleClass);
+    }
+  }
+}
@@ -3,7 +3,6 @@ package se.alipsa.ride.code.groovytab;
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
@@ -74,7 +73,7 @@ public class GroovyTab extends TextAreaTab {
                 PrintWriter outputWriter = new PrintWriter(out);
                 PrintWriter errWriter = new PrintWriter(err)
         ) {
-          Platform.runLater(() -> console.append(title));
+          console.appendFx(title);
           groovyShell.setProperty("out", outputWriter);
           groovyShell.setProperty("err", errWriter);
 
@@ -105,9 +104,7 @@ public class GroovyTab extends TextAreaTab {
       ExceptionAlert.showAlert(ex.getMessage(), ex);
       gui.getConsoleComponent().promptAndScrollToEnd();
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    consoleComponent.startThreadWhenOthersAreFinished(thread, "groovyScript");
+    consoleComponent.startTaskWhenOthersAreFinished(task, "groovyScript");
   }
 
   @Override
@@ -2,14 +2,11 @@ package se.alipsa.ride.code.groovytab;
 
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.code.CodeComponent;
 import se.alipsa.ride.code.CodeTextArea;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GroovyTextArea extends CodeTextArea {
@@ -39,8 +36,7 @@ public class GroovyTextArea extends CodeTextArea {
   private static final String BRACE_PATTERN = "\\{|\\}";
   private static final String BRACKET_PATTERN = "\\[|\\]";
   private static final String SEMICOLON_PATTERN = "\\;";
-  private static final String STRING_PATTERN = "\"\"|''|\"[^\"]+\"|'[^']+'";
-  private static final String COMMENT_PATTERN = "//[^\n]*" + "|" + "/\\*(.|\\R)*?\\*/";
+  private static final String COMMENT_PATTERN = "//.*";
 
   private static final Pattern PATTERN = Pattern.compile(
       "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
@@ -48,10 +44,27 @@ public class GroovyTextArea extends CodeTextArea {
           + "|(?<BRACE>" + BRACE_PATTERN + ")"
           + "|(?<BRACKET>" + BRACKET_PATTERN + ")"
           + "|(?<SEMICOLON>" + SEMICOLON_PATTERN + ")"
-          + "|(?<STRING>" + STRING_PATTERN + ")"
+          + "|(?<TDQSTRING>\"\"\")"
+          + "|(?<TSQSTRING>''')"
+          + "|(?<DQSTRING>\")"
+          + "|(?<SQSTRING>')"
           + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
+          + "|(?<BLOCKCOMMENT>/\\*)"
   );
 
+  private static final LineLexer LEXER = new RegexLineLexer(PATTERN,
+      "KEYWORD", "keyword",
+      "PAREN", "paren",
+      "BRACE", "brace",
+      "BRACKET", "bracket",
+      "SEMICOLON", "semicolon",
+      "COMMENT", "comment")
+      .addBlock("TDQSTRING", ".*?\"\"\"", "string")
+      .addBlock("TSQSTRING", ".*?'''", "string")
+      .addBlock("DQSTRING", "(?:[^\"\\\\]|\\\\.)*+\"", "string")
+      .addBlock("SQSTRING", "(?:[^'\\\\]|\\\\.)*+'", "string")
+      .addBlock("BLOCKCOMMENT", ".*?\\*/", "comment");
+
   public GroovyTextArea(GroovyTab parent) {
     super(parent);
     addEventHandler(KeyEvent.KEY_PRESSED, e -> {
@@ -76,28 +89,9 @@ public class GroovyTextArea extends CodeTextArea {
     });
   }
 
-  protected final StyleSpans<Collection<String>> computeHighlighting(String text) {
-    Matcher matcher = PATTERN.matcher(text);
-    int lastKwEnd = 0;
-    StyleSpansBuilder<Collection<String>> spansBuilder
-        = new StyleSpansBuilder<>();
-    while (matcher.find()) {
-      String styleClass =
-          matcher.group("KEYWORD") != null ? "keyword" :
-              matcher.group("PAREN") != null ? "paren" :
-                  matcher.group("BRACE") != null ? "brace" :
-                      matcher.group("BRACKET") != null ? "bracket" :
-                          matcher.group("SEMICOLON") != null ? "semicolon" :
-                              matcher.group("STRING") != null ? "string" :
-                                  matcher.group("COMMENT") != null ? "comment" :
-                                      null; /* never happens */
-      assert styleClass != null;
-      spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-      spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-      lastKwEnd = matcher.end();
-    }
-    spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-    return spansBuilder.create();
+  @Override
+  protected LineLexer getLexer() {
+    return LEXER;
   }
 
 }
@@ -1,14 +1,11 @@
 package se.alipsa.ride.code.mdrtab;
 
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.code.CodeTextArea;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
 import se.alipsa.ride.code.TabTextArea;
 import se.alipsa.ride.code.TextAreaTab;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MdrTextArea extends CodeTextArea implements TabTextArea {
@@ -16,16 +13,13 @@ public class MdrTextArea extends CodeTextArea implements TabTextArea {
    private static String titlePattern(int titleNumber) {
       StringBuilder stringBuilder = new StringBuilder("(?<TITLE")
          .append(titleNumber)
-         .append(">((^#{")
+         .append(">^#{")
          .append(titleNumber)
-         .append("})|(\n#{")
-         .append(titleNumber)
-         .append("}))\\h[^\n]+)");
+         .append("}\\h.+)");
 
       return stringBuilder.toString();
    }
 
-   private static final String MULTI_LINE = "(.|\\R)*?";
    private static final String SINGLE_LINE = "(.)*?";
 
    private static final String BOLD_PATTERN = "[*_]{2}" + SINGLE_LINE + "[*_]{2}";
@@ -38,11 +32,11 @@ public class MdrTextArea extends CodeTextArea implements TabTextArea {
    private static final String TITLE5_PATTERN = titlePattern(5);
    private static final String TITLE6_PATTERN = titlePattern(6);
    private static final String LINK_PATTERN = "<.*/?>";
-   private static final String BLOCK_CODE_PATTERN = "[`]{3}" + MULTI_LINE + "[`]{3}";
+   private static final String BLOCK_CODE_PATTERN = "[`]{3}";
    private static final String CODE_PATTERN = "[`]" + SINGLE_LINE + "[`]";
    private static final String UNDERLINE_PATTERN = "[\\[]" + SINGLE_LINE +"[]]";
    private static final String ITALICBOLD_PATTERN = "[*_]{3}" + SINGLE_LINE + "[*_]{3}";
-   private static final String BLOCK_QUOTE_PATTERN = ">[^\n]*";
+   private static final String BLOCK_QUOTE_PATTERN = ">.*";
 
    private static final Pattern PATTERN = Pattern.compile(
       "(?<ITALICBOLD>" + ITALICBOLD_PATTERN + ")"
@@ -62,40 +56,30 @@ public class MdrTextArea extends CodeTextArea implements TabTextArea {
          + "|(?<BLOCKQUOTE>" + BLOCK_QUOTE_PATTERN + ")"
    );
 
+   // code blocks span several lines, the other constructs are all within one line
+   private static final LineLexer LEXER = new RegexLineLexer(PATTERN,
+      "ITALICBOLD", "italicbold",
+      "BOLD", "bold",
+      "ITALIC", "italic",
+      "STRIKETHROUGH", "strikethrough",
+      "TITLE1", "title1",
+      "TITLE2", "title2",
+      "TITLE3", "title3",
+      "TITLE4", "title4",
+      "TITLE5", "title5",
+      "TITLE6", "title6",
+      "LINK", "link",
+      "CODE", "code",
+      "UNDERLINE", "underline",
+      "BLOCKQUOTE", "blockquote")
+      .addBlock("BLOCKCODE", ".*?[`]{3}", "blockcode");
+
    public MdrTextArea(TextAreaTab parent) {
       super(parent);
    }
 
    @Override
-   protected StyleSpans<Collection<String>> computeHighlighting(String text) {
-      Matcher matcher = PATTERN.matcher(text);
-      int lastKwEnd = 0;
-      StyleSpansBuilder<Collection<String>> spansBuilder
-         = new StyleSpansBuilder<>();
-      while (matcher.find()) {
-         String styleClass =
-            matcher.group("TITLE1") != null ? "title1" :
-               matcher.group("TITLE2") != null ? "title2" :
-                  matcher.group("TITLE3") != null ? "title3" :
-                     matcher.group("TITLE4") != null ? "title4" :
-                        matcher.group("TITLE5") != null ? "title5" :
-                           matcher.group("TITLE6") != null ? "title6" :
-                              matcher.group("ITALICBOLD") != null ? "italicbold" :
-                                 matcher.group("ITALIC") != null ? "italic" :
-                                    matcher.group("BOLD") != null ? "bold" :
-                                       matcher.group("STRIKETHROUGH") != null ? "strikethrough" :
-                                          matcher.group("BLOCKCODE") != null ? "blockcode" :
-                                             matcher.group("CODE") != null ? "code" :
-                                                matcher.group("UNDERLINE") != null ? "underline" :
-                                                   matcher.group("LINK") != null ? "link" :
-                                                      matcher.group("BLOCKQUOTE") != null ? "blockquote" :
-                                                         null; /* never happens */
-         assert styleClass != null;
-         spansBuilder.add(Collections.emptyList(), matcher.start(styleClass.toUpperCase()) - lastKwEnd);
-         spansBuilder.add(Collections.singleton(styleClass), matcher.end(styleClass.toUpperCase()) - matcher.start(styleClass.toUpperCase()));
-         lastKwEnd = matcher.end(styleClass.toUpperCase());
-      }
-      spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-      return spansBuilder.create();
+   protected LineLexer getLexer() {
+      return LEXER;
    }
 }
@@ -47,8 +47,6 @@ public class MdrViewerUtil {
       consoleComponent.waiting();
       ExceptionAlert.showAlert(ex.getMessage(), ex);
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    consoleComponent.startThreadWhenOthersAreFinished(thread, "mdrFile");
+    consoleComponent.startTaskWhenOthersAreFinished(task, "mdrFile");
   }
 }
@@ -96,9 +96,7 @@ public class MuninRTab extends MuninTab {
       ExceptionAlert.showAlert(ex.getMessage(), ex);
     });
 
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    gui.getConsoleComponent().startThreadWhenOthersAreFinished(thread, "muninReport");
+    gui.getConsoleComponent().startTaskWhenOthersAreFinished(task, "muninReport");
   }
 
   private final Console console = new Console();
@@ -12,7 +12,6 @@ import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.jgit.api.Git;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import se.alipsa.ride.Constants;
 import se.alipsa.ride.Ride;
@@ -26,7 +25,6 @@ import se.alipsa.ride.model.MuninConnection;
 import se.alipsa.ride.model.MuninReport;
 import se.alipsa.ride.utils.Alerts;
 import se.alipsa.ride.utils.ExceptionAlert;
-import se.alipsa.ride.utils.git.GitUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -105,8 +103,6 @@ public abstract class MuninTab extends TextAreaTab implements TaskListener {
     tabPane.getTabs().add(codeTab);
     tabPane.getTabs().add(miscTab);
     pane.setCenter(tabPane);
-    //gui.getEnvironmentComponent().addContextFunctionsUpdateListener(codeTextArea);
-    //setOnClosed(e -> gui.getEnvironmentComponent().removeContextFunctionsUpdateListener(codeTextArea));
   }
 
   private void saveContent() {
@@ -122,11 +118,7 @@ public abstract class MuninTab extends TextAreaTab implements TaskListener {
     }
     try {
       saveFile(muninReport, file);
-      Git git = gui.getInoutComponent().getGit();
-      if(getTreeItem() != null && git != null) {
-        String path = GitUtils.asRelativePath(getFile(), gui.getInoutComponent().getRootDir());
-        GitUtils.colorNode(git, path, getTreeItem());
-      }
+      gui.getInoutComponent().updateGitStatus(file);
     } catch (IOException | JAXBException e) {
       ExceptionAlert.showAlert("Failed to save file " + file, e);
     }
@@ -1,6 +1,9 @@
 package se.alipsa.ride.code.rtab;
 
+import javafx.collections.FXCollections;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Tooltip;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,6 +13,7 @@ import se.alipsa.ride.code.CodeTextArea;
 import se.alipsa.ride.code.CodeType;
 import se.alipsa.ride.code.TextAreaTab;
 import se.alipsa.ride.console.ConsoleComponent;
+import se.alipsa.ride.console.ScriptSession;
 
 import java.io.File;
 
@@ -20,6 +24,8 @@ public class RTab extends TextAreaTab implements TaskListener {
   private ConsoleComponent console;
 
   Button runButton;
+  private Button profileButton;
+  private ComboBox<String> sessionComboBox;
   private Button runTestsButton;
   private boolean isRunTestButtonDisabled = false;
 
@@ -33,9 +39,27 @@ public class RTab extends TextAreaTab implements TaskListener {
 
 
     runButton = new Button("Run"); // async
-    runButton.setOnAction(event -> console.runScriptAsync(rTextArea.getTextContent(), getTitle(), this));
+    runButton.setOnAction(event -> console.runScriptAsync(rTextArea.getTextContent(), getTitle(), this, getSessionName()));
     buttonPane.getChildren().add(runButton);
 
+    profileButton = new Button("Profile");
+    profileButton.setTooltip(new Tooltip("Run the script and show where the time is spent"));
+    profileButton.setOnAction(event -> console.profileScriptAsync(rTextArea.getTextContent(), getTitle(), this, getSessionName()));
+    buttonPane.getChildren().add(profileButton);
+
+    sessionComboBox = new ComboBox<>(FXCollections.observableArrayList(ScriptSession.names()));
+    sessionComboBox.getSelectionModel().select(ScriptSession.MAIN);
+    sessionComboBox.setTooltip(new Tooltip("The R session to run the script in. Scripts in different sessions run in parallel, "
+        + "tabs using the same session share its variables"));
+    sessionComboBox.valueProperty().addListener((obs, oldVal, newVal) -> console.updateEnvironment(newVal));
+    buttonPane.getChildren().add(sessionComboBox);
+    // show the variables of the session the tab is using
+    selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+      if (isSelected && !ScriptSession.MAIN.equals(getSessionName())) {
+        console.updateEnvironment(getSessionName());
+      }
+    });
+
     runTestsButton = new Button("Run tests");
     runTestsButton.setOnAction(evt -> console.runTests(this));
     buttonPane.getChildren().add(runTestsButton);
@@ -44,8 +68,10 @@ public class RTab extends TextAreaTab implements TaskListener {
     rTextArea = new RTextArea(this);
     VirtualizedScrollPane<RTextArea> vPane = new VirtualizedScrollPane<>(rTextArea);
     pane.setCenter(vPane);
-    gui.getEnvironmentComponent().addContextFunctionsUpdateListener(rTextArea);
-    setOnClosed(e -> gui.getEnvironmentComponent().removeContextFunctionsUpdateListener(rTextArea));
+  }
+
+  public String getSessionName() {
+    return sessionComboBox.getValue();
   }
 
   @Override
@@ -93,6 +119,7 @@ public class RTab extends TextAreaTab implements TaskListener {
       runTestsButton.setDisable(true);
     }
     runButton.setDisable(true);
+    profileButton.setDisable(true);
   }
 
   @Override
@@ -101,6 +128,7 @@ public class RTab extends TextAreaTab implements TaskListener {
       runTestsButton.setDisable(false);
     }
     runButton.setDisable(false);
+    profileButton.setDisable(false);
   }
 
   @Override
@@ -1,27 +1,29 @@
 package se.alipsa.ride.code.rtab;
 
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.CustomMenuItem;
+import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.TaskListener;
 import se.alipsa.ride.code.CodeComponent;
 import se.alipsa.ride.code.CodeTextArea;
+import se.alipsa.ride.code.CompletionIndex;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
 import se.alipsa.ride.code.TextAreaTab;
 import se.alipsa.ride.console.ConsoleComponent;
-import se.alipsa.ride.environment.ContextFunctionsUpdateListener;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.TreeSet;
-import java.util.regex.Matcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
-public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateListener {
+public class RTextArea extends CodeTextArea {
 
   // Since T and F are not true keywords (they can be reassigned e.g. T <- FALSE), they are not included below
   private static final String[] KEYWORDS = new String[]{
@@ -107,8 +109,16 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
       "xzfile"
   };
 
-  TreeSet<String> contextFunctions = new TreeSet<>();
-  TreeSet<String> contextObjects = new TreeSet<>();
+  /** The keywords and functions of base R used for completion until the session has been inspected */
+  private static final CompletionIndex BASE_INDEX = new CompletionIndex();
+  static {
+    BASE_INDEX.add(CompletionIndex.Kind.KEYWORD, KEYWORDS);
+    BASE_INDEX.add(CompletionIndex.Kind.FUNCTION, FUNCTIONS);
+  }
+  private static final int MAX_SUGGESTIONS = 50;
+
+  private CompletionIndex contextIndex;
+  private ConsoleComponent console;
 
   private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
   private static final String FUNCTIONS_PATTERN = "\\b(" + String.join("|", FUNCTIONS) + ")\\b";
@@ -116,9 +126,7 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
   private static final String OPERATOR_PATTERN = "-|\\+|\\*|/|\\^|\\*{2}|%%|%/%|%in%|<|>|<=|>=|={2}|!=|!|&|:";
   private static final String BRACKET_PATTERN = "[\\[\\]\\{\\}\\(\\)]";
   private static final String DIGIT_PATTERN = "\\b\\d+";
-  //private static final String STRING_PATTERN = "\"([^\"\\\\]|\\\\.)*\"|\'([^\'\\\\]|\\\\.)*\'"; // backtracing makes this crazy slow
-  private static final String STRING_PATTERN = "\"\"|''|\"[^\"]+\"|'[^']+'";
-  private static final String COMMENT_PATTERN = "#[^\n]*";
+  private static final String COMMENT_PATTERN = "#.*";
   private static final Pattern PATTERN = Pattern.compile(
       "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
           + "|(?<FUNCTIONS>" + FUNCTIONS_PATTERN + ")"
@@ -126,13 +134,21 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
           + "|(?<OPERATOR>" + OPERATOR_PATTERN + ")"
           + "|(?<BRACKET>" + BRACKET_PATTERN + ")"
           + "|(?<DIGIT>" + DIGIT_PATTERN + ")"
-          + "|(?<STRING>" + STRING_PATTERN + ")"
-          + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
-  );
-  private static final Pattern LIGHT_PATTERN = Pattern.compile(
-      "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
+          + "|(?<DQSTRING>\")"
+          + "|(?<SQSTRING>')"
           + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
   );
+  // strings can span several lines in R, the rest of the string is matched possessively to avoid backtracking
+  private static final LineLexer LEXER = new RegexLineLexer(PATTERN,
+      "KEYWORD", "keyword",
+      "FUNCTIONS", "function",
+      "ASSIGNMENT", "assign",
+      "OPERATOR", "operator",
+      "BRACKET", "bracket",
+      "DIGIT", "digit",
+      "COMMENT", "comment")
+      .addBlock("DQSTRING", "(?:[^\"\\\\]|\\\\.)*+\"", "string")
+      .addBlock("SQSTRING", "(?:[^'\\\\]|\\\\.)*+'", "string");
   private static final Logger LOG = LogManager.getLogger(RTextArea.class);
   ContextMenu suggestionsPopup = new ContextMenu();
 
@@ -152,7 +168,9 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
     });
 
     Ride gui = parent.getGui();
-    ConsoleComponent console = gui.getConsoleComponent();
+    console = gui.getConsoleComponent();
+    contextIndex = gui.getEnvironmentComponent().getCompletionIndex();
+    contextIndex.add(CompletionIndex.Kind.KEYWORD, KEYWORDS);
     addEventHandler(KeyEvent.KEY_PRESSED, e -> {
       if (e.isControlDown()) {
         if (KeyCode.ENTER.equals(e.getCode())) {
@@ -164,7 +182,9 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
           if (selected != null && !"".equals(selected)) {
             rCode = codeComponent.getTextFromActiveTab();
           }
-          if (parent instanceof TaskListener) {
+          if (parent instanceof RTab) {
+            console.runScriptAsync(rCode, codeComponent.getActiveScriptName(), (RTab) parent, ((RTab) parent).getSessionName());
+          } else if (parent instanceof TaskListener) {
             console.runScriptAsync(rCode, codeComponent.getActiveScriptName(), (TaskListener)parent);
           } else {
             console.runScriptAsync(rCode, codeComponent.getActiveScriptName(), new TaskListener() {
@@ -185,56 +205,9 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
 
   }
 
-  protected final StyleSpans<Collection<String>> computeHighlighting(String text) {
-    return computeFullHighlighting(text);
-    /* // rewrote regexp for String pattern so do not need this now
-    if (text.length() < 60000) {
-      return computeFullHighlighting(text);
-    } else {
-      log.warn("Text is too large for full syntax coloring, using bare essentials");
-      return computeLightHighlighting(text);
-    }*/
-  }
-
-  protected final StyleSpans<Collection<String>> computeLightHighlighting(String text) {
-    Matcher matcher = LIGHT_PATTERN.matcher(text);
-    int lastKwEnd = 0;
-    StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-    while (matcher.find()) {
-      String styleClass =
-          matcher.group("KEYWORD") != null ? "keyword" :
-              matcher.group("COMMENT") != null ? "comment" :
-                  null; /* never happens */
-      spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-      spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-      lastKwEnd = matcher.end();
-    }
-    spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-    return spansBuilder.create();
-  }
-
-  protected final StyleSpans<Collection<String>> computeFullHighlighting(String text) {
-    Matcher matcher = PATTERN.matcher(text);
-    int lastKwEnd = 0;
-    StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-    while (matcher.find()) {
-      String styleClass =
-          matcher.group("KEYWORD") != null ? "keyword" :
-              matcher.group("FUNCTIONS") != null ? "function" :
-                matcher.group("ASSIGNMENT") != null ? "assign" :
-                    matcher.group("OPERATOR") != null ? "operator" :
-                        matcher.group("BRACKET") != null ? "bracket" :
-                            matcher.group("DIGIT") != null ? "digit" :
-                                matcher.group("STRING") != null ? "string" :
-                                    matcher.group("COMMENT") != null ? "comment" :
-                                        null; /* never happens */
-      spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-      spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-      lastKwEnd = matcher.end();
-    }
-
-    spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-    return spansBuilder.create();
+  @Override
+  protected LineLexer getLexer() {
+    return LEXER;
   }
 
   /**
@@ -273,36 +246,38 @@ public class RTextArea extends CodeTextArea implements ContextFunctionsUpdateLis
   }
 
   private void suggestCompletion(String lastWord) {
-    TreeSet<String> suggestions = new TreeSet<>();
-    if (contextFunctions.isEmpty() && contextObjects.isEmpty()) {
-      for (String keyword : KEYWORDS) {
-        if (keyword.startsWith(lastWord)) {
-          suggestions.add(keyword);
-        }
-      }
-      for (String function : FUNCTIONS) {
-        if (function.startsWith(lastWord)) {
-          suggestions.add(function + "()");
-        }
-      }
-    } else {
-      for (String context : contextFunctions) {
-        if (context.startsWith(lastWord)) {
-          suggestions.add(context + "()");
-        }
-      }
-      for (String obj : contextObjects) {
-        if (obj.startsWith(lastWord)) {
-          suggestions.add(obj);
-        }
+    CompletionIndex index = contextIndex != null && contextIndex.size(CompletionIndex.Kind.FUNCTION) > 0
+        ? contextIndex
+        : BASE_INDEX;
+    List<CustomMenuItem> menuItems = new ArrayList<>();
+    Map<String, Label> unknownSignatures = new HashMap<>();
+    for (CompletionIndex.Entry entry : index.complete(lastWord, MAX_SUGGESTIONS)) {
+      String name = entry.getName();
+      boolean isFunction = entry.getKind() == CompletionIndex.Kind.FUNCTION;
+      Label label = new Label(isFunction ? name + "(" + nullToEmpty(index.getSignature(name)) + ")" : name);
+      if (isFunction && !index.hasSignature(name)) {
+        unknownSignatures.put(name, label);
       }
+      menuItems.add(suggestionItem(label, suggestionsPopup, () -> {
+        index.recordUsage(name);
+        int caretPos = getCaretPosition();
+        int start = caretPos - lastWord.length();
+        replaceText(start, caretPos, isFunction ? name + "()" : name);
+        moveTo(start + name.length() + (isFunction ? 1 : 0));
+      }));
+    }
+    showSuggestions(menuItems, suggestionsPopup);
+    if (console != null && !unknownSignatures.isEmpty()) {
+      console.fetchFunctionSignatures(new ArrayList<>(unknownSignatures.keySet()), signatures ->
+          signatures.forEach((name, signature) -> {
+            index.setSignature(name, signature);
+            unknownSignatures.get(name).setText(name + "(" + signature + ")");
+          })
+      );
     }
-    suggestCompletion(lastWord, suggestions, suggestionsPopup);
   }
 
-  @Override
-  public void updateContextFunctions(TreeSet<String> functionList, TreeSet<String> objectList) {
-    contextFunctions = functionList;
-    contextObjects = objectList;
+  private static String nullToEmpty(String str) {
+    return str == null ? "" : str;
   }
 }
@@ -6,38 +6,65 @@ import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.Cursor;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fxmisc.flowless.VirtualizedScrollPane;
-import se.alipsa.renjin.client.datautils.Table;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.code.CodeTextArea;
 import se.alipsa.ride.code.CodeType;
 import se.alipsa.ride.code.TextAreaTab;
 import se.alipsa.ride.console.ConsoleComponent;
 import se.alipsa.ride.environment.connections.ConnectionInfo;
+import se.alipsa.ride.inout.viewer.StreamingTableModel;
+import se.alipsa.ride.metrics.Metrics;
 import se.alipsa.ride.utils.ExceptionAlert;
+import se.alipsa.ride.utils.IntField;
 import se.alipsa.ride.utils.SqlParser;
 import se.alipsa.ride.utils.StringUtils;
 
 import java.io.File;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SqlTab extends TextAreaTab {
 
   private SqlTextArea sqlTextArea;
   private Button executeButton;
+  private Button stopButton;
   private ComboBox<ConnectionInfo> connectionCombo;
+  private IntField maxRowsField;
+  private Label rowCountLabel;
+  private CheckBox parallelCheckBox;
+  private IntField concurrencyField;
+  private final Set<Statement> runningStatements = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
 
   private Logger log = LogManager.getLogger(SqlTab.class);
 
   private static final int PRINT_QUERY_LENGTH = 30;
+  private static final int FETCH_SIZE = 1000;
+  /** Fetched rows are pushed to the viewer when there are this many or when BATCH_INTERVAL_MILLIS has passed */
+  private static final int BATCH_ROWS = 1000;
+  private static final long BATCH_INTERVAL_MILLIS = 200;
 
   public SqlTab(String title, Ride gui) {
     super(gui, CodeType.SQL);
@@ -65,6 +92,26 @@ public class SqlTab extends TextAreaTab {
     );
     buttonPane.getChildren().add(connectionCombo);
 
+    stopButton = new Button("Stop");
+    stopButton.setDisable(true);
+    stopButton.setTooltip(new Tooltip("Cancel the running query"));
+    stopButton.setOnAction(this::cancelQuery);
+    buttonPane.getChildren().add(stopButton);
+
+    Label maxRowsLabel = new Label("Max rows");
+    maxRowsField = new IntField(0, Integer.MAX_VALUE, 0);
+    maxRowsField.setPrefColumnCount(7);
+    maxRowsField.setTooltip(new Tooltip("Maximum number of rows to fetch for each result, 0 means no limit"));
+    rowCountLabel = new Label();
+    parallelCheckBox = new CheckBox("Parallel");
+    parallelCheckBox.setTooltip(new Tooltip("Run independent select statements at the same time on separate connections"));
+    concurrencyField = new IntField(1, 100, 4);
+    concurrencyField.setPrefColumnCount(3);
+    concurrencyField.setTooltip(new Tooltip("Maximum number of statements to run at the same time in parallel mode,\n"
+        + "connections beyond the pool max size wait for a free one"));
+    concurrencyField.disableProperty().bind(parallelCheckBox.selectedProperty().not());
+    buttonPane.getChildren().addAll(maxRowsLabel, maxRowsField, parallelCheckBox, concurrencyField, rowCountLabel);
+
     sqlTextArea = new SqlTextArea(this);
     VirtualizedScrollPane<SqlTextArea> scrollPane = new VirtualizedScrollPane<>(sqlTextArea);
     pane.setCenter(scrollPane);
@@ -93,60 +140,55 @@ public class SqlTab extends TextAreaTab {
       consoleComponent.addOutput(getTitle(), "Query contains " + batchedQry.length + " statements", false, true);
     }
 
-    Task<Void> updateTask = new Task<Void>() {
+    final int maxRows = maxRowsField.getValue();
+    final ConnectionInfo ci = connectionCombo.getValue();
+    final boolean readOnly = SqlParser.isSelectsOnly(batchedQry);
+    boolean parallel = parallelCheckBox.isSelected() && batchedQry.length > 1;
+    if (parallel && !readOnly) {
+      consoleComponent.addWarning(getTitle(), "Parallel execution is only done when all statements are selects, "
+          + "running the statements one after the other", false);
+      parallel = false;
+    }
+    final boolean runParallel = parallel;
+    final int concurrency = Math.min(concurrencyField.getValue(), batchedQry.length);
+    cancelled = false;
+    stopButton.setDisable(false);
+    rowCountLabel.setText("");
+    AtomicLong fetchedRows = new AtomicLong();
+
+    Task<Integer> updateTask = new Task<Integer>() {
       @Override
-      protected Void call() throws Exception {
-        ConnectionInfo ci = connectionCombo.getValue();
-        try(Connection con = ci.connect()) {
-
-          AtomicInteger queryCount = new AtomicInteger(1);
-
-          try (Statement stm = con.createStatement()) {
-            for (String qry : batchedQry) {
-              boolean hasMoreResultSets = stm.execute(qry);
-
-              int capLen = Math.min(qry.length(), PRINT_QUERY_LENGTH);
-              String queryCapture = StringUtils.fixedLengthString(qry.substring(0, capLen).trim(), PRINT_QUERY_LENGTH);
-
-              while (hasMoreResultSets || stm.getUpdateCount() != -1) {
-                if (hasMoreResultSets) {
-                  try (ResultSet rs = stm.getResultSet()) {
-                    Table table = new Table(rs);
-                    Platform.runLater(() ->
-                        gui.getInoutComponent().showInViewer(table, SqlTab.this.getTitle() + " " + queryCount.getAndIncrement() + ".")
-                    );
-                  }
-                } else { // if ddl/dml/...
-                  int queryResult = stm.getUpdateCount();
-                  if (queryResult == -1) { // no more queries processed
-                    break;
-                  }
-
-                  Platform.runLater(() ->
-                      consoleComponent.addOutput("", new StringBuilder()
-                              .append(queryCount.getAndIncrement())
-                              .append(". [")
-                              .append(queryCapture)
-                              .append("...], Rows affected: ")
-                              .append(queryResult).toString()
-                          , false, true)
-                  );
-                }
-                hasMoreResultSets = stm.getMoreResults();
-              }
-            }
+      protected Integer call() throws Exception {
+        try {
+          if (runParallel) {
+            return executeParallel(ci, batchedQry, maxRows, concurrency, fetchedRows);
+          }
+          executeSequential(ci, batchedQry, maxRows, readOnly, fetchedRows);
+        } catch (SQLException e) {
+          if (!cancelled) {
+            throw e;
           }
+          log.info("Query was cancelled: {}", e.getMessage());
         }
-        return null;
+        return 0;
       }
     };
     updateTask.setOnSucceeded(e -> {
       setNormalCursor();
-      consoleComponent.addOutput("", "Success", true, false);
+      stopButton.setDisable(true);
+      int failures = updateTask.getValue();
+      if (cancelled) {
+        consoleComponent.addWarning("", "Query cancelled", true);
+      } else if (failures > 0) {
+        consoleComponent.addWarning("", failures + " of " + batchedQry.length + " statements failed", true);
+      } else {
+        consoleComponent.addOutput("", "Success", true, false);
+      }
     });
 
     updateTask.setOnFailed(e -> {
       setNormalCursor();
+      stopButton.setDisable(true);
       Throwable exc = updateTask.getException();
       consoleComponent.addWarning("","Failed to execute query", true);
       String clazz = exc.getClass().getName();
@@ -160,6 +202,298 @@ public class SqlTab extends TextAreaTab {
     scriptThread.start();
   }
 
+  /**
+   * Run the statements one after the other on the same connection (so that e.g. temp tables can be used).
+   *
+   * @param readOnly true if all statements are selects, see disableAutoCommit
+   */
+  private void executeSequential(ConnectionInfo ci, String[] batchedQry, int maxRows, boolean readOnly,
+                                 AtomicLong fetchedRows) throws SQLException {
+    final ConsoleComponent consoleComponent = getGui().getConsoleComponent();
+    try(Connection con = ci.connect()) {
+
+      AtomicInteger queryCount = new AtomicInteger(1);
+      boolean autoCommitDisabled = readOnly && disableAutoCommit(con);
+
+      try (Statement stm = createStatement(con, maxRows)) {
+        for (String qry : batchedQry) {
+          if (cancelled) {
+            break;
+          }
+          boolean hasMoreResultSets = execute(stm, qry);
+
+          String queryCapture = queryCapture(qry);
+
+          while (hasMoreResultSets || stm.getUpdateCount() != -1) {
+            if (hasMoreResultSets) {
+              try (ResultSet rs = stm.getResultSet()) {
+                int count = queryCount.getAndIncrement();
+                long start = System.currentTimeMillis();
+                long fetchStart = System.nanoTime();
+                int rows = streamResultSet(rs, SqlTab.this.getTitle() + " " + count + ".", maxRows, fetchedRows);
+                Metrics.timer("sql.fetch").recordSince(fetchStart);
+                long elapsed = System.currentTimeMillis() - start;
+                consoleComponent.getConsole().appendFx(count + ". [" + queryCapture + "...], "
+                    + rows + " rows fetched in " + elapsed + " ms");
+              }
+            } else { // if ddl/dml/...
+              int queryResult = stm.getUpdateCount();
+              if (queryResult == -1) { // no more queries processed
+                break;
+              }
+
+              Platform.runLater(() ->
+                  consoleComponent.addOutput("", new StringBuilder()
+                          .append(queryCount.getAndIncrement())
+                          .append(". [")
+                          .append(queryCapture)
+                          .append("...], Rows affected: ")
+                          .append(queryResult).toString()
+                      , false, true)
+              );
+            }
+            if (cancelled) {
+              break;
+            }
+            hasMoreResultSets = stm.getMoreResults();
+          }
+        }
+      } finally {
+        runningStatements.clear();
+        restoreAutoCommit(con, autoCommitDisabled);
+      }
+    }
+  }
+
+  /**
+   * Run each select on its own connection from the pool, at most concurrency at the same time.
+   * Each result is shown as soon as it starts to arrive and the statements do not wait for each other
+   * so a failing statement is reported without stopping the others.
+   *
+   * @return the number of statements that failed
+   */
+  private int executeParallel(ConnectionInfo ci, String[] batchedQry, int maxRows, int concurrency,
+                              AtomicLong fetchedRows) throws InterruptedException {
+    final ConsoleComponent consoleComponent = getGui().getConsoleComponent();
+    ClassLoader sessionClassLoader = Thread.currentThread().getContextClassLoader();
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+      Thread thread = new Thread(r, "ride-sql-" + threadCount.incrementAndGet());
+      thread.setContextClassLoader(sessionClassLoader);
+      thread.setDaemon(true);
+      return thread;
+    });
+    AtomicInteger failures = new AtomicInteger();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < batchedQry.length; i++) {
+        final int count = i + 1;
+        final String qry = batchedQry[i];
+        futures.add(executor.submit(() -> {
+          if (cancelled) {
+            return;
+          }
+          String queryCapture = queryCapture(qry);
+          long start = System.currentTimeMillis();
+          try (Connection con = ci.connect()) {
+            boolean autoCommitDisabled = disableAutoCommit(con);
+            try (Statement stm = createStatement(con, maxRows)) {
+              try (ResultSet rs = executeQuery(stm, qry)) {
+                long fetchStart = System.nanoTime();
+                int rows = streamResultSet(rs, SqlTab.this.getTitle() + " " + count + ".", maxRows, fetchedRows);
+                Metrics.timer("sql.fetch").recordSince(fetchStart);
+                long elapsed = System.currentTimeMillis() - start;
+                consoleComponent.getConsole().appendFx(count + ". [" + queryCapture + "...], "
+                    + rows + " rows fetched in " + elapsed + " ms");
+              } finally {
+                runningStatements.remove(stm);
+              }
+            } finally {
+              restoreAutoCommit(con, autoCommitDisabled);
+            }
+          } catch (SQLException | RuntimeException e) {
+            if (!cancelled) {
+              Metrics.counter("sql.failures").increment();
+              failures.incrementAndGet();
+              long elapsed = System.currentTimeMillis() - start;
+              log.warn("Statement {} failed", count, e);
+              consoleComponent.getConsole().appendWarningFx(count + ". [" + queryCapture + "...], failed after "
+                  + elapsed + " ms: " + e.getMessage() + "\n");
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          log.warn("Unexpected failure running statement", e.getCause());
+          failures.incrementAndGet();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      runningStatements.clear();
+    }
+    return failures.get();
+  }
+
+  /**
+   * Execute the statement, timing how long the database takes to respond.
+   */
+  private boolean execute(Statement stm, String qry) throws SQLException {
+    Metrics.counter("sql.statements").increment();
+    long start = System.nanoTime();
+    try {
+      return stm.execute(qry);
+    } catch (SQLException e) {
+      Metrics.counter("sql.failures").increment();
+      throw e;
+    } finally {
+      Metrics.timer("sql.execute").recordSince(start);
+    }
+  }
+
+  /**
+   * The fetch size is only a hint and some drivers ignore it in auto commit mode: PostgreSQL only uses a cursor
+   * (and reads the result FETCH_SIZE rows at a time) inside a transaction, otherwise the whole result is read into
+   * memory before the first row is returned. Selects are therefore run with auto commit off.
+   * Only call this for statements that are all selects as nothing else would be committed until the end.
+   *
+   * @return true if auto commit was turned off, i.e. restoreAutoCommit should turn it back on
+   */
+  private boolean disableAutoCommit(Connection con) throws SQLException {
+    if (con == null || !con.getAutoCommit()) {
+      return false;
+    }
+    con.setAutoCommit(false);
+    return true;
+  }
+
+  private void restoreAutoCommit(Connection con, boolean autoCommitDisabled) {
+    if (!autoCommitDisabled) {
+      return;
+    }
+    try {
+      con.commit();
+      con.setAutoCommit(true);
+    } catch (SQLException e) {
+      // the pool resets the auto commit when the connection is returned
+      log.warn("Failed to restore auto commit", e);
+    }
+  }
+
+  /**
+   * Execute the select, timing how long the database takes to respond. Failures are counted by the caller
+   * together with those of fetching the result.
+   */
+  private ResultSet executeQuery(Statement stm, String qry) throws SQLException {
+    Metrics.counter("sql.statements").increment();
+    long start = System.nanoTime();
+    try {
+      return stm.executeQuery(qry);
+    } finally {
+      Metrics.timer("sql.execute").recordSince(start);
+    }
+  }
+
+  private Statement createStatement(Connection con, int maxRows) throws SQLException {
+    if (con == null) {
+      throw new SQLException("Failed to connect to " + connectionCombo.getValue());
+    }
+    Statement stm = con.createStatement();
+    runningStatements.add(stm);
+    stm.setFetchSize(FETCH_SIZE);
+    if (maxRows > 0) {
+      stm.setMaxRows(maxRows);
+    }
+    return stm;
+  }
+
+  private String queryCapture(String qry) {
+    int capLen = Math.min(qry.length(), PRINT_QUERY_LENGTH);
+    return StringUtils.fixedLengthString(qry.substring(0, capLen).trim(), PRINT_QUERY_LENGTH);
+  }
+
+  /**
+   * Show the result set in the viewer right away and add the rows in batches as they are fetched.
+   *
+   * @return the number of rows fetched
+   */
+  private int streamResultSet(ResultSet rs, String title, int maxRows, AtomicLong fetchedRows) throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    List<String> headerList = new ArrayList<>(columnCount);
+    for (int i = 1; i <= columnCount; i++) {
+      headerList.add(metaData.getColumnLabel(i));
+    }
+    StreamingTableModel model = new StreamingTableModel(headerList);
+    gui.getInoutComponent().showInViewer(model, title);
+
+    List<Object[]> batch = new ArrayList<>();
+    int rowCount = 0;
+    long lastPush = System.currentTimeMillis();
+    while (!cancelled && (maxRows <= 0 || rowCount < maxRows) && rs.next()) {
+      Object[] row = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        row[i] = columnValue(rs.getObject(i + 1));
+      }
+      batch.add(row);
+      rowCount++;
+      long now = System.currentTimeMillis();
+      if (batch.size() >= BATCH_ROWS || now - lastPush >= BATCH_INTERVAL_MILLIS) {
+        pushRows(model, batch, fetchedRows.addAndGet(batch.size()));
+        batch = new ArrayList<>();
+        lastPush = now;
+      }
+    }
+    pushRows(model, batch, fetchedRows.addAndGet(batch.size()));
+    Metrics.counter("sql.rows").add(rowCount);
+    return rowCount;
+  }
+
+  /**
+   * Lobs are only valid while the result set is open so they are read right away.
+   */
+  private Object columnValue(Object value) throws SQLException {
+    if (value instanceof Clob) {
+      Clob clob = (Clob) value;
+      return clob.getSubString(1, (int) clob.length());
+    }
+    if (value instanceof Blob) {
+      return "<blob, " + ((Blob) value).length() + " bytes>";
+    }
+    return value;
+  }
+
+  private void pushRows(StreamingTableModel model, List<Object[]> batch, long fetched) {
+    Platform.runLater(() -> {
+      model.addRows(batch);
+      rowCountLabel.setText(fetched + " rows");
+    });
+  }
+
+  private void cancelQuery(ActionEvent actionEvent) {
+    cancelled = true;
+    stopButton.setDisable(true);
+    List<Statement> statements = new ArrayList<>(runningStatements);
+    if (statements.isEmpty()) {
+      return;
+    }
+    // cancel might block until the database responds so do it off the fx thread
+    Thread cancelThread = new Thread(() -> {
+      for (Statement stm : statements) {
+        try {
+          stm.cancel();
+        } catch (SQLException e) {
+          log.warn("Failed to cancel query", e);
+        }
+      }
+    });
+    cancelThread.setDaemon(true);
+    cancelThread.start();
+  }
+
   @Override
   public File getFile() {
     return sqlTextArea.getFile();
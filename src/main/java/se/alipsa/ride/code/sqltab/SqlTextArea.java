@@ -3,12 +3,11 @@ package se.alipsa.ride.code.sqltab;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.code.CodeTextArea;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
 
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -86,18 +85,27 @@ public class SqlTextArea extends CodeTextArea {
   private static final String KEYWORD_PATTERN = "(?i)\\b(" + String.join("|", KEYWORDS) + ")\\b";
   private static final String PAREN_PATTERN = "\\(|\\)";
   private static final String SEMICOLON_PATTERN = "\\;";
-  //private static final String STRING_PATTERN = "\"([^\"\\\\]|\\\\.)*\"" + "|" + "\'([^\'\\\\]|\\\\.)*\'";
-  private static final String STRING_PATTERN = "\"\"|''|\"[^\"]+\"|'[^']+'";
-  private static final String COMMENT_PATTERN = "--[^\n]*" + "|" + "/\\*(.|\\R)*?\\*/";
+  private static final String COMMENT_PATTERN = "--.*";
 
   private static final Pattern PATTERN = Pattern.compile(
       "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
           + "|(?<PAREN>" + PAREN_PATTERN + ")"
           + "|(?<SEMICOLON>" + SEMICOLON_PATTERN + ")"
-          + "|(?<STRING>" + STRING_PATTERN + ")"
+          + "|(?<DQSTRING>\")"
+          + "|(?<SQSTRING>')"
           + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
+          + "|(?<BLOCKCOMMENT>/\\*)"
   );
 
+  private static final LineLexer LEXER = new RegexLineLexer(PATTERN,
+      "KEYWORD", "keyword",
+      "PAREN", "paren",
+      "SEMICOLON", "semicolon",
+      "COMMENT", "comment")
+      .addBlock("DQSTRING", "[^\"]*+\"", "string")
+      .addBlock("SQSTRING", "[^']*+'", "string")
+      .addBlock("BLOCKCOMMENT", ".*?\\*/", "comment");
+
   private ContextMenu suggestionsPopup = new ContextMenu();
 
   public SqlTextArea(SqlTab parent) {
@@ -135,25 +143,7 @@ public class SqlTextArea extends CodeTextArea {
 
 
   @Override
-  protected StyleSpans<Collection<String>> computeHighlighting(String text) {
-    Matcher matcher = PATTERN.matcher(text);
-    int lastKwEnd = 0;
-    StyleSpansBuilder<Collection<String>> spansBuilder
-        = new StyleSpansBuilder<>();
-    while (matcher.find()) {
-      String styleClass =
-          matcher.group("KEYWORD") != null ? "keyword" :
-              matcher.group("PAREN") != null ? "paren" :
-                  matcher.group("SEMICOLON") != null ? "semicolon" :
-                      matcher.group("STRING") != null ? "string" :
-                          matcher.group("COMMENT") != null ? "comment" :
-                              null; /* never happens */
-      assert styleClass != null;
-      spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-      spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-      lastKwEnd = matcher.end();
-    }
-    spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-    return spansBuilder.create();
+  protected LineLexer getLexer() {
+    return LEXER;
   }
 }
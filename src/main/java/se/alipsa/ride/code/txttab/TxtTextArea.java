@@ -2,26 +2,28 @@ package se.alipsa.ride.code.txttab;
 
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.code.CodeTextArea;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
 import se.alipsa.ride.code.TabTextArea;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TxtTextArea extends CodeTextArea implements TabTextArea {
 
-  private static final String STRING_PATTERN = "\"\"|''|\"[^\"]+\"|'[^']+'";
-  private static final String COMMENT_PATTERN = "#[^\n]*" + "|" + "::[^\n]*";
+  // strings are kept within one line, an apostrophe in plain text should not turn the rest of the text into a string
+  private static final String STRING_PATTERN = "\"[^\"]*\"|'[^']*'";
+  private static final String COMMENT_PATTERN = "#.*" + "|" + "::.*";
 
   private static final Pattern PATTERN = Pattern.compile(
       "(?<STRING>" + STRING_PATTERN + ")"
       + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
   );
 
+  private static final LineLexer LEXER = new RegexLineLexer(PATTERN,
+      "STRING", "string",
+      "COMMENT", "comment");
+
   public TxtTextArea(TxtTab parent) {
 
     plainTextChanges().subscribe(ptc -> {
@@ -38,22 +40,7 @@ public class TxtTextArea extends CodeTextArea implements TabTextArea {
   }
 
   @Override
-  protected StyleSpans<Collection<String>> computeHighlighting(String text) {
-    Matcher matcher = PATTERN.matcher(text);
-    int lastKwEnd = 0;
-    StyleSpansBuilder<Collection<String>> spansBuilder
-        = new StyleSpansBuilder<>();
-    while (matcher.find()) {
-      String styleClass =
-          matcher.group("STRING") != null ? "string" :
-              matcher.group("COMMENT") != null ? "comment" :
-                  null; /* never happens */
-      assert styleClass != null;
-      spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-      spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-      lastKwEnd = matcher.end();
-    }
-    spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-    return spansBuilder.create();
+  protected LineLexer getLexer() {
+    return LEXER;
   }
 }
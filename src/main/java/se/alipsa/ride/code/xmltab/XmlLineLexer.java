@@ -0,0 +1,91 @@
+package se.alipsa.ride.code.xmltab;
+
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import se.alipsa.ride.code.LineLexer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lexes xml one line at a time, comments and the attributes of an element can span several lines.
+ */
+class XmlLineLexer implements LineLexer {
+
+  static final int IN_COMMENT = 1;
+  static final int IN_TAG = 2;
+
+  private static final Pattern TAG_START = Pattern.compile("(?<COMMENT><!--)|(?<OPEN></?\\h*)(?<NAME>[\\w.:-]+)");
+
+  private static final Pattern ATTRIBUTES = Pattern.compile("(\\w+\\h*)(=)(\\h*\"[^\"]+\")");
+
+  private static final int GROUP_ATTRIBUTE_NAME = 1;
+  private static final int GROUP_EQUAL_SYMBOL = 2;
+  private static final int GROUP_ATTRIBUTE_VALUE = 3;
+
+  private static final Collection<String> TAGMARK = Collections.singleton("xml_tagmark");
+  private static final Collection<String> ANYTAG = Collections.singleton("xml_anytag");
+  private static final Collection<String> ATTRIBUTE = Collections.singleton("xml_attribute");
+  private static final Collection<String> AVALUE = Collections.singleton("xml_avalue");
+  private static final Collection<String> COMMENT = Collections.singleton("xml_comment");
+
+  @Override
+  public int lex(String line, int state, StyleSpansBuilder<Collection<String>> spansBuilder) {
+    spansBuilder.add(Collections.emptyList(), 0);
+    int pos = 0;
+    Matcher matcher = TAG_START.matcher(line);
+    while (pos < line.length()) {
+      if (state == IN_COMMENT) {
+        int end = line.indexOf("-->", pos);
+        if (end == -1) {
+          spansBuilder.add(COMMENT, line.length() - pos);
+          return IN_COMMENT;
+        }
+        spansBuilder.add(COMMENT, end + 3 - pos);
+        pos = end + 3;
+        state = DEFAULT_STATE;
+      } else if (state == IN_TAG) {
+        int end = line.indexOf('>', pos);
+        if (end == -1) {
+          addAttributes(line.substring(pos), spansBuilder);
+          return IN_TAG;
+        }
+        int closeStart = end > pos && line.charAt(end - 1) == '/' ? end - 1 : end;
+        addAttributes(line.substring(pos, closeStart), spansBuilder);
+        spansBuilder.add(TAGMARK, end + 1 - closeStart);
+        pos = end + 1;
+        state = DEFAULT_STATE;
+      } else {
+        if (!matcher.find(pos)) {
+          spansBuilder.add(Collections.emptyList(), line.length() - pos);
+          return DEFAULT_STATE;
+        }
+        spansBuilder.add(Collections.emptyList(), matcher.start() - pos);
+        if (matcher.group("COMMENT") != null) {
+          spansBuilder.add(COMMENT, matcher.end() - matcher.start());
+          state = IN_COMMENT;
+        } else {
+          spansBuilder.add(TAGMARK, matcher.end("OPEN") - matcher.start("OPEN"));
+          spansBuilder.add(ANYTAG, matcher.end("NAME") - matcher.start("NAME"));
+          state = IN_TAG;
+        }
+        pos = matcher.end();
+      }
+    }
+    return state;
+  }
+
+  private void addAttributes(String attributesText, StyleSpansBuilder<Collection<String>> spansBuilder) {
+    int lastKwEnd = 0;
+    Matcher amatcher = ATTRIBUTES.matcher(attributesText);
+    while (amatcher.find()) {
+      spansBuilder.add(Collections.emptyList(), amatcher.start() - lastKwEnd);
+      spansBuilder.add(ATTRIBUTE, amatcher.end(GROUP_ATTRIBUTE_NAME) - amatcher.start(GROUP_ATTRIBUTE_NAME));
+      spansBuilder.add(TAGMARK, amatcher.end(GROUP_EQUAL_SYMBOL) - amatcher.end(GROUP_ATTRIBUTE_NAME));
+      spansBuilder.add(AVALUE, amatcher.end(GROUP_ATTRIBUTE_VALUE) - amatcher.end(GROUP_EQUAL_SYMBOL));
+      lastKwEnd = amatcher.end();
+    }
+    spansBuilder.add(Collections.emptyList(), attributesText.length() - lastKwEnd);
+  }
+}
@@ -2,7 +2,6 @@ package se.alipsa.ride.code.xmltab;
 
 import static se.alipsa.ride.menu.GlobalOptions.USE_MAVEN_CLASSLOADER;
 
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
@@ -133,9 +132,7 @@ public class XmlTab extends TextAreaTab {
       ExceptionAlert.showAlert("Maven Build Failed: " + ex.getMessage(), ex);
     });
 
-    Thread mvnThread = new Thread(task);
-    mvnThread.setDaemon(false);
-    gui.getConsoleComponent().startThreadWhenOthersAreFinished(mvnThread, "runMaven");
+    gui.getConsoleComponent().startTaskWhenOthersAreFinished(task, "runMaven");
   }
 
   private class ConsoleOutputHandler implements InvocationOutputHandler {
@@ -144,14 +141,12 @@ public class XmlTab extends TextAreaTab {
     @Override
     public void consumeLine(String line) {
       //System.out.println(line);
-      Platform.runLater(() -> {
-        if (line.startsWith("[ERROR]") || line.startsWith("[WARN")) {
-          console.appendWarning(line);
-        } else {
-          console.append(line);
-        }
-        consoleComponent.scrollToEnd();
-      });
+      // the console buffers and scrolls to the end once per frame so no need to do it for each line
+      if (line.startsWith("[ERROR]") || line.startsWith("[WARN")) {
+        console.appendWarningFx(line + "\n");
+      } else {
+        console.appendFx(line);
+      }
     }
   }
 
@@ -161,10 +156,7 @@ public class XmlTab extends TextAreaTab {
     @Override
     public void consumeLine(String line) {
       //System.err.println(line);
-      Platform.runLater(() -> {
-        console.appendWarning(line);
-        consoleComponent.scrollToEnd();
-      });
+      console.appendWarningFx(line + "\n");
     }
   }
 
@@ -5,14 +5,30 @@ import java.io.Writer;
 public class AppenderPrintWriter extends Writer {
 
     private ConsoleTextArea console;
+    private final LinePrefixer prefixer;
 
     public AppenderPrintWriter(ConsoleTextArea console) {
+        this(console, "");
+    }
+
+    /**
+     * @param prefix put in front of each line written, e.g. the name of the session the output comes from
+     */
+    public AppenderPrintWriter(ConsoleTextArea console, String prefix) {
         this.console = console;
+        this.prefixer = new LinePrefixer(prefix);
     }
 
+    /**
+     * Output is a natural point for a running script to notice that it has been interrupted, the exception
+     * propagates out of the script engine.
+     */
     @Override
     public void write(char[] cbuf, int off, int len) {
-        console.appendFx(new String(cbuf, off, len));
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ScriptInterruptedException("Script interrupted");
+        }
+        console.appendFx(prefixer.apply(new String(cbuf, off, len)));
     }
 
     @Override
@@ -4,18 +4,22 @@ import static se.alipsa.ride.Constants.ICON_HEIGHT;
 import static se.alipsa.ride.Constants.ICON_WIDTH;
 import static se.alipsa.ride.Constants.INDENT;
 import static se.alipsa.ride.menu.GlobalOptions.ADD_BUILDDIR_TO_CLASSPATH;
+import static se.alipsa.ride.menu.GlobalOptions.PROFILER_SAMPLE_INTERVAL;
+import static se.alipsa.ride.menu.GlobalOptions.SNAPSHOT_COMPRESSION;
 import static se.alipsa.ride.menu.GlobalOptions.USE_MAVEN_CLASSLOADER;
+import static se.alipsa.ride.menu.GlobalOptions.WARM_STANDBY_PACKAGES;
+import static se.alipsa.ride.menu.GlobalOptions.WARM_STANDBY_SESSION;
 import static se.alipsa.ride.utils.StringUtils.format;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Control;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
@@ -31,15 +35,9 @@ import org.apache.logging.log4j.Logger;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.renjin.RenjinVersion;
-import org.renjin.aether.AetherFactory;
-import org.renjin.aether.AetherPackageLoader;
-import org.renjin.aether.ConsoleRepositoryListener;
-import org.renjin.aether.ConsoleTransferListener;
 import org.renjin.eval.Context;
 import org.renjin.eval.EvalException;
 import org.renjin.eval.Session;
-import org.renjin.eval.SessionBuilder;
-import org.renjin.primitives.packaging.ClasspathPackageLoader;
 import org.renjin.primitives.packaging.PackageLoader;
 import org.renjin.script.RenjinScriptEngine;
 import org.renjin.script.RenjinScriptEngineFactory;
@@ -47,60 +45,96 @@ import org.renjin.sexp.*;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.TaskListener;
 import se.alipsa.ride.code.rtab.RTab;
+import se.alipsa.ride.console.profiler.RCallTracer;
+import se.alipsa.ride.console.profiler.ScriptProfiler;
+import se.alipsa.ride.console.workspace.WorkspaceSnapshot;
+import se.alipsa.ride.environment.ContextNames;
 import se.alipsa.ride.environment.EnvironmentComponent;
+import se.alipsa.ride.environment.VariableSummary;
+import se.alipsa.ride.environment.connections.ConnectionInfo;
+import se.alipsa.ride.inout.FileTree;
+import se.alipsa.ride.metrics.Metrics;
 import se.alipsa.ride.model.Repo;
 import se.alipsa.ride.utils.Alerts;
 import se.alipsa.ride.utils.ExceptionAlert;
 import se.alipsa.ride.utils.FileUtils;
 import se.alipsa.ride.utils.maven.DependenciesResolveException;
-import se.alipsa.ride.utils.maven.MavenUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.script.ScriptException;
 
 public class ConsoleComponent extends BorderPane {
 
-  public static final Repo RENJIN_REPO = asRepo(AetherFactory.renjinRepo());
-  public static final Repo MVN_CENTRAL_REPO = asRepo(AetherFactory.mavenCentral());
+  public static final Repo RENJIN_REPO = SessionFactory.RENJIN_REPO;
+  public static final Repo MVN_CENTRAL_REPO = SessionFactory.MVN_CENTRAL_REPO;
   public static final String REMOTE_REPOSITORIES_PREF = "ConsoleComponent.RemoteRepositories";
   public static final String PACKAGE_LOADER_PREF = "ConsoleComponent.PackageLoader";
+  /** The workspace snapshot saved on exit, in the project dir (like the .RData of R) */
+  public static final String EXIT_SNAPSHOT_NAME = ".workspace" + WorkspaceSnapshot.FILE_EXTENSION;
   private static final Image IMG_RUNNING = new Image(Objects.requireNonNull(FileUtils
       .getResourceUrl("image/running.png")).toExternalForm(), ICON_WIDTH, ICON_HEIGHT, true, true);
   private static final Image IMG_WAITING = new Image(Objects.requireNonNull(FileUtils
       .getResourceUrl("image/waiting.png")).toExternalForm(), ICON_WIDTH, ICON_HEIGHT, true, true);
   private static final String DOUBLE_INDENT = INDENT + INDENT;
+  /** how long an interrupted script is given to stop before the user is asked about stopping it by force */
+  private static final long INTERRUPT_DEADLINE_MILLIS = 5000;
   private static final Logger log = LogManager.getLogger(ConsoleComponent.class);
-  private RenjinScriptEngine engine;
-  private Session session;
+  private volatile RenjinScriptEngine engine;
+  private volatile Session session;
   private final ImageView runningView;
   private final Button statusButton;
   private final ConsoleTextArea console;
   private final Ride gui;
   private List<RemoteRepository> remoteRepositories;
   private PackageLoader packageLoader;
-  private Thread runningThread;
-  private File workingDir;
-  private Map<Thread, String> threadMap = new HashMap<>();
+  private final ScriptQueue scriptQueue = new ScriptQueue();
+  /** created when a tab bound to the session first runs a script, discarded when R is restarted */
+  private final Map<String, ScriptSession> parallelSessions = new ConcurrentHashMap<>();
+  private final Map<String, ScriptQueue> parallelQueues = new ConcurrentHashMap<>();
+  /** guards replacing the main session against publishing a parallel session created from the old one */
+  private final Object sessionLock = new Object();
+  /** incremented (under sessionLock) every time the parallel sessions are discarded */
+  private long sessionGeneration;
+  /** used by the main and the parallel sessions, each session gets its own entries (see ParsedScriptCache) */
+  private final ParsedScriptCache parsedScripts = new ParsedScriptCache();
+  private volatile File workingDir;
+  private final AtomicReference<RenjinSession> standbySession = new AtomicReference<>();
+  private final ExecutorService standbyExecutor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ride-standby-session");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   public ConsoleComponent(Ride gui) {
     this.gui = gui;
     console = new ConsoleTextArea(gui);
     console.setEditable(false);
+    Metrics.gauge("script.parseCache.hits", parsedScripts::getHits);
+    Metrics.gauge("script.parseCache.misses", parsedScripts::getMisses);
+    Metrics.gauge("script.parseCache.size", parsedScripts::size);
 
     Button clearButton = new Button("Clear");
     clearButton.setOnAction(e -> {
       console.clear();
       console.appendText(">");
     });
+    Button historyButton = new Button("History");
+    historyButton.setTooltip(new Tooltip("Show output that no longer fits in the console"));
+    historyButton.setOnAction(e -> new ConsoleHistoryDialog(gui, console.getConsoleLog()).show());
     FlowPane topPane = new FlowPane();
     topPane.setPadding(new Insets(1, 10, 1, 5));
     topPane.setHgap(10);
@@ -111,7 +145,7 @@ public class ConsoleComponent extends BorderPane {
     statusButton.setGraphic(runningView);
     waiting();
 
-    topPane.getChildren().addAll(statusButton, clearButton);
+    topPane.getChildren().addAll(statusButton, clearButton, historyButton);
     setTop(topPane);
 
     VirtualizedScrollPane<ConsoleTextArea> vPane = new VirtualizedScrollPane<>(console);
@@ -120,103 +154,27 @@ public class ConsoleComponent extends BorderPane {
     setCenter(vPane);
   }
 
-  private static Repo asRepo(RemoteRepository repo) {
-    return new Repo(repo.getId(), repo.getContentType(), repo.getUrl());
-  }
-
   public void initRenjin(ClassLoader parentClassLoader) {
-    Platform.runLater(() -> initRenjin(getStoredRemoteRepositories(), parentClassLoader));
+    if (Platform.isFxApplicationThread()) {
+      // start right away, at startup this allows the session to be created while the rest of the gui is built
+      initRenjin(getStoredRemoteRepositories(), parentClassLoader);
+    } else {
+      Platform.runLater(() -> initRenjin(getStoredRemoteRepositories(), parentClassLoader));
+    }
   }
 
 
   private void initRenjin(List<Repo> repos, ClassLoader parentClassLoader, boolean... skipMavenClassloading) {
-    AtomicReference<String> version = new AtomicReference<>("unknown");
+    // whatever the standby session was created from is about to be replaced
+    standbySession.set(null);
+    long start = System.nanoTime();
 
     Task<Void> initTask = new Task<Void>() {
 
       @Override
       protected Void call() throws Exception {
         try {
-          remoteRepositories = new ArrayList<>();
-          remoteRepositories.addAll(asRemoteRepositories(repos));
-
-          if (gui.getInoutComponent() == null) {
-            log.warn("InoutComponent is null, timing is off");
-            throw new RuntimeException("intiRenjin called too soon, InoutComponent is null, timing is off");
-          }
-
-          log.info("USE_MAVEN_CLASSLOADER pref is set to {}", gui.getPrefs().getBoolean(USE_MAVEN_CLASSLOADER, false));
-
-          ClassLoader cl = parentClassLoader;
-
-          boolean useMavenClassloader = skipMavenClassloading.length > 0
-              ? !skipMavenClassloading[0]
-              : gui.getPrefs().getBoolean(USE_MAVEN_CLASSLOADER, false);
-
-          if (gui.getInoutComponent() != null && gui.getInoutComponent().getRoot() != null && useMavenClassloader ) {
-            File pomFile = new File(gui.getInoutComponent().getRootDir(), "pom.xml");
-            if (pomFile.exists()) {
-              log.info("Parsing pom to use maven classloader");
-              console.appendFx("* Parsing pom to create maven classloader...");
-              try {
-                cl = MavenUtils.getMavenDependenciesClassloader(pomFile, parentClassLoader);
-              } catch (Exception e) {
-                if (e instanceof DependenciesResolveException) {
-                  Platform.runLater(() -> ExceptionAlert.showAlert("Failed to resolve maven dependency: " + e.getMessage(), e));
-                  log.info("Initializing renjing without maven...");
-                } else {
-                  throw e;
-                }
-              }
-            } else {
-              log.info("Use maven class loader is set but pomfile {} does not exist", pomFile);
-            }
-          } else {
-            assert gui.getInoutComponent() != null;
-            File wd = gui.getInoutComponent().getRootDir();
-            if (gui.getPrefs().getBoolean(ADD_BUILDDIR_TO_CLASSPATH, true) && wd != null && wd.exists()) {
-              File classesDir = new File(wd, "target/classes");
-              List<URL> urlList = new ArrayList<>();
-              try {
-                if (classesDir.exists()) {
-                  urlList.add(classesDir.toURI().toURL());
-                }
-                File testClasses = new File(wd, "target/test-classes");
-                if (testClasses.exists()) {
-                  urlList.add(testClasses.toURI().toURL());
-                }
-              } catch (MalformedURLException e) {
-                log.warn("Failed to find classes dir", e);
-              }
-              if (urlList.size() > 0) {
-                log.info("Adding compile dirs to classloader: {}", urlList);
-                cl = new URLClassLoader(urlList.toArray(new URL[0]), cl);
-              }
-            }
-          }
-
-          PackageLoader loader = getPackageLoader(cl);
-
-          if (loader instanceof AetherPackageLoader) {
-            cl = ((AetherPackageLoader) loader).getClassLoader();
-          }
-
-          SessionBuilder builder = new SessionBuilder();
-          session = builder
-                  .withDefaultPackages()
-                  .setPackageLoader(loader) // allows library to work without having to include in the pom
-                  .setClassLoader(cl) //allows imports in r code to work
-                  .build();
-
-          if (workingDir != null && workingDir.exists()) {
-            session.setWorkingDirectory(workingDir);
-          }
-          // TODO: after implementing a javafx grafics device do session.getOptions().set("device", theGraphicsDevice);
-          //GrDevice grDevice = new GrDevice();
-          //session.getOptions().set("device", grDevice);
-
-          RenjinScriptEngineFactory factory = new RenjinScriptEngineFactory();
-          engine = factory.getScriptEngine(session);
+          activate(createSession(repos, parentClassLoader, false, skipMavenClassloading));
           return null;
         } catch (RuntimeException e){
           // RuntimeExceptions (such as EvalExceptions is not caught so need to wrap all in an exception
@@ -227,12 +185,9 @@ public class ConsoleComponent extends BorderPane {
       }
     };
     initTask.setOnSucceeded(e -> {
-      version.set(RenjinVersion.getVersionName());
-      String greeting = "* Renjin " + version + " *";
-      String surround = getStars(greeting.length());
-      console.append(surround);
-      console.append(greeting);
-      console.append(surround + "\n>", true);
+      gui.getStartupProfile().record("R session", start);
+      printGreeting();
+      prepareStandbySession(repos, parentClassLoader, skipMavenClassloading);
     });
     initTask.setOnFailed(e -> {
       Throwable throwable = initTask.getException();
@@ -249,24 +204,164 @@ public class ConsoleComponent extends BorderPane {
     thread.start();
   }
 
-  private PackageLoader getPackageLoader(ClassLoader parentClassLoader) {
-    /*
-    We always want to reinitialize the package loader in case a remote repo was added
-    not sure why i cached this in the first place, so will keep it here for a while in case something unwanted happens...
-    if (packageLoader != null) {
-      return packageLoader;
+  private void printGreeting() {
+    String greeting = "* Renjin " + RenjinVersion.getVersionName() + " *";
+    String surround = getStars(greeting.length());
+    console.append(surround);
+    console.append(greeting);
+    console.append(surround + "\n>", true);
+  }
+
+  /**
+   * Creates a new session and engine, this takes a while (the pom dependencies are resolved and the default
+   * packages are loaded) so should not be called from the fx thread.
+   *
+   * @param standby true if the session is created in the background to be swapped in later, progress is then
+   *                only logged and a failure to resolve the maven dependencies fails the whole session
+   */
+  private RenjinSession createSession(List<Repo> repos, ClassLoader parentClassLoader, boolean standby,
+                                      boolean... skipMavenClassloading) throws Exception {
+    List<RemoteRepository> repositories = new ArrayList<>(SessionFactory.asRemoteRepositories(repos));
+    Consumer<String> progress = standby ? log::info : console::appendFx;
+
+    log.info("USE_MAVEN_CLASSLOADER pref is set to {}", gui.getPrefs().getBoolean(USE_MAVEN_CLASSLOADER, false));
+
+    ClassLoader cl;
+    try {
+      cl = SessionFactory.projectClassLoader(gui.getPrefs(), getProjectDir(),
+          useMavenClassloader(skipMavenClassloading), parentClassLoader, progress);
+    } catch (DependenciesResolveException e) {
+      if (standby) {
+        throw e;
+      }
+      Platform.runLater(() -> ExceptionAlert.showAlert("Failed to resolve maven dependency: " + e.getMessage(), e));
+      log.info("Initializing renjing without maven...");
+      cl = parentClassLoader;
     }
-    */
-    String pkgLoaderName;
-    String overridePackageLoader = System.getProperty(PACKAGE_LOADER_PREF);
-    if (overridePackageLoader != null) {
-      pkgLoaderName = overridePackageLoader;
-    } else {
-      pkgLoaderName = gui.getPrefs().get(PACKAGE_LOADER_PREF, AetherPackageLoader.class.getSimpleName());
+
+    PackageLoader loader = SessionFactory.packageLoader(cl, getPackageLoaderName(), repositories);
+    Session newSession = SessionFactory.newSession(loader, SessionFactory.sessionClassLoader(loader, cl));
+    // TODO: after implementing a javafx grafics device do session.getOptions().set("device", theGraphicsDevice);
+    //GrDevice grDevice = new GrDevice();
+    //session.getOptions().set("device", grDevice);
+
+    RenjinScriptEngineFactory factory = new RenjinScriptEngineFactory();
+    RenjinScriptEngine newEngine = factory.getScriptEngine(newSession);
+    return new RenjinSession(newSession, newEngine, loader, repositories);
+  }
+
+  /**
+   * Make the session the one used for everything from now on.
+   */
+  private void activate(RenjinSession renjinSession) throws FileSystemException {
+    synchronized (sessionLock) {
+      remoteRepositories = renjinSession.remoteRepositories;
+      setPackageLoader(renjinSession.packageLoader);
+      session = renjinSession.session;
+      engine = renjinSession.engine;
+      // they use the package loader and class loader of the old session, new ones are created when needed
+      discardParallelSessions();
+    }
+    // at startup the working dir might be set concurrently, see setWorkingDir
+    File dir = workingDir;
+    if (dir != null && dir.exists()) {
+      session.setWorkingDirectory(dir);
+    }
+    // drivers loaded from the previous session classloader must not be reused
+    ConnectionInfo.clearDriverCache();
+  }
+
+  /**
+   * Create a spare session in the background (if enabled) so that the next restart of R can just swap it in
+   * instead of waiting for a new session to be created.
+   */
+  public void prepareStandbySession() {
+    prepareStandbySession(getStoredRemoteRepositories(), gui.getClass().getClassLoader());
+  }
+
+  private void prepareStandbySession(List<Repo> repos, ClassLoader parentClassLoader, boolean... skipMavenClassloading) {
+    if (!gui.getPrefs().getBoolean(WARM_STANDBY_SESSION, false)) {
+      standbySession.set(null);
+      return;
+    }
+    List<Object> setup = sessionSetup(repos, parentClassLoader, skipMavenClassloading);
+    standbyExecutor.execute(() -> {
+      try {
+        long start = System.currentTimeMillis();
+        RenjinSession standby = createSession(repos, parentClassLoader, true, skipMavenClassloading);
+        standby.setup = setup;
+        warmUp(standby);
+        standbySession.set(standby);
+        log.info("Standby R session created in {} ms", System.currentTimeMillis() - start);
+      } catch (Exception e) {
+        log.warn("Failed to create a standby R session, the next restart will create a new one", e);
+      }
+    });
+  }
+
+  /**
+   * Run something trivial to initialize the engine and attach the packages to preload so they are ready when
+   * the session is swapped in.
+   */
+  private void warmUp(RenjinSession standby) throws ScriptException {
+    standby.engine.eval("invisible(NULL)");
+    String packages = gui.getPrefs().get(WARM_STANDBY_PACKAGES, "");
+    for (String pkg : packages.split(",")) {
+      pkg = pkg.trim();
+      if (pkg.isEmpty()) {
+        continue;
+      }
+      try {
+        // the name is passed as a string, not spliced into code, since it can be e.g. groupId:artifactId
+        standby.session.getTopLevelContext().evaluate(
+            FunctionCall.newCall(Symbol.get("library"), StringVector.valueOf(pkg)));
+      } catch (EvalException e) {
+        log.warn("Failed to preload {} in the standby R session", pkg, e);
+      }
+    }
+  }
+
+  /**
+   * Everything that a session depends on, a standby session created with a different setup cannot be used.
+   */
+  private List<Object> sessionSetup(List<Repo> repos, ClassLoader parentClassLoader, boolean... skipMavenClassloading) {
+    List<Object> setup = new ArrayList<>();
+    setup.add(new ArrayList<>(repos));
+    setup.add(parentClassLoader);
+    setup.add(getPackageLoaderName());
+    setup.add(useMavenClassloader(skipMavenClassloading));
+    setup.add(gui.getPrefs().getBoolean(ADD_BUILDDIR_TO_CLASSPATH, true));
+    setup.add(gui.getPrefs().get(WARM_STANDBY_PACKAGES, ""));
+    File rootDir = getProjectDir();
+    setup.add(rootDir);
+    if (rootDir != null) {
+      setup.add(new File(rootDir, "pom.xml").lastModified());
+      setup.add(new File(rootDir, "target/classes").exists());
+      setup.add(new File(rootDir, "target/test-classes").exists());
     }
-    PackageLoader loader = packageLoaderForName(parentClassLoader, pkgLoaderName);
-    setPackageLoader(loader);
-    return loader;
+    return setup;
+  }
+
+  /**
+   * The root dir of the file tree. The session is created while the rest of the gui is being built at startup
+   * so the file tree might not exist yet, it will be created with the working dir from the prefs.
+   */
+  private File getProjectDir() {
+    if (gui.getInoutComponent() != null) {
+      return gui.getInoutComponent().getRootDir();
+    }
+    File dir = new File(gui.getPrefs().get(FileTree.WORKING_DIR_PREF, "."));
+    return dir.exists() ? dir : null;
+  }
+
+  private boolean useMavenClassloader(boolean... skipMavenClassloading) {
+    return skipMavenClassloading.length > 0
+        ? !skipMavenClassloading[0]
+        : gui.getPrefs().getBoolean(USE_MAVEN_CLASSLOADER, false);
+  }
+
+  private String getPackageLoaderName() {
+    return SessionFactory.packageLoaderName(gui.getPrefs());
   }
 
   public PackageLoader getPackageLoader() {
@@ -280,79 +375,19 @@ public class ConsoleComponent extends BorderPane {
   }
 
   public PackageLoader packageLoaderForName(ClassLoader parentClassLoader, String pkgLoaderName) {
-    if (ClasspathPackageLoader.class.getSimpleName().equals(pkgLoaderName)) {
-      return new ClasspathPackageLoader(parentClassLoader);
-    }
-    //log.info("parentClassLoader = {}, remoteRepositories = {}", parentClassLoader, remoteRepositories);
-    AetherPackageLoader loader = new AetherPackageLoader(parentClassLoader, remoteRepositories);
-    /*
-    System.out.println(
-        log.getName()
-        + "\ntraceEnabled = " + log.isTraceEnabled()
-        + "\ndebugEnabled = " + log.isDebugEnabled()
-        + "\ninfoEnabled  = " + log.isInfoEnabled()
-        + "\nwarnEnabled  = " + log.isWarnEnabled()
-        + "\nerrorEnabled = " + log.isErrorEnabled()
-    );
-     */
-    if (log.isDebugEnabled()) {
-      log.debug("DEBUG enabled, package loading activities will be echoed to console");
-      loader.setRepositoryListener(new ConsoleRepositoryListener(System.out));
-      loader.setTransferListener(new ConsoleTransferListener(System.out));
-    }
-    return loader;
-  }
-
-  private List<RemoteRepository> asRemoteRepositories(List<Repo> items) {
-    List<RemoteRepository> list = new ArrayList<>();
-    for (Repo repo : items) {
-      list.add(new RemoteRepository.Builder(repo.getId(), repo.getType(), repo.getUrl()).build());
-    }
-    return list;
+    return SessionFactory.packageLoader(parentClassLoader, pkgLoaderName, remoteRepositories);
   }
 
   private List<Repo> asRepos(List<RemoteRepository> repositories) {
     List<Repo> list = new ArrayList<>();
     for (RemoteRepository repo : repositories) {
-      list.add(asRepo(repo));
+      list.add(SessionFactory.asRepo(repo));
     }
     return list;
   }
 
   private List<Repo> getStoredRemoteRepositories() {
-    List<Repo> list = new ArrayList<>();
-    String remotes = gui.getPrefs().get(REMOTE_REPOSITORIES_PREF, null);
-    log.debug("Remotes from prefs are: {}", remotes);
-    if (remotes == null) {
-      log.info("No stored prefs for remote repos, adding defaults");
-      addDefaultRepos(list);
-      return list;
-    }
-    ObjectMapper mapper = new ObjectMapper();
-    try {
-      list = mapper.readValue(remotes, new TypeReference<List<Repo>>() {
-      });
-    } catch (InvalidDefinitionException e) {
-      e.printStackTrace();
-      log.warn("Something is wrong with the pref key {}, deleting it to start fresh", REMOTE_REPOSITORIES_PREF);
-      gui.getPrefs().remove(REMOTE_REPOSITORIES_PREF);
-      addDefaultRepos(list);
-    } catch (IOException e) {
-      e.printStackTrace();
-      addDefaultRepos(list);
-    }
-    return list;
-  }
-
-  private void addDefaultRepos(List<Repo> list) {
-    log.info("add local repo");
-    String localRepoPath = System.getProperty("localRepository"); // c:/Users/blah/.m2/repository
-    Repo local = new Repo("local", "default", "file:" + localRepoPath);
-    list.add(local);
-    log.info("add renjin repo");
-    list.add(RENJIN_REPO);
-    log.info("add maven central repo");
-    list.add(MVN_CENTRAL_REPO);
+    return SessionFactory.storedRemoteRepositories(gui.getPrefs());
   }
 
   private String getStars(int length) {
@@ -365,28 +400,108 @@ public class ConsoleComponent extends BorderPane {
 
   public void restartR() {
     console.append("Restarting Renjin..\n");
-    //initRenjin(getStoredRemoteRepositories(), Thread.currentThread().getContextClassLoader());
-    initRenjin(getStoredRemoteRepositories(), gui.getClass().getClassLoader());
+    List<Repo> repos = getStoredRemoteRepositories();
+    //ClassLoader cl = Thread.currentThread().getContextClassLoader();
+    ClassLoader cl = gui.getClass().getClassLoader();
+    if (!swapInStandbySession(repos, cl)) {
+      initRenjin(repos, cl);
+    }
     gui.getEnvironmentComponent().clearEnvironment();
   }
 
   /**
-   * TODO: while we can stop the timeline with this we cannot interrupt the scriptengines eval.
+   * Forget the parallel sessions and stop their queues, a script already running in one of them runs to the end.
+   */
+  private void discardParallelSessions() {
+    sessionGeneration++;
+    parallelSessions.clear();
+    parallelQueues.values().forEach(ScriptQueue::shutdown);
+    parallelQueues.clear();
+  }
+
+  /**
+   * @return true if there was a standby session created with the current setup and it is now the active session
+   */
+  private boolean swapInStandbySession(List<Repo> repos, ClassLoader parentClassLoader) {
+    RenjinSession standby = standbySession.getAndSet(null);
+    if (standby == null) {
+      return false;
+    }
+    if (!standby.setup.equals(sessionSetup(repos, parentClassLoader))) {
+      log.info("The setup has changed since the standby R session was created, creating a new session");
+      return false;
+    }
+    try {
+      activate(standby);
+    } catch (FileSystemException e) {
+      log.warn("Failed to activate the standby R session, creating a new session", e);
+      return false;
+    }
+    log.info("Swapped in the standby R session");
+    printGreeting();
+    prepareStandbySession(repos, parentClassLoader);
+    return true;
+  }
+
+  /**
+   * Ask the running scripts (in all sessions) to stop. The script thread is interrupted, which the script engine
+   * and the console writers react to, so the session (and everything loaded into it) is still usable afterwards.
+   * If a script has not stopped within the soft deadline the user can choose to stop the thread by force,
+   * the session is then restarted (or discarded if parallel) since its state can no longer be trusted.
    */
-  @SuppressWarnings("deprecation")
   public void interruptProcess() {
-    log.info("Interrupting runnning process");
-    // This is a nasty piece of code but a brutal stop() is the only thing that will break out of the script engine
-    if (runningThread != null && runningThread.isAlive()) {
-      console.appendFx("\nInterrupting process...");
-      runningThread.interrupt();
-      // allow two seconds for graceful shutdown
-      sleep(2000);
-      console.appendFx("\nStopping process...");
-      runningThread.stop();
-      threadMap.remove(runningThread);
-      console.appendText("\n>");
+    interrupt(scriptQueue, ScriptSession.MAIN, this::restartR);
+    parallelQueues.forEach((name, queue) -> interrupt(queue, name, () -> {
+      parallelSessions.remove(name);
+      console.appendFx("R " + name + " discarded, it will be recreated when next used");
+    }));
+  }
+
+  private void interrupt(ScriptQueue queue, String sessionName, Runnable afterForceStop) {
+    Thread runningThread = queue.interruptRunning();
+    if (runningThread == null || !runningThread.isAlive()) {
+      return;
     }
+    log.info("Interrupting runnning process in {}", sessionName);
+    console.appendFx("\nInterrupting process...");
+    Thread watcher = new Thread(() -> awaitInterrupted(queue, runningThread, afterForceStop), "ride-interrupt-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  private void awaitInterrupted(ScriptQueue queue, Thread runningThread, Runnable afterForceStop) {
+    long deadline = System.currentTimeMillis() + INTERRUPT_DEADLINE_MILLIS;
+    while (runningThread.isAlive() && queue.getRunningThread() == runningThread
+        && System.currentTimeMillis() < deadline) {
+      sleep(100);
+    }
+    if (queue.getRunningThread() != runningThread) {
+      log.info("Process stopped after interrupt");
+      return;
+    }
+    Platform.runLater(() -> {
+      if (queue.getRunningThread() != runningThread) {
+        return;
+      }
+      Optional<ButtonType> answer = Alerts.showAlert("Script is still running",
+          "The script did not stop within " + INTERRUPT_DEADLINE_MILLIS / 1000 + " seconds.\n"
+              + "Stop it by force? The R session will be restarted and all variables will be lost.",
+          Alert.AlertType.CONFIRMATION);
+      if (answer.isPresent() && answer.get() == ButtonType.OK) {
+        forceStop(runningThread, afterForceStop);
+      }
+    });
+  }
+
+  @SuppressWarnings("deprecation")
+  private void forceStop(Thread runningThread, Runnable afterForceStop) {
+    log.warn("Stopping {} by force", runningThread.getName());
+    console.appendFx("\nStopping process...");
+    // This is a nasty piece of code but a brutal stop() is the only thing that will break out of a script
+    // stuck in a call that does not check for interrupts
+    runningThread.stop();
+    // the state of the session is unknown after a stop, the standby session makes a restart quick
+    afterForceStop.run();
   }
 
   private void sleep(int millis) {
@@ -425,7 +540,7 @@ public class ConsoleComponent extends BorderPane {
         engine.put(entry.getKey(), entry.getValue());
       }
     }
-    SEXP result = (SEXP) engine.eval(script);
+    SEXP result = parsedScripts.eval(session, script);
     postEvalOutput();
     return result;
   }
@@ -444,7 +559,7 @@ public class ConsoleComponent extends BorderPane {
       log.debug("Running script: {}", script);
       session.setStdOut(out);
       session.setStdErr(err);
-      SEXP sexp = (SEXP) engine.eval(script);
+      SEXP sexp = parsedScripts.eval(session, script);
       waiting();
       return sexp;
     } catch (Exception e) {
@@ -454,6 +569,10 @@ public class ConsoleComponent extends BorderPane {
     }
   }
 
+  public ParsedScriptCache getParsedScriptCache() {
+    return parsedScripts;
+  }
+
   public SEXP fetchVar(String varName) {
     Environment global = getSession().getGlobalEnvironment();
     Context topContext = getSession().getTopLevelContext();
@@ -468,15 +587,39 @@ public class ConsoleComponent extends BorderPane {
   }
 
   public void runScriptAsync(String script, String title, TaskListener taskListener) {
+    runScriptAsync(script, title, taskListener, ScriptSession.MAIN);
+  }
+
+  /**
+   * Run the script in the named session, scripts in different sessions run in parallel.
+   *
+   * @param sessionName one of ScriptSession.names()
+   */
+  public void runScriptAsync(String script, String title, TaskListener taskListener, String sessionName) {
+    runScriptAsync(script, title, taskListener, null, sessionName);
+  }
+
+  /**
+   * Run the script one top level expression at a time while sampling where the time is spent, the result is
+   * shown in the viewer when the script is done (or has failed).
+   */
+  public void profileScriptAsync(String script, String title, TaskListener taskListener, String sessionName) {
+    int interval = gui.getPrefs().getInt(PROFILER_SAMPLE_INTERVAL, ScriptProfiler.SAMPLE_INTERVAL_DEFAULT);
+    runScriptAsync(script, title, taskListener, new ScriptProfiler(interval), sessionName);
+  }
+
+  private void runScriptAsync(String script, String title, TaskListener taskListener, ScriptProfiler profiler,
+                              String sessionName) {
 
     running();
+    ScriptQueue queue = scriptQueueFor(sessionName);
 
     Task<Void> task = new Task<Void>() {
       @Override
       public Void call() throws Exception {
         try {
           taskListener.taskStarted();
-          executeScriptAndReport(script, title);
+          executeScriptAndReport(script, title, profiler, scriptSession(sessionName), queue);
         } catch (RuntimeException e) {
           // RuntimeExceptions (such as EvalExceptions is not caught so need to wrap all in an exception
           // this way we can get to the original one by extracting the cause from the thrown exception
@@ -489,28 +632,34 @@ public class ConsoleComponent extends BorderPane {
 
     task.setOnSucceeded(e -> {
       taskListener.taskEnded();
-      waiting();
-      updateEnvironment();
+      waiting(queue);
+      updateEnvironment(sessionName);
+      showProfile(profiler, title);
       promptAndScrollToEnd();
     });
     task.setOnFailed(e -> {
       taskListener.taskEnded();
-      waiting();
-      updateEnvironment();
+      waiting(queue);
+      updateEnvironment(sessionName);
+      // the profile up to the failure (or cancellation) is still useful
+      showProfile(profiler, title);
       Throwable throwable = task.getException();
       Throwable ex = throwable.getCause();
       if (ex == null) {
         ex = throwable;
       }
 
+      if (ex instanceof ScriptInterruptedException) {
+        console.appendWarning("Script cancelled");
+        promptAndScrollToEnd();
+        return;
+      }
       String msg = createMessageFromEvalException(ex);
 
       ExceptionAlert.showAlert(msg + ex.getMessage(), ex);
       promptAndScrollToEnd();
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    startThreadWhenOthersAreFinished(thread, "runScriptAsync: " + title);
+    queue.submit(task, "runScriptAsync: " + title, ScriptQueue.Priority.USER);
   }
 
   public String createMessageFromEvalException(Throwable ex) {
@@ -518,6 +667,8 @@ public class ConsoleComponent extends BorderPane {
 
     if (ex instanceof org.renjin.parser.ParseException) {
       msg = "Error parsing R script: ";
+    } else if (ex instanceof ScriptInterruptedException) {
+      msg = "The R script was cancelled: ";
     } else if (ex instanceof ScriptException || ex instanceof EvalException) {
       msg = "Error running R script: ";
     } else if (ex instanceof RuntimeException) {
@@ -543,6 +694,34 @@ public class ConsoleComponent extends BorderPane {
   }
 
   public void updateEnvironment() {
+    updateEnvironment(ScriptSession.MAIN);
+  }
+
+  /**
+   * Show the variables of the session in the environment pane. The session is not created just to show that
+   * it is empty.
+   */
+  public void updateEnvironment(String sessionName) {
+    ScriptSession scriptSession = ScriptSession.MAIN.equals(sessionName) ? mainSession() : parallelSessions.get(sessionName);
+    if (scriptSession == null) {
+      gui.getEnvironmentComponent().setEnvironment(sessionName, Collections.emptyList());
+      return;
+    }
+    if (!scriptSession.isMain()) {
+      Environment global = scriptSession.getSession().getGlobalEnvironment();
+      Context topContext = scriptSession.getSession().getTopLevelContext();
+      Task<List<VariableSummary>> task = new Task<List<VariableSummary>>() {
+        @Override
+        protected List<VariableSummary> call() {
+          return VariableSummary.summarize(global, topContext);
+        }
+      };
+      // the completions are the names of the main session, the pane only shows the variables of this one
+      task.setOnSucceeded(e -> gui.getEnvironmentComponent().setEnvironment(sessionName, task.getValue()));
+      task.setOnFailed(e -> log.warn("Failed to list the variables of {}", sessionName, task.getException()));
+      scriptQueueFor(sessionName).submitCoalesced(task, "updateEnvironment", ScriptQueue.Priority.BACKGROUND);
+      return;
+    }
     Environment global = session.getGlobalEnvironment();
     Context topContext = session.getTopLevelContext();
     Task<Void> task = new Task<Void>() {
@@ -552,25 +731,23 @@ public class ConsoleComponent extends BorderPane {
           StringVector pkgs = (StringVector) engine.eval("(.packages())");
           Platform.runLater(() -> gui.getInoutComponent().setPackages(pkgs));
 
-          String script = ".ride_funcList <- c()\n" +
-                  ".ride_objList <- c()\n" +
-                  "for (.ride_pkg in paste0('package:',.packages())) {\n" +
-                  "   .ride_funcList <- c(.ride_funcList,  ls(.ride_pkg)[(ls(.ride_pkg) %in% c(lsf.str(.ride_pkg)))]) \n" +
-                  "   .ride_objList <- c(.ride_objList, ls(.ride_pkg)[!(ls(.ride_pkg) %in% c(lsf.str(.ride_pkg)))]) \n" +
-                  "}\n" +
-                  ".ride_funcList <- c(.ride_funcList, ls()[(ls() %in% c(lsf.str()))]) \n" +
-                  ".ride_objList <- c(.ride_objList, ls()[!(ls() %in% c(lsf.str()))]) \n" +
-                  "list('functions' = .ride_funcList, 'objects' = .ride_objList)";
-
-          ListVector funcObj = (ListVector) engine.eval(script);
-          StringVector functions = (StringVector)funcObj.get("functions");
-          StringVector objects = (StringVector)funcObj.get("objects");
-
-          engine.eval("rm(.ride_funcList, .ride_objList, .ride_pkg)");
-          Platform.runLater(() -> {
-            gui.getEnvironmentComponent().setEnvironment(global, topContext);
-            gui.getEnvironmentComponent().updateContextFunctions(functions, objects);
-          });
+          // the environment of a package identifies it so its exports are only listed when it is attached
+          ListVector pkgEnvs = (ListVector) engine.eval("lapply(paste0('package:', .packages()), as.environment)");
+          Map<String, SEXP> packages = new LinkedHashMap<>();
+          for (int i = 0; i < pkgs.length() && i < pkgEnvs.length(); i++) {
+            packages.put(pkgs.getElementAsString(i), pkgEnvs.getElementAsSEXP(i));
+          }
+          Map<String, Boolean> globalNames = new HashMap<>();
+          for (String name : global.getNames()) {
+            if (!name.startsWith(".")) {
+              globalNames.put(name, isFunction(global.getVariable(topContext, name)));
+            }
+          }
+          // the completion index is updated here so that the javafx thread does not have to do it
+          gui.getEnvironmentComponent().updateContextNames(packages, globalNames, pkg -> listExports(pkg));
+          // only the first few elements of each variable are read so this does not depend on the size of the data
+          List<VariableSummary> variables = VariableSummary.summarize(global, topContext);
+          Platform.runLater(() -> gui.getEnvironmentComponent().setEnvironment(variables));
 
         } catch (RuntimeException e) {
           // RuntimeExceptions (such as EvalExceptions is not caught so need to wrap all in an exception
@@ -593,15 +770,85 @@ public class ConsoleComponent extends BorderPane {
 
       ExceptionAlert.showAlert(msg + ex.getMessage(), ex);
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    startThreadWhenOthersAreFinished(thread, "updateEnvironment");
+    // several runs in a row only needs one refresh after the last one so duplicate requests are coalesced
+    scriptQueue.submitCoalesced(task, "updateEnvironment", ScriptQueue.Priority.BACKGROUND);
 
     // TODO consider setting the working dir in filetree after each run as setwd() night have changed it
     // Below is how to get it:
     // log.info("Working dir is {}", engine.getSession().getWorkingDirectory().getName().getPath());
   }
 
+  /**
+   * Tell if a variable holds a function without forcing it, a promise that is not evaluated yet (e.g. from
+   * delayedAssign or a loaded workspace) is a function if its expression is one or defines one.
+   */
+  private static boolean isFunction(SEXP value) {
+    if (value instanceof Promise) {
+      Promise promise = (Promise) value;
+      if (!promise.isEvaluated()) {
+        SEXP expression = promise.getExpression();
+        return expression instanceof Function || expression instanceof FunctionCall
+            && Symbol.get("function").equals(((FunctionCall) expression).getFunction());
+      }
+      value = promise.getValue();
+    }
+    return value instanceof Function;
+  }
+
+  private ContextNames.Exports listExports(String pkg) throws ScriptException {
+    ListVector exports = (ListVector) engine.eval("local({\n" +
+        "  env <- 'package:" + pkg + "'\n" +
+        "  names <- ls(env)\n" +
+        "  isFunction <- names %in% c(lsf.str(env))\n" +
+        "  list('functions' = names[isFunction], 'objects' = names[!isFunction])\n" +
+        "})");
+    return new ContextNames.Exports(toList((StringVector) exports.get("functions")),
+        toList((StringVector) exports.get("objects")));
+  }
+
+  private static List<String> toList(StringVector vector) {
+    List<String> list = new ArrayList<>(vector.length());
+    for (String value : vector) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  /**
+   * Look up the argument names of the functions in the background (after any scripts that are running)
+   * and pass them to the callback on the javafx thread.
+   *
+   * @param functionNames the functions to look up
+   * @param callback receives a map of function name to a comma separated list of the argument names
+   */
+  public void fetchFunctionSignatures(List<String> functionNames, Consumer<Map<String, String>> callback) {
+    if (engine == null || functionNames.isEmpty()) {
+      return;
+    }
+    Task<Map<String, String>> task = new Task<Map<String, String>>() {
+      @Override
+      protected Map<String, String> call() throws Exception {
+        Session current = session;
+        Context context = current.getTopLevelContext();
+        // a child of the global environment so that nothing is assigned in (or removed from) the users workspace
+        Environment lookupEnv = Environment.createChildEnvironment(current.getGlobalEnvironment()).build();
+        lookupEnv.setVariable(context, Symbol.get(".ride_fnames"), new StringArrayVector(functionNames));
+        StringVector signatures = (StringVector) context.evaluate(parsedScripts.parse(current,
+            "unlist(lapply(.ride_fnames, function(.ride_fname) tryCatch("
+                + "paste(names(formals(get(.ride_fname, mode = 'function'))), collapse = ', '), "
+                + "error = function(e) '')))").getElementAsSEXP(0), lookupEnv);
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < functionNames.size() && i < signatures.length(); i++) {
+          result.put(functionNames.get(i), signatures.getElementAsString(i));
+        }
+        return result;
+      }
+    };
+    task.setOnSucceeded(e -> callback.accept(task.getValue()));
+    task.setOnFailed(e -> log.debug("Failed to fetch function signatures", task.getException()));
+    scriptQueue.submit(task, "fetchFunctionSignatures", ScriptQueue.Priority.BACKGROUND);
+  }
+
   public void runTests(RTab rTab) {
     running();
     String script = rTab.getTextContent();
@@ -655,7 +902,7 @@ public class ConsoleComponent extends BorderPane {
           console.appendFx(DOUBLE_INDENT + "- Setting working directory back to " + orgWd);
           session.setWorkingDirectory(orgWd);
           results.add(result);
-          Platform.runLater(() -> printResult(title, out, err, result, DOUBLE_INDENT));
+          printResult(title, out, err, result, DOUBLE_INDENT);
 
           end = System.currentTimeMillis();
           Map<TestResult.OutCome, List<TestResult>> resultMap = results.stream()
@@ -702,9 +949,7 @@ public class ConsoleComponent extends BorderPane {
       ExceptionAlert.showAlert(msg + ex.getMessage(), ex);
       promptAndScrollToEnd();
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    startThreadWhenOthersAreFinished(thread, "runTestthatTests: " + title);
+    startTaskWhenOthersAreFinished(task, "runTestthatTests: " + title);
   }
 
   private void runHamcrestTests(String script, String title, TaskListener taskListener) {
@@ -732,7 +977,7 @@ public class ConsoleComponent extends BorderPane {
           session.setStdErr(errWriter);
           TestResult result = runTest(script, title);
           results.add(result);
-          Platform.runLater(() -> printResult(title, out, err, result, DOUBLE_INDENT));
+          printResult(title, out, err, result, DOUBLE_INDENT);
 
           //now run each testFunction in that file, in the same Session
           for (Symbol name : session.getGlobalEnvironment().getSymbolNames()) {
@@ -743,7 +988,7 @@ public class ConsoleComponent extends BorderPane {
                 Context context = session.getTopLevelContext();
                 TestResult funcResult = runTestFunction(context, title, name);
                 results.add(funcResult);
-                Platform.runLater(() -> printResult(methodName, out, err, funcResult, DOUBLE_INDENT));
+                printResult(methodName, out, err, funcResult, DOUBLE_INDENT);
               }
             }
           }
@@ -793,26 +1038,24 @@ public class ConsoleComponent extends BorderPane {
       ExceptionAlert.showAlert(msg + ex.getMessage(), ex);
       promptAndScrollToEnd();
     });
-    Thread thread = new Thread(task);
-    thread.setDaemon(false);
-    startThreadWhenOthersAreFinished(thread, "runHamcrestTests: " + title);
+    startTaskWhenOthersAreFinished(task, "runHamcrestTests: " + title);
   }
 
   private void printResult(String title, StringWriter out, StringWriter err, TestResult result, String indent) {
     String lines = prefixLines(out, indent);
     if (!"".equals(lines.trim())) {
-      console.append(lines);
+      console.appendFx(lines);
     }
     out.getBuffer().setLength(0);
     lines = prefixLines(err, indent);
     if (!"".equals(lines.trim())) {
-      console.append(lines);
+      console.appendFx(lines);
     }
     err.getBuffer().setLength(0);
     if (TestResult.OutCome.SUCCESS.equals(result.getResult())) {
-      console.append(indent + format("# {}: Success", title));
+      console.appendFx(indent + format("# {}: Success", title));
     } else {
-      console.appendWarning(indent + format("# {}: Failure detected: {}", title, formatMessage(result.getError())));
+      console.appendWarningFx(indent + format("# {}: Failure detected: {}", title, formatMessage(result.getError())) + "\n");
     }
   }
 
@@ -837,13 +1080,13 @@ public class ConsoleComponent extends BorderPane {
     String testName = title;
     console.appendFx(indent + format("# Running test {}", title).trim());
     try {
-      engine.eval(script);
+      parsedScripts.eval(session, script);
       result.setResult(TestResult.OutCome.SUCCESS);
       return result;
     } catch (org.renjin.parser.ParseException e) {
       exception = e;
       issue = e.getClass().getSimpleName() + " parsing R script " + testName;
-    } catch (ScriptException | EvalException e) {
+    } catch (EvalException e) {
       exception = e;
       issue = e.getClass().getSimpleName() + " executing test " + testName;
     } catch (RuntimeException e) {
@@ -900,37 +1143,101 @@ public class ConsoleComponent extends BorderPane {
     return result;
   }
 
-  private void executeScriptAndReport(String script, String title) throws Exception {
+  private void showProfile(ScriptProfiler profiler, String title) {
+    if (profiler != null) {
+      gui.getInoutComponent().viewProfile(profiler.stop(), title);
+    }
+  }
+
+  private void executeScriptAndReport(String script, String title, ScriptProfiler profiler,
+                                     ScriptSession scriptSession, ScriptQueue queue) throws Exception {
 
     EnvironmentComponent env = gui.getEnvironmentComponent();
+    Session session = scriptSession.getSession();
+    RenjinScriptEngine engine = scriptSession.getEngine();
+    String prefix = scriptSession.getOutputPrefix();
     try (
-         AppenderPrintWriter out = new AppenderPrintWriter(console);
-         WarningAppenderWriter err = new WarningAppenderWriter(console);
+         AppenderPrintWriter out = new AppenderPrintWriter(console, prefix);
+         WarningAppenderWriter err = new WarningAppenderWriter(console, prefix);
          PrintWriter outputWriter = new PrintWriter(out);
          PrintWriter errWriter = new PrintWriter(err)
     ) {
 
       engine.put("inout", gui.getInoutComponent());
 
-      Platform.runLater(() -> {
-        console.append(title);
-        env.addInputHistory(script);
-      });
+      console.appendFx(prefix + title);
+      Platform.runLater(() -> env.addInputHistory(script));
 
       session.setStdOut(outputWriter);
       session.setStdErr(errWriter);
 
-      engine.eval(script);
+      Metrics.counter("script.runs").increment();
+      long start = System.nanoTime();
+      try {
+        if (profiler == null) {
+          parsedScripts.eval(session, script);
+        } else {
+          evalProfiled(script, profiler, session);
+        }
+      } finally {
+        Metrics.timer("script.run").recordSince(start);
+      }
       Platform.runLater(() -> env.addOutputHistory(out.toString()));
-      postEvalOutput();
+      postEvalOutput(session);
+      log.debug("Parsed scripts: {}", parsedScripts);
 
-    } catch (ScriptException | RuntimeException e) {
-      postEvalOutput();
+    } catch (RuntimeException e) {
+      Metrics.counter("script.failures").increment();
+      postEvalOutput(session);
+      if (queue.isInterruptRequested() && !(e instanceof ScriptInterruptedException)) {
+        // whatever the engine threw when it noticed the interrupt, the outcome is that the script was cancelled
+        throw new ScriptInterruptedException("Script interrupted", e);
+      }
       throw e;
+    } finally {
+      // the writers are closed now, make sure nothing evaluated later writes to them
+      session.setStdOut(new PrintWriter(System.out));
+      session.setStdErr(new PrintWriter(System.err));
+    }
+  }
+
+  private void evalProfiled(String script, ScriptProfiler profiler, Session session) {
+    ExpressionVector expressions = parsedScripts.parse(session, script);
+    Context context = session.getTopLevelContext();
+    Environment global = session.getGlobalEnvironment();
+    RCallTracer callTracer = profiler.getCallTracer();
+    profiler.start();
+    try {
+      for (int i = 0; i < expressions.length(); i++) {
+        SEXP expression = expressions.getElementAsSEXP(i);
+        // before each expression so that the functions defined by the previous ones are traced as well
+        callTracer.trace(global, context);
+        profiler.profile(i + 1, deparse(context, expression), () -> context.evaluate(expression));
+      }
+    } finally {
+      callTracer.restore(global, context);
+      profiler.stop();
+    }
+  }
+
+  private String deparse(Context context, SEXP expression) {
+    try {
+      SEXP deparsed = context.evaluate(FunctionCall.newCall(Symbol.get("deparse"),
+          FunctionCall.newCall(Symbol.get("quote"), expression)));
+      if (deparsed instanceof StringVector && deparsed.length() > 0) {
+        return ((StringVector) deparsed).getElementAsString(0) + (deparsed.length() > 1 ? " ..." : "");
+      }
+    } catch (RuntimeException e) {
+      log.debug("Failed to deparse {}", expression, e);
     }
+    return expression.toString();
   }
 
   private void postEvalOutput() throws IOException {
+    postEvalOutput(session);
+  }
+
+  private void postEvalOutput(Session session) throws IOException {
     try (StringWriter warnStrWriter = new StringWriter();
          PrintWriter warnWriter = new PrintWriter(warnStrWriter)) {
       console.flush();
@@ -994,6 +1301,23 @@ public class ConsoleComponent extends BorderPane {
   }
 
   public void waiting() {
+    waiting(scriptQueue);
+  }
+
+  /**
+   * Show the engine as idle unless a script is still running in some other session.
+   *
+   * @param finished the queue of the task that just finished (which might not have cleared its running task yet)
+   */
+  private void waiting(ScriptQueue finished) {
+    if (finished != scriptQueue && scriptQueue.getRunningThread() != null) {
+      return;
+    }
+    for (ScriptQueue queue : parallelQueues.values()) {
+      if (queue != finished && queue.getRunningThread() != null) {
+        return;
+      }
+    }
     Platform.runLater(() -> {
       runningView.setImage(IMG_WAITING);
       statusButton.setTooltip(new Tooltip("Engine is idle"));
@@ -1026,15 +1350,101 @@ public class ConsoleComponent extends BorderPane {
       return;
     }
     try {
-      if (session != null) {
-        session.setWorkingDirectory(dir);
-      }
       workingDir = dir;
+      Session current = session;
+      if (current != null) {
+        current.setWorkingDirectory(dir);
+      }
     } catch (FileSystemException e) {
       log.warn("Error setting working dir to {} for session", dir, e);
     }
   }
 
+  /**
+   * Write the variables of the global environment to the file, see WorkspaceSnapshot.
+   */
+  public void saveWorkspace(File file) {
+    boolean compress = gui.getPrefs().getBoolean(SNAPSHOT_COMPRESSION, false);
+    Environment global = session.getGlobalEnvironment();
+    Context topContext = session.getTopLevelContext();
+    Task<WorkspaceSnapshot.Summary> task = new Task<WorkspaceSnapshot.Summary>() {
+      @Override
+      protected WorkspaceSnapshot.Summary call() throws Exception {
+        return WorkspaceSnapshot.save(topContext, global, file, compress);
+      }
+    };
+    runWorkspaceTask(task, "Failed to save the workspace to " + file, "saveWorkspace: " + file);
+  }
+
+  /**
+   * Read the variables in the file into the global environment, variables with the same name are replaced.
+   */
+  public void loadWorkspace(File file) {
+    Environment global = session.getGlobalEnvironment();
+    Context topContext = session.getTopLevelContext();
+    Task<WorkspaceSnapshot.Summary> task = new Task<WorkspaceSnapshot.Summary>() {
+      @Override
+      protected WorkspaceSnapshot.Summary call() throws Exception {
+        return WorkspaceSnapshot.restore(topContext, global, file);
+      }
+    };
+    runWorkspaceTask(task, "Failed to load the workspace from " + file, "loadWorkspace: " + file);
+  }
+
+  private void runWorkspaceTask(Task<WorkspaceSnapshot.Summary> task, String failureMessage, String context) {
+    running();
+    task.setOnSucceeded(e -> {
+      waiting();
+      console.append(task.getValue().toString());
+      updateEnvironment();
+      promptAndScrollToEnd();
+    });
+    task.setOnFailed(e -> {
+      waiting();
+      updateEnvironment();
+      ExceptionAlert.showAlert(failureMessage, task.getException());
+      promptAndScrollToEnd();
+    });
+    startTaskWhenOthersAreFinished(task, context);
+  }
+
+  /**
+   * Save the workspace to the project dir, the gui is closing so the calling thread waits for it to be done.
+   * The save runs on the engine queue so that no script changes the variables while they are written: what is
+   * waiting in the queue is cancelled and a running script is interrupted first. If the script does not stop
+   * within INTERRUPT_DEADLINE_MILLIS nothing is saved (and the previous snapshot is kept).
+   */
+  public void snapshotOnExit() {
+    File dir = getProjectDir();
+    Session current = session;
+    if (current == null || dir == null) {
+      return;
+    }
+    File file = new File(dir, EXIT_SNAPSHOT_NAME);
+    boolean compress = gui.getPrefs().getBoolean(SNAPSHOT_COMPRESSION, false);
+    CountDownLatch started = new CountDownLatch(1);
+    FutureTask<WorkspaceSnapshot.Summary> task = new FutureTask<>(() -> {
+      started.countDown();
+      return WorkspaceSnapshot.save(current.getTopLevelContext(), current.getGlobalEnvironment(), file, compress);
+    });
+    scriptQueue.cancelPending();
+    scriptQueue.interruptRunning();
+    scriptQueue.submit(task, "snapshotOnExit", ScriptQueue.Priority.USER);
+    try {
+      if (!started.await(INTERRUPT_DEADLINE_MILLIS, TimeUnit.MILLISECONDS)) {
+        task.cancel(false);
+        log.warn("The workspace was not saved on exit, {} did not stop", scriptQueue.getRunningContext());
+        return;
+      }
+      log.info("Workspace snapshot on exit: {}", task.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while saving the workspace to {} on exit", file);
+    } catch (ExecutionException e) {
+      log.warn("Failed to save the workspace to {} on exit", file, e.getCause());
+    }
+  }
+
   public Session getSession() {
     return session;
   }
@@ -1051,34 +1461,76 @@ public class ConsoleComponent extends BorderPane {
     return console;
   }
 
-  public void startThreadWhenOthersAreFinished(Thread thread, String context) {
-    if (runningThread == null) {
-      log.debug("Starting thread {}", context);
-      thread.start();
-    } else if (runningThread.getState() == Thread.State.WAITING || runningThread.getState() == Thread.State.TIMED_WAITING) {
-      log.debug("Waiting for thread {} to finish", threadMap.get(runningThread));
-      try {
-        // This is bit ugly as now the console output will not show until the thread has finished.
-        runningThread.join();
-        thread.start();
-      } catch (InterruptedException e) {
-        log.warn("Thread was interrupted", e);
-        log.info("Running thread {}", context);
-        thread.start();
-      }
+  /**
+   * Queue the task to be executed when the tasks submitted before it (of the same or higher priority) are done.
+   * The task doubles as the handle to cancel it.
+   */
+  public <T extends Task<?>> T startTaskWhenOthersAreFinished(T task, String context) {
+    return startTaskWhenOthersAreFinished(task, context, ScriptQueue.Priority.USER);
+  }
 
-    } else if (runningThread.isAlive() && runningThread.getState() != Thread.State.TERMINATED) {
-      log.warn("There is already a process running: {} in state {}, Overriding existing running thread", threadMap.get(runningThread), runningThread.getState());
-      thread.start();
-    } else {
-      if (runningThread.getState() != Thread.State.TERMINATED) {
-        log.error("Missed some condition, running thread {} is {}", threadMap.get(runningThread), runningThread.getState());
+  public <T extends Task<?>> T startTaskWhenOthersAreFinished(T task, String context, ScriptQueue.Priority priority) {
+    return scriptQueue.submit(task, context, priority);
+  }
+
+  public ScriptQueue getScriptQueue() {
+    return scriptQueue;
+  }
+
+  private ScriptQueue scriptQueueFor(String sessionName) {
+    if (ScriptSession.MAIN.equals(sessionName)) {
+      return scriptQueue;
+    }
+    return parallelQueues.computeIfAbsent(sessionName, name -> new ScriptQueue());
+  }
+
+  private ScriptSession mainSession() {
+    return new ScriptSession(ScriptSession.MAIN, session, engine);
+  }
+
+  /**
+   * Get the session, creating it if it is a parallel session that has not been used yet. Only called from the
+   * queue of the session so a session is never created twice.
+   * Creating a session takes seconds so it is done outside of the lock (R can be restarted and other parallel
+   * sessions created meanwhile), a session created from a main session that has since been replaced is thrown
+   * away and created again.
+   */
+  private ScriptSession scriptSession(String sessionName) throws FileSystemException {
+    if (ScriptSession.MAIN.equals(sessionName)) {
+      return mainSession();
+    }
+    while (true) {
+      PackageLoader loader;
+      ClassLoader classLoader;
+      long generation;
+      synchronized (sessionLock) {
+        ScriptSession existing = parallelSessions.get(sessionName);
+        if (existing != null) {
+          return existing;
+        }
+        loader = packageLoader;
+        classLoader = session.getClassLoader();
+        generation = sessionGeneration;
       }
-      thread.start();
+      long start = System.currentTimeMillis();
+      console.appendFx("* Creating R " + sessionName + "...");
+      // same packages and classes as the main session but nothing else is shared
+      Session newSession = SessionFactory.newSession(loader, classLoader);
+      File dir = workingDir;
+      if (dir != null && dir.exists()) {
+        newSession.setWorkingDirectory(dir);
+      }
+      RenjinScriptEngine newEngine = new RenjinScriptEngineFactory().getScriptEngine(newSession);
+      ScriptSession created = new ScriptSession(sessionName, newSession, newEngine);
+      synchronized (sessionLock) {
+        if (generation == sessionGeneration) {
+          ScriptSession existing = parallelSessions.putIfAbsent(sessionName, created);
+          log.info("Created R {} in {} ms", sessionName, System.currentTimeMillis() - start);
+          return existing == null ? created : existing;
+        }
+      }
+      log.info("R was restarted while R {} was created, creating it again", sessionName);
     }
-    threadMap.remove(runningThread);
-    runningThread = thread;
-    threadMap.put(thread, context);
   }
 
   public void busy() {
@@ -1091,4 +1543,23 @@ public class ConsoleComponent extends BorderPane {
     console.setCursor(Cursor.DEFAULT);
   }
 
+
+  /**
+   * A session with its engine and the things it was created with.
+   */
+  private static class RenjinSession {
+    final Session session;
+    final RenjinScriptEngine engine;
+    final PackageLoader packageLoader;
+    final List<RemoteRepository> remoteRepositories;
+    List<Object> setup;
+
+    RenjinSession(Session session, RenjinScriptEngine engine, PackageLoader packageLoader,
+                  List<RemoteRepository> remoteRepositories) {
+      this.session = session;
+      this.engine = engine;
+      this.packageLoader = packageLoader;
+      this.remoteRepositories = remoteRepositories;
+    }
+  }
 }
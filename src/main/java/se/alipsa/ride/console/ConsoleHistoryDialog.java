@@ -0,0 +1,98 @@
+package se.alipsa.ride.console;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import se.alipsa.ride.Ride;
+import se.alipsa.ride.utils.ExceptionAlert;
+import se.alipsa.ride.utils.GuiUtils;
+
+import java.io.IOException;
+
+/**
+ * Shows the console output that has been moved to the console log, one segment at a time.
+ */
+public class ConsoleHistoryDialog extends Dialog<Void> {
+
+  private final ConsoleLog consoleLog;
+  private final TextArea textArea = new TextArea();
+  private final Label positionLabel = new Label();
+  private final TextField searchField = new TextField();
+  private final Button prevButton = new Button("< Previous");
+  private final Button nextButton = new Button("Next >");
+  private int segment;
+
+  public ConsoleHistoryDialog(Ride gui, ConsoleLog consoleLog) {
+    this.consoleLog = consoleLog;
+    setTitle("Console history");
+    getDialogPane().getButtonTypes().addAll(ButtonType.CLOSE);
+
+    BorderPane pane = new BorderPane();
+    FlowPane topPane = new FlowPane();
+    topPane.setHgap(10);
+    topPane.setPadding(new Insets(5, 10, 5, 5));
+    searchField.setPromptText("search");
+    searchField.setOnAction(e -> findNext());
+    Button findButton = new Button("Find next");
+    findButton.setOnAction(e -> findNext());
+    prevButton.setOnAction(e -> showSegment(segment - 1));
+    nextButton.setOnAction(e -> showSegment(segment + 1));
+    topPane.getChildren().addAll(prevButton, nextButton, positionLabel, searchField, findButton);
+    pane.setTop(topPane);
+
+    textArea.setEditable(false);
+    pane.setCenter(textArea);
+    getDialogPane().setContent(pane);
+    getDialogPane().setPrefSize(900, 600);
+    setResizable(true);
+    GuiUtils.addStyle(gui, this);
+
+    // start at the end as that is the part closest to what is still in the console
+    showSegment(consoleLog.getSegmentCount() - 1);
+  }
+
+  private void showSegment(int index) {
+    int count = consoleLog.getSegmentCount();
+    if (count == 0) {
+      positionLabel.setText("No history");
+      prevButton.setDisable(true);
+      nextButton.setDisable(true);
+      return;
+    }
+    segment = Math.max(0, Math.min(index, count - 1));
+    try {
+      textArea.setText(consoleLog.readSegment(segment));
+    } catch (IOException e) {
+      ExceptionAlert.showAlert("Failed to read console log", e);
+    }
+    positionLabel.setText("Part " + (segment + 1) + " of " + count);
+    prevButton.setDisable(segment == 0);
+    nextButton.setDisable(segment >= count - 1);
+  }
+
+  private void findNext() {
+    try {
+      int[] hit = consoleLog.find(searchField.getText(), segment, textArea.getSelection().getEnd());
+      if (hit == null) {
+        // wrap around to the beginning
+        hit = consoleLog.find(searchField.getText(), 0, 0);
+      }
+      if (hit == null) {
+        positionLabel.setText("Part " + (segment + 1) + " of " + consoleLog.getSegmentCount() + ", no matches");
+        return;
+      }
+      if (hit[0] != segment) {
+        showSegment(hit[0]);
+      }
+      textArea.selectRange(hit[1], hit[1] + searchField.getText().length());
+    } catch (IOException e) {
+      ExceptionAlert.showAlert("Failed to search console log", e);
+    }
+  }
+}
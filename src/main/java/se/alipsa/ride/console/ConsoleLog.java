@@ -0,0 +1,171 @@
+package se.alipsa.ride.console;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append only file holding the console output that no longer fits in the console.
+ * The file is divided into segments of at most SEGMENT_SIZE bytes, a segment always starts at the beginning of
+ * an appended block (a block larger than a segment is split) so each one can be memory mapped and decoded on
+ * its own. Only the segment offsets are kept in memory so the heap usage does not grow with the size of the log.
+ */
+public class ConsoleLog implements Closeable {
+
+  static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+  // a char is at most 3 bytes in UTF-8 (a surrogate pair is 4 bytes for 2 chars) so a block this long always fits
+  private static final int MAX_BLOCK_CHARS = SEGMENT_SIZE / 3;
+  private static final Logger log = LogManager.getLogger(ConsoleLog.class);
+
+  // the files that could not be deleted yet, one shutdown hook for all of them rather than a deleteOnExit per file
+  private static final Set<File> undeletedFiles = ConcurrentHashMap.newKeySet();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> undeletedFiles.forEach(File::delete),
+        "ride-console-log-cleanup"));
+  }
+
+  private final List<long[]> segments = new ArrayList<>();
+  private File file;
+  private FileChannel channel;
+  private long size;
+
+  public synchronized void append(String text) throws IOException {
+    if (text == null || text.isEmpty()) {
+      return;
+    }
+    if (channel == null) {
+      open();
+    }
+    int start = 0;
+    while (text.length() - start > MAX_BLOCK_CHARS) {
+      int end = blockEnd(text, start);
+      appendBlock(text.substring(start, end));
+      start = end;
+    }
+    appendBlock(start == 0 ? text : text.substring(start));
+  }
+
+  /**
+   * @return where to end a block starting at start: after the last line break if there is one in the block,
+   * otherwise after MAX_BLOCK_CHARS (but never between the chars of a surrogate pair)
+   */
+  private static int blockEnd(String text, int start) {
+    int end = start + MAX_BLOCK_CHARS;
+    int lineEnd = text.lastIndexOf('\n', end - 1);
+    if (lineEnd >= start) {
+      return lineEnd + 1;
+    }
+    return Character.isHighSurrogate(text.charAt(end - 1)) ? end - 1 : end;
+  }
+
+  private void appendBlock(String text) throws IOException {
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(text);
+    int length = bytes.remaining();
+    long[] current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (current == null || current[1] + length > SEGMENT_SIZE) {
+      current = new long[]{size, 0};
+      segments.add(current);
+    }
+    while (bytes.hasRemaining()) {
+      channel.write(bytes, size + length - bytes.remaining());
+    }
+    current[1] += length;
+    size += length;
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized String readSegment(int index) throws IOException {
+    return decodeSegment(index).toString();
+  }
+
+  private CharBuffer decodeSegment(int index) throws IOException {
+    long[] segment = segments.get(index);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment[0], segment[1]);
+    return StandardCharsets.UTF_8.decode(buffer);
+  }
+
+  /**
+   * Case insensitive search for the next occurrence of the term.
+   *
+   * @return the segment index and char position within that segment, or null if there are no more matches
+   */
+  public synchronized int[] find(String term, int fromSegment, int fromIndex) throws IOException {
+    if (term == null || term.isEmpty()) {
+      return null;
+    }
+    // matching case insensitively rather than lower casing each segment, which would copy it once more
+    Pattern pattern = Pattern.compile(Pattern.quote(term), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    int start = Math.max(fromIndex, 0);
+    for (int i = Math.max(fromSegment, 0); i < segments.size(); i++) {
+      CharBuffer segment = decodeSegment(i);
+      if (start <= segment.length()) {
+        Matcher matcher = pattern.matcher(segment);
+        if (matcher.find(start)) {
+          return new int[]{i, matcher.start()};
+        }
+      }
+      start = 0;
+    }
+    return null;
+  }
+
+  /**
+   * Discard the content. A new file is used rather than truncating the existing one since a file that
+   * is still mapped cannot be truncated on all platforms.
+   */
+  public synchronized void reset() {
+    close();
+    segments.clear();
+    size = 0;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Failed to close console log {}", file, e);
+      }
+      channel = null;
+    }
+    if (file != null) {
+      if (file.delete()) {
+        undeletedFiles.remove(file);
+      } else {
+        log.debug("Could not delete {} now, it will be deleted on exit", file);
+      }
+    }
+    file = null;
+  }
+
+  private void open() throws IOException {
+    file = File.createTempFile("ride-console", ".log");
+    undeletedFiles.add(file);
+    log.info("Console output exceeding the max size is saved to {}", file);
+    channel = new RandomAccessFile(file, "rw").getChannel();
+  }
+}
@@ -2,24 +2,73 @@ package se.alipsa.ride.console;
 
 import static se.alipsa.ride.menu.GlobalOptions.CONSOLE_MAX_LENGTH_PREF;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.fxmisc.richtext.model.TwoDimensional.Position;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.UnStyledCodeArea;
+import se.alipsa.ride.metrics.Counter;
+import se.alipsa.ride.metrics.LatencyTimer;
+import se.alipsa.ride.metrics.Metrics;
 
-public class ConsoleTextArea extends UnStyledCodeArea {
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-  private static final String WARN_SIZE_MSG = "\nMaximum size for console reached, printing to standard out until console is cleared\n";
+public class ConsoleTextArea extends UnStyledCodeArea {
 
   public static final int CONSOLE_MAX_LENGTH_DEFAULT = 1_500_000;
+  /** Output from background threads is appended at most this often (60 times per second) */
+  private static final long FRAME_INTERVAL_NANOS = 1_000_000_000L / 60;
+  /** Upper limit of chars appended in one frame so that a flood of output does not starve the FX thread */
+  private static final int MAX_CHARS_PER_FRAME = 64 * 1024;
+  private static final Collection<String> PLAIN = Collections.emptyList();
+  private static final Collection<String> WARNING = Collections.singletonList("warning");
   private int consoleMaxLength = CONSOLE_MAX_LENGTH_DEFAULT;
   static Logger log = LogManager.getLogger(ConsoleTextArea.class);
   private StringBuilder buffer = new StringBuilder();
   private StringBuilder warnBuffer = new StringBuilder();
+  private final ConsoleLog consoleLog = new ConsoleLog();
 
-  private boolean sizeWWarningPrinted = false;
+  private final ConcurrentLinkedQueue<OutputChunk> pending = new ConcurrentLinkedQueue<>();
+  /** the size of pending, which the queue itself can only count by walking through it */
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final Counter appendedChars = Metrics.counter("console.appendFx.chars");
+  /** from when the output was written until it is shown, i.e. how far behind the FX thread is */
+  private final LatencyTimer appendDelay = Metrics.timer("console.appendFx.delay");
+  private final LatencyTimer drainTime = Metrics.timer("console.drain");
+  private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+  private final AnimationTimer drainTimer = new AnimationTimer() {
+    private long lastDrain;
 
+    @Override
+    public void handle(long now) {
+      if (now - lastDrain < FRAME_INTERVAL_NANOS) {
+        return;
+      }
+      lastDrain = now;
+      if (drainPending(MAX_CHARS_PER_FRAME)) {
+        moveTo(getLength());
+        requestFollowCaret();
+      }
+      if (pending.isEmpty()) {
+        stop();
+        drainScheduled.set(false);
+        // something might have been added after the isEmpty check but before the flag was reset
+        if (!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+          start();
+        }
+      }
+    }
+  };
 
   private ConsoleTextArea() {
     getStyleClass().add("console");
@@ -39,34 +88,69 @@ public class ConsoleTextArea extends UnStyledCodeArea {
   public ConsoleTextArea(Ride gui) {
     this();
     consoleMaxLength = gui.getPrefs().getInt(CONSOLE_MAX_LENGTH_PREF, CONSOLE_MAX_LENGTH_DEFAULT);
+    Metrics.gauge("console.appendFx.pending", pendingCount::get);
   }
 
   @Override
   public void clear() {
-    sizeWWarningPrinted = false;
+    consoleLog.reset();
     super.clear();
   }
 
   @Override
   public void appendText(String text) {
-    int textSize = getText().length();
-    if (textSize > consoleMaxLength) {
-      if (!sizeWWarningPrinted) {
-        printSizeWarning();
-      }
-      System.out.print(text);
-    } else {
-      super.appendText(text);
+    // whatever was written from other threads before this call must come first
+    drainPending(Integer.MAX_VALUE);
+    appendStyled(text, StyleSpans.singleton(PLAIN, text.length()));
+  }
+
+  private void appendStyled(String text, StyleSpans<Collection<String>> styles) {
+    if (text.isEmpty()) {
+      return;
+    }
+    int keep = consoleMaxLength / 2;
+    if (text.length() > keep) {
+      // Too big to keep all of it, everything but the tail goes straight to the log
+      int cut = text.length() - keep;
+      trim(getLength());
+      spill(text.substring(0, cut));
+      styles = styles.subView(cut, text.length());
+      text = text.substring(cut);
+    } else if (getLength() + text.length() > consoleMaxLength) {
+      trim(getLength() + text.length() - keep);
+    }
+    int start = getLength();
+    super.appendText(text);
+    setStyleSpans(start, styles);
+  }
+
+  /**
+   * Move (at least) minChars from the beginning of the console to the console log, rounded up to the end of the line.
+   */
+  private void trim(int minChars) {
+    int cut = Math.min(minChars, getLength());
+    if (cut <= 0) {
+      return;
     }
+    Position pos = offsetToPosition(cut, Bias.Forward);
+    if (pos.getMinor() > 0 && pos.getMajor() + 1 < getParagraphs().size()) {
+      cut = getAbsolutePosition(pos.getMajor() + 1, 0);
+    }
+    spill(getText(0, cut));
+    deleteText(0, cut);
+  }
 
+  private void spill(String text) {
+    try {
+      consoleLog.append(text);
+    } catch (IOException e) {
+      log.warn("Failed to write to the console log, printing to standard out instead", e);
+      System.out.print(text);
+    }
   }
 
-  private void printSizeWarning() {
-    int start = getCaretPosition();
-    int end = getCaretPosition() + WARN_SIZE_MSG.length();
-    super.appendText(WARN_SIZE_MSG);
-    setStyleClass(start, end, "warning");
-    sizeWWarningPrinted = true;
+  public ConsoleLog getConsoleLog() {
+    return consoleLog;
   }
 
   public void append(String text, boolean... skipNewline) {
@@ -78,10 +162,13 @@ public class ConsoleTextArea extends UnStyledCodeArea {
     }
   }
 
+  /**
+   * Thread safe append, the text is buffered and added to the console in the next frame
+   * together with whatever else was written in the meantime.
+   */
   public void appendFx(String text, boolean... skipNewline) {
-    Platform.runLater(() -> {
-      append(text, skipNewline);
-    });
+    boolean skip = skipNewline.length > 0 ? skipNewline[0] : false;
+    enqueue(skip ? text : text + "\n", PLAIN);
   }
 
   public void appendWarning(String text, boolean... skipNewline) {
@@ -97,12 +184,10 @@ public class ConsoleTextArea extends UnStyledCodeArea {
   }
 
   private void appendWithStyle(String text, String styleClass, boolean... skipNewline) {
-    //log.info("Appending warning lenght = {} for {}", text.length(), text);
-    int start = getCaretPosition();
-    int end = getCaretPosition() + text.length();
-    append(text, skipNewline);
-    //log.info("start was {}, end was {}, now at {}", start, end, getCaretPosition());
-    setStyleClass(start, end, styleClass);
+    drainPending(Integer.MAX_VALUE);
+    boolean skip = skipNewline.length > 0 ? skipNewline[0] : false;
+    String content = skip ? text : text + "\n";
+    appendStyled(content, StyleSpans.singleton(Collections.singletonList(styleClass), content.length()));
   }
 
 
@@ -126,9 +211,48 @@ public class ConsoleTextArea extends UnStyledCodeArea {
 
 
   public void appendWarningFx(String text) {
-    Platform.runLater(() -> {
-      appendWarning(text, true);
-    });
+    if (text != null && text.trim().length() != 0) {
+      enqueue(text, WARNING);
+    }
+  }
+
+  private void enqueue(String text, Collection<String> style) {
+    pending.add(new OutputChunk(text, style));
+    pendingCount.incrementAndGet();
+    appendedChars.add(text.length());
+    if (drainScheduled.compareAndSet(false, true)) {
+      Platform.runLater(drainTimer::start);
+    }
+  }
+
+  /**
+   * Append (up to maxChars of) the buffered output in one go, adjacent chunks with the same style
+   * ends up in the same style span.
+   *
+   * @return true if anything was appended
+   */
+  private boolean drainPending(int maxChars) {
+    if (pending.isEmpty()) {
+      return false;
+    }
+    long start = System.nanoTime();
+    StringBuilder text = new StringBuilder();
+    StyleSpansBuilder<Collection<String>> styles = new StyleSpansBuilder<>();
+    OutputChunk chunk;
+    long oldest = start;
+    while (text.length() < maxChars && (chunk = pending.poll()) != null) {
+      pendingCount.decrementAndGet();
+      oldest = Math.min(oldest, chunk.queuedAt);
+      text.append(chunk.text);
+      styles.add(chunk.style, chunk.text.length());
+    }
+    if (text.length() == 0) {
+      return false;
+    }
+    appendDelay.record(start - oldest);
+    appendStyled(text.toString(), styles.create());
+    drainTime.recordSince(start);
+    return true;
   }
 
   public void appendWarnChar(char b) {
@@ -151,6 +275,7 @@ public class ConsoleTextArea extends UnStyledCodeArea {
 
   public void flush() {
     Platform.runLater(() -> {
+      drainPending(Integer.MAX_VALUE);
       appendText(buffer.toString());
       buffer.setLength(0);
       appendWarning(warnBuffer.toString());
@@ -165,4 +290,15 @@ public class ConsoleTextArea extends UnStyledCodeArea {
   public int getConsoleMaxSize() {
     return consoleMaxLength;
   }
+
+  private static class OutputChunk {
+    private final String text;
+    private final Collection<String> style;
+    private final long queuedAt = System.nanoTime();
+
+    OutputChunk(String text, Collection<String> style) {
+      this.text = text;
+      this.style = style;
+    }
+  }
 }
@@ -0,0 +1,35 @@
+package se.alipsa.ride.console;
+
+/**
+ * Puts a prefix in front of each line of output that is written in chunks, a chunk can end or start in the
+ * middle of a line so whether the next char starts a line is remembered between the chunks.
+ * Empty lines are not prefixed.
+ */
+public final class LinePrefixer {
+
+  private final String prefix;
+  private boolean atLineStart = true;
+
+  public LinePrefixer(String prefix) {
+    this.prefix = prefix;
+  }
+
+  public String apply(String text) {
+    if (prefix.isEmpty()) {
+      return text;
+    }
+    StringBuilder sb = new StringBuilder(text.length() + prefix.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (atLineStart && c != '\n' && c != '\r') {
+        sb.append(prefix);
+        atLineStart = false;
+      }
+      sb.append(c);
+      if (c == '\n') {
+        atLineStart = true;
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,147 @@
+package se.alipsa.ride.console;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.renjin.eval.Session;
+import org.renjin.parser.RParser;
+import org.renjin.sexp.ExpressionVector;
+import org.renjin.sexp.SEXP;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The parsed form of the scripts run, so that running an unchanged script again (a report being previewed, a
+ * tab run once more) skips the parsing. The scripts are keyed by the session and a hash of their content and the
+ * least recently used are evicted when there are more than the max entries. The parsed tree is many times the
+ * size of the script text so the cache is kept small and very long scripts are not cached at all.
+ * Each session gets its own parsed copy since the sessions evaluate concurrently and nothing guarantees that
+ * evaluation leaves the expressions untouched.
+ */
+public class ParsedScriptCache {
+
+  public static final int MAX_ENTRIES_DEFAULT = 32;
+  public static final int MAX_SCRIPT_CHARS_DEFAULT = 200_000;
+
+  private static final Logger log = LogManager.getLogger(ParsedScriptCache.class);
+
+  private final int maxEntries;
+  private final int maxScriptChars;
+  private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ParsedScriptCache() {
+    this(MAX_ENTRIES_DEFAULT, MAX_SCRIPT_CHARS_DEFAULT);
+  }
+
+  /**
+   * @param maxEntries the max number of parsed scripts kept
+   * @param maxScriptChars a script longer than this is never cached
+   */
+  public ParsedScriptCache(int maxEntries, int maxScriptChars) {
+    this.maxEntries = maxEntries;
+    this.maxScriptChars = maxScriptChars;
+  }
+
+  /**
+   * Parse the script and evaluate it in the global environment of the session, just as the script engine
+   * would do with the script text.
+   */
+  public SEXP eval(Session session, String script) {
+    return session.getTopLevelContext().evaluate(parse(session, script));
+  }
+
+  /**
+   * @return the parsed script, from the cache if the same script has been parsed for the session before
+   * @throws org.renjin.parser.ParseException if the script is not valid R, such scripts are not cached
+   */
+  public ExpressionVector parse(Session session, String script) {
+    // the identity hash is not unique so the entry also checks that it belongs to the session
+    String key = System.identityHashCode(session) + ":" + hash(script);
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.session.get() == session) {
+        hits.incrementAndGet();
+        return entry.expressions;
+      }
+    }
+    misses.incrementAndGet();
+    // parse outside of the lock, another thread parsing the same script meanwhile just does the work twice
+    ExpressionVector expressions = RParser.parseSource(script + "\n");
+    if (script.length() <= maxScriptChars) {
+      put(key, new Entry(session, expressions));
+    }
+    return expressions;
+  }
+
+  private synchronized void put(String key, Entry entry) {
+    entries.put(key, entry);
+    Iterator<Entry> it = entries.values().iterator();
+    while (entries.size() > maxEntries && it.hasNext()) {
+      it.next();
+      it.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  static String hash(String script) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every jvm has SHA-256
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    log.debug("Cleared, {}", this);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public String toString() {
+    return size() + " scripts cached, " + getHits() + " hits, "
+        + getMisses() + " misses, " + getEvictions() + " evicted";
+  }
+
+  private static class Entry {
+    // weak so that the cache does not keep a discarded session alive
+    final WeakReference<Session> session;
+    final ExpressionVector expressions;
+
+    Entry(Session session, ExpressionVector expressions) {
+      this.session = new WeakReference<>(session);
+      this.expressions = expressions;
+    }
+  }
+}
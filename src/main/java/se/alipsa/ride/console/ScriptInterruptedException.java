@@ -0,0 +1,17 @@
+package se.alipsa.ride.console;
+
+/**
+ * Thrown on the thread running a script when the user has asked it to stop.
+ */
+public class ScriptInterruptedException extends RuntimeException {
+
+  private static final long serialVersionUID = 3170968520867458384L;
+
+  public ScriptInterruptedException(String message) {
+    super(message);
+  }
+
+  public ScriptInterruptedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
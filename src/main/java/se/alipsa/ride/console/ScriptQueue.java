@@ -0,0 +1,215 @@
+package se.alipsa.ride.console;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.alipsa.ride.metrics.LatencyTimer;
+import se.alipsa.ride.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution queue for everything that uses one script engine and session, the main session has one queue and
+ * each parallel session has its own. Tasks are executed one at a time on a reused worker thread, user initiated
+ * tasks before background tasks and in the order they were submitted within the same priority.
+ * The task passed in is the cancellation handle, calling cancel() on a queued task means it will never run.
+ */
+public class ScriptQueue {
+
+  public enum Priority {
+    USER,
+    BACKGROUND
+  }
+
+  private static final Logger log = LogManager.getLogger(ScriptQueue.class);
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  /** tasks waiting in all queues */
+  private static final AtomicInteger waitingTasks = new AtomicInteger();
+  private static final LatencyTimer waitTimer = Metrics.timer("engine.queue.wait");
+  private static final LatencyTimer runTimer = Metrics.timer("engine.task.run");
+
+  static {
+    Metrics.gauge("engine.queue.waiting", waitingTasks::get);
+  }
+
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, QueuedTask> pendingByKey = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor executor;
+  private volatile QueuedTask current;
+
+  public ScriptQueue() {
+    // one thread only since the session is not thread safe, the queue is what orders the work
+    executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+      Thread thread = new Thread(r, "ride-engine-" + threadCount.incrementAndGet());
+      // Do not prevent the jvm from exiting if a script is still running when the application is closed
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public <T extends RunnableFuture<?>> T submit(T task, String context, Priority priority) {
+    log.debug("Queueing {} with priority {}, {} tasks waiting", context, priority, executor.getQueue().size());
+    waitingTasks.incrementAndGet();
+    try {
+      executor.execute(new QueuedTask(task, context, priority, null));
+    } catch (RejectedExecutionException e) {
+      waitingTasks.decrementAndGet();
+      throw e;
+    }
+    return task;
+  }
+
+  /**
+   * Same as submit but if a task with the same key is already waiting in the queue the new task is discarded
+   * and the one already waiting is returned instead.
+   */
+  public RunnableFuture<?> submitCoalesced(RunnableFuture<?> task, String key, Priority priority) {
+    QueuedTask queued = new QueuedTask(task, key, priority, key);
+    QueuedTask winner = pendingByKey.compute(key, (k, pending) ->
+        pending != null && !pending.task.isDone() ? pending : queued
+    );
+    if (winner != queued) {
+      log.debug("{} is already queued, skipping duplicate request", key);
+      return winner.task;
+    }
+    log.debug("Queueing {} with priority {}, {} tasks waiting", key, priority, executor.getQueue().size());
+    waitingTasks.incrementAndGet();
+    try {
+      executor.execute(queued);
+    } catch (RejectedExecutionException e) {
+      waitingTasks.decrementAndGet();
+      pendingByKey.remove(key, queued);
+      throw e;
+    }
+    return task;
+  }
+
+  /**
+   * Cancel all tasks waiting in the queue, the one currently running (if any) is not affected.
+   */
+  public void cancelPending() {
+    List<Runnable> waiting = new ArrayList<>();
+    executor.getQueue().drainTo(waiting);
+    for (Runnable runnable : waiting) {
+      QueuedTask queued = (QueuedTask) runnable;
+      waitingTasks.decrementAndGet();
+      Metrics.counter("engine.task.cancelled").increment();
+      log.info("Cancelling {}", queued.context);
+      queued.task.cancel(false);
+      if (queued.key != null) {
+        pendingByKey.remove(queued.key, queued);
+      }
+    }
+  }
+
+  /**
+   * Ask the task that is running to stop. The thread is interrupted which the script engine checks as it
+   * evaluates, the output writers check it as well. Nothing is forced so the session stays usable.
+   *
+   * @return the thread running the task or null if nothing is running
+   */
+  public Thread interruptRunning() {
+    QueuedTask running = current;
+    Thread thread = running == null ? null : running.thread;
+    if (thread == null) {
+      return null;
+    }
+    log.info("Interrupting {}", running.context);
+    running.interruptRequested = true;
+    thread.interrupt();
+    return thread;
+  }
+
+  /**
+   * @return true if the task running on the calling thread has been asked to stop
+   */
+  public boolean isInterruptRequested() {
+    QueuedTask running = current;
+    return running != null && running.thread == Thread.currentThread() && running.interruptRequested;
+  }
+
+  public Thread getRunningThread() {
+    QueuedTask running = current;
+    return running == null ? null : running.thread;
+  }
+
+  public String getRunningContext() {
+    QueuedTask running = current;
+    return running == null ? null : running.context;
+  }
+
+  public boolean isBusy() {
+    return current != null;
+  }
+
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  public void shutdown() {
+    cancelPending();
+    executor.shutdown();
+  }
+
+  private class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+    private final RunnableFuture<?> task;
+    private final String context;
+    private final Priority priority;
+    private final String key;
+    private final long seq;
+    private final long queuedAt = System.nanoTime();
+    private volatile Thread thread;
+    private volatile boolean interruptRequested;
+
+    QueuedTask(RunnableFuture<?> task, String context, Priority priority, String key) {
+      this.task = task;
+      this.context = context;
+      this.priority = priority;
+      this.key = key;
+      this.seq = sequence.getAndIncrement();
+    }
+
+    @Override
+    public void run() {
+      waitingTasks.decrementAndGet();
+      if (key != null) {
+        pendingByKey.remove(key, this);
+      }
+      if (task.isDone()) {
+        log.debug("{} was cancelled before it started", context);
+        Metrics.counter("engine.task.cancelled").increment();
+        return;
+      }
+      long start = System.nanoTime();
+      waitTimer.record(start - queuedAt);
+      thread = Thread.currentThread();
+      current = this;
+      log.debug("Running {}", context);
+      try {
+        task.run();
+      } finally {
+        runTimer.recordSince(start);
+        current = null;
+        thread = null;
+        // the worker thread is reused so an interrupt must not carry over to the next task
+        Thread.interrupted();
+      }
+    }
+
+    @Override
+    public int compareTo(QueuedTask other) {
+      int cmp = priority.compareTo(other.priority);
+      return cmp != 0 ? cmp : Long.compare(seq, other.seq);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package se.alipsa.ride.console;
+
+import org.renjin.eval.Session;
+import org.renjin.script.RenjinScriptEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Renjin session and the engine evaluating in it. The main session is the one used by the console, the
+ * parallel sessions are created when a tab bound to one of them runs a script, each with its own queue so that
+ * scripts in different sessions run at the same time. Tabs bound to the same session share its variables.
+ */
+public class ScriptSession {
+
+  public static final String MAIN = "main";
+  private static final int MAX_PARALLEL_SESSIONS = 8;
+
+  private final String name;
+  private final Session session;
+  private final RenjinScriptEngine engine;
+
+  public ScriptSession(String name, Session session, RenjinScriptEngine engine) {
+    this.name = name;
+    this.session = session;
+    this.engine = engine;
+  }
+
+  /**
+   * @return the main session followed by one parallel session per available core (within reason)
+   */
+  public static List<String> names() {
+    int parallel = Math.max(1, Math.min(MAX_PARALLEL_SESSIONS, Runtime.getRuntime().availableProcessors() - 1));
+    List<String> names = new ArrayList<>();
+    names.add(MAIN);
+    for (int i = 2; i <= parallel + 1; i++) {
+      names.add("session " + i);
+    }
+    return names;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  public RenjinScriptEngine getEngine() {
+    return engine;
+  }
+
+  public boolean isMain() {
+    return MAIN.equals(name);
+  }
+
+  /**
+   * @return what to put in front of output so that it is clear which session it comes from (nothing for main)
+   */
+  public String getOutputPrefix() {
+    return isMain() ? "" : "[" + name + "] ";
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
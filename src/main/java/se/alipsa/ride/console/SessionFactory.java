@@ -0,0 +1,180 @@
+package se.alipsa.ride.console;
+
+import static se.alipsa.ride.menu.GlobalOptions.ADD_BUILDDIR_TO_CLASSPATH;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.renjin.aether.AetherFactory;
+import org.renjin.aether.AetherPackageLoader;
+import org.renjin.aether.ConsoleRepositoryListener;
+import org.renjin.aether.ConsoleTransferListener;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.primitives.packaging.ClasspathPackageLoader;
+import org.renjin.primitives.packaging.PackageLoader;
+import se.alipsa.ride.model.Repo;
+import se.alipsa.ride.utils.maven.MavenUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.prefs.Preferences;
+
+/**
+ * The parts of creating a Renjin session that depend on the preferences and the project dir only, i.e. not on
+ * the gui. Used by the console and by the batch runner which runs scripts without starting the gui.
+ */
+public final class SessionFactory {
+
+  public static final Repo RENJIN_REPO = asRepo(AetherFactory.renjinRepo());
+  public static final Repo MVN_CENTRAL_REPO = asRepo(AetherFactory.mavenCentral());
+
+  private static final Logger log = LogManager.getLogger(SessionFactory.class);
+
+  private SessionFactory() {
+    // static methods only
+  }
+
+  /**
+   * The class loader with the project classes: the dependencies of the pom if the maven classloader is used
+   * or else the build dirs of the project (if the preferences says so).
+   *
+   * @param progress receives messages about the resolution of the maven dependencies
+   * @throws se.alipsa.ride.utils.maven.DependenciesResolveException if the maven dependencies could not be resolved
+   */
+  public static ClassLoader projectClassLoader(Preferences prefs, File projectDir, boolean useMavenClassloader,
+                                               ClassLoader parentClassLoader, Consumer<String> progress) throws Exception {
+    ClassLoader cl = parentClassLoader;
+    if (projectDir != null && useMavenClassloader) {
+      File pomFile = new File(projectDir, "pom.xml");
+      if (pomFile.exists()) {
+        log.info("Parsing pom to use maven classloader");
+        progress.accept("* Parsing pom to create maven classloader...");
+        cl = MavenUtils.getMavenDependenciesClassloader(pomFile, parentClassLoader, progress);
+      } else {
+        log.info("Use maven class loader is set but pomfile {} does not exist", pomFile);
+      }
+    } else if (prefs.getBoolean(ADD_BUILDDIR_TO_CLASSPATH, true) && projectDir != null && projectDir.exists()) {
+      File classesDir = new File(projectDir, "target/classes");
+      List<URL> urlList = new ArrayList<>();
+      try {
+        if (classesDir.exists()) {
+          urlList.add(classesDir.toURI().toURL());
+        }
+        File testClasses = new File(projectDir, "target/test-classes");
+        if (testClasses.exists()) {
+          urlList.add(testClasses.toURI().toURL());
+        }
+      } catch (MalformedURLException e) {
+        log.warn("Failed to find classes dir", e);
+      }
+      if (urlList.size() > 0) {
+        log.info("Adding compile dirs to classloader: {}", urlList);
+        cl = new URLClassLoader(urlList.toArray(new URL[0]), cl);
+      }
+    }
+    return cl;
+  }
+
+  public static PackageLoader packageLoader(ClassLoader parentClassLoader, String pkgLoaderName,
+                                            List<RemoteRepository> remoteRepositories) {
+    if (ClasspathPackageLoader.class.getSimpleName().equals(pkgLoaderName)) {
+      return new ClasspathPackageLoader(parentClassLoader);
+    }
+    AetherPackageLoader loader = new AetherPackageLoader(parentClassLoader, remoteRepositories);
+    if (log.isDebugEnabled()) {
+      log.debug("DEBUG enabled, package loading activities will be echoed to console");
+      loader.setRepositoryListener(new ConsoleRepositoryListener(System.out));
+      loader.setTransferListener(new ConsoleTransferListener(System.out));
+    }
+    return loader;
+  }
+
+  /**
+   * @param cl the class loader used to create the package loader
+   * @return the class loader that R code importing java classes should use
+   */
+  public static ClassLoader sessionClassLoader(PackageLoader loader, ClassLoader cl) {
+    if (loader instanceof AetherPackageLoader) {
+      return ((AetherPackageLoader) loader).getClassLoader();
+    }
+    return cl;
+  }
+
+  public static Session newSession(PackageLoader loader, ClassLoader cl) {
+    return new SessionBuilder()
+        .withDefaultPackages()
+        .setPackageLoader(loader) // allows library to work without having to include in the pom
+        .setClassLoader(cl) //allows imports in r code to work
+        .build();
+  }
+
+  /**
+   * @return the package loader set with a system property or in the preferences
+   */
+  public static String packageLoaderName(Preferences prefs) {
+    String overridePackageLoader = System.getProperty(ConsoleComponent.PACKAGE_LOADER_PREF);
+    if (overridePackageLoader != null) {
+      return overridePackageLoader;
+    }
+    return prefs.get(ConsoleComponent.PACKAGE_LOADER_PREF, AetherPackageLoader.class.getSimpleName());
+  }
+
+  public static Repo asRepo(RemoteRepository repo) {
+    return new Repo(repo.getId(), repo.getContentType(), repo.getUrl());
+  }
+
+  public static List<RemoteRepository> asRemoteRepositories(List<Repo> items) {
+    List<RemoteRepository> list = new ArrayList<>();
+    for (Repo repo : items) {
+      list.add(new RemoteRepository.Builder(repo.getId(), repo.getType(), repo.getUrl()).build());
+    }
+    return list;
+  }
+
+  public static List<Repo> storedRemoteRepositories(Preferences prefs) {
+    List<Repo> list = new ArrayList<>();
+    String remotes = prefs.get(ConsoleComponent.REMOTE_REPOSITORIES_PREF, null);
+    log.debug("Remotes from prefs are: {}", remotes);
+    if (remotes == null) {
+      log.info("No stored prefs for remote repos, adding defaults");
+      addDefaultRepos(list);
+      return list;
+    }
+    ObjectMapper mapper = new ObjectMapper();
+    try {
+      list = mapper.readValue(remotes, new TypeReference<List<Repo>>() {
+      });
+    } catch (InvalidDefinitionException e) {
+      e.printStackTrace();
+      log.warn("Something is wrong with the pref key {}, deleting it to start fresh",
+          ConsoleComponent.REMOTE_REPOSITORIES_PREF);
+      prefs.remove(ConsoleComponent.REMOTE_REPOSITORIES_PREF);
+      addDefaultRepos(list);
+    } catch (IOException e) {
+      e.printStackTrace();
+      addDefaultRepos(list);
+    }
+    return list;
+  }
+
+  private static void addDefaultRepos(List<Repo> list) {
+    log.info("add local repo");
+    String localRepoPath = System.getProperty("localRepository"); // c:/Users/blah/.m2/repository
+    Repo local = new Repo("local", "default", "file:" + localRepoPath);
+    list.add(local);
+    log.info("add renjin repo");
+    list.add(RENJIN_REPO);
+    log.info("add maven central repo");
+    list.add(MVN_CENTRAL_REPO);
+  }
+}
@@ -5,14 +5,30 @@ import java.io.Writer;
 public class WarningAppenderWriter extends Writer {
 
     private ConsoleTextArea console;
+    private final LinePrefixer prefixer;
 
     public WarningAppenderWriter(ConsoleTextArea console) {
+        this(console, "");
+    }
+
+    /**
+     * @param prefix put in front of each line written, e.g. the name of the session the output comes from
+     */
+    public WarningAppenderWriter(ConsoleTextArea console, String prefix) {
         this.console = console;
+        this.prefixer = new LinePrefixer(prefix);
     }
 
+    /**
+     * Output is a natural point for a running script to notice that it has been interrupted, the exception
+     * propagates out of the script engine.
+     */
     @Override
     public void write(char[] cbuf, int off, int len) {
-        console.appendWarningFx(new String(cbuf, off, len));
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ScriptInterruptedException("Script interrupted");
+        }
+        console.appendWarningFx(prefixer.apply(new String(cbuf, off, len)));
     }
 
     @Override
@@ -0,0 +1,72 @@
+package se.alipsa.ride.console.profiler;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The samples taken in a frame, merged for all the stacks that share the same path from the root.
+ */
+public class CallTreeNode {
+
+  private final Frame frame;
+  private final Map<Frame, CallTreeNode> children = new LinkedHashMap<>();
+  private int samples;
+  private int selfSamples;
+  private long allocatedBytes;
+  private long selfAllocatedBytes;
+
+  CallTreeNode(Frame frame) {
+    this.frame = frame;
+  }
+
+  /**
+   * Add a sample for the stack (root first) below this node.
+   */
+  void add(List<Frame> stack, long allocated) {
+    CallTreeNode node = this;
+    node.addSample(allocated);
+    for (Frame f : stack) {
+      node = node.children.computeIfAbsent(f, CallTreeNode::new);
+      node.addSample(allocated);
+    }
+    node.selfSamples++;
+    node.selfAllocatedBytes += allocated;
+  }
+
+  private void addSample(long allocated) {
+    samples++;
+    allocatedBytes += allocated;
+  }
+
+  public Frame getFrame() {
+    return frame;
+  }
+
+  public Collection<CallTreeNode> getChildren() {
+    return children.values();
+  }
+
+  /**
+   * @return the number of samples in this frame or a frame called from it
+   */
+  public int getSamples() {
+    return samples;
+  }
+
+  /**
+   * @return the number of samples where this frame was the innermost one
+   */
+  public int getSelfSamples() {
+    return selfSamples;
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public long getSelfAllocatedBytes() {
+    return selfAllocatedBytes;
+  }
+}
@@ -0,0 +1,97 @@
+package se.alipsa.ride.console.profiler;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
+
+import java.util.Locale;
+
+/**
+ * Renders the call tree of a profile as a flame graph in html: the top level expressions at the bottom and the
+ * frames they called stacked on top, the width of a frame is its share of the samples.
+ */
+final class FlameGraph {
+
+  private static final int ROW_HEIGHT = 18;
+  /** frames narrower than this (in percent of the width) are not drawn */
+  private static final double MIN_WIDTH_PERCENT = 0.1;
+  private static final String STYLE = "<style>\n"
+      + "body { font-family: sans-serif; font-size: 12px; }\n"
+      + ".graph { position: relative; width: 100%; }\n"
+      + ".frame { position: absolute; height: " + (ROW_HEIGHT - 1) + "px; line-height: " + (ROW_HEIGHT - 1) + "px;"
+      + " overflow: hidden; white-space: nowrap; text-overflow: ellipsis; box-sizing: border-box;"
+      + " border-right: 1px solid white; padding-left: 2px; font-size: 11px; cursor: default; }\n"
+      + ".frame:hover { filter: brightness(85%); }\n"
+      + "</style>\n";
+
+  private FlameGraph() {
+    // static methods only
+  }
+
+  static String toHtml(ScriptProfile profile, String title) {
+    CallTreeNode root = profile.getRoot();
+    int maxDepth = maxDepth(root, 0);
+    StringBuilder html = new StringBuilder("<html><head>").append(STYLE).append("</head><body>\n");
+    html.append("<h3>").append(escapeHtml4(title)).append("</h3>\n");
+    html.append(String.format(Locale.US, "<p>%d samples taken every %d ms during %.1f s, hover a frame for details</p>%n",
+        profile.getSampleCount(), profile.getIntervalMillis(), profile.getDurationMillis() / 1000));
+    html.append("<div class=\"graph\" style=\"height:").append((maxDepth + 1) * ROW_HEIGHT).append("px\">\n");
+    if (root.getSamples() > 0) {
+      appendFrame(html, profile, root, 0, 0, maxDepth);
+    }
+    html.append("</div>\n</body></html>");
+    return html.toString();
+  }
+
+  private static void appendFrame(StringBuilder html, ScriptProfile profile, CallTreeNode node, int depth,
+                                  double left, int maxDepth) {
+    int total = profile.getSampleCount();
+    double width = 100.0 * node.getSamples() / total;
+    if (width < MIN_WIDTH_PERCENT) {
+      return;
+    }
+    Frame frame = node.getFrame();
+    String tooltip = String.format(Locale.US, "%s (%s)%n%d samples, %.1f%%, ~%.0f ms%n%.1f MB allocated",
+        frame.getName(), frame.getKind(), node.getSamples(), width, profile.estimatedMillis(node.getSamples()),
+        node.getAllocatedBytes() / (1024.0 * 1024.0));
+    html.append(String.format(Locale.US,
+        "<div class=\"frame\" style=\"left:%.3f%%;width:%.3f%%;top:%dpx;background:%s\" title=\"%s\">%s</div>%n",
+        left, width, (maxDepth - depth) * ROW_HEIGHT, color(frame), escapeHtml4(tooltip), escapeHtml4(frame.getName())));
+    double childLeft = left;
+    for (CallTreeNode child : node.getChildren()) {
+      appendFrame(html, profile, child, depth + 1, childLeft, maxDepth);
+      childLeft += 100.0 * child.getSamples() / total;
+    }
+  }
+
+  private static int maxDepth(CallTreeNode node, int depth) {
+    int max = depth;
+    for (CallTreeNode child : node.getChildren()) {
+      max = Math.max(max, maxDepth(child, depth + 1));
+    }
+    return max;
+  }
+
+  /**
+   * A hue for each kind of frame, the lightness varies with the name so that neighbours can be told apart.
+   */
+  private static String color(Frame frame) {
+    int hue;
+    switch (frame.getKind()) {
+      case EXPRESSION:
+        hue = 200;
+        break;
+      case FUNCTION:
+        hue = 160;
+        break;
+      case BUILTIN:
+        hue = 30;
+        break;
+      case RENJIN:
+        hue = 50;
+        break;
+      default:
+        hue = 5;
+    }
+    int lightness = 60 + Math.floorMod(frame.getName().hashCode(), 20);
+    return "hsl(" + hue + ",70%," + lightness + "%)";
+  }
+}
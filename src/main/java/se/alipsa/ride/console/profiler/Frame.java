@@ -0,0 +1,67 @@
+package se.alipsa.ride.console.profiler;
+
+import java.util.Objects;
+
+/**
+ * A node in the profiled call stacks: a top level expression of the script, an R function call or a (collapsed)
+ * stack frame of the thread evaluating it.
+ */
+public class Frame {
+
+  public enum Kind {
+    EXPRESSION("R expression"),
+    FUNCTION("R function"),
+    BUILTIN("R builtin"),
+    RENJIN("Renjin"),
+    JAVA("Java");
+
+    private final String description;
+
+    Kind(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public String toString() {
+      return description;
+    }
+  }
+
+  private final String name;
+  private final Kind kind;
+
+  public Frame(String name, Kind kind) {
+    this.name = name;
+    this.kind = kind;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Frame)) {
+      return false;
+    }
+    Frame frame = (Frame) o;
+    return name.equals(frame.name) && kind == frame.kind;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(name, kind);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
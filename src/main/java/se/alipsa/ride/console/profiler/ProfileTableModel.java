@@ -0,0 +1,50 @@
+package se.alipsa.ride.console.profiler;
+
+import se.alipsa.ride.inout.viewer.ViewTableModel;
+
+import java.text.NumberFormat;
+import java.util.List;
+
+/**
+ * The hot spots or expressions of a profile in the viewer, the numbers are kept as such so they sort correctly.
+ */
+class ProfileTableModel implements ViewTableModel {
+
+  private final List<String> headerList;
+  private final List<Object[]> rows;
+  private final NumberFormat numberFormatter;
+
+  ProfileTableModel(List<String> headerList, List<Object[]> rows) {
+    this.headerList = headerList;
+    this.rows = rows;
+    numberFormatter = NumberFormat.getInstance();
+    numberFormatter.setGroupingUsed(false);
+    numberFormatter.setMaximumFractionDigits(1);
+  }
+
+  @Override
+  public List<String> getHeaderList() {
+    return headerList;
+  }
+
+  @Override
+  public int getRowCount() {
+    return rows.size();
+  }
+
+  @Override
+  public Object getValue(int row, int column) {
+    return rows.get(row)[column];
+  }
+
+  @Override
+  public String format(Object value) {
+    if (value == null) {
+      return "";
+    }
+    if (value instanceof Number) {
+      return numberFormatter.format(value);
+    }
+    return value.toString();
+  }
+}
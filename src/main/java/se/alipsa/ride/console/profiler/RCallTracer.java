@@ -0,0 +1,123 @@
+package se.alipsa.ride.console.profiler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.renjin.eval.Context;
+import org.renjin.eval.EvalException;
+import org.renjin.sexp.Closure;
+import org.renjin.sexp.Environment;
+import org.renjin.sexp.FunctionCall;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.Symbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Makes the R call stack of the thread evaluating a profiled script visible to the sampler. Renjin hands the
+ * evaluation Context down the calls rather than keeping it where another thread can read it, so the closures
+ * in the global environment are swapped for copies that publish the Context they are called from. The sampler
+ * walks from there to the top level with Context.getParent() and getCall(), which also picks up the package
+ * functions in between; the package functions called from the innermost traced closure are not seen, their
+ * time shows up in the jvm frames below it.
+ */
+public class RCallTracer {
+
+  private static final Logger log = LogManager.getLogger(RCallTracer.class);
+  private static final int MAX_NAME_LENGTH = 60;
+
+  private final Set<Symbol> traced = new HashSet<>();
+  private volatile Call current;
+
+  /**
+   * Trace the closures in the environment that are not traced already, call it from the evaluating thread before
+   * each top level expression so that the functions defined by the previous ones are traced as well.
+   */
+  public void trace(Environment env, Context context) {
+    for (Symbol name : env.getSymbolNames()) {
+      SEXP value = env.getVariable(context, name);
+      if (value instanceof Closure && !(value instanceof TracedClosure)) {
+        try {
+          env.setVariable(context, name, new TracedClosure((Closure) value, this));
+          traced.add(name);
+        } catch (EvalException e) {
+          log.debug("Cannot trace {}: {}", name, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Put back the original closures, unless the script has assigned something else to the name.
+   */
+  public void restore(Environment env, Context context) {
+    for (Symbol name : traced) {
+      SEXP value = env.getVariable(context, name);
+      if (value instanceof TracedClosure && ((TracedClosure) value).getTracer() == this) {
+        env.setVariable(context, name, ((TracedClosure) value).getOriginal());
+      }
+    }
+    traced.clear();
+    current = null;
+  }
+
+  Call enter(Context context, FunctionCall call) {
+    Call caller = current;
+    current = new Call(context, call);
+    return caller;
+  }
+
+  void exit(Call caller) {
+    current = caller;
+  }
+
+  /**
+   * @return the R calls being evaluated right now, outermost first, empty when not in a traced closure
+   */
+  public List<Frame> currentCalls() {
+    Call call = current;
+    if (call == null) {
+      return Collections.emptyList();
+    }
+    List<Frame> frames = new ArrayList<>();
+    frames.add(frameOf(call.call));
+    for (Context context = call.context; context != null && !context.isTopLevel(); context = context.getParent()) {
+      if (context.getClosure() != null) {
+        frames.add(frameOf(context.getCall()));
+      }
+    }
+    Collections.reverse(frames);
+    return frames;
+  }
+
+  private static Frame frameOf(FunctionCall call) {
+    SEXP function = call.getFunction();
+    String name;
+    if (function instanceof Symbol) {
+      name = ((Symbol) function).getPrintName();
+    } else {
+      // e.g. pkg::f or an anonymous function
+      name = function.toString();
+      if (name.length() > MAX_NAME_LENGTH) {
+        name = name.substring(0, MAX_NAME_LENGTH) + "...";
+      }
+    }
+    return new Frame(name, Frame.Kind.FUNCTION);
+  }
+
+  /**
+   * A call to a traced closure and the context it was called from
+   */
+  static class Call {
+    private final Context context;
+    private final FunctionCall call;
+
+    Call(Context context, FunctionCall call) {
+      this.context = context;
+      this.call = call;
+    }
+  }
+}
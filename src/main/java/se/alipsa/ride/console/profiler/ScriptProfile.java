@@ -0,0 +1,229 @@
+package se.alipsa.ride.console.profiler;
+
+import se.alipsa.ride.inout.viewer.ViewTableModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of profiling a script: the time and allocations of each top level expression and the samples
+ * merged into a call tree, one with the R calls and the jvm frames below them and one with the R calls only.
+ * The time of a frame is estimated from its share of the samples.
+ */
+public class ScriptProfile {
+
+  private static final double MB = 1024.0 * 1024.0;
+
+  private final CallTreeNode root;
+  private final CallTreeNode calls;
+  private final List<Expression> expressions;
+  private final long intervalMillis;
+  private final long durationNanos;
+
+  ScriptProfile(CallTreeNode root, CallTreeNode calls, List<Expression> expressions, long intervalMillis,
+                long durationNanos) {
+    this.root = root;
+    this.calls = calls;
+    this.expressions = new ArrayList<>(expressions);
+    this.intervalMillis = intervalMillis;
+    this.durationNanos = durationNanos;
+  }
+
+  public CallTreeNode getRoot() {
+    return root;
+  }
+
+  /**
+   * @return the call tree of the expressions and the R calls, without the jvm frames
+   */
+  public CallTreeNode getCalls() {
+    return calls;
+  }
+
+  public List<Expression> getExpressions() {
+    return Collections.unmodifiableList(expressions);
+  }
+
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public double getDurationMillis() {
+    return durationNanos / 1e6;
+  }
+
+  public int getSampleCount() {
+    return root.getSamples();
+  }
+
+  public double estimatedMillis(int samples) {
+    int total = getSampleCount();
+    return total == 0 ? 0 : getDurationMillis() * samples / total;
+  }
+
+  /**
+   * @return the frames, jvm frames included, sorted by the time spent in the frame itself (i.e. not in the frames
+   * it called)
+   */
+  public List<HotSpot> getHotSpots() {
+    return hotSpots(root);
+  }
+
+  /**
+   * @return the expressions and R functions sorted by the time spent in them and not in the R functions they
+   * called
+   */
+  public List<HotSpot> getFunctionHotSpots() {
+    return hotSpots(calls);
+  }
+
+  private static List<HotSpot> hotSpots(CallTreeNode top) {
+    Map<Frame, HotSpot> hotSpots = new LinkedHashMap<>();
+    for (CallTreeNode child : top.getChildren()) {
+      collect(child, hotSpots, new HashSet<>());
+    }
+    List<HotSpot> sorted = new ArrayList<>(hotSpots.values());
+    sorted.sort(Comparator.comparingInt(HotSpot::getSelfSamples).thenComparingInt(HotSpot::getTotalSamples).reversed());
+    return sorted;
+  }
+
+  private static void collect(CallTreeNode node, Map<Frame, HotSpot> hotSpots, Set<Frame> callers) {
+    HotSpot hotSpot = hotSpots.computeIfAbsent(node.getFrame(), HotSpot::new);
+    hotSpot.selfSamples += node.getSelfSamples();
+    hotSpot.selfAllocatedBytes += node.getSelfAllocatedBytes();
+    // a recursive call is already counted in the total of the outer call
+    boolean recursive = !callers.add(node.getFrame());
+    if (!recursive) {
+      hotSpot.totalSamples += node.getSamples();
+    }
+    for (CallTreeNode child : node.getChildren()) {
+      collect(child, hotSpots, callers);
+    }
+    if (!recursive) {
+      callers.remove(node.getFrame());
+    }
+  }
+
+  public ViewTableModel functionTable() {
+    return hotSpotTable(getFunctionHotSpots());
+  }
+
+  public ViewTableModel hotSpotTable() {
+    return hotSpotTable(getHotSpots());
+  }
+
+  private ViewTableModel hotSpotTable(List<HotSpot> hotSpots) {
+    List<Object[]> rows = new ArrayList<>();
+    int total = getSampleCount();
+    for (HotSpot hotSpot : hotSpots) {
+      rows.add(new Object[]{
+          hotSpot.getFrame().getName(),
+          hotSpot.getFrame().getKind().toString(),
+          estimatedMillis(hotSpot.getSelfSamples()),
+          percent(hotSpot.getSelfSamples(), total),
+          estimatedMillis(hotSpot.getTotalSamples()),
+          percent(hotSpot.getTotalSamples(), total),
+          hotSpot.getSelfAllocatedBytes() / MB,
+          hotSpot.getTotalSamples()
+      });
+    }
+    return new ProfileTableModel(Arrays.asList("Function", "Type", "Self (ms)", "Self %", "Total (ms)", "Total %",
+        "Self allocated (MB)", "Samples"), rows);
+  }
+
+  public ViewTableModel expressionTable() {
+    List<Object[]> rows = new ArrayList<>();
+    double duration = getDurationMillis();
+    for (Expression expression : expressions) {
+      rows.add(new Object[]{
+          expression.getIndex(),
+          expression.getSource(),
+          expression.getWallMillis(),
+          duration == 0 ? 0.0 : 100 * expression.getWallMillis() / duration,
+          expression.getAllocatedBytes() < 0 ? null : expression.getAllocatedBytes() / MB
+      });
+    }
+    return new ProfileTableModel(Arrays.asList("#", "Expression", "Time (ms)", "% of run", "Allocated (MB)"), rows);
+  }
+
+  public String toFlameGraphHtml(String title) {
+    return FlameGraph.toHtml(this, title);
+  }
+
+  private static double percent(int samples, int total) {
+    return total == 0 ? 0 : 100.0 * samples / total;
+  }
+
+  /**
+   * A top level expression of the script
+   */
+  public static class Expression {
+    private final int index;
+    private final String source;
+    private final long wallNanos;
+    private final long allocatedBytes;
+
+    Expression(int index, String source, long wallNanos, long allocatedBytes) {
+      this.index = index;
+      this.source = source;
+      this.wallNanos = wallNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public String getSource() {
+      return source;
+    }
+
+    public double getWallMillis() {
+      return wallNanos / 1e6;
+    }
+
+    /**
+     * @return the bytes allocated by the evaluating thread or -1 if not supported by the jvm
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+  }
+
+  /**
+   * The samples of a frame summed over all the paths it was called from
+   */
+  public static class HotSpot {
+    private final Frame frame;
+    private int selfSamples;
+    private int totalSamples;
+    private long selfAllocatedBytes;
+
+    HotSpot(Frame frame) {
+      this.frame = frame;
+    }
+
+    public Frame getFrame() {
+      return frame;
+    }
+
+    public int getSelfSamples() {
+      return selfSamples;
+    }
+
+    public int getTotalSamples() {
+      return totalSamples;
+    }
+
+    public long getSelfAllocatedBytes() {
+      return selfAllocatedBytes;
+    }
+  }
+}
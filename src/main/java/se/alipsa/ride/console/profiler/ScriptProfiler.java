@@ -0,0 +1,213 @@
+package se.alipsa.ride.console.profiler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Profiles a script evaluated one top level expression at a time. The wall clock time and the bytes allocated
+ * are recorded for each expression and the evaluating thread is sampled at a fixed interval. A sample is
+ * attributed to the R calls being evaluated (see {@link RCallTracer}) and below the innermost of them to the jvm
+ * stack, collapsed to the frames that tell where the time goes (R builtins, compiled packages and java code
+ * called from R) with the interpreter frames in between left out.
+ */
+public class ScriptProfiler {
+
+  public static final int SAMPLE_INTERVAL_DEFAULT = 20;
+
+  private static final Logger log = LogManager.getLogger(ScriptProfiler.class);
+  /** the interpreter and the code driving the evaluation, they say nothing about where the time is spent */
+  private static final String[] IGNORED_PACKAGES = {
+      "org.renjin.eval.", "org.renjin.sexp.", "org.renjin.invoke.", "org.renjin.script.", "org.renjin.parser.",
+      "org.renjin.primitives.special.", "java.lang.reflect.", "java.lang.invoke.", "sun.reflect.",
+      "jdk.internal.reflect.", "javax.script.", "se.alipsa.ride.console."
+  };
+
+  private final long intervalMillis;
+  private final CallTreeNode root = new CallTreeNode(new Frame("all", Frame.Kind.EXPRESSION));
+  /** the same samples with the R calls only */
+  private final CallTreeNode calls = new CallTreeNode(new Frame("all", Frame.Kind.EXPRESSION));
+  private final RCallTracer callTracer = new RCallTracer();
+  private final List<ScriptProfile.Expression> expressions = new ArrayList<>();
+  private final com.sun.management.ThreadMXBean threadBean = allocationBean();
+  private ScheduledExecutorService sampler;
+  private volatile Thread thread;
+  private volatile Frame currentExpression;
+  private long lastAllocated;
+  private long startNanos;
+  private ScriptProfile profile;
+
+  public ScriptProfiler(long intervalMillis) {
+    this.intervalMillis = Math.max(1, intervalMillis);
+  }
+
+  /**
+   * @return the tracer the R calls of the sampled thread are read from
+   */
+  public RCallTracer getCallTracer() {
+    return callTracer;
+  }
+
+  /**
+   * Start sampling the calling thread, i.e. the one that will evaluate the expressions.
+   */
+  public synchronized void start() {
+    thread = Thread.currentThread();
+    startNanos = System.nanoTime();
+    lastAllocated = allocatedBytes(thread);
+    sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread samplerThread = new Thread(r, "ride-profiler");
+      samplerThread.setDaemon(true);
+      return samplerThread;
+    });
+    sampler.scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Evaluate a top level expression, the samples taken meanwhile are attributed to it.
+   */
+  public <T> T profile(int index, String source, Supplier<T> expression) {
+    long allocatedBefore = allocatedBytes(Thread.currentThread());
+    long start = System.nanoTime();
+    currentExpression = new Frame("#" + index + " " + source, Frame.Kind.EXPRESSION);
+    try {
+      return expression.get();
+    } finally {
+      currentExpression = null;
+      long wallNanos = System.nanoTime() - start;
+      long allocatedAfter = allocatedBytes(Thread.currentThread());
+      long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+      synchronized (this) {
+        expressions.add(new ScriptProfile.Expression(index, source, wallNanos, allocated));
+      }
+    }
+  }
+
+  /**
+   * Stop sampling, it is fine to call this more than once (e.g. when the script failed).
+   */
+  public synchronized ScriptProfile stop() {
+    if (profile == null) {
+      if (sampler != null) {
+        sampler.shutdownNow();
+      }
+      profile = new ScriptProfile(root, calls, expressions, intervalMillis, System.nanoTime() - startNanos);
+      log.info("Profiled {} expressions, {} samples", expressions.size(), root.getSamples());
+    }
+    return profile;
+  }
+
+  private void sample() {
+    Thread sampled = thread;
+    Frame expression = currentExpression;
+    long allocated = allocatedBytes(sampled);
+    List<Frame> rCalls = expression == null ? null : callTracer.currentCalls();
+    StackTraceElement[] stack = expression == null ? null : sampled.getStackTrace();
+    synchronized (this) {
+      if (profile != null) {
+        return;
+      }
+      long delta = allocated < 0 || lastAllocated < 0 ? 0 : allocated - lastAllocated;
+      lastAllocated = allocated;
+      if (stack != null) {
+        addSample(expression, rCalls, stack, delta);
+      }
+    }
+  }
+
+  /**
+   * Add a sample of the stack of the evaluating thread, taken while evaluating the expression outside of any
+   * traced R call.
+   */
+  public void addSample(Frame expression, StackTraceElement[] stack, long allocated) {
+    addSample(expression, Collections.emptyList(), stack, allocated);
+  }
+
+  /**
+   * Add a sample of the evaluating thread, taken while evaluating the expression.
+   *
+   * @param rCalls the R calls being evaluated, outermost first
+   * @param stack the jvm stack, innermost frame first
+   */
+  public synchronized void addSample(Frame expression, List<Frame> rCalls, StackTraceElement[] stack,
+                                     long allocated) {
+    List<Frame> frames = new ArrayList<>();
+    frames.add(expression);
+    frames.addAll(rCalls);
+    calls.add(frames, allocated);
+    frames.addAll(collapse(stack, !rCalls.isEmpty()));
+    root.add(frames, allocated);
+  }
+
+  /**
+   * @param stack innermost frame first, as returned by Thread.getStackTrace()
+   * @param inRCall whether the stack is below a traced R call, the frames above the innermost one are then
+   *                accounted for by the R calls
+   * @return the frames of interest, outermost first, from the profile() call evaluating the expression (or the
+   * innermost traced R call) and in
+   */
+  static List<Frame> collapse(StackTraceElement[] stack, boolean inRCall) {
+    int outermost = stack.length;
+    for (int i = 0; i < stack.length; i++) {
+      String className = stack[i].getClassName();
+      if (ScriptProfiler.class.getName().equals(className)
+          || inRCall && TracedClosure.class.getName().equals(className)) {
+        outermost = i;
+        break;
+      }
+    }
+    List<Frame> frames = new ArrayList<>();
+    Frame previous = null;
+    for (int i = outermost - 1; i >= 0; i--) {
+      Frame frame = frameOf(stack[i]);
+      // overloads and recursion within the same method is one frame
+      if (frame != null && !frame.equals(previous)) {
+        frames.add(frame);
+        previous = frame;
+      }
+    }
+    return frames;
+  }
+
+  static Frame frameOf(StackTraceElement element) {
+    String className = element.getClassName();
+    for (String ignored : IGNORED_PACKAGES) {
+      if (className.startsWith(ignored)) {
+        return null;
+      }
+    }
+    String name = className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName();
+    if (className.startsWith("org.renjin.primitives.")) {
+      return new Frame(name, Frame.Kind.BUILTIN);
+    }
+    if (className.startsWith("org.renjin.")) {
+      return new Frame(name, Frame.Kind.RENJIN);
+    }
+    return new Frame(name, Frame.Kind.JAVA);
+  }
+
+  private long allocatedBytes(Thread t) {
+    return threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(t.getId());
+  }
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+      if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+        return allocationBean;
+      }
+    }
+    log.info("Thread allocation is not available in this jvm, the profile will not include allocations");
+    return null;
+  }
+}
@@ -0,0 +1,41 @@
+package se.alipsa.ride.console.profiler;
+
+import org.renjin.eval.Context;
+import org.renjin.sexp.Closure;
+import org.renjin.sexp.Environment;
+import org.renjin.sexp.FunctionCall;
+import org.renjin.sexp.PairList;
+import org.renjin.sexp.SEXP;
+
+/**
+ * A copy of a closure (same formals, body and environment) that tells the call tracer when it is called.
+ */
+class TracedClosure extends Closure {
+
+  private final Closure original;
+  private final RCallTracer tracer;
+
+  TracedClosure(Closure original, RCallTracer tracer) {
+    super(original.getEnclosingEnvironment(), original.getFormals(), original.getBody(), original.getAttributes());
+    this.original = original;
+    this.tracer = tracer;
+  }
+
+  Closure getOriginal() {
+    return original;
+  }
+
+  RCallTracer getTracer() {
+    return tracer;
+  }
+
+  @Override
+  public SEXP apply(Context context, Environment rho, FunctionCall call, PairList args) {
+    RCallTracer.Call caller = tracer.enter(context, call);
+    try {
+      return super.apply(context, rho, call, args);
+    } finally {
+      tracer.exit(caller);
+    }
+  }
+}
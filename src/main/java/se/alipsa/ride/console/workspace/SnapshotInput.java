@@ -0,0 +1,165 @@
+package se.alipsa.ride.console.workspace;
+
+import static se.alipsa.ride.console.workspace.SnapshotOutput.CHUNK_SIZE;
+import static se.alipsa.ride.console.workspace.SnapshotOutput.ORDER;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads what SnapshotOutput wrote. The chunks are memory mapped, an uncompressed chunk is read straight from the
+ * mapping so reading a large vector is a bulk copy from the page cache into the array.
+ */
+class SnapshotInput implements Closeable {
+
+  private final FileChannel channel;
+  private final long size;
+  private long position;
+  private ByteBuffer chunk = ByteBuffer.allocate(0);
+  private final ByteBuffer header = ByteBuffer.allocate(8).order(ORDER);
+  private Inflater inflater;
+  private byte[] input;
+  private byte[] inflated;
+
+  /**
+   * @param position where the first chunk starts
+   */
+  SnapshotInput(FileChannel channel, long position) throws IOException {
+    this.channel = channel;
+    this.size = channel.size();
+    this.position = position;
+  }
+
+  byte readByte() throws IOException {
+    return ensure(1).get();
+  }
+
+  int readInt() throws IOException {
+    return ensure(4).getInt();
+  }
+
+  long readLong() throws IOException {
+    return ensure(8).getLong();
+  }
+
+  String readString() throws IOException {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    readBytes(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  void readBytes(byte[] values) throws IOException {
+    int offset = 0;
+    while (offset < values.length) {
+      ensure(1);
+      int length = Math.min(chunk.remaining(), values.length - offset);
+      chunk.get(values, offset, length);
+      offset += length;
+    }
+  }
+
+  void readInts(int[] values) throws IOException {
+    int offset = 0;
+    while (offset < values.length) {
+      ensure(4);
+      int count = Math.min(chunk.remaining() / 4, values.length - offset);
+      chunk.asIntBuffer().get(values, offset, count);
+      chunk.position(chunk.position() + count * 4);
+      offset += count;
+    }
+  }
+
+  void readDoubles(double[] values) throws IOException {
+    int offset = 0;
+    while (offset < values.length) {
+      ensure(8);
+      int count = Math.min(chunk.remaining() / 8, values.length - offset);
+      chunk.asDoubleBuffer().get(values, offset, count);
+      chunk.position(chunk.position() + count * 8);
+      offset += count;
+    }
+  }
+
+  /**
+   * The writer never splits a value over two chunks so a value is either in the current chunk or in the next.
+   */
+  private ByteBuffer ensure(int bytes) throws IOException {
+    if (!chunk.hasRemaining()) {
+      nextChunk();
+    }
+    if (chunk.remaining() < bytes) {
+      throw new IOException("Corrupt workspace snapshot, a value is split over two chunks");
+    }
+    return chunk;
+  }
+
+  private void nextChunk() throws IOException {
+    if (position + header.capacity() > size) {
+      throw new IOException("Unexpected end of the workspace snapshot");
+    }
+    header.clear();
+    while (header.hasRemaining()) {
+      channel.read(header, position + header.position());
+    }
+    header.flip();
+    int length = header.getInt();
+    int storedLength = header.getInt();
+    position += header.capacity();
+    if (length <= 0 || length > CHUNK_SIZE || storedLength <= 0 || storedLength > length
+        || position + storedLength > size) {
+      throw new IOException("Corrupt workspace snapshot, invalid chunk at " + (position - header.capacity()));
+    }
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, storedLength);
+    position += storedLength;
+    if (storedLength == length) {
+      chunk = mapped.order(ORDER);
+      return;
+    }
+    chunk = ByteBuffer.wrap(inflate(mapped, length), 0, length).order(ORDER);
+  }
+
+  private byte[] inflate(ByteBuffer compressed, int length) throws IOException {
+    if (inflater == null) {
+      inflater = new Inflater();
+      input = new byte[CHUNK_SIZE];
+      inflated = new byte[CHUNK_SIZE];
+    }
+    int storedLength = compressed.remaining();
+    compressed.get(input, 0, storedLength);
+    inflater.reset();
+    inflater.setInput(input, 0, storedLength);
+    try {
+      int inflatedLength = 0;
+      while (inflatedLength < length && !inflater.finished()) {
+        int n = inflater.inflate(inflated, inflatedLength, length - inflatedLength);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflatedLength += n;
+      }
+      if (inflatedLength != length) {
+        throw new IOException("Corrupt workspace snapshot, expected " + length + " bytes but got " + inflatedLength);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt workspace snapshot", e);
+    }
+    return inflated;
+  }
+
+  @Override
+  public void close() {
+    if (inflater != null) {
+      inflater.end();
+    }
+  }
+}
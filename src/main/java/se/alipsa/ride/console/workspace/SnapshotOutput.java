@@ -0,0 +1,152 @@
+package se.alipsa.ride.console.workspace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a snapshot in chunks of at most CHUNK_SIZE bytes, each chunk is compressed if compression is enabled and
+ * it makes the chunk smaller. Arrays are copied into the chunk in bulk (in the byte order of the platform where
+ * possible) so writing a large vector is a memory copy and a write, not a conversion of each element.
+ * A chunk on disk is its length, the length stored (the same as the length if not compressed) and the bytes.
+ */
+class SnapshotOutput implements Closeable {
+
+  static final int CHUNK_SIZE = 4 * 1024 * 1024;
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private final FileChannel channel;
+  private final byte[] raw = new byte[CHUNK_SIZE];
+  private final ByteBuffer chunk = ByteBuffer.wrap(raw).order(ORDER);
+  private final Deflater deflater;
+  private final byte[] compressed;
+  private final ByteBuffer header = ByteBuffer.allocate(8).order(ORDER);
+  private long bytesWritten;
+
+  SnapshotOutput(FileChannel channel, boolean compress) {
+    this.channel = channel;
+    // speed matters more than size here, the snapshot should be written at close to disk speed
+    deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    compressed = compress ? new byte[CHUNK_SIZE] : null;
+  }
+
+  void writeByte(int value) throws IOException {
+    ensure(1).put((byte) value);
+  }
+
+  void writeInt(int value) throws IOException {
+    ensure(4).putInt(value);
+  }
+
+  void writeLong(long value) throws IOException {
+    ensure(8).putLong(value);
+  }
+
+  /**
+   * @param value null for NA
+   */
+  void writeString(String value) throws IOException {
+    if (value == null) {
+      writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    writeBytes(bytes);
+  }
+
+  void writeBytes(byte[] values) throws IOException {
+    int offset = 0;
+    while (offset < values.length) {
+      ensure(1);
+      int length = Math.min(chunk.remaining(), values.length - offset);
+      chunk.put(values, offset, length);
+      offset += length;
+    }
+  }
+
+  void writeInts(int[] values, int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      ensure(4);
+      int count = Math.min(chunk.remaining() / 4, length - offset);
+      chunk.asIntBuffer().put(values, offset, count);
+      chunk.position(chunk.position() + count * 4);
+      offset += count;
+    }
+  }
+
+  void writeDoubles(double[] values, int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      ensure(8);
+      int count = Math.min(chunk.remaining() / 8, length - offset);
+      chunk.asDoubleBuffer().put(values, offset, count);
+      chunk.position(chunk.position() + count * 8);
+      offset += count;
+    }
+  }
+
+  /**
+   * @return the bytes written to the file so far
+   */
+  long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  private ByteBuffer ensure(int bytes) throws IOException {
+    if (chunk.remaining() < bytes) {
+      flushChunk();
+    }
+    return chunk;
+  }
+
+  private void flushChunk() throws IOException {
+    int length = chunk.position();
+    if (length == 0) {
+      return;
+    }
+    int storedLength = length;
+    byte[] stored = raw;
+    if (deflater != null) {
+      deflater.reset();
+      deflater.setInput(raw, 0, length);
+      deflater.finish();
+      int compressedLength = 0;
+      while (!deflater.finished() && compressedLength < length) {
+        compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+      }
+      // data that does not compress (e.g. random doubles) is stored as is
+      if (deflater.finished() && compressedLength < length) {
+        storedLength = compressedLength;
+        stored = compressed;
+      }
+    }
+    header.clear();
+    header.putInt(length).putInt(storedLength).flip();
+    write(header);
+    write(ByteBuffer.wrap(stored, 0, storedLength));
+    chunk.clear();
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      bytesWritten += channel.write(buffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushChunk();
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package se.alipsa.ride.console.workspace;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.renjin.eval.Context;
+import org.renjin.primitives.io.serialization.RDataReader;
+import org.renjin.primitives.io.serialization.RDataWriter;
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.Environment;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalArrayVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.Null;
+import org.renjin.sexp.PairList;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringArrayVector;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Saves the variables of an environment (the global environment of a session) to a file and restores them into
+ * another session. Logical, integer, double, character vectors and lists of them (i.e. data frames, factors,
+ * matrices etc.) are written as arrays so saving and loading a large workspace is limited by the disk rather than
+ * by encoding each element. Everything else (functions, environments...) is written with the R serialization.
+ * Variables that cannot be serialized, e.g. java objects, are skipped.
+ */
+public final class WorkspaceSnapshot {
+
+  public static final String FILE_EXTENSION = ".rws";
+
+  private static final Logger log = LogManager.getLogger(WorkspaceSnapshot.class);
+  private static final int MAGIC = 0x52575331; // RWS1
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+  private static final int FLAG_COMPRESSED = 1;
+
+  private static final byte NULL = 0;
+  private static final byte LOGICAL = 1;
+  private static final byte INTEGER = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte STRING = 4;
+  private static final byte LIST = 5;
+  private static final byte SERIALIZED = 6;
+
+  private WorkspaceSnapshot() {
+    // static methods only
+  }
+
+  /**
+   * Save the variables of the environment. The snapshot is written to a temporary file that replaces the file
+   * when done so a snapshot that fails half way does not destroy the previous one.
+   *
+   * @param compress compress the snapshot, makes it smaller but slower to save and load
+   */
+  public static Summary save(Context context, Environment environment, File file, boolean compress)
+      throws IOException {
+    long start = System.nanoTime();
+    List<Symbol> names = new ArrayList<>();
+    List<SEXP> values = new ArrayList<>();
+    // the serialized form of the values that are not plain, null for those that are
+    List<byte[]> serializedValues = new ArrayList<>();
+    List<String> skipped = new ArrayList<>();
+    for (Symbol name : environment.getSymbolNames()) {
+      SEXP value = environment.getVariable(context, name).force(context);
+      boolean plain = isPlain(value);
+      byte[] serialized = plain ? null : serialize(context, value);
+      if (!plain && serialized == null) {
+        skipped.add(name.getPrintName());
+        continue;
+      }
+      names.add(name);
+      values.add(value);
+      serializedValues.add(serialized);
+    }
+    File dir = file.getAbsoluteFile().getParentFile();
+    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      long bytes;
+      try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(SnapshotOutput.ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(compress ? FLAG_COMPRESSED : 0).flip();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+        try (SnapshotOutput out = new SnapshotOutput(channel, compress)) {
+          out.writeInt(names.size());
+          for (int i = 0; i < names.size(); i++) {
+            out.writeString(names.get(i).getPrintName());
+            byte[] serialized = serializedValues.get(i);
+            if (serialized == null) {
+              writePlain(out, values.get(i));
+            } else {
+              out.writeByte(SERIALIZED);
+              out.writeInt(serialized.length);
+              out.writeBytes(serialized);
+            }
+          }
+        }
+        channel.force(false);
+        bytes = channel.size();
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Summary summary = new Summary(file, names.size(), skipped, bytes, System.nanoTime() - start);
+      log.info("Saved {}", summary);
+      return summary;
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  /**
+   * Restore the variables of a snapshot into the environment, replacing variables with the same name.
+   */
+  public static Summary restore(Context context, Environment environment, File file) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(SnapshotOutput.ORDER);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          throw new IOException(file + " is not a workspace snapshot");
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException(file + " is not a workspace snapshot");
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException(file + " is a workspace snapshot of an unknown version (" + version + ")");
+      }
+      int count;
+      try (SnapshotInput in = new SnapshotInput(channel, HEADER_SIZE)) {
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          Symbol name = Symbol.get(in.readString());
+          environment.setVariable(context, name, read(context, in));
+        }
+      }
+      Summary summary = new Summary(file, count, new ArrayList<>(), channel.size(), System.nanoTime() - start);
+      log.info("Restored {}", summary);
+      return summary;
+    }
+  }
+
+  /**
+   * @return true if the value and its attributes are all vectors that can be written as arrays
+   */
+  static boolean isPlain(SEXP value) {
+    if (value == Null.INSTANCE) {
+      return true;
+    }
+    if (value instanceof ListVector) {
+      ListVector list = (ListVector) value;
+      for (int i = 0; i < list.length(); i++) {
+        if (!isPlain(list.getElementAsSEXP(i))) {
+          return false;
+        }
+      }
+    } else if (!(value instanceof LogicalVector || value instanceof IntVector || value instanceof DoubleVector
+        || value instanceof StringVector)) {
+      return false;
+    }
+    for (PairList.Node attribute : value.getAttributes().asPairList().nodes()) {
+      if (!isPlain(attribute.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writePlain(SnapshotOutput out, SEXP value) throws IOException {
+    if (value == Null.INSTANCE) {
+      out.writeByte(NULL);
+      return;
+    }
+    int length = value.length();
+    if (value instanceof LogicalVector) {
+      LogicalVector vector = (LogicalVector) value;
+      int[] values = new int[length];
+      for (int i = 0; i < length; i++) {
+        values[i] = vector.getElementAsRawLogical(i);
+      }
+      out.writeByte(LOGICAL);
+      out.writeInt(length);
+      out.writeInts(values, length);
+    } else if (value instanceof IntVector) {
+      // the array vector gives its values without copying
+      int[] values = value instanceof IntArrayVector
+          ? ((IntArrayVector) value).toIntArrayUnsafe() : ((IntVector) value).toIntArray();
+      out.writeByte(INTEGER);
+      out.writeInt(length);
+      out.writeInts(values, length);
+    } else if (value instanceof DoubleVector) {
+      double[] values = value instanceof DoubleArrayVector
+          ? ((DoubleArrayVector) value).toDoubleArrayUnsafe() : ((DoubleVector) value).toDoubleArray();
+      out.writeByte(DOUBLE);
+      out.writeInt(length);
+      out.writeDoubles(values, length);
+    } else if (value instanceof StringVector) {
+      StringVector vector = (StringVector) value;
+      out.writeByte(STRING);
+      out.writeInt(length);
+      for (int i = 0; i < length; i++) {
+        out.writeString(vector.getElementAsString(i));
+      }
+    } else {
+      ListVector list = (ListVector) value;
+      out.writeByte(LIST);
+      out.writeInt(length);
+      for (int i = 0; i < length; i++) {
+        writePlain(out, list.getElementAsSEXP(i));
+      }
+    }
+    PairList attributes = value.getAttributes().asPairList();
+    out.writeInt(attributes.length());
+    for (PairList.Node attribute : attributes.nodes()) {
+      out.writeString(attribute.getTag().getPrintName());
+      writePlain(out, attribute.getValue());
+    }
+  }
+
+  private static SEXP read(Context context, SnapshotInput in) throws IOException {
+    byte type = in.readByte();
+    if (type == NULL) {
+      return Null.INSTANCE;
+    }
+    int length = in.readInt();
+    if (type == SERIALIZED) {
+      byte[] serialized = new byte[length];
+      in.readBytes(serialized);
+      return new RDataReader(context, new ByteArrayInputStream(serialized)).readFile();
+    }
+    switch (type) {
+      case LOGICAL: {
+        int[] values = new int[length];
+        in.readInts(values);
+        return new LogicalArrayVector(values, readAttributes(context, in));
+      }
+      case INTEGER: {
+        int[] values = new int[length];
+        in.readInts(values);
+        return new IntArrayVector(values, readAttributes(context, in));
+      }
+      case DOUBLE: {
+        double[] values = new double[length];
+        in.readDoubles(values);
+        return new DoubleArrayVector(values, readAttributes(context, in));
+      }
+      case STRING: {
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+          values[i] = in.readString();
+        }
+        return new StringArrayVector(values, readAttributes(context, in));
+      }
+      case LIST: {
+        SEXP[] values = new SEXP[length];
+        for (int i = 0; i < length; i++) {
+          values[i] = read(context, in);
+        }
+        return new ListVector(values, readAttributes(context, in));
+      }
+      default:
+        throw new IOException("Corrupt workspace snapshot, unknown type " + type);
+    }
+  }
+
+  private static AttributeMap readAttributes(Context context, SnapshotInput in) throws IOException {
+    int count = in.readInt();
+    if (count == 0) {
+      return AttributeMap.EMPTY;
+    }
+    AttributeMap.Builder attributes = AttributeMap.builder();
+    for (int i = 0; i < count; i++) {
+      Symbol name = Symbol.get(in.readString());
+      attributes.set(name, read(context, in));
+    }
+    return attributes.build();
+  }
+
+  /**
+   * @return the value in the R serialization format or null if it cannot be serialized
+   */
+  private static byte[] serialize(Context context, SEXP value) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new RDataWriter(context, out).serialize(value);
+      return out.toByteArray();
+    } catch (IOException | RuntimeException e) {
+      log.debug("Failed to serialize {}", value, e);
+      return null;
+    }
+  }
+
+  /**
+   * What was saved or restored
+   */
+  public static class Summary {
+    private final File file;
+    private final int variables;
+    private final List<String> skipped;
+    private final long bytes;
+    private final long nanos;
+
+    Summary(File file, int variables, List<String> skipped, long bytes, long nanos) {
+      this.file = file;
+      this.variables = variables;
+      this.skipped = skipped;
+      this.bytes = bytes;
+      this.nanos = nanos;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public int getVariables() {
+      return variables;
+    }
+
+    /**
+     * @return the names of the variables that could not be saved
+     */
+    public List<String> getSkipped() {
+      return skipped;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public double getMillis() {
+      return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = Math.max(nanos / 1e9, 1e-9);
+      double mb = bytes / (1024.0 * 1024.0);
+      return String.format(Locale.US, "%d variables, %.1f MB in %.2f s (%.0f MB/s) %s%s", variables, mb, seconds,
+          mb / seconds, file, skipped.isEmpty() ? "" : ", skipped (cannot be serialized): " + skipped);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package se.alipsa.ride.environment;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps track of the names of the functions and objects available in the session, i.e. the ones exported by
+ * the attached packages and the ones in the global environment, and works out what has changed since the
+ * last refresh. The exports of a package are only listed the first time its environment is seen (i.e. when it
+ * is attached) and the global environment is compared with a snapshot of its names so a refresh only costs
+ * something when packages are attached or detached.
+ */
+public class ContextNames {
+
+  /**
+   * Lists the exports of a package, only called when a package is attached.
+   */
+  public interface ExportsLister {
+    Exports list(String packageName) throws Exception;
+  }
+
+  /** the exports of each package environment, a package attached again is a new environment */
+  private final Map<Object, Exports> exportsCache = new WeakHashMap<>();
+  /** the exports of the attached packages by package name */
+  private Map<String, Exports> attached = new HashMap<>();
+  private Map<String, Boolean> globals = new HashMap<>();
+  /** a name can be exported by several packages and defined in the global environment as well */
+  private final Map<String, Integer> functionCounts = new HashMap<>();
+  private final Map<String, Integer> objectCounts = new HashMap<>();
+
+  /**
+   * @param packages the attached packages, name to the package environment
+   * @param globalNames the names in the global environment, name to true if it is a function
+   * @param lister used for the packages that have not been seen before
+   * @return what has been added and removed since the last refresh
+   */
+  public synchronized Change refresh(Map<String, ?> packages, Map<String, Boolean> globalNames,
+                                     ExportsLister lister) throws Exception {
+    // list the exports of new packages first so that nothing is changed if that fails
+    Map<String, Exports> nowAttached = new LinkedHashMap<>();
+    for (Map.Entry<String, ?> entry : packages.entrySet()) {
+      Exports exports = exportsCache.get(entry.getValue());
+      if (exports == null) {
+        exports = lister.list(entry.getKey());
+        exportsCache.put(entry.getValue(), exports);
+      }
+      nowAttached.put(entry.getKey(), exports);
+    }
+
+    Change change = new Change();
+    for (Map.Entry<String, Exports> entry : attached.entrySet()) {
+      if (nowAttached.get(entry.getKey()) != entry.getValue()) {
+        remove(functionCounts, entry.getValue().functions, change.addedFunctions, change.removedFunctions);
+        remove(objectCounts, entry.getValue().objects, change.addedObjects, change.removedObjects);
+      }
+    }
+    for (Map.Entry<String, Exports> entry : nowAttached.entrySet()) {
+      if (attached.get(entry.getKey()) != entry.getValue()) {
+        add(functionCounts, entry.getValue().functions, change.addedFunctions, change.removedFunctions);
+        add(objectCounts, entry.getValue().objects, change.addedObjects, change.removedObjects);
+      }
+    }
+    attached = nowAttached;
+
+    for (Map.Entry<String, Boolean> entry : globals.entrySet()) {
+      if (!entry.getValue().equals(globalNames.get(entry.getKey()))) {
+        Set<String> name = Collections.singleton(entry.getKey());
+        if (entry.getValue()) {
+          remove(functionCounts, name, change.addedFunctions, change.removedFunctions);
+        } else {
+          remove(objectCounts, name, change.addedObjects, change.removedObjects);
+        }
+      }
+    }
+    for (Map.Entry<String, Boolean> entry : globalNames.entrySet()) {
+      if (!entry.getValue().equals(globals.get(entry.getKey()))) {
+        Set<String> name = Collections.singleton(entry.getKey());
+        if (entry.getValue()) {
+          add(functionCounts, name, change.addedFunctions, change.removedFunctions);
+        } else {
+          add(objectCounts, name, change.addedObjects, change.removedObjects);
+        }
+      }
+    }
+    globals = new HashMap<>(globalNames);
+    return change;
+  }
+
+  private static void add(Map<String, Integer> counts, Collection<String> names, Set<String> added,
+                          Set<String> removed) {
+    for (String name : names) {
+      if (counts.merge(name, 1, Integer::sum) == 1 && !removed.remove(name)) {
+        added.add(name);
+      }
+    }
+  }
+
+  private static void remove(Map<String, Integer> counts, Collection<String> names, Set<String> added,
+                             Set<String> removed) {
+    for (String name : names) {
+      Integer count = counts.get(name);
+      if (count == null) {
+        continue;
+      }
+      if (count == 1) {
+        counts.remove(name);
+        if (!added.remove(name)) {
+          removed.add(name);
+        }
+      } else {
+        counts.put(name, count - 1);
+      }
+    }
+  }
+
+  /**
+   * The functions and objects exported by a package
+   */
+  public static class Exports {
+    final Set<String> functions;
+    final Set<String> objects;
+
+    public Exports(Collection<String> functions, Collection<String> objects) {
+      this.functions = new HashSet<>(functions);
+      this.objects = new HashSet<>(objects);
+    }
+  }
+
+  /**
+   * The names added and removed by a refresh
+   */
+  public static class Change {
+    final Set<String> addedFunctions = new HashSet<>();
+    final Set<String> removedFunctions = new HashSet<>();
+    final Set<String> addedObjects = new HashSet<>();
+    final Set<String> removedObjects = new HashSet<>();
+
+    public Set<String> getAddedFunctions() {
+      return addedFunctions;
+    }
+
+    public Set<String> getRemovedFunctions() {
+      return removedFunctions;
+    }
+
+    public Set<String> getAddedObjects() {
+      return addedObjects;
+    }
+
+    public Set<String> getRemovedObjects() {
+      return removedObjects;
+    }
+
+    public boolean isEmpty() {
+      return addedFunctions.isEmpty() && removedFunctions.isEmpty() && addedObjects.isEmpty()
+          && removedObjects.isEmpty();
+    }
+  }
+}
@@ -2,43 +2,43 @@ package se.alipsa.ride.environment;
 
 import static se.alipsa.ride.Constants.INDENT;
 
-import javafx.application.Platform;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.StyleClassedTextArea;
-import org.renjin.eval.Context;
-import org.renjin.sexp.Environment;
-import org.renjin.sexp.StringVector;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.UnStyledCodeArea;
+import se.alipsa.ride.code.CompletionIndex;
+import se.alipsa.ride.console.ScriptSession;
 import se.alipsa.ride.environment.connections.ConnectionInfo;
 import se.alipsa.ride.environment.connections.ConnectionsTab;
 import se.alipsa.ride.utils.UniqueList;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 public class EnvironmentComponent extends TabPane {
 
   private static final Logger LOG = LogManager.getLogger();
 
   private UnStyledCodeArea envTa;
+  private final Tab environment;
 
   ConnectionsTab connectionsTab;
   HistoryTab historyTab;
 
-  List<ContextFunctionsUpdateListener> contextFunctionsUpdateListeners = new ArrayList<>();
-
-  int MAX_CONTENT_LENGTH = 200;
+  private final CompletionIndex completionIndex = new CompletionIndex();
+  private final ContextNames contextNames = new ContextNames();
 
   public EnvironmentComponent(Ride gui) {
-    Tab environment = new Tab();
+    environment = new Tab();
     environment.setText("Environment");
     envTa = new UnStyledCodeArea();
     envTa.setEditable(false);
@@ -57,34 +57,30 @@ public class EnvironmentComponent extends TabPane {
     setTabClosingPolicy(TabClosingPolicy.UNAVAILABLE);
   }
 
-  public void setEnvironment(Environment env, Context ctx) {
-    envTa.clear();
-    StringVector names = env.getNames();
-    //StringBuffer buf = new StringBuffer();
-    for (String varName : names) {
-      int start = envTa.getContent().getLength();
-      envTa.appendText(varName);
-      int endVar = start + varName.length();
-      //envTa.setStyle(start, endVar, "-fx-font-weight: bold;");
-      //envTa.setStyle(start, endVar, "-fx-font-style: italic;");
-      envTa.setStyleClass(start, endVar, "env-varName");
-      String content = env.getVariable(ctx, varName).toString();
-      if (content.length() > MAX_CONTENT_LENGTH) {
-        content = content.substring(0, MAX_CONTENT_LENGTH) + "... (length = " + content.length() + ")";
-      }
-      content = INDENT + content;
-      envTa.appendText( content + "\n");
-      //envTa.setStyle(endVar + 1 , endVar + content.length(), "-fx-font-weight: normal;");
-      //envTa.setStyle(endVar + 1 , endVar + content.length(), "-fx-font-style: normal;");
-      envTa.setStyleClass(endVar + 1 , endVar + content.length(), "env-varValue");
-      /*
-      buf.append(varName);
-      buf.append("\t");
-      buf.append(env.getVariable(ctx, varName).toString());
-      buf.append("\n");
-      */
+  public void setEnvironment(List<VariableSummary> variables) {
+    setEnvironment(ScriptSession.MAIN, variables);
+  }
+
+  /**
+   * Show the variables, everything is rendered in one go so this is cheap regardless of the number of variables.
+   *
+   * @param sessionName the session the variables are in, shown in the tab unless it is the main session
+   * @param variables the summaries created (off the fx thread) with VariableSummary.summarize
+   */
+  public void setEnvironment(String sessionName, List<VariableSummary> variables) {
+    environment.setText(ScriptSession.MAIN.equals(sessionName) ? "Environment" : "Environment (" + sessionName + ")");
+    StringBuilder text = new StringBuilder();
+    StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+    for (VariableSummary variable : variables) {
+      String content = INDENT + variable.getDescription() + "\n";
+      text.append(variable.getName()).append(content);
+      spansBuilder.add(Collections.singleton("env-varName"), variable.getName().length());
+      spansBuilder.add(Collections.singleton("env-varValue"), content.length());
+    }
+    envTa.replaceText(text.toString());
+    if (!variables.isEmpty()) {
+      envTa.setStyleSpans(0, spansBuilder.create());
     }
-    //envTa.appendText(buf.toString());
   }
 
   public void clearEnvironment() {
@@ -107,25 +103,28 @@ public class EnvironmentComponent extends TabPane {
     historyTab.rRestarted();
   }
 
-  public void updateContextFunctions(StringVector functions, StringVector objects) {
-    final TreeSet<String> contextFunctions = new TreeSet<>();
-    final TreeSet<String> contextObjects = new TreeSet<>();
-    for (String fun : functions) {
-      contextFunctions.add(fun);
-    }
-    for (String obj : objects) {
-      contextObjects.add(obj);
+  /**
+   * Update the completion index with the functions and objects that have changed in the session since the last
+   * update. This is called from the thread running the R code.
+   *
+   * @param packages the attached packages, name to the package environment
+   * @param globalNames the names in the global environment, name to true if it is a function
+   * @param lister lists the exports of packages that were attached since the last update
+   */
+  public void updateContextNames(Map<String, ?> packages, Map<String, Boolean> globalNames,
+                                 ContextNames.ExportsLister lister) throws Exception {
+    ContextNames.Change change = contextNames.refresh(packages, globalNames, lister);
+    if (change.isEmpty()) {
+      return;
     }
-    Platform.runLater(() ->
-      contextFunctionsUpdateListeners.forEach(l -> l.updateContextFunctions(contextFunctions, contextObjects))
-    );
-  }
-
-  public void addContextFunctionsUpdateListener(ContextFunctionsUpdateListener listener) {
-    contextFunctionsUpdateListeners.add(listener);
+    completionIndex.update(CompletionIndex.Kind.FUNCTION, change.getAddedFunctions(), change.getRemovedFunctions());
+    completionIndex.update(CompletionIndex.Kind.OBJECT, change.getAddedObjects(), change.getRemovedObjects());
   }
 
-  public void removeContextFunctionsUpdateListener(ContextFunctionsUpdateListener listener) {
-    contextFunctionsUpdateListeners.remove(listener);
+  /**
+   * @return the index of keywords, functions and objects in the session used for code completion
+   */
+  public CompletionIndex getCompletionIndex() {
+    return completionIndex;
   }
 }
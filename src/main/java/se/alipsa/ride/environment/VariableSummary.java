@@ -0,0 +1,316 @@
+package se.alipsa.ride.environment;
+
+import org.renjin.eval.Context;
+import org.renjin.sexp.Closure;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.Environment;
+import org.renjin.sexp.ExternalPtr;
+import org.renjin.sexp.FunctionCall;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.PairList;
+import org.renjin.sexp.Promise;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Symbol;
+import org.renjin.sexp.Vector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A short description of a variable in the environment: its type, dimensions, approximate size and a preview
+ * of the first few elements. Only the first elements of a vector (and of the elements of a list) are looked at
+ * so creating the summary takes the same time regardless of how much data the variable holds. For the same reason
+ * toString() is never called on anything that can hold data, e.g. a java object shows its class and size only.
+ */
+public class VariableSummary {
+
+  /** the max number of elements to read for the preview and the size estimate */
+  static final int PREVIEW_ELEMENTS = 10;
+  static final int MAX_PREVIEW_LENGTH = 200;
+  private static final int MAX_ELEMENT_LENGTH = 40;
+  /** how deep to go into nested lists when estimating the size */
+  private static final int MAX_DEPTH = 3;
+  private static final Symbol CLASS = Symbol.get("class");
+  private static final Symbol DIM = Symbol.get("dim");
+  private static final Symbol LEVELS = Symbol.get("levels");
+
+  private final String name;
+  private final String type;
+  private final String dimensions;
+  private final long size;
+  private final String preview;
+
+  VariableSummary(String name, String type, String dimensions, long size, String preview) {
+    this.name = name;
+    this.type = type;
+    this.dimensions = dimensions;
+    this.size = size;
+    this.preview = preview;
+  }
+
+  /**
+   * Summarize all the variables in the environment, this evaluates R objects so call it from the thread
+   * running the R code.
+   */
+  public static List<VariableSummary> summarize(Environment env, Context ctx) {
+    List<VariableSummary> summaries = new ArrayList<>();
+    for (String varName : env.getNames()) {
+      summaries.add(summarize(varName, env.getVariable(ctx, varName)));
+    }
+    return summaries;
+  }
+
+  public static VariableSummary summarize(String name, SEXP value) {
+    if (value instanceof Promise) {
+      Promise promise = (Promise) value;
+      if (!promise.isEvaluated()) {
+        // forcing it could be expensive or have side effects
+        return new VariableSummary(name, "promise", "", -1, "");
+      }
+      value = promise.getValue();
+    }
+    if (!(value instanceof Vector)) {
+      return new VariableSummary(name, value.getTypeName(), "", -1, truncate(describe(value), MAX_PREVIEW_LENGTH));
+    }
+    Vector vector = (Vector) value;
+    return new VariableSummary(name, typeOf(vector), dimensionsOf(vector), estimateSize(vector, 0), previewOf(vector));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * @return the approximate number of bytes held by the variable or -1 if unknown
+   */
+  public long getSize() {
+    return size;
+  }
+
+  public String getPreview() {
+    return preview;
+  }
+
+  /**
+   * @return e.g. num [1:1000000] 7.6 MB  1, 2, 3, ...
+   */
+  public String getDescription() {
+    StringBuilder sb = new StringBuilder(type);
+    if (!dimensions.isEmpty()) {
+      sb.append(' ').append(dimensions);
+    }
+    if (size >= 0) {
+      sb.append(' ').append(formatSize(size));
+    }
+    if (!preview.isEmpty()) {
+      sb.append("  ").append(preview);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + getDescription();
+  }
+
+  private static String describe(SEXP value) {
+    if (value instanceof ExternalPtr) {
+      Object instance = ((ExternalPtr<?>) value).getInstance();
+      if (instance == null) {
+        return "NULL";
+      }
+      String className = instance.getClass().getName();
+      if (instance instanceof Collection) {
+        return className + " [" + ((Collection<?>) instance).size() + "]";
+      }
+      if (instance instanceof Map) {
+        return className + " [" + ((Map<?, ?>) instance).size() + "]";
+      }
+      return className;
+    }
+    if (value instanceof Closure) {
+      return "function " + formalsOf((Closure) value);
+    }
+    if (value instanceof Symbol) {
+      return ((Symbol) value).getPrintName();
+    }
+    if (value instanceof Environment) {
+      return "<environment: " + ((Environment) value).getName() + ">";
+    }
+    // builtins, S4 objects etc., the type says enough
+    return "";
+  }
+
+  /**
+   * @return the arguments of the function, e.g. (x, y = "a", ...), the body could be anything so it is left out
+   */
+  private static String formalsOf(Closure closure) {
+    List<String> formals = new ArrayList<>();
+    for (PairList.Node node : closure.getFormals().nodes()) {
+      SEXP defaultValue = node.getValue();
+      if (defaultValue == Symbol.MISSING_ARG) {
+        formals.add(node.getName());
+      } else if (defaultValue instanceof Vector && !(defaultValue instanceof ListVector) && defaultValue.length() == 1) {
+        formals.add(node.getName() + " = " + elementAsString((Vector) defaultValue, 0, null));
+      } else if (defaultValue instanceof Symbol) {
+        formals.add(node.getName() + " = " + ((Symbol) defaultValue).getPrintName());
+      } else if (defaultValue instanceof FunctionCall) {
+        // code, not data, so it is small
+        formals.add(node.getName() + " = " + truncate(defaultValue.toString(), MAX_ELEMENT_LENGTH));
+      } else {
+        formals.add(node.getName() + " = " + defaultValue.getTypeName());
+      }
+    }
+    return "(" + String.join(", ", formals) + ")";
+  }
+
+  private static String typeOf(Vector vector) {
+    SEXP classes = vector.getAttribute(CLASS);
+    if (classes instanceof StringVector && classes.length() > 0) {
+      return ((StringVector) classes).getElementAsString(0);
+    }
+    if (vector instanceof DoubleVector) {
+      return "num";
+    }
+    if (vector instanceof IntVector) {
+      return "int";
+    }
+    if (vector instanceof LogicalVector) {
+      return "logi";
+    }
+    if (vector instanceof StringVector) {
+      return "chr";
+    }
+    return vector.getTypeName();
+  }
+
+  private static String dimensionsOf(Vector vector) {
+    if (vector instanceof ListVector && vector.inherits("data.frame")) {
+      int rows = vector.length() == 0 ? 0 : vector.getElementAsSEXP(0).length();
+      return "[" + rows + " obs. of " + vector.length() + " variables]";
+    }
+    SEXP dim = vector.getAttribute(DIM);
+    if (dim instanceof Vector && dim.length() > 0) {
+      Vector dims = (Vector) dim;
+      StringBuilder sb = new StringBuilder("[");
+      for (int i = 0; i < dims.length(); i++) {
+        if (i > 0) {
+          sb.append(" x ");
+        }
+        sb.append(dims.getElementAsInt(i));
+      }
+      return sb.append("]").toString();
+    }
+    return "[1:" + vector.length() + "]";
+  }
+
+  /**
+   * The size is extrapolated from the first elements so it is only an approximation for strings and lists.
+   */
+  static long estimateSize(Vector vector, int depth) {
+    int length = vector.length();
+    if (vector instanceof DoubleVector) {
+      return 8L * length;
+    }
+    if (vector instanceof IntVector || vector instanceof LogicalVector) {
+      return 4L * length;
+    }
+    int sampled = Math.min(length, PREVIEW_ELEMENTS);
+    if (sampled == 0) {
+      return 0;
+    }
+    long sampledSize = 0;
+    if (vector instanceof StringVector) {
+      for (int i = 0; i < sampled; i++) {
+        String element = vector.getElementAsString(i);
+        // a reference plus the chars
+        sampledSize += 8 + (element == null ? 0 : 2L * element.length());
+      }
+    } else if (vector instanceof ListVector && depth < MAX_DEPTH) {
+      for (int i = 0; i < sampled; i++) {
+        SEXP element = vector.getElementAsSEXP(i);
+        sampledSize += 8 + (element instanceof Vector ? estimateSize((Vector) element, depth + 1) : 0);
+      }
+    } else {
+      return 8L * length;
+    }
+    return sampledSize * length / sampled;
+  }
+
+  private static String previewOf(Vector vector) {
+    int length = vector.length();
+    int count = Math.min(length, PREVIEW_ELEMENTS);
+    List<String> elements = new ArrayList<>(count);
+    if (vector instanceof ListVector) {
+      ListVector list = (ListVector) vector;
+      // the names (columns of a data.frame) says more than the (nested) values
+      for (int i = 0; i < count; i++) {
+        String elementName = list.getName(i);
+        SEXP element = list.getElementAsSEXP(i);
+        String elementType = element instanceof Vector ? typeOf((Vector) element) : element.getTypeName();
+        elements.add((elementName == null || elementName.isEmpty() ? "[[" + (i + 1) + "]]" : "$" + elementName)
+            + " " + elementType);
+      }
+    } else {
+      SEXP levels = vector.inherits("factor") ? vector.getAttribute(LEVELS) : null;
+      for (int i = 0; i < count; i++) {
+        elements.add(truncate(elementAsString(vector, i, levels), MAX_ELEMENT_LENGTH));
+      }
+    }
+    String preview = String.join(", ", elements);
+    if (count < length) {
+      preview += ", ...";
+    }
+    return truncate(preview, MAX_PREVIEW_LENGTH);
+  }
+
+  private static String elementAsString(Vector vector, int index, SEXP levels) {
+    if (vector.isElementNA(index)) {
+      return "NA";
+    }
+    if (levels instanceof StringVector) {
+      return ((StringVector) levels).getElementAsString(vector.getElementAsInt(index) - 1);
+    }
+    if (vector instanceof StringVector) {
+      return "\"" + vector.getElementAsString(index) + "\"";
+    }
+    if (vector instanceof LogicalVector) {
+      return vector.getElementAsInt(index) != 0 ? "TRUE" : "FALSE";
+    }
+    return vector.getElementAsString(index);
+  }
+
+  private static String truncate(String value, int maxLength) {
+    if (value.length() <= maxLength) {
+      return value;
+    }
+    return value.substring(0, maxLength) + "...";
+  }
+
+  static String formatSize(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " bytes";
+    }
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+    }
+    if (bytes < 1024L * 1024 * 1024) {
+      return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+    return String.format(Locale.US, "%.1f GB", bytes / (1024.0 * 1024 * 1024));
+  }
+}
@@ -11,14 +11,25 @@ import se.alipsa.ride.utils.Alerts;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.prefs.Preferences;
+
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_IDLE_TIMEOUT;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_MAX_SIZE;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_MIN_IDLE;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_VALIDATION_QUERY;
 
 public class ConnectionInfo implements Comparable<ConnectionInfo> {
 
   private static final Logger log = LogManager.getLogger(ConnectionInfo.class);
 
+  // drivers loaded from the session classloader, cleared when the classloader changes
+  private static final Map<String, Driver> driverCache = new HashMap<>();
+  private static ClassLoader driverClassLoader;
+
   private final SimpleStringProperty name;
   private final SimpleStringProperty driver;
   private final SimpleStringProperty url;
@@ -105,7 +116,12 @@ public class ConnectionInfo implements Comparable<ConnectionInfo> {
     }
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Get a connection from the pool for this connection info, a new physical connection is only opened
+   * if there is no idle one. Closing the connection gives it back to the pool.
+   *
+   * @return the connection or null if the driver could not be loaded
+   */
   public Connection connect() throws SQLException {
     /*
     String user = getUser();
@@ -118,12 +134,70 @@ public class ConnectionInfo implements Comparable<ConnectionInfo> {
     }
     return DriverManager.getConnection(theUrl, user, password);
     */
+    ClassLoader cl = Ride.instance().getConsoleComponent().getSession().getClassLoader();
+    Driver driver;
+    try {
+      driver = cachedDriver(cl);
+    } catch (ClassNotFoundException e) {
+      log.info("Failed to load and instantiate the driver class using Class.forName(\"{}\")", getDriver());
+      Platform.runLater(() ->
+          Alerts.showAlert("Failed to load driver",
+              "You need to add the jar with " + getDriver() + " to the classpath (pom.xml or ride lib dir)",
+              Alert.AlertType.ERROR)
+      );
+      return null;
+    }
+    Properties props = new Properties();
+    if (getUser() != null) {
+      props.put("user", getUser());
+      if ( getPassword() != null) {
+        props.put("password",  getPassword());
+      }
+    }
+    String key = getDriver() + "|" + getUrl() + "|" + getUser() + "|" + getPassword();
+    Preferences prefs = Ride.instance().getPrefs();
+    ConnectionPool pool = ConnectionPool.get(key, () -> new ConnectionPool(getName(), driver, getUrl(), props,
+        prefs.getInt(CONNECTION_POOL_MIN_IDLE, ConnectionPool.MIN_IDLE_DEFAULT),
+        prefs.getInt(CONNECTION_POOL_MAX_SIZE, ConnectionPool.MAX_SIZE_DEFAULT),
+        prefs.getInt(CONNECTION_POOL_IDLE_TIMEOUT, ConnectionPool.IDLE_TIMEOUT_SECONDS_DEFAULT),
+        prefs.get(CONNECTION_POOL_VALIDATION_QUERY, "")));
+    return pool.getConnection();
+  }
+
+  /**
+   * Drop the cached drivers and close the pooled connections, used when the session classloader is rebuilt.
+   */
+  public static void clearDriverCache() {
+    synchronized (driverCache) {
+      driverCache.clear();
+      driverClassLoader = null;
+    }
+    ConnectionPool.closeAll();
+  }
 
+  private Driver cachedDriver(ClassLoader cl) throws ClassNotFoundException {
+    synchronized (driverCache) {
+      if (cl != driverClassLoader) {
+        driverCache.clear();
+        driverClassLoader = cl;
+        ConnectionPool.closeAll();
+      }
+      // a null value means that the DriverManager should be used
+      if (driverCache.containsKey(getDriver())) {
+        return driverCache.get(getDriver());
+      }
+      Driver driver = loadDriver(cl);
+      driverCache.put(getDriver(), driver);
+      return driver;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Driver loadDriver(ClassLoader cl) throws ClassNotFoundException {
     // DriverManager.getConnection uses system classloader no matter what so we need to dance around this
     // to allow dynamic classloading from a pom etc. by getting the connection directly from the driver
     Driver driver = null;
     try {
-      ClassLoader cl = Ride.instance().getConsoleComponent().getSession().getClassLoader();
       Class<Driver> clazz = (Class<Driver>) cl.loadClass(getDriver());
       log.debug("Loaded driver from session classloader, instating the driver {}", getDriver());
       try {
@@ -137,28 +211,11 @@ public class ConnectionInfo implements Comparable<ConnectionInfo> {
         Class<?> clazz = Class.forName(getDriver());
         driver = ((Driver)clazz.getDeclaredConstructor().newInstance());
         log.debug("Loaded driver {} with Class.forName successfully", getDriver());
-      } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException classNotFoundException) {
-        log.info("Failed to load and instantiate the driver class using Class.forName(\"{}\")", getDriver());
-        Platform.runLater(() ->
-            Alerts.showAlert("Failed to load driver",
-                "You need to add the jar with " + getDriver() + " to the classpath (pom.xml or ride lib dir)",
-                Alert.AlertType.ERROR)
-        );
-        return null;
-      }
-    }
-    Properties props = new Properties();
-    if (getUser() != null) {
-      props.put("user", getUser());
-      if ( getPassword() != null) {
-        props.put("password",  getPassword());
+      } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException ex) {
+        throw new ClassNotFoundException("Failed to instantiate " + getDriver(), ex);
       }
     }
-    if (driver == null) {
-      return DriverManager.getConnection(getUrl(), props);
-    } else {
-      return driver.connect(getUrl(), props);
-    }
+    return driver;
   }
 
   public boolean urlContainsLogin() {
@@ -0,0 +1,366 @@
+package se.alipsa.ride.environment.connections;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps idle jdbc connections for a connection (driver, url and login) so that queries, metadata lookups etc.
+ * can reuse an already open physical connection instead of connecting each time.
+ * The connections handed out are proxies that give the physical connection back to the pool on close().
+ */
+public class ConnectionPool {
+
+  private static final Logger log = LogManager.getLogger(ConnectionPool.class);
+
+  public static final int MIN_IDLE_DEFAULT = 0;
+  public static final int MAX_SIZE_DEFAULT = 5;
+  public static final int IDLE_TIMEOUT_SECONDS_DEFAULT = 600;
+
+  /** Idle connections are validated before being handed out if they have been unused for longer than this */
+  private static final long VALIDATE_AFTER_MILLIS = 5000;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+  private static final long MAX_WAIT_MILLIS = 30000;
+  private static final long EVICTION_INTERVAL_SECONDS = 30;
+
+  private static final Map<String, ConnectionPool> pools = new HashMap<>();
+  private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "ride-connection-pool");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  static {
+    evictor.scheduleWithFixedDelay(ConnectionPool::maintainAll, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private final String name;
+  private final Driver driver;
+  private final String url;
+  private final Properties props;
+  private final int minIdle;
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+  private final String validationQuery;
+
+  private final Deque<PooledConnection> idle = new ArrayDeque<>();
+  private int openCount;
+  private boolean closed;
+
+  /**
+   * @param driver the driver to connect with or null to use the DriverManager
+   * @param validationQuery the query used to check that an idle connection is still usable,
+   *                        if blank Connection.isValid() is used
+   */
+  public ConnectionPool(String name, Driver driver, String url, Properties props, int minIdle, int maxSize,
+                        int idleTimeoutSeconds, String validationQuery) {
+    this.name = name;
+    this.driver = driver;
+    this.url = url;
+    this.props = props;
+    this.maxSize = Math.max(1, maxSize);
+    this.minIdle = Math.min(Math.max(0, minIdle), this.maxSize);
+    this.idleTimeoutMillis = idleTimeoutSeconds * 1000L;
+    this.validationQuery = validationQuery == null || validationQuery.trim().isEmpty() ? null : validationQuery.trim();
+  }
+
+  /**
+   * Get the pool registered under the key or register the one created by the factory.
+   */
+  static ConnectionPool get(String key, PoolFactory factory) throws SQLException {
+    ConnectionPool pool;
+    synchronized (pools) {
+      pool = pools.get(key);
+      if (pool == null) {
+        pool = factory.create();
+        pools.put(key, pool);
+      }
+    }
+    if (pool.minIdle > 0) {
+      evictor.execute(pool::maintain);
+    }
+    return pool;
+  }
+
+  /**
+   * Close all pools, e.g. when the session classloader (and hence the drivers) changes or the settings are updated.
+   * Connections in use are closed when they are given back.
+   */
+  public static void closeAll() {
+    List<ConnectionPool> toClose;
+    synchronized (pools) {
+      toClose = new ArrayList<>(pools.values());
+      pools.clear();
+    }
+    toClose.forEach(ConnectionPool::close);
+  }
+
+  private static void maintainAll() {
+    List<ConnectionPool> toMaintain;
+    synchronized (pools) {
+      toMaintain = new ArrayList<>(pools.values());
+    }
+    toMaintain.forEach(ConnectionPool::maintain);
+  }
+
+  public Connection getConnection() throws SQLException {
+    long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+    while (true) {
+      PooledConnection pooled;
+      synchronized (this) {
+        if (closed) {
+          throw new SQLException("The connection pool for " + name + " is closed");
+        }
+        pooled = idle.pollFirst();
+        if (pooled == null) {
+          if (openCount >= maxSize) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+              throw new SQLException("Timed out waiting for a free connection to " + name
+                  + ", all " + maxSize + " connections are in use");
+            }
+            try {
+              wait(wait);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new SQLException("Interrupted while waiting for a connection to " + name, e);
+            }
+            continue;
+          }
+          openCount++;
+        }
+      }
+      if (pooled == null) {
+        try {
+          pooled = open();
+        } catch (SQLException | RuntimeException e) {
+          discarded();
+          throw e;
+        }
+        return pooled.lease();
+      }
+      if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_MILLIS || isValid(pooled.connection)) {
+        return pooled.lease();
+      }
+      log.debug("Discarding stale connection to {}", name);
+      pooled.closePhysical();
+      discarded();
+    }
+  }
+
+  public synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+  public synchronized int getOpenCount() {
+    return openCount;
+  }
+
+  /**
+   * Close idle connections that have not been used for longer than the idle timeout and open new ones
+   * if there are fewer idle connections than minIdle.
+   */
+  void maintain() {
+    List<PooledConnection> expired = new ArrayList<>();
+    int missing;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      Iterator<PooledConnection> it = idle.descendingIterator();
+      while (it.hasNext() && idle.size() > minIdle) {
+        PooledConnection pooled = it.next();
+        if (now - pooled.lastUsed > idleTimeoutMillis) {
+          it.remove();
+          expired.add(pooled);
+          openCount--;
+        }
+      }
+      missing = Math.min(minIdle - idle.size(), maxSize - openCount);
+      if (missing > 0) {
+        openCount += missing;
+      }
+    }
+    expired.forEach(PooledConnection::closePhysical);
+    for (int i = 0; i < missing; i++) {
+      try {
+        release(open());
+      } catch (SQLException | RuntimeException e) {
+        log.warn("Failed to open idle connection to {}: {}", name, e.toString());
+        for (; i < missing; i++) {
+          discarded();
+        }
+      }
+    }
+  }
+
+  void close() {
+    List<PooledConnection> toClose;
+    synchronized (this) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      openCount -= idle.size();
+      idle.clear();
+      notifyAll();
+    }
+    toClose.forEach(PooledConnection::closePhysical);
+  }
+
+  private PooledConnection open() throws SQLException {
+    log.debug("Opening new connection to {}", name);
+    Connection con = driver == null ? DriverManager.getConnection(url, props) : driver.connect(url, props);
+    if (con == null) {
+      // Driver.connect returns null when the driver does not accept the url
+      throw new SQLException("The driver " + driver.getClass().getName() + " does not accept the url " + url);
+    }
+    return new PooledConnection(con);
+  }
+
+  private boolean isValid(Connection con) {
+    try {
+      if (validationQuery == null) {
+        return con.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }
+      try (Statement stm = con.createStatement()) {
+        stm.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+        stm.execute(validationQuery);
+      }
+      return true;
+    } catch (SQLException | RuntimeException | AbstractMethodError e) {
+      // AbstractMethodError: old jdbc 3 drivers does not implement isValid
+      return false;
+    }
+  }
+
+  private void release(PooledConnection pooled) {
+    synchronized (this) {
+      if (!closed) {
+        pooled.lastUsed = System.currentTimeMillis();
+        idle.addFirst(pooled);
+        notifyAll();
+        return;
+      }
+      openCount--;
+    }
+    pooled.closePhysical();
+  }
+
+  private synchronized void discarded() {
+    openCount--;
+    notifyAll();
+  }
+
+  @FunctionalInterface
+  interface PoolFactory {
+    ConnectionPool create() throws SQLException;
+  }
+
+  private class PooledConnection {
+    final Connection connection;
+    final boolean initialAutoCommit;
+    long lastUsed = System.currentTimeMillis();
+
+    PooledConnection(Connection connection) throws SQLException {
+      this.connection = connection;
+      this.initialAutoCommit = connection.getAutoCommit();
+    }
+
+    Connection lease() {
+      return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+          new Class<?>[]{Connection.class}, new LeaseHandler(this));
+    }
+
+    /**
+     * Called when the lease is closed, reset what the borrower might have changed
+     * and give the connection back to the pool unless it is broken.
+     */
+    void giveBack() {
+      try {
+        if (connection.isClosed()) {
+          discarded();
+          return;
+        }
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+        }
+        if (connection.getAutoCommit() != initialAutoCommit) {
+          connection.setAutoCommit(initialAutoCommit);
+        }
+        connection.clearWarnings();
+      } catch (SQLException | RuntimeException e) {
+        log.debug("Discarding connection to {} that failed to reset: {}", name, e.toString());
+        closePhysical();
+        discarded();
+        return;
+      }
+      release(this);
+    }
+
+    void closePhysical() {
+      try {
+        connection.close();
+      } catch (SQLException | RuntimeException e) {
+        log.debug("Failed to close connection to {}: {}", name, e.toString());
+      }
+    }
+  }
+
+  private static class LeaseHandler implements InvocationHandler {
+    private final PooledConnection pooled;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    LeaseHandler(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (closed.compareAndSet(false, true)) {
+            pooled.giveBack();
+          }
+          return null;
+        case "isClosed":
+          return closed.get() || pooled.connection.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled " + pooled.connection;
+        default:
+          if (closed.get()) {
+            throw new SQLException("Connection is closed");
+          }
+          try {
+            return method.invoke(pooled.connection, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+  }
+}
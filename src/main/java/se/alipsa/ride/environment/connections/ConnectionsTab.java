@@ -8,7 +8,6 @@ import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Cursor;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -27,26 +26,21 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import org.fxmisc.flowless.VirtualizedScrollPane;
-import org.renjin.script.RenjinScriptEngine;
-import org.renjin.script.RenjinScriptEngineFactory;
-import org.renjin.sexp.ListVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import se.alipsa.renjin.client.datautils.Table;
-import se.alipsa.renjin.client.datautils.RDataTransformer;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.UnStyledCodeArea;
 import se.alipsa.ride.code.CodeType;
 import se.alipsa.ride.code.rtab.RTextArea;
-import se.alipsa.ride.model.TableMetaData;
 import se.alipsa.ride.utils.*;
 
-import java.io.Serializable;
 import java.sql.*;
 import java.util.*;
 import java.util.prefs.BackingStoreException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
 public class ConnectionsTab extends Tab {
 
@@ -64,7 +58,12 @@ public class ConnectionsTab extends Tab {
   private PasswordField passwordField;
   private final TableView<ConnectionInfo> connectionsTable = new TableView<>();
 
-  private final TreeItemComparator treeItemComparator = new TreeItemComparator();
+  private final Map<String, MetaDataLoader> metaDataLoaders = new HashMap<>();
+  private final ExecutorService metaDataExecutor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ride-metadata");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   private static final Logger log = LogManager.getLogger(ConnectionsTab.class);
 
@@ -203,7 +202,7 @@ public class ConnectionsTab extends Tab {
       existing.setPassword(con.getPassword());
       existing.setDriver(con.getDriver());
       existing.setUrl(con.getUrl());
-
+      metaDataLoaders.remove(con.getName());
     }
     connectionsTable.refresh();
   }
@@ -246,11 +245,15 @@ public class ConnectionsTab extends Tab {
       final TableRow<ConnectionInfo> row = new TableRow<>();
       final ContextMenu contextMenu = new ContextMenu();
       final MenuItem removeMenuItem = new MenuItem("remove connection");
-      removeMenuItem.setOnAction(event -> tableView.getItems().remove(row.getItem()));
+      removeMenuItem.setOnAction(event -> {
+        metaDataLoaders.remove(row.getItem().getName());
+        tableView.getItems().remove(row.getItem());
+      });
       final MenuItem deleteMenuItem = new MenuItem("delete connection permanently");
       deleteMenuItem.setOnAction(event -> {
         ConnectionInfo item = row.getItem();
         tableView.getItems().remove(item);
+        metaDataLoaders.remove(item.getName());
         deleteSavedConnection(item);
         name.getItems().remove(item.getName());
         tableView.refresh();
@@ -350,68 +353,22 @@ public class ConnectionsTab extends Tab {
   }
 
   /**
-   * this is consistent for at least postgres, H2, sqlite and SQl server
+   * Show the schema tree of the connection, each level is read from the DatabaseMetaData when it is expanded.
    */
   private void showConnectionMetaData(ConnectionInfo con) {
-    setWaitCursor();
-    String sql;
-    boolean addNaWhenBlank = false;
-    if (con.getDriver().equals(DRV_SQLLITE)) {
-      boolean hasTables = false;
-      try {
-        Connection jdbcCon = con.connect();
-        ResultSet rs = jdbcCon.createStatement().executeQuery("select * from sqlite_master");
-        if (rs.next()) hasTables = true;
-        jdbcCon.close();
-      } catch (SQLException e) {
-        ExceptionAlert.showAlert("Failed to query sqlite_master", e);
-      }
-      if (hasTables) {
-        sql = "SELECT \n" +
-           "  m.name as TABLE_NAME \n" +
-           ", m.type as TABLE_TYPE \n" +
-           ", p.name as COLUMN_NAME\n" +
-           ", p.cid as ORDINAL_POSITION\n" +
-           ", case when p.[notnull] = 0 then 1 else 0 end as IS_NULLABLE\n" +
-           ", p.type as DATA_TYPE\n" +
-           ", 0 as CHARACTER_MAXIMUM_LENGTH\n" +
-           ", 0 as NUMERIC_PRECISION\n" +
-           ", 0 as NUMERIC_SCALE\n" +
-           ", '' as COLLATION_NAME\n" +
-           "FROM \n" +
-           "  sqlite_master AS m\n" +
-           "JOIN \n" +
-           "  pragma_table_info(m.name) AS p";
-        addNaWhenBlank = false;
-      } else {
-        setNormalCursor();
-        Alerts.info("Empty database", "This sqlite database has no tables yet");
-        return;
-      }
-    } else {
-      sql = "select col.TABLE_NAME\n" +
-         ", TABLE_TYPE\n" +
-         ", COLUMN_NAME\n" +
-         ", ORDINAL_POSITION\n" +
-         ", IS_NULLABLE\n" +
-         ", DATA_TYPE\n" +
-         ", CHARACTER_MAXIMUM_LENGTH\n" +
-         ", NUMERIC_PRECISION\n" +
-         ", NUMERIC_SCALE\n" +
-         ", COLLATION_NAME\n" +
-         "from INFORMATION_SCHEMA.COLUMNS col\n" +
-         "inner join INFORMATION_SCHEMA.TABLES tab " +
-         "      on col.TABLE_NAME = tab.TABLE_NAME and col.TABLE_SCHEMA = tab.TABLE_SCHEMA\n" +
-         "where TABLE_TYPE <> 'SYSTEM TABLE'\n" +
-         "and tab.TABLE_SCHEMA not in ('SYSTEM TABLE', 'PG_CATALOG', 'INFORMATION_SCHEMA', 'pg_catalog', 'information_schema')";
-    }
-    if (con.getDriver().equals(DRV_SQLSERVER)) {
-      addNaWhenBlank = true;
-    }
-    String rCode = baseRQueryString(con, "connectionsTabDf <- dbGetQuery", sql, addNaWhenBlank).toString();
-
-    // runScriptSilent newer returns so have to run in a thread
-    runScriptInThread(rCode, con);
+    MetaDataLoader loader = metaDataLoaders.computeIfAbsent(con.getName(), k -> new MetaDataLoader(con));
+    TreeView<MetaDataNode> treeView = createMetaDataTree(loader);
+
+    Button refreshButton = new Button("Refresh");
+    refreshButton.setTooltip(new Tooltip("Read the metadata from the database again"));
+    refreshButton.setOnAction(e -> refresh((MetaDataTreeItem) treeView.getRoot()));
+    HBox buttonPane = new HBox(refreshButton);
+    buttonPane.setPadding(FLOWPANE_INSETS);
+
+    BorderPane pane = new BorderPane();
+    pane.setTop(buttonPane);
+    pane.setCenter(treeView);
+    createAndShowWindow(con.getName() + " connection view", pane);
   }
 
   private void showDatabases(ConnectionInfo connectionInfo) {
@@ -476,55 +433,6 @@ public class ConnectionsTab extends Tab {
     createAndShowWindow(title, scrollPane);
   }
 
-  void runScriptInThread(String rCode, ConnectionInfo con) {
-    String connectionName = con.getName();
-    Task<Void> task = new Task<Void>() {
-      @Override
-      public Void call() throws Exception {
-        try {
-          RenjinScriptEngineFactory factory = new RenjinScriptEngineFactory();
-          RenjinScriptEngine engine = factory.getScriptEngine(gui.getConsoleComponent().getSession());
-          engine.eval(rCode);
-        } catch (RuntimeException e) {
-          // RuntimeExceptions (such as EvalExceptions is not caught so need to wrap all in an exception
-          // this way we can get to the original one by extracting the cause from the thrown exception
-          throw new Exception(e);
-        }
-        return null;
-      }
-    };
-    task.setOnSucceeded(e -> {
-      try {
-        ListVector df = (ListVector) gui.getConsoleComponent().fetchVar("connectionsTabDf");
-        List<List<Object>> rows = RDataTransformer.toRowlist(df);
-        List<TableMetaData> metaDataList = new ArrayList<>();
-        rows.forEach(r -> metaDataList.add(new TableMetaData(r)));
-        gui.getConsoleComponent().runScriptSilent(cleanupRQueryString().append("rm(connectionsTabDf)").toString());
-        setNormalCursor();
-        TreeView<String> treeView = createMetaDataTree(metaDataList, con);
-        createAndShowWindow(connectionName + " connection view", treeView);
-      } catch (Exception ex) {
-        setNormalCursor();
-        ExceptionAlert.showAlert("Failed to create connection tree view", ex);
-      }
-    });
-
-    task.setOnFailed(e -> {
-      setNormalCursor();
-      Throwable throwable = task.getException();
-      Throwable ex = throwable.getCause();
-      if (ex == null) {
-        ex = throwable;
-      }
-      String msg = gui.getConsoleComponent().createMessageFromEvalException(ex);
-      log.warn("Exception when running R code {}", rCode);
-      ExceptionAlert.showAlert(msg + ex.getMessage(), ex);
-    });
-    Thread scriptThread = new Thread(task);
-    scriptThread.setDaemon(false);
-    scriptThread.start();
-  }
-
   private void createAndShowWindow(String title, Parent view) {
     Scene dialog = new Scene(view);
     dialog.getStylesheets().addAll(gui.getStyleSheets());
@@ -540,73 +448,98 @@ public class ConnectionsTab extends Tab {
     stage.toFront();
   }
 
-  private void setNormalCursor() {
-    gui.setNormalCursor();
-    contentPane.setCursor(Cursor.DEFAULT);
-    connectionsTable.setCursor(Cursor.DEFAULT);
-  }
-
-  private void setWaitCursor() {
-    gui.setWaitCursor();
-    contentPane.setCursor(Cursor.WAIT);
-    connectionsTable.setCursor(Cursor.WAIT);
-  }
-
-  private TreeView<String> createMetaDataTree(List<TableMetaData> table, ConnectionInfo con) {
-    String connectionName = con.getName();
-    TreeView<String> tree = new TreeView<>();
-    TreeItem<String> root = new TreeItem<>(connectionName);
+  private TreeView<MetaDataNode> createMetaDataTree(MetaDataLoader loader) {
+    TreeView<MetaDataNode> tree = new TreeView<>();
+    MetaDataTreeItem root = new MetaDataTreeItem(MetaDataNode.connection(loader.getConnectionInfo().getName()), loader);
     tree.setRoot(root);
-    Map<String, List<TableMetaData>> tableMap = table.stream()
-        .collect(Collectors.groupingBy(TableMetaData::getTableName));
-    tableMap.forEach((k, v) -> {
-      TreeItem<String> tableName = new TreeItem<>(k);
-      root.getChildren().add(tableName);
-      v.forEach(c -> {
-        TreeItem<String> column = new TreeItem<>(c.asColumnString());
-        tableName.getChildren().add(column);
-      });
-      tableName.getChildren().sort(treeItemComparator);
-    });
-    root.getChildren().sort(treeItemComparator);
     root.setExpanded(true);
     tree.setOnKeyPressed(event -> {
       if (KEY_CODE_COPY.match(event)) {
         copySelectionToClipboard(tree);
       }
     });
-    tree.setCellFactory(p -> new TableNameTreeCell(con));
+    tree.setCellFactory(p -> new TableNameTreeCell(loader.getConnectionInfo()));
     return tree;
   }
 
-  private void copySelectionToClipboard(final TreeView<String> treeView) {
-    TreeItem<String> treeItem = treeView.getSelectionModel().getSelectedItem();
-    copySelectionToClipboard(treeItem);
+  private void refresh(MetaDataTreeItem item) {
+    item.loader.refresh(item.getValue());
+    item.reload();
   }
 
-  private void copySelectionToClipboard(final TreeItem<String> treeItem) {
-    final ClipboardContent clipboardContent = new ClipboardContent();
-    String value = treeItem.getValue();
-    int idx = value.indexOf(TableMetaData.COLUMN_META_START);
-    if (idx > -1) {
-      value = value.substring(0, idx);
+  private void copySelectionToClipboard(final TreeView<MetaDataNode> treeView) {
+    TreeItem<MetaDataNode> treeItem = treeView.getSelectionModel().getSelectedItem();
+    if (treeItem != null) {
+      copySelectionToClipboard(treeItem);
     }
-    clipboardContent.putString(value);
-    Clipboard.getSystemClipboard().setContent(clipboardContent);
   }
 
-  private static class TreeItemComparator implements Comparator<TreeItem<String>>, Serializable {
+  private void copySelectionToClipboard(final TreeItem<MetaDataNode> treeItem) {
+    final ClipboardContent clipboardContent = new ClipboardContent();
+    clipboardContent.putString(treeItem.getValue().getName());
+    Clipboard.getSystemClipboard().setContent(clipboardContent);
+  }
 
-    private static final long serialVersionUID = -7997376258097396238L;
+  /**
+   * A tree item that reads its children in the background the first time it is expanded.
+   */
+  private final class MetaDataTreeItem extends TreeItem<MetaDataNode> {
+    private final MetaDataLoader loader;
+    private boolean loaded;
+
+    MetaDataTreeItem(MetaDataNode node, MetaDataLoader loader) {
+      super(node);
+      this.loader = loader;
+      if (!node.isLeaf()) {
+        getChildren().add(new TreeItem<>(MetaDataNode.loading()));
+        expandedProperty().addListener((obs, wasExpanded, isExpanded) -> {
+          if (isExpanded && !loaded) {
+            load();
+          }
+        });
+      }
+    }
 
     @Override
-    public int compare(TreeItem<String> fileTreeItem, TreeItem<String> t1) {
-      return fileTreeItem.getValue().compareToIgnoreCase(t1.getValue());
+    public boolean isLeaf() {
+      return getValue().isLeaf();
+    }
+
+    void reload() {
+      loaded = false;
+      getChildren().setAll(new TreeItem<>(MetaDataNode.loading()));
+      if (isExpanded()) {
+        load();
+      }
+    }
+
+    private void load() {
+      loaded = true;
+      Task<List<MetaDataNode>> task = new Task<List<MetaDataNode>>() {
+        @Override
+        protected List<MetaDataNode> call() throws Exception {
+          return loader.getChildren(getValue());
+        }
+      };
+      task.setOnSucceeded(e -> {
+        List<TreeItem<MetaDataNode>> children = new ArrayList<>();
+        task.getValue().forEach(n -> children.add(new MetaDataTreeItem(n, loader)));
+        getChildren().setAll(children);
+      });
+      task.setOnFailed(e -> {
+        loaded = false;
+        getChildren().clear();
+        setExpanded(false);
+        Throwable ex = task.getException();
+        ExceptionAlert.showAlert("Failed to read metadata for " + getValue() + ": " + ex.getMessage(), ex);
+      });
+      metaDataExecutor.execute(task);
     }
   }
 
-  private final class TableNameTreeCell extends TreeCell<String> {
+  private final class TableNameTreeCell extends TreeCell<MetaDataNode> {
     private final ContextMenu tableRightClickMenu = new ContextMenu();
+    private final ContextMenu containerRightClickMenu = new ContextMenu();
     private final ContextMenu columnRightClickMenu = new ContextMenu();
 
     TableNameTreeCell(ConnectionInfo con) {
@@ -618,55 +551,82 @@ public class ConnectionsTab extends Tab {
       columnRightClickMenu.getItems().add(copyItem2);
       copyItem2.setOnAction( event -> copySelectionToClipboard(getTreeItem()) );
 
+      MenuItem copyItem3 = new MenuItem("copy");
+      containerRightClickMenu.getItems().add(copyItem3);
+      copyItem3.setOnAction( event -> copySelectionToClipboard(getTreeItem()) );
+
+      MenuItem refreshItem = new MenuItem("refresh");
+      refreshItem.setOnAction(event -> refresh((MetaDataTreeItem) getTreeItem()));
+      containerRightClickMenu.getItems().add(refreshItem);
+
+      MenuItem refreshTableItem = new MenuItem("refresh");
+      refreshTableItem.setOnAction(event -> refresh((MetaDataTreeItem) getTreeItem()));
+
       MenuItem sampleContent = new MenuItem("View 200 rows");
-      tableRightClickMenu.getItems().add(sampleContent);
+      tableRightClickMenu.getItems().addAll(sampleContent, refreshTableItem);
       sampleContent.setOnAction(event -> {
-
-        try (Connection connection = con.connect();
-             Statement stm = connection.createStatement()) {
-          stm.setMaxRows(200);
-          String tableName = getTreeItem().getValue();
-          List<String> columnList = new ArrayList<>();
-          List<List<Object>> rowList = new ArrayList<>();
-          try(ResultSet rs = stm.executeQuery("SELECT * from " + tableName)){
-            rs.setFetchSize(200);
-            ResultSetMetaData rsMeta = rs.getMetaData();
-            int numColumns = rsMeta.getColumnCount();
-            for (int i = 1; i <= numColumns; i++) {
-              columnList.add(rsMeta.getColumnName(i));
-            }
-            while (rs.next()) {
-              List<Object> row = new ArrayList<>();
-              for (int i = 1; i <= numColumns; i++) {
-                row.add(rs.getObject(i));
-              }
-              rowList.add(row);
-            }
+        String tableName = getTreeItem().getValue().getQualifiedTableName();
+        Task<Table> task = new Task<Table>() {
+          @Override
+          protected Table call() throws Exception {
+            return sampleTable(con, tableName);
           }
-          Table table = new Table(columnList, rowList);
-          gui.getInoutComponent().showInViewer(table, tableName);
-
-        } catch (SQLException e) {
-          ExceptionAlert.showAlert("Failed to sample table", e);
-        }
+        };
+        task.setOnSucceeded(e -> gui.getInoutComponent().showInViewer(task.getValue(), tableName));
+        task.setOnFailed(e -> ExceptionAlert.showAlert("Failed to sample table", task.getException()));
+        metaDataExecutor.execute(task);
       });
     }
 
     @Override
-    public void updateItem(String item, boolean empty) {
+    public void updateItem(MetaDataNode item, boolean empty) {
       super.updateItem(item, empty);
-      if (empty) {
+      if (empty || item == null) {
         setText(null);
         setGraphic(null);
+        setContextMenu(null);
       } else {
-        setText(item);
+        setText(item.toString());
         setGraphic(getTreeItem().getGraphic());
-        if ( (!getTreeItem().isLeaf()) && (getTreeItem().getParent() != null) ) {
-          setContextMenu(tableRightClickMenu);
-        } else if (getTreeItem().isLeaf()) {
-          setContextMenu(columnRightClickMenu);
+        switch (item.getType()) {
+          case TABLE:
+            setContextMenu(tableRightClickMenu);
+            break;
+          case COLUMN:
+            setContextMenu(columnRightClickMenu);
+            break;
+          case LOADING:
+            setContextMenu(null);
+            break;
+          default:
+            setContextMenu(containerRightClickMenu);
+        }
+      }
+    }
+  }
+
+  private Table sampleTable(ConnectionInfo con, String tableName) throws SQLException {
+    try (Connection connection = con.connect();
+         Statement stm = connection.createStatement()) {
+      stm.setMaxRows(200);
+      List<String> columnList = new ArrayList<>();
+      List<List<Object>> rowList = new ArrayList<>();
+      try(ResultSet rs = stm.executeQuery("SELECT * from " + tableName)){
+        rs.setFetchSize(200);
+        ResultSetMetaData rsMeta = rs.getMetaData();
+        int numColumns = rsMeta.getColumnCount();
+        for (int i = 1; i <= numColumns; i++) {
+          columnList.add(rsMeta.getColumnName(i));
+        }
+        while (rs.next()) {
+          List<Object> row = new ArrayList<>();
+          for (int i = 1; i <= numColumns; i++) {
+            row.add(rs.getObject(i));
+          }
+          rowList.add(row);
         }
       }
+      return new Table(columnList, rowList);
     }
   }
 }
@@ -0,0 +1,218 @@
+package se.alipsa.ride.environment.connections;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.alipsa.ride.model.TableMetaData;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the catalogs, schemas, tables and columns of a connection one level at a time using the jdbc
+ * DatabaseMetaData and caches what has been read until it is refreshed.
+ */
+public class MetaDataLoader {
+
+  private static final Logger log = LogManager.getLogger(MetaDataLoader.class);
+  private static final Comparator<MetaDataNode> BY_NAME =
+      Comparator.comparing(MetaDataNode::getName, String.CASE_INSENSITIVE_ORDER);
+
+  private final ConnectionInfo connectionInfo;
+  private final ConnectionSource connectionSource;
+  private final Map<String, List<MetaDataNode>> cache = new ConcurrentHashMap<>();
+
+  public MetaDataLoader(ConnectionInfo connectionInfo) {
+    this(connectionInfo, connectionInfo::connect);
+  }
+
+  /**
+   * @param connectionSource where the connections are taken from, normally the pool of the connection info
+   */
+  public MetaDataLoader(ConnectionInfo connectionInfo, ConnectionSource connectionSource) {
+    this.connectionInfo = connectionInfo;
+    this.connectionSource = connectionSource;
+  }
+
+  public interface ConnectionSource {
+    Connection connect() throws SQLException;
+  }
+
+  public ConnectionInfo getConnectionInfo() {
+    return connectionInfo;
+  }
+
+  /**
+   * Get the children of the node, from the cache if they have been read before.
+   * This is potentially slow and should not be called on the javafx thread.
+   */
+  public List<MetaDataNode> getChildren(MetaDataNode parent) throws SQLException {
+    List<MetaDataNode> children = cache.get(parent.getKey());
+    if (children != null) {
+      return children;
+    }
+    try (Connection con = connectionSource.connect()) {
+      if (con == null) {
+        throw new SQLException("Failed to connect to " + connectionInfo.getName());
+      }
+      DatabaseMetaData meta = con.getMetaData();
+      switch (parent.getType()) {
+        case CONNECTION:
+          children = readCatalogs(meta, parent);
+          if (children.isEmpty()) {
+            children = readSchemasOrTables(meta, parent);
+          }
+          break;
+        case CATALOG:
+          children = readSchemasOrTables(meta, parent);
+          break;
+        case SCHEMA:
+          children = readTables(meta, parent);
+          break;
+        case TABLE:
+          children = readColumns(meta, parent);
+          break;
+        default:
+          children = new ArrayList<>();
+      }
+    }
+    cache.put(parent.getKey(), children);
+    return children;
+  }
+
+  /**
+   * Remove the node and everything below it from the cache
+   */
+  public void refresh(MetaDataNode node) {
+    String key = node.getKey();
+    cache.keySet().removeIf(k -> k.equals(key) || k.startsWith(key + "/"));
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  private List<MetaDataNode> readCatalogs(DatabaseMetaData meta, MetaDataNode parent) throws SQLException {
+    List<MetaDataNode> catalogs = new ArrayList<>();
+    try (ResultSet rs = meta.getCatalogs()) {
+      while (rs.next()) {
+        catalogs.add(parent.catalog(rs.getString("TABLE_CAT")));
+      }
+    }
+    catalogs.sort(BY_NAME);
+    return catalogs;
+  }
+
+  /**
+   * Databases such as MySQL and SQLite have no schemas in which case the tables are shown directly
+   */
+  private List<MetaDataNode> readSchemasOrTables(DatabaseMetaData meta, MetaDataNode parent) throws SQLException {
+    List<MetaDataNode> schemas = new ArrayList<>();
+    ResultSet rs;
+    try {
+      rs = meta.getSchemas(parent.getCatalog(), null);
+    } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+      log.debug("getSchemas(catalog, pattern) is not supported by {}, using getSchemas()", connectionInfo.getDriver());
+      rs = meta.getSchemas();
+    }
+    try {
+      boolean hasCatalogColumn = rs.getMetaData().getColumnCount() > 1;
+      while (rs.next()) {
+        String catalog = hasCatalogColumn ? rs.getString("TABLE_CATALOG") : null;
+        if (parent.getCatalog() == null || catalog == null || parent.getCatalog().equals(catalog)) {
+          schemas.add(parent.schema(rs.getString("TABLE_SCHEM")));
+        }
+      }
+    } finally {
+      rs.close();
+    }
+    if (schemas.isEmpty()) {
+      return readTables(meta, parent);
+    }
+    schemas.sort(BY_NAME);
+    return schemas;
+  }
+
+  private List<MetaDataNode> readTables(DatabaseMetaData meta, MetaDataNode parent) throws SQLException {
+    List<MetaDataNode> tables = new ArrayList<>();
+    try (ResultSet rs = meta.getTables(parent.getCatalog(), parent.getSchema(), "%", null)) {
+      while (rs.next()) {
+        String tableType = rs.getString("TABLE_TYPE");
+        if ("SYSTEM TABLE".equalsIgnoreCase(tableType)) {
+          continue;
+        }
+        String tableName = rs.getString("TABLE_NAME");
+        tables.add(parent.table(tableName, tableType,
+            qualifiedTableName(meta, parent.getCatalog(), parent.getSchema(), tableName)));
+      }
+    }
+    tables.sort(BY_NAME);
+    return tables;
+  }
+
+  /**
+   * The name of the table as it should be written in a select statement: each part quoted (so that mixed case
+   * names and names with spaces work) and the catalog put where, and with the separator, the database wants it
+   * (e.g. catalog.schema.table in SQL Server, schema.table@catalog in Oracle). The catalog and schema are only
+   * included if the database supports them in statements.
+   */
+  static String qualifiedTableName(DatabaseMetaData meta, String catalog, String schema, String table)
+      throws SQLException {
+    String quote = meta.getIdentifierQuoteString();
+    quote = quote == null ? "" : quote.trim();
+    StringBuilder name = new StringBuilder();
+    if (schema != null && !schema.isEmpty() && meta.supportsSchemasInDataManipulation()) {
+      name.append(quote(schema, quote)).append('.');
+    }
+    name.append(quote(table, quote));
+    if (catalog != null && !catalog.isEmpty() && meta.supportsCatalogsInDataManipulation()) {
+      String separator = meta.getCatalogSeparator();
+      if (separator == null || separator.isEmpty()) {
+        separator = ".";
+      }
+      if (meta.isCatalogAtStart()) {
+        name.insert(0, quote(catalog, quote) + separator);
+      } else {
+        name.append(separator).append(quote(catalog, quote));
+      }
+    }
+    return name.toString();
+  }
+
+  private static String quote(String identifier, String quote) {
+    if (quote.isEmpty()) {
+      return identifier;
+    }
+    return quote + identifier.replace(quote, quote + quote) + quote;
+  }
+
+  private List<MetaDataNode> readColumns(DatabaseMetaData meta, MetaDataNode parent) throws SQLException {
+    List<MetaDataNode> columns = new ArrayList<>();
+    try (ResultSet rs = meta.getColumns(parent.getCatalog(), parent.getSchema(), parent.getTable(), "%")) {
+      while (rs.next()) {
+        String columnName = rs.getString("COLUMN_NAME");
+        TableMetaData columnMeta = new TableMetaData(
+            parent.getTable(),
+            null,
+            columnName,
+            rs.getInt("ORDINAL_POSITION"),
+            String.valueOf(rs.getString("IS_NULLABLE")),
+            rs.getString("TYPE_NAME"),
+            rs.getInt("COLUMN_SIZE"),
+            rs.getInt("COLUMN_SIZE"),
+            rs.getInt("DECIMAL_DIGITS"),
+            null
+        );
+        columns.add(parent.column(columnName, columnMeta.asColumnString()));
+      }
+    }
+    return columns;
+  }
+}
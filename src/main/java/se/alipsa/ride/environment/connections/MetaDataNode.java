@@ -0,0 +1,108 @@
+package se.alipsa.ride.environment.connections;
+
+/**
+ * A node in the schema tree of a connection, i.e. a catalog, schema, table or column.
+ */
+public class MetaDataNode {
+
+  public enum Type {
+    CONNECTION, CATALOG, SCHEMA, TABLE, COLUMN, LOADING
+  }
+
+  private final Type type;
+  private final String catalog;
+  private final String schema;
+  private final String table;
+  private final String name;
+  private final String label;
+  private final String qualifiedTableName;
+  private final String key;
+
+  private MetaDataNode(Type type, MetaDataNode parent, String catalog, String schema, String table,
+                       String name, String label, String qualifiedTableName) {
+    this.type = type;
+    this.catalog = catalog;
+    this.schema = schema;
+    this.table = table;
+    this.name = name;
+    this.label = label;
+    this.qualifiedTableName = qualifiedTableName;
+    this.key = parent == null ? "" : parent.getKey() + "/" + name;
+  }
+
+  public static MetaDataNode connection(String connectionName) {
+    return new MetaDataNode(Type.CONNECTION, null, null, null, null, connectionName, connectionName, null);
+  }
+
+  public static MetaDataNode loading() {
+    return new MetaDataNode(Type.LOADING, null, null, null, null, "", "loading...", null);
+  }
+
+  MetaDataNode catalog(String catalogName) {
+    return new MetaDataNode(Type.CATALOG, this, catalogName, null, null, catalogName, catalogName, null);
+  }
+
+  MetaDataNode schema(String schemaName) {
+    return new MetaDataNode(Type.SCHEMA, this, catalog, schemaName, null, schemaName, schemaName, null);
+  }
+
+  /**
+   * @param qualifiedTableName the name to use for the table in a statement, see MetaDataLoader
+   */
+  MetaDataNode table(String tableName, String tableType, String qualifiedTableName) {
+    String tableLabel = tableType == null || "TABLE".equalsIgnoreCase(tableType)
+        ? tableName
+        : tableName + " (" + tableType.toLowerCase() + ")";
+    return new MetaDataNode(Type.TABLE, this, catalog, schema, tableName, tableName, tableLabel,
+        qualifiedTableName);
+  }
+
+  MetaDataNode column(String columnName, String columnLabel) {
+    return new MetaDataNode(Type.COLUMN, this, catalog, schema, table, columnName, columnLabel,
+        qualifiedTableName);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getCatalog() {
+    return catalog;
+  }
+
+  public String getSchema() {
+    return schema;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the table name qualified with the catalog and schema (where the database supports it) and quoted,
+   * suitable for a select statement. Null for nodes above the table level.
+   */
+  public String getQualifiedTableName() {
+    return qualifiedTableName;
+  }
+
+  /**
+   * The path to this node, used as the key in the metadata cache
+   */
+  public String getKey() {
+    return key;
+  }
+
+  public boolean isLeaf() {
+    return type == Type.COLUMN || type == Type.LOADING;
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
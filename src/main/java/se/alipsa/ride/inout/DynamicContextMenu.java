@@ -125,9 +125,9 @@ public class DynamicContextMenu extends ContextMenu {
             if (newFile.getName().endsWith(".java")) {
                addJavaContent(newFile);
             }
-            TreeItem<FileItem> node = fileTree.addTreeNode(newFile);
+            fileTree.addTreeNode(newFile);
             fileTree.openFileTab(newFile);
-            GitUtils.colorNode(git, GitUtils.asRelativePath(newFile, fileTree.getRootDir()), node);
+            fileTree.updateGitStatus(newFile);
          } catch (IOException e1) {
             ExceptionAlert.showAlert("Failed to create file", e1);
          }
@@ -864,7 +864,7 @@ public class DynamicContextMenu extends ContextMenu {
       try {
          DirCache dc = git.add().addFilepattern(currentPath).call();
          log.info("Added {} to git dir cache, node is {}", currentPath, currentNode.getValue().getText());
-         GitUtils.colorNode(git, currentPath, currentNode);
+         fileTree.updateGitStatus(currentNode.getValue().getFile());
       } catch (GitAPIException e) {
          log.warn("Failed to add " + currentPath, e);
          ExceptionAlert.showAlert("Failed to add " + currentPath, e);
@@ -1,13 +1,8 @@
 package se.alipsa.ride.inout;
 
-import static se.alipsa.ride.Constants.GitStatus.GIT_ADDED;
-import static se.alipsa.ride.Constants.GitStatus.GIT_CHANGED;
-import static se.alipsa.ride.Constants.GitStatus.GIT_CONFLICT;
-import static se.alipsa.ride.Constants.GitStatus.GIT_IGNORED;
-import static se.alipsa.ride.Constants.GitStatus.GIT_MODIFIED;
-import static se.alipsa.ride.Constants.GitStatus.GIT_UNCOMITTED_CHANGE;
-import static se.alipsa.ride.Constants.GitStatus.GIT_UNTRACKED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_NONE;
 import static se.alipsa.ride.Constants.KEY_CODE_COPY;
+import static se.alipsa.ride.menu.GlobalOptions.FILETREE_EXCLUDES;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -26,33 +21,50 @@ import javafx.scene.input.MouseEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.Status;
-import org.eclipse.jgit.api.errors.GitAPIException;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.code.CodeComponent;
 import se.alipsa.ride.code.TextAreaTab;
 import se.alipsa.ride.utils.Alerts;
 import se.alipsa.ride.utils.ExceptionAlert;
 import se.alipsa.ride.utils.FileUtils;
+import se.alipsa.ride.utils.git.GitStatusCache;
 import se.alipsa.ride.utils.git.GitUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class FileTree extends TreeView<FileItem> {
 
   private final String folderUrl = Objects.requireNonNull(FileUtils.getResourceUrl("image/folder.png")).toExternalForm();
   private final String fileUrl = Objects.requireNonNull(FileUtils.getResourceUrl("image/file.png")).toExternalForm();
-  private final String WORKING_DIR_PREF = "FileTree.WorkingDir";
+  public static final String WORKING_DIR_PREF = "FileTree.WorkingDir";
   private TreeItemComparator treeItemComparator = new TreeItemComparator();
   private Ride gui;
   private static Logger log = LogManager.getLogger(FileTree.class);
   private FileOpener fileOpener;
   private DynamicContextMenu menu;
-  private Git git;
   private final InoutComponent inoutComponent;
+  /** the directories whose children have been loaded, these are the ones being watched */
+  private final Map<Path, FileTreeItem> loadedDirs = new HashMap<>();
+  private FileTreeWatcher watcher;
+  private List<PathMatcher> excludes = Collections.emptyList();
+  private GitStatusCache gitStatusCache;
+  private File rootDir;
 
   FileTree(Ride gui, InoutComponent inoutComponent) {
     this.gui = gui;
@@ -76,13 +88,9 @@ public class FileTree extends TreeView<FileItem> {
     }
     if(workDirExist) {
       log.info("Setting working dir to {}", current);
+      // the tree is populated by load() when the window is showing, the root dir is known already though
+      rootDir = current;
       setWorkingDir(current);
-      setRoot(createTree(current));
-      if (inoutComponent.isGitEnabled()) {
-        gitColorTree(getRoot());
-      }
-      sortTree(getRoot());
-      getRoot().setExpanded(true);
     }
     setCellFactory(treeView -> new TreeCell<FileItem>() {
 
@@ -138,11 +146,22 @@ public class FileTree extends TreeView<FileItem> {
   }
 
 
-  File getRootDir() {
-    if (getRoot() == null) {
-      return null;
+  /**
+   * Populate the tree with the root dir set when the tree was created unless it has been changed since.
+   */
+  void load() {
+    if (getRoot() != null || rootDir == null) {
+      return;
+    }
+    setRoot(createRoot(rootDir));
+    if (inoutComponent.isGitEnabled()) {
+      gitColorTree(getRoot());
     }
-    return getRoot().getValue().getFile();
+    getRoot().setExpanded(true);
+  }
+
+  File getRootDir() {
+    return rootDir;
   }
 
   private String getWorkingDirPref() {
@@ -160,85 +179,291 @@ public class FileTree extends TreeView<FileItem> {
     Platform.runLater(() -> gui.setTitle(dir.getName()));
   }
 
-  private TreeItem<FileItem> createTree(File file) {
-    TreeItem<FileItem> item = new TreeItem<>(new FileItem(file));
-    File[] children = file.listFiles();
-    if (children != null) {
-      for (File child : children) {
-        item.getChildren().add(createTree(child));
-      }
-      item.setGraphic(new ImageView(folderUrl));
-    } else {
+  private FileTreeItem createRoot(File dir) {
+    rootDir = dir;
+    if (watcher != null) {
+      watcher.close();
+    }
+    loadedDirs.clear();
+    gitStatusCache = null;
+    excludes = parseExcludes(gui.getPrefs().get(FILETREE_EXCLUDES, ""));
+    try {
+      watcher = new FileTreeWatcher(changes -> Platform.runLater(() -> applyChanges(changes)));
+    } catch (IOException e) {
+      log.warn("Failed to create a file watcher, the file tree will only be updated on refresh", e);
+      watcher = null;
+    }
+    return createItem(dir);
+  }
+
+  private FileTreeItem createItem(File file) {
+    FileTreeItem item = new FileTreeItem(this, file);
+    if (item.isLeaf()) {
       setLeafProperties(item);
+    } else {
+      item.setGraphic(new ImageView(folderUrl));
     }
     return item;
   }
 
+  /**
+   * Called by the FileTreeItem the first time the children of a directory are needed.
+   */
+  List<TreeItem<FileItem>> loadChildren(FileTreeItem dirItem) {
+    File dir = dirItem.getValue().getFile();
+    List<TreeItem<FileItem>> children = new ArrayList<>();
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!isExcluded(file)) {
+          children.add(createItem(file));
+        }
+      }
+    }
+    children.sort(treeItemComparator);
+    Path path = asPath(dir);
+    loadedDirs.put(path, dirItem);
+    if (watcher != null) {
+      watcher.register(path);
+    }
+    if (gitStatusCache != null) {
+      walkAndColor(children);
+    }
+    return children;
+  }
+
+  private void applyChanges(Collection<FileTreeWatcher.DirectoryChange> changes) {
+    List<File> changedFiles = new ArrayList<>();
+    for (FileTreeWatcher.DirectoryChange change : changes) {
+      FileTreeItem dirItem = loadedDirs.get(change.dir);
+      if (dirItem == null) {
+        continue;
+      }
+      if (change.overflow) {
+        syncChildren(dirItem);
+        changedFiles.add(change.dir.toFile());
+        continue;
+      }
+      for (String name : change.names) {
+        File file = change.dir.resolve(name).toFile();
+        changedFiles.add(file);
+        if (!file.exists()) {
+          removeChild(dirItem, name);
+        } else if (!isExcluded(file)) {
+          addChild(dirItem, file);
+        }
+      }
+    }
+    updateGitStatus(changedFiles.toArray(new File[0]));
+  }
+
+  /**
+   * Compare the children of a loaded directory with what is on disk, keeping the items that are still there
+   * (and hence their expanded state).
+   */
+  private void syncChildren(FileTreeItem dirItem) {
+    File[] files = dirItem.getValue().getFile().listFiles();
+    Set<String> names = new HashSet<>();
+    if (files != null) {
+      for (File file : files) {
+        if (!isExcluded(file)) {
+          names.add(file.getName());
+          addChild(dirItem, file);
+        }
+      }
+    }
+    for (TreeItem<FileItem> child : new ArrayList<>(dirItem.getChildren())) {
+      String name = child.getValue().getFile().getName();
+      if (!names.contains(name)) {
+        removeChild(dirItem, name);
+      }
+    }
+  }
+
+  private TreeItem<FileItem> addChild(TreeItem<FileItem> dirItem, File file) {
+    // getChildren loads the dir if it was not loaded before in which case the file is likely already there
+    ObservableList<TreeItem<FileItem>> children = dirItem.getChildren();
+    int index = indexOf(children, file.getName());
+    if (index >= 0) {
+      return children.get(index);
+    }
+    FileTreeItem item = createItem(file);
+    children.add(-(index + 1), item);
+    if (gitStatusCache != null) {
+      walkAndColor(Collections.singletonList(item));
+    }
+    return item;
+  }
+
+  private void removeChild(TreeItem<FileItem> dirItem, String name) {
+    ObservableList<TreeItem<FileItem>> children = dirItem.getChildren();
+    int index = indexOf(children, name);
+    if (index < 0) {
+      return;
+    }
+    TreeItem<FileItem> removed = children.remove(index);
+    if (!removed.isLeaf()) {
+      Path path = asPath(removed.getValue().getFile());
+      loadedDirs.keySet().removeIf(dir -> dir.startsWith(path));
+      if (watcher != null) {
+        watcher.unregister(path);
+      }
+    }
+  }
+
+  /**
+   * Binary search for the child with the given name, the children are always kept sorted by name.
+   *
+   * @return the index of the child or (-(insertion point) - 1) if there is no such child
+   */
+  private static int indexOf(List<TreeItem<FileItem>> children, String name) {
+    int low = 0;
+    int high = children.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = children.get(mid).getValue().getFile().getName().compareTo(name);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private boolean isExcluded(File file) {
+    Path name = file.toPath().getFileName();
+    for (PathMatcher matcher : excludes) {
+      if (matcher.matches(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<PathMatcher> parseExcludes(String globs) {
+    List<PathMatcher> matchers = new ArrayList<>();
+    FileSystem fileSystem = FileSystems.getDefault();
+    for (String glob : globs.split(",")) {
+      String pattern = glob.trim();
+      if (pattern.isEmpty()) {
+        continue;
+      }
+      try {
+        matchers.add(fileSystem.getPathMatcher("glob:" + pattern));
+      } catch (IllegalArgumentException e) {
+        log.warn("Ignoring invalid file tree exclude pattern '{}'", pattern, e);
+      }
+    }
+    return matchers;
+  }
+
+  private static Path asPath(File file) {
+    return file.toPath().toAbsolutePath().normalize();
+  }
+
   private void gitColorTree(TreeItem<FileItem> root) {
-    File rootDir = getRoot().getValue().getFile();
+    File rootDir = getRootDir();
     if (rootDir != null && rootDir.exists() && Objects.requireNonNull(rootDir.list((dir, name) -> name.equalsIgnoreCase(".git"))).length > 0) {
       log.debug("adding git coloring...");
     } else {
       log.debug("not a git repository, skipping git coloring");
       return;
     }
-    Platform.runLater(() -> {
-      try {
-        git = Git.open(rootDir);
-        String branch = git.getRepository().getBranch();
-        inoutComponent.getBranchLabel().setText("Branch: " + branch);
-        Status status;
-        try {
-          status = git.status().call();
-        } catch (GitAPIException e) {
-          ExceptionAlert.showAlert("Failed to get git status", e);
-          return;
-        }
-        walkAndColor(getRoot(), status);
-      } catch (Exception e) {
-        log.error("Failed to set git colors", e);
-        ExceptionAlert.showAlert("Failed to set git colors", e);
-      }
-    });
+    if (gitStatusCache != null) {
+      Platform.runLater(() -> reloadGitStatus(gitStatusCache));
+      return;
+    }
+    // opening the repository reads its config and index so do that in the background as well
+    GitStatusCache.open(rootDir,
+        cache -> Platform.runLater(() -> {
+          if (gitStatusCache == null && rootDir.equals(getRootDir()) && inoutComponent.isGitEnabled()) {
+            gitStatusCache = cache;
+            reloadGitStatus(cache);
+          }
+        }),
+        e -> Platform.runLater(() -> {
+          log.error("Failed to set git colors", e);
+          ExceptionAlert.showAlert("Failed to set git colors", e);
+        })
+    );
   }
 
-  private void walkAndColor(TreeItem<FileItem> node,  Status status) {
-      for(TreeItem<FileItem> child: node.getChildren()){
-
-        FileItem item = child.getValue();
-        File file = item.getFile();
-        String path = GitUtils.asRelativePath(file, getRootDir());
+  private void reloadGitStatus(GitStatusCache cache) {
+    try {
+      String branch = cache.getGit().getRepository().getBranch();
+      inoutComponent.getBranchLabel().setText("Branch: " + branch);
+    } catch (Exception e) {
+      log.error("Failed to set git colors", e);
+      ExceptionAlert.showAlert("Failed to set git colors", e);
+      return;
+    }
+    cache.reload(
+        () -> Platform.runLater(() -> {
+          if (cache == gitStatusCache && getRoot() != null) {
+            walkAndColor(getRoot().getChildren());
+          }
+        }),
+        e -> Platform.runLater(() -> ExceptionAlert.showAlert("Failed to get git status", e))
+    );
+  }
 
-        if(status.getConflicting().contains(path)) {
-          item.setStyle(GIT_CONFLICT.getStyle());
-          continue;
-        }
-        if(status.getAdded().contains(path)) {
-          item.setStyle(GIT_ADDED.getStyle());
-          continue;
-        }
-        if(status.getChanged().contains(path)) {
-          item.setStyle(GIT_CHANGED.getStyle());
-          continue;
-        }
-        if(status.getModified().contains(path)) {
-          item.setStyle(GIT_MODIFIED.getStyle());
-          continue;
-        }
-        if(status.getUncommittedChanges().contains(path)) {
-          item.setStyle(GIT_UNCOMITTED_CHANGE.getStyle());
-          break;
-        }
-        if(status.getUntracked().contains(path)) {
-          item.setStyle(GIT_UNTRACKED.getStyle());
-          continue;
-        }
-        if(status.getIgnoredNotInIndex().contains(path)) {
-          item.setStyle(GIT_IGNORED.getStyle());
-          continue;
+  /**
+   * Recompute the git status of the files (a directory includes everything below it) in the background and
+   * color the ones that are loaded in the tree when done.
+   */
+  void updateGitStatus(File... files) {
+    GitStatusCache cache = gitStatusCache;
+    File rootDir = getRootDir();
+    if (cache == null || rootDir == null) {
+      return;
+    }
+    Path rootPath = asPath(rootDir);
+    List<File> inTree = new ArrayList<>();
+    List<String> paths = new ArrayList<>();
+    for (File file : files) {
+      if (asPath(file).equals(rootPath)) {
+        gitColorTree(getRoot());
+        return;
+      }
+      if (asPath(file).startsWith(rootPath)) {
+        inTree.add(file);
+        paths.add(GitUtils.asRelativePath(file, rootDir));
+      }
+    }
+    cache.update(paths, updated -> Platform.runLater(() -> {
+      if (cache != gitStatusCache) {
+        return;
+      }
+      for (File file : inTree) {
+        TreeItem<FileItem> item = findTreeViewItem(getRoot(), file, false);
+        if (item != null) {
+          walkAndColor(Collections.singletonList(item));
         }
-        walkAndColor(child, status);
       }
+    }));
+  }
+
+  /**
+   * Color the items and the loaded items below them from the cached git status,
+   * the colors are cleared if git is not used.
+   */
+  private void walkAndColor(List<TreeItem<FileItem>> children) {
+    GitStatusCache cache = gitStatusCache;
+    File rootDir = getRootDir();
+    for (TreeItem<FileItem> child : children) {
+      FileItem item = child.getValue();
+      if (cache == null) {
+        item.setStyle(GIT_NONE.getStyle());
+      } else {
+        item.setStyle(cache.getStatus(GitUtils.asRelativePath(item.getFile(), rootDir)).getStyle());
+      }
+      if (child instanceof FileTreeItem && ((FileTreeItem) child).isChildrenLoaded()) {
+        walkAndColor(child.getChildren());
+      }
+    }
   }
 
   private void setLeafProperties(TreeItem<FileItem> item) {
@@ -287,27 +512,17 @@ public class FileTree extends TreeView<FileItem> {
   }
 
   TreeItem<FileItem> addTreeNode(File file) {
-    TreeItem<FileItem> item = findTreeViewItem(this.getRoot(), file.getParentFile());
+    TreeItem<FileItem> item = findTreeViewItem(this.getRoot(), file.getParentFile(), true);
     if (item == null) {
       log.info("File saved outside of current working dir");
       return null;
     }
-    TreeItem<FileItem> fileItem = new TreeItem<>(new FileItem(file));
-    addTreeNode(item, fileItem);
+    // the watcher might have added it already
+    TreeItem<FileItem> fileItem = addChild(item, file);
+    item.setExpanded(true);
     return fileItem;
   }
 
-  private void addTreeNode(TreeItem<FileItem> dirItem, TreeItem<FileItem> fileItem) {
-    if (fileItem.getValue().getFile().isDirectory()) {
-      fileItem.setGraphic(new ImageView(folderUrl));
-    } else {
-      setLeafProperties(fileItem);
-    }
-    dirItem.getChildren().add(fileItem);
-    dirItem.getChildren().sort(treeItemComparator);
-    dirItem.setExpanded(true);
-  }
-
   void refresh(File dir) {
     if (dir == null) {
       Alerts.warn("Dir is missing (null)", "Cannot refresh file tree when dir specified is missing");
@@ -316,8 +531,7 @@ public class FileTree extends TreeView<FileItem> {
     if (dir.isFile()) {
       dir = dir.getParentFile();
     }
-    setRoot(createTree(dir));
-    sortTree(getRoot());
+    setRoot(createRoot(dir));
     getRoot().setExpanded(true);
     if (inoutComponent.isGitEnabled()) {
       gitColorTree(getRoot());
@@ -326,38 +540,68 @@ public class FileTree extends TreeView<FileItem> {
     menu = new DynamicContextMenu(this, gui, inoutComponent);
   }
 
+  /**
+   * Compare the loaded directories with the disk and update the git colors. Changes made while the watcher
+   * is running are normally already in the tree so this only picks up what it might have missed.
+   */
   public void refresh() {
-    File current = getRoot().getValue().getFile();
-    setRoot(createTree(current));
-    sortTree(getRoot());
+    if (getRoot() == null) {
+      // not populated yet
+      return;
+    }
+    excludes = parseExcludes(gui.getPrefs().get(FILETREE_EXCLUDES, ""));
+    for (Map.Entry<Path, FileTreeItem> entry : new ArrayList<>(loadedDirs.entrySet())) {
+      if (loadedDirs.get(entry.getKey()) != entry.getValue()) {
+        // removed when syncing its parent
+        continue;
+      }
+      if (entry.getKey().toFile().isDirectory()) {
+        syncChildren(entry.getValue());
+      } else {
+        loadedDirs.remove(entry.getKey());
+      }
+    }
     getRoot().setExpanded(true);
     if (inoutComponent.isGitEnabled()) {
       gitColorTree(getRoot());
+    } else {
+      gitStatusCache = null;
+      walkAndColor(getRoot().getChildren());
     }
     menu = new DynamicContextMenu(this, gui, inoutComponent);
   }
 
-  private TreeItem<FileItem> findTreeViewItem(TreeItem<FileItem> item, File value) {
-    if (item != null && item.getValue().getFile().equals(value)) {
-      return item;
+  /**
+   * Follow the path of the file down from the root.
+   *
+   * @param load if true the directories along the path are loaded if needed, if false null is returned
+   *             when the item is not loaded
+   */
+  private TreeItem<FileItem> findTreeViewItem(TreeItem<FileItem> root, File value, boolean load) {
+    if (root == null || value == null) {
+      return null;
     }
-    if (item != null) {
-      for (TreeItem<FileItem> child : item.getChildren()) {
-        TreeItem<FileItem> s = findTreeViewItem(child, value);
-        if (s != null) {
-          return s;
-        }
-      }
+    Path rootPath = asPath(root.getValue().getFile());
+    Path path = asPath(value);
+    if (!path.startsWith(rootPath)) {
+      return null;
     }
-    return null;
-  }
-
-  private void sortTree(TreeItem<FileItem> item) {
-    ObservableList<TreeItem<FileItem>> children = item.getChildren();
-    children.sort(treeItemComparator);
-    for (TreeItem<FileItem> child : item.getChildren()) {
-      sortTree(child);
+    TreeItem<FileItem> item = root;
+    for (Path name : rootPath.relativize(path)) {
+      if (name.toString().isEmpty()) {
+        continue;
+      }
+      if (!load && item instanceof FileTreeItem && !((FileTreeItem) item).isChildrenLoaded()) {
+        return null;
+      }
+      ObservableList<TreeItem<FileItem>> children = item.getChildren();
+      int index = indexOf(children, name.toString());
+      if (index < 0) {
+        return null;
+      }
+      item = children.get(index);
     }
+    return item;
   }
 
   private static class TreeItemComparator implements Comparator<TreeItem<FileItem>>, Serializable {
@@ -379,6 +623,6 @@ public class FileTree extends TreeView<FileItem> {
   }
 
   public Git getGit() {
-    return git;
+    return gitStatusCache == null ? null : gitStatusCache.getGit();
   }
 }
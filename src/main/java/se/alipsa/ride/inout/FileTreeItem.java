@@ -0,0 +1,41 @@
+package se.alipsa.ride.inout;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+import java.io.File;
+
+/**
+ * A file in the file tree. The children of a directory are read from disk the first time they are asked for
+ * (i.e. when the directory is expanded) so only the parts of the tree that has been looked at are loaded.
+ */
+class FileTreeItem extends TreeItem<FileItem> {
+
+  private final FileTree fileTree;
+  private final boolean directory;
+  private boolean childrenLoaded;
+
+  FileTreeItem(FileTree fileTree, File file) {
+    super(new FileItem(file));
+    this.fileTree = fileTree;
+    this.directory = file.isDirectory();
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return !directory;
+  }
+
+  @Override
+  public ObservableList<TreeItem<FileItem>> getChildren() {
+    if (directory && !childrenLoaded) {
+      childrenLoaded = true;
+      super.getChildren().setAll(fileTree.loadChildren(this));
+    }
+    return super.getChildren();
+  }
+
+  boolean isChildrenLoaded() {
+    return childrenLoaded;
+  }
+}
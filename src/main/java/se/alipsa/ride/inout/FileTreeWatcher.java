@@ -0,0 +1,136 @@
+package se.alipsa.ride.inout;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the directories that are loaded in the file tree for files being created, deleted (a rename is
+ * a delete followed by a create) or modified. Events arriving close together are collected and handed over
+ * as one batch of changes per directory.
+ */
+class FileTreeWatcher {
+
+  private static final Logger log = LogManager.getLogger(FileTreeWatcher.class);
+
+  /** how long to wait for more events before passing on the ones collected so far */
+  private static final long BATCH_DELAY_MILLIS = 50;
+  /** the max time to keep collecting events when they keep coming, e.g. during a build */
+  private static final long MAX_BATCH_MILLIS = 500;
+
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+  private final Consumer<Collection<DirectoryChange>> changeHandler;
+
+  /**
+   * @param changeHandler called from the watcher thread with the changes of each batch
+   */
+  FileTreeWatcher(Consumer<Collection<DirectoryChange>> changeHandler) throws IOException {
+    this.changeHandler = changeHandler;
+    watchService = FileSystems.getDefault().newWatchService();
+    Thread thread = new Thread(this::processEvents, "ride-filetree-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void register(Path dir) {
+    try {
+      keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+    } catch (IOException | ClosedWatchServiceException e) {
+      log.debug("Failed to watch {}", dir, e);
+    }
+  }
+
+  /**
+   * Stop watching the dir and all dirs below it
+   */
+  void unregister(Path dir) {
+    keys.entrySet().removeIf(entry -> {
+      if (entry.getValue().startsWith(dir)) {
+        entry.getKey().cancel();
+        return true;
+      }
+      return false;
+    });
+  }
+
+  void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      log.warn("Failed to close the file tree watcher", e);
+    }
+    keys.clear();
+  }
+
+  private void processEvents() {
+    try {
+      while (true) {
+        Map<Path, DirectoryChange> changes = new LinkedHashMap<>();
+        WatchKey key = watchService.take();
+        long deadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+        while (key != null) {
+          Path dir = keys.get(key);
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) {
+              continue;
+            }
+            DirectoryChange change = changes.computeIfAbsent(dir, DirectoryChange::new);
+            if (event.kind() == OVERFLOW) {
+              change.overflow = true;
+            } else {
+              change.names.add(event.context().toString());
+            }
+          }
+          if (!key.reset()) {
+            keys.remove(key);
+          }
+          key = System.currentTimeMillis() < deadline
+              ? watchService.poll(BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+              : null;
+        }
+        if (!changes.isEmpty()) {
+          changeHandler.accept(changes.values());
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      log.debug("File tree watcher closed");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The names of the files that were created, deleted or modified in a directory. If events were lost (overflow)
+   * the whole directory needs to be compared with the tree.
+   */
+  static class DirectoryChange {
+    final Path dir;
+    final Set<String> names = new LinkedHashSet<>();
+    boolean overflow;
+
+    DirectoryChange(Path dir) {
+      this.dir = dir;
+    }
+  }
+}
@@ -35,9 +35,13 @@ import org.renjin.sexp.Vector;
 import se.alipsa.renjin.client.datautils.Table;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.UnStyledCodeArea;
+import se.alipsa.ride.console.profiler.ScriptProfile;
 import se.alipsa.ride.environment.connections.ConnectionInfo;
+import se.alipsa.ride.inout.dashboard.DashboardTab;
 import se.alipsa.ride.inout.plot.PlotsTab;
+import se.alipsa.ride.inout.viewer.ListVectorTableModel;
 import se.alipsa.ride.inout.viewer.ViewTab;
+import se.alipsa.ride.inout.viewer.ViewTableModel;
 import se.alipsa.ride.utils.Alerts;
 import se.alipsa.ride.utils.ExceptionAlert;
 import se.alipsa.rideutils.ReadImage;
@@ -124,6 +128,8 @@ public class InoutComponent extends TabPane implements InOut {
 
     getTabs().add(viewer);
 
+    getTabs().add(new DashboardTab());
+
     setTabClosingPolicy(TabClosingPolicy.UNAVAILABLE);
   }
 
@@ -167,9 +173,18 @@ public class InoutComponent extends TabPane implements InOut {
     refreshFileTree();
   }
 
+  /**
+   * Read the root dir of the file tree, this is done after the window is shown to get it up faster.
+   */
+  public void loadFileTree() {
+    fileTree.load();
+  }
+
   public void refreshFileTree() {
     fileTree.refresh();
-    fileTree.getRoot().setExpanded(true);
+    if (fileTree.getRoot() != null) {
+      fileTree.getRoot().setExpanded(true);
+    }
   }
 
   public void expandTree() {
@@ -189,6 +204,13 @@ public class InoutComponent extends TabPane implements InOut {
     fileTree.addTreeNode(file);
   }
 
+  /**
+   * Recompute the git status of the file in the background and update its color in the file tree
+   */
+  public void updateGitStatus(File file) {
+    fileTree.updateGitStatus(file);
+  }
+
   public File getRootDir() {
     return fileTree.getRootDir();
   }
@@ -339,9 +361,31 @@ public class InoutComponent extends TabPane implements InOut {
     );
   }
 
+  public void showInViewer(ViewTableModel model, String... title) {
+    Platform.runLater(() -> {
+          viewer.viewTable(model, title);
+          getSelectionModel().select(viewer);
+        }
+    );
+  }
+
+  /**
+   * Show the flame graph, the hot spots and the timings of the top level expressions of a profiled script.
+   */
+  public void viewProfile(ScriptProfile profile, String title) {
+    Platform.runLater(() -> {
+          viewer.viewHtml(profile.toFlameGraphHtml("Profile of " + title), title + " flame graph");
+          viewer.viewTable(profile.expressionTable(), title + " expressions");
+          viewer.viewTable(profile.functionTable(), title + " R functions");
+          viewer.viewTable(profile.hotSpotTable(), title + " hot spots");
+          getSelectionModel().select(viewer);
+        }
+    );
+  }
+
   public void view(ListVector listVec, String... title) {
-    Table table = new Table(listVec);
-    showInViewer(table, title);
+    // read directly from the column vectors, only the visible cells are ever formatted
+    showInViewer(new ListVectorTableModel(listVec), title);
   }
 
   public void setPackages(StringVector pkgs) {
@@ -0,0 +1,119 @@
+package se.alipsa.ride.inout.dashboard;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import javafx.util.Duration;
+import se.alipsa.ride.metrics.LatencyTimer;
+import se.alipsa.ride.metrics.Metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the metrics, refreshed every second while the tab is selected. The line at the top has the values that
+ * tell whether the gui is keeping up: the heap, the scripts waiting, how long it takes for something passed to
+ * Platform.runLater to run and how much console output is waiting to be shown.
+ */
+public class DashboardTab extends Tab {
+
+  private static final long PROBE_INTERVAL_MILLIS = 250;
+
+  private final Label heapLabel = new Label();
+  private final Label queueLabel = new Label();
+  private final Label fxDelayLabel = new Label();
+  private final Label consoleLabel = new Label();
+  private final TableView<Map.Entry<String, Number>> table = new TableView<>();
+  private final ObservableList<Map.Entry<String, Number>> rows = FXCollections.observableArrayList();
+
+  public DashboardTab() {
+    setText("Metrics");
+
+    fxDelayLabel.setTooltip(new Tooltip("How long a task posted to the gui thread waits before it runs (95th percentile)"));
+    consoleLabel.setTooltip(new Tooltip("Chunks of script output waiting to be added to the console"));
+    Button resetButton = new Button("Reset");
+    resetButton.setTooltip(new Tooltip("Set all counters and timers to zero"));
+    resetButton.setOnAction(a -> {
+      Metrics.reset();
+      refresh();
+    });
+    FlowPane topPane = new FlowPane();
+    topPane.setPadding(new Insets(5));
+    topPane.setHgap(15);
+    topPane.getChildren().addAll(resetButton, heapLabel, queueLabel, fxDelayLabel, consoleLabel);
+
+    TableColumn<Map.Entry<String, Number>, String> nameColumn = new TableColumn<>("Metric");
+    nameColumn.setCellValueFactory(p -> new ReadOnlyStringWrapper(p.getValue().getKey()));
+    nameColumn.setPrefWidth(250);
+    TableColumn<Map.Entry<String, Number>, String> valueColumn = new TableColumn<>("Value");
+    valueColumn.setCellValueFactory(p -> new ReadOnlyStringWrapper(String.valueOf(p.getValue().getValue())));
+    valueColumn.setPrefWidth(120);
+    table.getColumns().add(nameColumn);
+    table.getColumns().add(valueColumn);
+    table.setItems(rows);
+
+    BorderPane pane = new BorderPane();
+    pane.setTop(topPane);
+    pane.setCenter(table);
+    setContent(pane);
+
+    startFxProbe();
+    Timeline refresher = new Timeline(new KeyFrame(Duration.seconds(1), e -> {
+      if (isSelected()) {
+        refresh();
+      }
+    }));
+    refresher.setCycleCount(Timeline.INDEFINITE);
+    refresher.play();
+    setOnSelectionChanged(e -> {
+      if (isSelected()) {
+        refresh();
+      }
+    });
+  }
+
+  /**
+   * Measure how far behind the FX thread is by posting a timestamp to it now and then.
+   */
+  private static void startFxProbe() {
+    LatencyTimer fxDelay = Metrics.timer("fx.runLater.delay");
+    ScheduledExecutorService probe = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "ride-metrics-probe");
+      thread.setDaemon(true);
+      return thread;
+    });
+    probe.scheduleWithFixedDelay(() -> {
+      long posted = System.nanoTime();
+      Platform.runLater(() -> fxDelay.recordSince(posted));
+    }, PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void refresh() {
+    SortedMap<String, Number> snapshot = Metrics.snapshot();
+    heapLabel.setText("Heap: " + snapshot.get("jvm.heap.usedMb") + " / " + snapshot.get("jvm.heap.maxMb") + " MB");
+    queueLabel.setText("Waiting scripts: " + valueOf(snapshot, "engine.queue.waiting"));
+    fxDelayLabel.setText("Gui delay: " + valueOf(snapshot, "fx.runLater.delay.p95Ms") + " ms");
+    consoleLabel.setText("Console backlog: " + valueOf(snapshot, "console.appendFx.pending"));
+    rows.setAll(snapshot.entrySet());
+  }
+
+  private static Number valueOf(Map<String, Number> snapshot, String name) {
+    Number value = snapshot.get(name);
+    return value == null ? 0 : value;
+  }
+}
@@ -0,0 +1,177 @@
+package se.alipsa.ride.inout.viewer;
+
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TableView where the items are just the row indexes of the model, cell values are formatted
+ * when a row becomes visible and the most recently used formatted rows are cached.
+ * Opening a large table is thus proportional to the number of visible rows rather than the size of the table.
+ */
+public class LazyTableView extends TableView<Integer> {
+
+  private static final int ROW_CACHE_SIZE = 1000;
+
+  private final ViewTableModel model;
+  private final RowIndexList rows;
+  private final Map<Integer, String[]> formattedRows = new LinkedHashMap<Integer, String[]>(256, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+      return size() > ROW_CACHE_SIZE;
+    }
+  };
+
+  public LazyTableView(ViewTableModel model) {
+    this.model = model;
+    rows = new RowIndexList(model.getRowCount());
+    List<String> headerList = model.getHeaderList();
+    for (int i = 0; i < headerList.size(); i++) {
+      final int colIdx = i;
+      TableColumn<Integer, String> col = new TableColumn<>(headerList.get(i));
+      col.setUserData(colIdx);
+      col.setCellValueFactory(param -> new ReadOnlyStringWrapper(formattedRow(param.getValue())[colIdx]));
+      getColumns().add(col);
+    }
+    if (model instanceof StreamingTableModel) {
+      ((StreamingTableModel) model).rowCountProperty().addListener((obs, oldVal, newVal) -> rows.setSize(newVal.intValue()));
+    }
+    setSortPolicy(tv -> {
+      sort(tv.getSortOrder());
+      return true;
+    });
+    setItems(rows);
+  }
+
+  public ViewTableModel getModel() {
+    return model;
+  }
+
+  private String[] formattedRow(Integer row) {
+    String[] formatted = formattedRows.get(row);
+    if (formatted == null) {
+      int columnCount = model.getHeaderList().size();
+      formatted = new String[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        formatted[col] = model.format(model.getValue(row, col));
+      }
+      formattedRows.put(row, formatted);
+    }
+    return formatted;
+  }
+
+  /**
+   * Sort on the raw values (so that numbers and dates sort as such) without formatting anything.
+   */
+  private void sort(List<TableColumn<Integer, ?>> sortOrder) {
+    if (sortOrder.isEmpty()) {
+      rows.setOrder(null);
+      return;
+    }
+    Comparator<Integer> comparator = null;
+    for (TableColumn<Integer, ?> column : sortOrder) {
+      int colIdx = (Integer) column.getUserData();
+      Comparator<Integer> colComparator = (a, b) -> compareValues(model.getValue(a, colIdx), model.getValue(b, colIdx));
+      if (column.getSortType() == TableColumn.SortType.DESCENDING) {
+        colComparator = colComparator.reversed();
+      }
+      comparator = comparator == null ? colComparator : comparator.thenComparing(colComparator);
+    }
+    Integer[] order = new Integer[model.getRowCount()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, comparator);
+    int[] newOrder = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      newOrder[i] = order[i];
+    }
+    rows.setOrder(newOrder);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareValues(Object a, Object b) {
+    if (a == null || b == null) {
+      return a == null ? (b == null ? 0 : -1) : 1;
+    }
+    if (a instanceof Number && b instanceof Number) {
+      return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+    }
+    if (a instanceof Comparable && a.getClass().equals(b.getClass())) {
+      return ((Comparable) a).compareTo(b);
+    }
+    return String.valueOf(a).compareTo(String.valueOf(b));
+  }
+
+  /**
+   * The row indexes in display order, nothing is stored unless the table is sorted.
+   */
+  private static class RowIndexList extends ObservableListBase<Integer> {
+
+    private int size;
+    private int[] order;
+
+    RowIndexList(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public Integer get(int index) {
+      return order == null ? index : order[index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Rows added to the model are added last, also when the table is sorted.
+     */
+    void setSize(int newSize) {
+      if (newSize <= size) {
+        return;
+      }
+      int oldSize = size;
+      if (order != null) {
+        int[] newOrder = Arrays.copyOf(order, newSize);
+        for (int i = oldSize; i < newSize; i++) {
+          newOrder[i] = i;
+        }
+        order = newOrder;
+      }
+      size = newSize;
+      beginChange();
+      nextAdd(oldSize, newSize);
+      endChange();
+    }
+
+    void setOrder(int[] newOrder) {
+      // position of each row index after the change, used to describe the change as a permutation
+      int[] newPosition = new int[size];
+      for (int pos = 0; pos < size; pos++) {
+        newPosition[newOrder == null ? pos : newOrder[pos]] = pos;
+      }
+      int[] permutation = new int[size];
+      for (int pos = 0; pos < size; pos++) {
+        permutation[pos] = newPosition[get(pos)];
+      }
+      order = newOrder;
+      if (size == 0) {
+        return;
+      }
+      beginChange();
+      nextPermutation(0, size, permutation);
+      endChange();
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package se.alipsa.ride.inout.viewer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.Null;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Symbol;
+import org.renjin.sexp.Vector;
+
+import java.text.NumberFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the cells of a data.frame (or any list of vectors) directly from the column vectors
+ * without copying anything.
+ */
+public class ListVectorTableModel implements ViewTableModel {
+
+  private static final Logger log = LogManager.getLogger(ListVectorTableModel.class);
+
+  private static final Symbol LEVELS = Symbol.get("levels");
+  private static final Symbol TZONE = Symbol.get("tzone");
+  private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  private final List<String> headerList = new ArrayList<>();
+  private final Vector[] columns;
+  private final ColumnType[] types;
+  private final ZoneId[] zones;
+  private final int rowCount;
+  private final NumberFormat numberFormatter;
+
+  private enum ColumnType {
+    FACTOR, DATE, DATE_TIME, DOUBLE, INT, LOGICAL, STRING, OTHER
+  }
+
+  public ListVectorTableModel(ListVector listVector) {
+    columns = new Vector[listVector.length()];
+    types = new ColumnType[columns.length];
+    zones = new ZoneId[columns.length];
+    int maxLength = 0;
+    for (int i = 0; i < columns.length; i++) {
+      String name = listVector.getName(i);
+      headerList.add(name == null || name.isEmpty() ? "V" + (i + 1) : name);
+      SEXP column = listVector.getElementAsSEXP(i);
+      columns[i] = column instanceof Vector ? (Vector) column : Null.INSTANCE;
+      types[i] = typeOf(columns[i]);
+      if (types[i] == ColumnType.DATE_TIME) {
+        zones[i] = zoneOf(columns[i]);
+      }
+      maxLength = Math.max(maxLength, columns[i].length());
+    }
+    rowCount = maxLength;
+    numberFormatter = NumberFormat.getInstance();
+    numberFormatter.setGroupingUsed(false);
+  }
+
+  private static ColumnType typeOf(Vector column) {
+    if (column instanceof IntVector && column.inherits("factor")) {
+      return ColumnType.FACTOR;
+    }
+    if (column instanceof DoubleVector) {
+      if (column.inherits("Date")) {
+        return ColumnType.DATE;
+      }
+      if (column.inherits("POSIXct")) {
+        return ColumnType.DATE_TIME;
+      }
+      return ColumnType.DOUBLE;
+    }
+    if (column instanceof LogicalVector) {
+      return ColumnType.LOGICAL;
+    }
+    if (column instanceof IntVector) {
+      return ColumnType.INT;
+    }
+    if (column instanceof StringVector) {
+      return ColumnType.STRING;
+    }
+    return ColumnType.OTHER;
+  }
+
+  /**
+   * A POSIXct is shown in the time zone of its tzone attribute, just as R prints it. No (or an empty) tzone
+   * means the local time zone.
+   */
+  private static ZoneId zoneOf(Vector column) {
+    SEXP tzone = column.getAttribute(TZONE);
+    if (tzone instanceof StringVector && tzone.length() > 0) {
+      String zone = ((StringVector) tzone).getElementAsString(0);
+      if (zone != null && !zone.isEmpty()) {
+        try {
+          return ZoneId.of(zone);
+        } catch (DateTimeException e) {
+          log.debug("Unknown time zone {}, using the local time zone", zone);
+        }
+      }
+    }
+    return ZoneId.systemDefault();
+  }
+
+  @Override
+  public List<String> getHeaderList() {
+    return headerList;
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public Object getValue(int row, int column) {
+    Vector vec = columns[column];
+    if (row >= vec.length() || vec.isElementNA(row)) {
+      return null;
+    }
+    switch (types[column]) {
+      case FACTOR:
+        SEXP levels = vec.getAttribute(LEVELS);
+        return levels instanceof StringVector
+            ? ((StringVector) levels).getElementAsString(vec.getElementAsInt(row) - 1)
+            : vec.getElementAsInt(row);
+      case DATE:
+        return LocalDate.ofEpochDay((long) vec.getElementAsDouble(row));
+      case DATE_TIME:
+        long millis = (long) (vec.getElementAsDouble(row) * 1000);
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zones[column]);
+      case DOUBLE:
+        return vec.getElementAsDouble(row);
+      case INT:
+        return vec.getElementAsInt(row);
+      case LOGICAL:
+        return vec.getElementAsInt(row) != 0;
+      case STRING:
+        return vec.getElementAsString(row);
+      default:
+        return vec.getElementAsObject(row);
+    }
+  }
+
+  @Override
+  public String format(Object value) {
+    if (value == null) {
+      return "NA";
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? "TRUE" : "FALSE";
+    }
+    if (value instanceof LocalDateTime) {
+      return DATE_TIME_FORMAT.format((LocalDateTime) value);
+    }
+    if (value instanceof Number) {
+      return numberFormatter.format(value);
+    }
+    return String.valueOf(value);
+  }
+}
@@ -0,0 +1,59 @@
+package se.alipsa.ride.inout.viewer;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table model that is filled while it is being displayed, e.g. from a jdbc result set that is still being fetched.
+ * Rows must be added on the javafx thread, the viewer picks up the new rows through the row count property.
+ */
+public class StreamingTableModel implements ViewTableModel {
+
+  private final List<String> headerList;
+  private final List<Object[]> rowList = new ArrayList<>();
+  private final ReadOnlyIntegerWrapper rowCount = new ReadOnlyIntegerWrapper(0);
+  private final NumberFormat numberFormatter;
+
+  public StreamingTableModel(List<String> headerList) {
+    this.headerList = headerList;
+    numberFormatter = NumberFormat.getInstance();
+    numberFormatter.setGroupingUsed(false);
+  }
+
+  public void addRows(List<Object[]> rows) {
+    rowList.addAll(rows);
+    rowCount.set(rowList.size());
+  }
+
+  public ReadOnlyIntegerProperty rowCountProperty() {
+    return rowCount.getReadOnlyProperty();
+  }
+
+  @Override
+  public List<String> getHeaderList() {
+    return headerList;
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowCount.get();
+  }
+
+  @Override
+  public Object getValue(int row, int column) {
+    Object[] values = rowList.get(row);
+    return column < values.length ? values[column] : null;
+  }
+
+  @Override
+  public String format(Object value) {
+    if (value instanceof Number) {
+      return numberFormatter.format(value);
+    }
+    return value + "";
+  }
+}
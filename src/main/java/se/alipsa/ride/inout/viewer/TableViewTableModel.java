@@ -0,0 +1,47 @@
+package se.alipsa.ride.inout.viewer;
+
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.text.NumberFormat;
+import java.util.List;
+
+/**
+ * Adapts a Table (e.g. a jdbc result set or a matrix) to the viewer, the values are formatted when displayed.
+ */
+public class TableViewTableModel implements ViewTableModel {
+
+  private final List<String> headerList;
+  private final List<List<Object>> rowList;
+  private final NumberFormat numberFormatter;
+
+  public TableViewTableModel(Table table) {
+    headerList = table.getHeaderList();
+    rowList = table.getRowList();
+    numberFormatter = NumberFormat.getInstance();
+    numberFormatter.setGroupingUsed(false);
+  }
+
+  @Override
+  public List<String> getHeaderList() {
+    return headerList;
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowList.size();
+  }
+
+  @Override
+  public Object getValue(int row, int column) {
+    List<Object> values = rowList.get(row);
+    return column < values.size() ? values.get(column) : null;
+  }
+
+  @Override
+  public String format(Object value) {
+    if (value instanceof Number) {
+      return numberFormatter.format(value);
+    }
+    return value + "";
+  }
+}
@@ -3,8 +3,6 @@ package se.alipsa.ride.inout.viewer;
 import static se.alipsa.ride.Constants.KEY_CODE_COPY;
 
 import javafx.beans.binding.Bindings;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
 import javafx.scene.input.Clipboard;
@@ -29,8 +27,6 @@ import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Paths;
-import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -65,17 +61,18 @@ public class ViewTab extends Tab {
   }
 
   public void viewTable(Table table, String... title) {
-    List<String> headerList = table.getHeaderList();
-    List<List<Object>> rowList = table.getRowList();
-    NumberFormat numberFormatter = NumberFormat.getInstance();
-    numberFormatter.setGroupingUsed(false);
+    viewTable(new TableViewTableModel(table), title);
+  }
+
+  public void viewTable(ViewTableModel model, String... title) {
+    List<String> headerList = model.getHeaderList();
 
-    TableView<List<String>> tableView = new TableView<>();
+    LazyTableView tableView = new LazyTableView(model);
     tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
     tableView.setOnKeyPressed(event -> {
       if (KEY_CODE_COPY.match(event)) {
         // Include header if all rows are selected
-        boolean includeHeader = tableView.getSelectionModel().getSelectedCells().size() == rowList.size();
+        boolean includeHeader = tableView.getSelectionModel().getSelectedCells().size() == model.getRowCount();
         if (includeHeader) {
           copySelectionToClipboard(tableView, headerList);
         } else {
@@ -85,7 +82,7 @@ public class ViewTab extends Tab {
     });
 
     tableView.setRowFactory(tv -> {
-      final TableRow<List<String>> row = new TableRow<>();
+      final TableRow<Integer> row = new TableRow<>();
       final ContextMenu contextMenu = new ContextMenu();
       final MenuItem copyMenuItem = new MenuItem("copy");
       copyMenuItem.setOnAction(event -> copySelectionToClipboard(tv, null));
@@ -102,32 +99,14 @@ public class ViewTab extends Tab {
       return row;
     });
 
-    for (int i = 0; i < headerList.size(); i++) {
-      final int j = i;
-      String colName = headerList.get(i);
-      TableColumn<List<String>, String> col = new TableColumn<>(colName);
-      tableView.getColumns().add(col);
-      col.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(j)));
-    }
-    ObservableList<List<String>> data = FXCollections.observableArrayList();
-    for (List<Object> row : rowList) {
-      List<String> obsRow = new ArrayList<>();
-      for (Object obj : row) {
-        if (obj instanceof Number) {
-          obsRow.add(numberFormatter.format(obj));
-        } else {
-          obsRow.add(obj + "");
-        }
-      }
-      data.add(obsRow);
-    }
-    tableView.setItems(data);
     Tab tab = new Tab();
-    String tabTitle = " (" + rowList.size() + " rows)";
-    if (title.length > 0) {
-      tabTitle = title[0] + tabTitle;
+    String titlePrefix = title.length > 0 ? title[0] : "";
+    tab.setText(titlePrefix + " (" + model.getRowCount() + " rows)");
+    if (model instanceof StreamingTableModel) {
+      ((StreamingTableModel) model).rowCountProperty().addListener((obs, oldVal, newVal) ->
+          tab.setText(titlePrefix + " (" + newVal + " rows)")
+      );
     }
-    tab.setText(tabTitle);
     viewPane.getTabs().add(tab);
     tab.setContent(tableView);
 
@@ -0,0 +1,21 @@
+package se.alipsa.ride.inout.viewer;
+
+import java.util.List;
+
+/**
+ * Read only, random access view of tabular data that the viewer formats on demand
+ * (i.e. only for the rows actually displayed).
+ */
+public interface ViewTableModel {
+
+  List<String> getHeaderList();
+
+  int getRowCount();
+
+  /**
+   * @return the raw value (used for sorting) or null if missing
+   */
+  Object getValue(int row, int column);
+
+  String format(Object value);
+}
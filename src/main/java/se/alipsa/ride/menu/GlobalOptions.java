@@ -14,6 +14,16 @@ public class GlobalOptions extends HashMap<String, Object> {
   public static final String USE_MAVEN_CLASSLOADER = "GlobalOptions.UseMavenClassloader";
   public static final String ADD_BUILDDIR_TO_CLASSPATH = "GlobalOptions.AddBuildDirToClasspath";
   public static final String ENABLE_GIT = "GlobalOptions.EnableGit";
+  public static final String CONNECTION_POOL_MIN_IDLE = "GlobalOptions.ConnectionPoolMinIdle";
+  public static final String CONNECTION_POOL_MAX_SIZE = "GlobalOptions.ConnectionPoolMaxSize";
+  public static final String CONNECTION_POOL_IDLE_TIMEOUT = "GlobalOptions.ConnectionPoolIdleTimeout";
+  public static final String CONNECTION_POOL_VALIDATION_QUERY = "GlobalOptions.ConnectionPoolValidationQuery";
+  public static final String FILETREE_EXCLUDES = "GlobalOptions.FileTreeExcludes";
+  public static final String WARM_STANDBY_SESSION = "GlobalOptions.WarmStandbySession";
+  public static final String WARM_STANDBY_PACKAGES = "GlobalOptions.WarmStandbyPackages";
+  public static final String PROFILER_SAMPLE_INTERVAL = "GlobalOptions.ProfilerSampleInterval";
+  public static final String SNAPSHOT_ON_EXIT = "GlobalOptions.SnapshotOnExit";
+  public static final String SNAPSHOT_COMPRESSION = "GlobalOptions.SnapshotCompression";
 
   private static final long serialVersionUID = -4781261903018339389L;
 
@@ -36,6 +46,11 @@ public class GlobalOptions extends HashMap<String, Object> {
     }
   }
 
+  public String getString(String key) {
+    Object val = get(key);
+    return val == null ? null : val.toString();
+  }
+
   @SuppressWarnings("unchecked")
   public List<Repo> getRepoList(String key) {
     return (List<Repo>)get(key);
@@ -19,6 +19,8 @@ import org.renjin.aether.AetherPackageLoader;
 import org.renjin.primitives.packaging.ClasspathPackageLoader;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.console.ConsoleComponent;
+import se.alipsa.ride.console.profiler.ScriptProfiler;
+import se.alipsa.ride.environment.connections.ConnectionPool;
 import se.alipsa.ride.model.Repo;
 import se.alipsa.ride.utils.GuiUtils;
 import se.alipsa.ride.utils.IntField;
@@ -35,6 +37,16 @@ class GlobalOptionsDialog extends Dialog<GlobalOptions> {
   private TextField mavenHome;
   private final CheckBox addBuildDirToClasspath;
   private final CheckBox enableGit;
+  private final IntField poolMinIdle;
+  private final IntField poolMaxSize;
+  private final IntField poolIdleTimeout;
+  private final TextField poolValidationQuery;
+  private final TextField fileTreeExcludes;
+  private final CheckBox warmStandbySession;
+  private final TextField warmStandbyPackages;
+  private final IntField profilerSampleInterval;
+  private final CheckBox snapshotOnExit;
+  private final CheckBox snapshotCompression;
 
 
   GlobalOptionsDialog(Ride gui) {
@@ -143,6 +155,7 @@ class GlobalOptionsDialog extends Dialog<GlobalOptions> {
     });
 
     Label consoleMaxSizeLabel = new Label("Console max size");
+    consoleMaxSizeLabel.setTooltip(new Tooltip("Older output is moved to the console history when the console grows beyond this size"));
     grid.add(consoleMaxSizeLabel, 0, 2);
     intField = new IntField(1000, Integer.MAX_VALUE, gui.getPrefs().getInt(CONSOLE_MAX_LENGTH_PREF, CONSOLE_MAX_LENGTH_DEFAULT));
     grid.add(intField, 1, 2);
@@ -197,8 +210,76 @@ class GlobalOptionsDialog extends Dialog<GlobalOptions> {
     gitOptionPane.getChildren().add(enableGit);
     grid.add(gitOptionPane, 0, 6, 2, 1);
 
-
-    getDialogPane().setPrefSize(800, 400);
+    Label poolLabel = new Label("Connection pool");
+    poolLabel.setTooltip(new Tooltip("Jdbc connections are reused for queries and metadata lookups"));
+    grid.add(poolLabel, 0, 7);
+    HBox poolPane = new HBox();
+    poolPane.setAlignment(Pos.CENTER_LEFT);
+    poolPane.setSpacing(5);
+    poolMinIdle = new IntField(0, 100, gui.getPrefs().getInt(CONNECTION_POOL_MIN_IDLE, ConnectionPool.MIN_IDLE_DEFAULT));
+    poolMinIdle.setPrefColumnCount(3);
+    poolMaxSize = new IntField(1, 100, gui.getPrefs().getInt(CONNECTION_POOL_MAX_SIZE, ConnectionPool.MAX_SIZE_DEFAULT));
+    poolMaxSize.setPrefColumnCount(3);
+    poolIdleTimeout = new IntField(0, Integer.MAX_VALUE, gui.getPrefs().getInt(CONNECTION_POOL_IDLE_TIMEOUT, ConnectionPool.IDLE_TIMEOUT_SECONDS_DEFAULT));
+    poolIdleTimeout.setPrefColumnCount(6);
+    Label idleTimeoutLabel = new Label("idle timeout (s)");
+    idleTimeoutLabel.setTooltip(new Tooltip("Idle connections are closed after this many seconds (keeping at least min idle)"));
+    poolPane.getChildren().addAll(new Label("min idle"), poolMinIdle, new Label("max size"), poolMaxSize,
+        idleTimeoutLabel, poolIdleTimeout);
+    grid.add(poolPane, 1, 7);
+
+    Label validationQueryLabel = new Label("Validation query");
+    validationQueryLabel.setTooltip(new Tooltip("Query used to check idle connections, e.g. select 1 (blank to use the driver check)"));
+    grid.add(validationQueryLabel, 0, 8);
+    poolValidationQuery = new TextField(gui.getPrefs().get(CONNECTION_POOL_VALIDATION_QUERY, ""));
+    grid.add(poolValidationQuery, 1, 8);
+
+    Label fileTreeExcludesLabel = new Label("File tree excludes");
+    fileTreeExcludesLabel.setTooltip(new Tooltip("Comma separated glob patterns for file names to hide in the file tree, e.g. .git, target, *.class"));
+    grid.add(fileTreeExcludesLabel, 0, 9);
+    fileTreeExcludes = new TextField(gui.getPrefs().get(FILETREE_EXCLUDES, ""));
+    grid.add(fileTreeExcludes, 1, 9);
+
+    Label warmStandbyLabel = new Label("Standby R session");
+    warmStandbyLabel.setTooltip(new Tooltip("Keep a spare R session ready in the background so that restarting R is (almost) instant"));
+    grid.add(warmStandbyLabel, 0, 10);
+    HBox warmStandbyPane = new HBox();
+    warmStandbyPane.setAlignment(Pos.CENTER_LEFT);
+    warmStandbyPane.setSpacing(5);
+    warmStandbySession = new CheckBox();
+    warmStandbySession.setSelected(gui.getPrefs().getBoolean(WARM_STANDBY_SESSION, false));
+    Label preloadLabel = new Label("preload packages");
+    preloadLabel.setTooltip(new Tooltip("Comma separated packages to attach in the spare session, e.g. se.alipsa:R2JDBC"));
+    warmStandbyPackages = new TextField(gui.getPrefs().get(WARM_STANDBY_PACKAGES, ""));
+    HBox.setHgrow(warmStandbyPackages, Priority.ALWAYS);
+    warmStandbyPackages.disableProperty().bind(warmStandbySession.selectedProperty().not());
+    warmStandbyPane.getChildren().addAll(warmStandbySession, preloadLabel, warmStandbyPackages);
+    grid.add(warmStandbyPane, 1, 10);
+
+    Label profilerSampleIntervalLabel = new Label("Profiler sample interval (ms)");
+    profilerSampleIntervalLabel.setTooltip(new Tooltip("How often the stack is sampled when profiling an R script, a shorter interval is more precise but slows the script down more"));
+    grid.add(profilerSampleIntervalLabel, 0, 11);
+    profilerSampleInterval = new IntField(1, 10000, gui.getPrefs().getInt(PROFILER_SAMPLE_INTERVAL, ScriptProfiler.SAMPLE_INTERVAL_DEFAULT));
+    profilerSampleInterval.setPrefColumnCount(6);
+    grid.add(profilerSampleInterval, 1, 11);
+
+    Label snapshotOnExitLabel = new Label("Save workspace on exit");
+    snapshotOnExitLabel.setTooltip(new Tooltip("Save the variables of the R session to " + ConsoleComponent.EXIT_SNAPSHOT_NAME
+        + " in the project dir when Ride is closed, load it with Session -> Load workspace"));
+    grid.add(snapshotOnExitLabel, 0, 12);
+    HBox snapshotPane = new HBox();
+    snapshotPane.setAlignment(Pos.CENTER_LEFT);
+    snapshotPane.setSpacing(5);
+    snapshotOnExit = new CheckBox();
+    snapshotOnExit.setSelected(gui.getPrefs().getBoolean(SNAPSHOT_ON_EXIT, false));
+    snapshotCompression = new CheckBox("compress workspace files");
+    snapshotCompression.setTooltip(new Tooltip("Makes the saved workspace smaller but slower to save and load"));
+    snapshotCompression.setSelected(gui.getPrefs().getBoolean(SNAPSHOT_COMPRESSION, false));
+    snapshotPane.getChildren().addAll(snapshotOnExit, snapshotCompression);
+    grid.add(snapshotPane, 1, 12);
+
+
+    getDialogPane().setPrefSize(800, 640);
     getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
     setResizable(true);
 
@@ -235,6 +316,16 @@ class GlobalOptionsDialog extends Dialog<GlobalOptions> {
     result.put(USE_MAVEN_CLASSLOADER, useMavenFileClasspath.isSelected());
     result.put(ADD_BUILDDIR_TO_CLASSPATH, addBuildDirToClasspath.isSelected());
     result.put(ENABLE_GIT, enableGit.isSelected());
+    result.put(CONNECTION_POOL_MIN_IDLE, poolMinIdle.getValue());
+    result.put(CONNECTION_POOL_MAX_SIZE, poolMaxSize.getValue());
+    result.put(CONNECTION_POOL_IDLE_TIMEOUT, poolIdleTimeout.getValue());
+    result.put(CONNECTION_POOL_VALIDATION_QUERY, poolValidationQuery.getText());
+    result.put(FILETREE_EXCLUDES, fileTreeExcludes.getText());
+    result.put(WARM_STANDBY_SESSION, warmStandbySession.isSelected());
+    result.put(WARM_STANDBY_PACKAGES, warmStandbyPackages.getText());
+    result.put(PROFILER_SAMPLE_INTERVAL, profilerSampleInterval.getValue());
+    result.put(SNAPSHOT_ON_EXIT, snapshotOnExit.isSelected());
+    result.put(SNAPSHOT_COMPRESSION, snapshotCompression.isSelected());
     return result;
   }
 
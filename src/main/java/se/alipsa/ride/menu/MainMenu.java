@@ -9,9 +9,19 @@ import static se.alipsa.ride.Constants.PREF_MUNIN_USERNAME;
 import static se.alipsa.ride.Constants.SESSION_MUNIN_CONNECTION;
 import static se.alipsa.ride.Constants.THEME;
 import static se.alipsa.ride.menu.GlobalOptions.ADD_BUILDDIR_TO_CLASSPATH;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_IDLE_TIMEOUT;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_MAX_SIZE;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_MIN_IDLE;
+import static se.alipsa.ride.menu.GlobalOptions.CONNECTION_POOL_VALIDATION_QUERY;
 import static se.alipsa.ride.menu.GlobalOptions.CONSOLE_MAX_LENGTH_PREF;
 import static se.alipsa.ride.menu.GlobalOptions.ENABLE_GIT;
+import static se.alipsa.ride.menu.GlobalOptions.FILETREE_EXCLUDES;
+import static se.alipsa.ride.menu.GlobalOptions.PROFILER_SAMPLE_INTERVAL;
+import static se.alipsa.ride.menu.GlobalOptions.SNAPSHOT_COMPRESSION;
+import static se.alipsa.ride.menu.GlobalOptions.SNAPSHOT_ON_EXIT;
 import static se.alipsa.ride.menu.GlobalOptions.USE_MAVEN_CLASSLOADER;
+import static se.alipsa.ride.menu.GlobalOptions.WARM_STANDBY_PACKAGES;
+import static se.alipsa.ride.menu.GlobalOptions.WARM_STANDBY_SESSION;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -33,7 +43,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.appender.FileAppender;
-import org.eclipse.jgit.api.Git;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.renjin.RenjinVersion;
 import org.renjin.eval.Session;
@@ -50,11 +59,12 @@ import se.alipsa.ride.code.munin.MuninMdrTab;
 import se.alipsa.ride.code.munin.MuninRTab;
 import se.alipsa.ride.code.munin.ReportType;
 import se.alipsa.ride.console.ConsoleComponent;
+import se.alipsa.ride.console.workspace.WorkspaceSnapshot;
+import se.alipsa.ride.environment.connections.ConnectionPool;
 import se.alipsa.ride.model.MuninConnection;
 import se.alipsa.ride.model.MuninReport;
 import se.alipsa.ride.model.Repo;
 import se.alipsa.ride.utils.*;
-import se.alipsa.ride.utils.git.GitUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -524,10 +534,17 @@ public class MainMenu extends MenuBar {
     MenuItem viewLogFile = new MenuItem("View logfile");
     viewLogFile.setOnAction(this::viewLogFile);
 
-    menu.getItems().addAll(manual, checkVersion, viewLogFile, about);
+    MenuItem startupReport = new MenuItem("Startup report");
+    startupReport.setOnAction(this::viewStartupReport);
+
+    menu.getItems().addAll(manual, checkVersion, viewLogFile, startupReport, about);
     return menu;
   }
 
+  private void viewStartupReport(ActionEvent actionEvent) {
+    showInfoAlert("Startup report", gui.getStartupProfile().report(), 700, 400);
+  }
+
   private void viewLogFile(ActionEvent actionEvent) {
     try {
       org.apache.logging.log4j.core.Logger logger = (org.apache.logging.log4j.core.Logger) LogManager.getRootLogger();
@@ -791,6 +808,45 @@ public class MainMenu extends MenuBar {
     gui.getInoutComponent().setEnableGit(enableGit);
     gui.getPrefs().putBoolean(ENABLE_GIT, enableGit);
 
+    int poolMinIdle = result.getInt(CONNECTION_POOL_MIN_IDLE);
+    int poolMaxSize = result.getInt(CONNECTION_POOL_MAX_SIZE);
+    int poolIdleTimeout = result.getInt(CONNECTION_POOL_IDLE_TIMEOUT);
+    String validationQuery = result.getString(CONNECTION_POOL_VALIDATION_QUERY);
+    Preferences prefs = gui.getPrefs();
+    if (poolMinIdle != prefs.getInt(CONNECTION_POOL_MIN_IDLE, ConnectionPool.MIN_IDLE_DEFAULT)
+        || poolMaxSize != prefs.getInt(CONNECTION_POOL_MAX_SIZE, ConnectionPool.MAX_SIZE_DEFAULT)
+        || poolIdleTimeout != prefs.getInt(CONNECTION_POOL_IDLE_TIMEOUT, ConnectionPool.IDLE_TIMEOUT_SECONDS_DEFAULT)
+        || !validationQuery.equals(prefs.get(CONNECTION_POOL_VALIDATION_QUERY, ""))) {
+      log.info("Connection pool settings changed, closing the current pools");
+      prefs.putInt(CONNECTION_POOL_MIN_IDLE, poolMinIdle);
+      prefs.putInt(CONNECTION_POOL_MAX_SIZE, poolMaxSize);
+      prefs.putInt(CONNECTION_POOL_IDLE_TIMEOUT, poolIdleTimeout);
+      prefs.put(CONNECTION_POOL_VALIDATION_QUERY, validationQuery);
+      ConnectionPool.closeAll();
+    }
+
+    String fileTreeExcludes = result.getString(FILETREE_EXCLUDES);
+    if (!fileTreeExcludes.equals(prefs.get(FILETREE_EXCLUDES, ""))) {
+      prefs.put(FILETREE_EXCLUDES, fileTreeExcludes);
+      gui.getInoutComponent().refreshFileTree();
+    }
+
+    boolean warmStandbySession = result.getBoolean(WARM_STANDBY_SESSION);
+    String warmStandbyPackages = result.getString(WARM_STANDBY_PACKAGES);
+    if (warmStandbySession != prefs.getBoolean(WARM_STANDBY_SESSION, false)
+        || !warmStandbyPackages.equals(prefs.get(WARM_STANDBY_PACKAGES, ""))) {
+      prefs.putBoolean(WARM_STANDBY_SESSION, warmStandbySession);
+      prefs.put(WARM_STANDBY_PACKAGES, warmStandbyPackages);
+      if (!shouldRestartR) {
+        // a restart creates the standby session after the new session is ready
+        gui.getConsoleComponent().prepareStandbySession();
+      }
+    }
+
+    prefs.putInt(PROFILER_SAMPLE_INTERVAL, result.getInt(PROFILER_SAMPLE_INTERVAL));
+    prefs.putBoolean(SNAPSHOT_ON_EXIT, result.getBoolean(SNAPSHOT_ON_EXIT));
+    prefs.putBoolean(SNAPSHOT_COMPRESSION, result.getBoolean(SNAPSHOT_COMPRESSION));
+
     if (shouldRestartR) {
       restartR();
     }
@@ -817,10 +873,37 @@ public class MainMenu extends MenuBar {
     MenuItem sessionInfo = new MenuItem("SessionInfo");
     sessionInfo.setOnAction(this::showSessionInfo);
 
-    sessionMenu.getItems().addAll(restartMI, interruptMI, sessionInfo);
+    MenuItem saveWorkspaceMI = new MenuItem("Save workspace");
+    saveWorkspaceMI.setOnAction(this::saveWorkspace);
+    MenuItem loadWorkspaceMI = new MenuItem("Load workspace");
+    loadWorkspaceMI.setOnAction(this::loadWorkspace);
+
+    sessionMenu.getItems().addAll(restartMI, interruptMI, sessionInfo, new SeparatorMenuItem(),
+        saveWorkspaceMI, loadWorkspaceMI);
     return sessionMenu;
   }
 
+  private void saveWorkspace(ActionEvent actionEvent) {
+    File file = promptForFile("R workspace", WorkspaceSnapshot.FILE_EXTENSION, "workspace" + WorkspaceSnapshot.FILE_EXTENSION);
+    if (file == null) {
+      return;
+    }
+    gui.getConsoleComponent().saveWorkspace(file);
+  }
+
+  private void loadWorkspace(ActionEvent actionEvent) {
+    FileChooser fileChooser = new FileChooser();
+    fileChooser.getExtensionFilters().add(
+        new FileChooser.ExtensionFilter("R workspace", "*" + WorkspaceSnapshot.FILE_EXTENSION));
+    fileChooser.setInitialDirectory(gui.getInoutComponent().getRootDir());
+    fileChooser.setTitle("Load workspace");
+    File file = fileChooser.showOpenDialog(gui.getStage());
+    if (file == null) {
+      return;
+    }
+    gui.getConsoleComponent().loadWorkspace(file);
+  }
+
   private void showSessionInfo(ActionEvent actionEvent) {
     ConsoleComponent cc = gui.getConsoleComponent();
     Session session = cc.getSession();
@@ -920,11 +1003,7 @@ public class MainMenu extends MenuBar {
     }
     try {
       saveFile(codeArea, file);
-      Git git = gui.getInoutComponent().getGit();
-      if(codeArea.getTreeItem() != null && git != null) {
-        String path = GitUtils.asRelativePath(codeArea.getFile(), gui.getInoutComponent().getRootDir());
-        GitUtils.colorNode(git, path, codeArea.getTreeItem());
-      }
+      gui.getInoutComponent().updateGitStatus(file);
     } catch (FileNotFoundException e) {
       ExceptionAlert.showAlert("Failed to save file " + file, e);
     }
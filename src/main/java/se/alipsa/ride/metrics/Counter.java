@@ -0,0 +1,30 @@
+package se.alipsa.ride.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of something that happened, cheap to increment from many threads at the same time.
+ */
+public final class Counter {
+
+  private final LongAdder count = new LongAdder();
+
+  Counter() {
+  }
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void add(long amount) {
+    count.add(amount);
+  }
+
+  public long get() {
+    return count.sum();
+  }
+
+  void reset() {
+    count.reset();
+  }
+}
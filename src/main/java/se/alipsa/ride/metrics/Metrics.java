@@ -0,0 +1,130 @@
+package se.alipsa.ride.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the application: counters, gauges (a value read when asked for) and latency timers, by name.
+ * The names are dot separated with the area first, e.g. engine.queue.wait or sql.execute.
+ * Asking for a counter or timer that does not exist creates it so the code measuring something just does
+ * Metrics.counter("x").increment() without any setup. The metrics are shown in the Metrics tab and over JMX
+ * as the attributes of se.alipsa.ride:type=Metrics.
+ */
+public final class Metrics {
+
+  public static final String OBJECT_NAME = "se.alipsa.ride:type=Metrics";
+
+  private static final Logger log = LogManager.getLogger(Metrics.class);
+  private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private static final Map<String, LatencyTimer> timers = new ConcurrentHashMap<>();
+  private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+  static {
+    registerJvmGauges();
+  }
+
+  private Metrics() {
+    // static methods only
+  }
+
+  public static Counter counter(String name) {
+    return counters.computeIfAbsent(name, n -> new Counter());
+  }
+
+  public static LatencyTimer timer(String name) {
+    return timers.computeIfAbsent(name, n -> new LatencyTimer());
+  }
+
+  /**
+   * Register a value that is read when the metrics are shown, replacing a gauge with the same name.
+   * The supplier is called from other threads so it must be thread safe and quick.
+   */
+  public static void gauge(String name, LongSupplier value) {
+    gauges.put(name, value);
+  }
+
+  /**
+   * @return the current value of all metrics, a timer contributes its count, mean, percentiles and max (in ms)
+   */
+  public static SortedMap<String, Number> snapshot() {
+    SortedMap<String, Number> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.get()));
+    gauges.forEach((name, gauge) -> {
+      try {
+        values.put(name, gauge.getAsLong());
+      } catch (RuntimeException e) {
+        log.debug("Failed to read gauge {}", name, e);
+      }
+    });
+    timers.forEach((name, timer) -> {
+      values.put(name + ".count", timer.getCount());
+      values.put(name + ".meanMs", round(timer.getMeanMillis()));
+      values.put(name + ".p50Ms", round(timer.getPercentileMillis(50)));
+      values.put(name + ".p95Ms", round(timer.getPercentileMillis(95)));
+      values.put(name + ".p99Ms", round(timer.getPercentileMillis(99)));
+      values.put(name + ".maxMs", round(timer.getMaxMillis()));
+    });
+    return values;
+  }
+
+  /**
+   * Set all counters and timers to zero, e.g. to measure one specific workload. Gauges are not affected.
+   */
+  public static void reset() {
+    counters.values().forEach(Counter::reset);
+    timers.values().forEach(LatencyTimer::reset);
+    log.info("Metrics reset");
+  }
+
+  /**
+   * Make the metrics available over JMX, e.g. to look at them with jconsole or VisualVM.
+   */
+  public static void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MetricsMBean(), name);
+        log.debug("Registered {}", OBJECT_NAME);
+      }
+    } catch (JMException e) {
+      log.warn("Failed to register the metrics mbean", e);
+    }
+  }
+
+  private static void registerJvmGauges() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    gauge("jvm.heap.usedMb", () -> toMb(memory.getHeapMemoryUsage().getUsed()));
+    gauge("jvm.heap.committedMb", () -> toMb(memory.getHeapMemoryUsage().getCommitted()));
+    gauge("jvm.heap.maxMb", () -> {
+      MemoryUsage heap = memory.getHeapMemoryUsage();
+      return toMb(heap.getMax() < 0 ? heap.getCommitted() : heap.getMax());
+    });
+    gauge("jvm.gc.count", () -> ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(n -> n > 0).sum());
+    gauge("jvm.gc.timeMs", () -> ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(n -> n > 0).sum());
+    gauge("jvm.threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+  }
+
+  private static long toMb(long bytes) {
+    return bytes / (1024 * 1024);
+  }
+
+  private static double round(double millis) {
+    return Math.round(millis * 1000) / 1000.0;
+  }
+}
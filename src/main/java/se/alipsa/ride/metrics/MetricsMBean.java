@@ -0,0 +1,76 @@
+package se.alipsa.ride.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes each metric as a read only attribute (named as the metric) and reset as an operation. The metrics
+ * are created as they are first used so the attributes are whatever exists when the info is asked for.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  private static final String RESET = "reset";
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number value = Metrics.snapshot().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException("No metric called " + attribute);
+    }
+    return value;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("The metrics are read only");
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    Map<String, Number> snapshot = Metrics.snapshot();
+    AttributeList list = new AttributeList();
+    for (String name : attributes) {
+      Number value = snapshot.get(name);
+      if (value != null) {
+        list.add(new Attribute(name, value));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+      throws MBeanException, ReflectionException {
+    if (RESET.equals(actionName) && (params == null || params.length == 0)) {
+      Metrics.reset();
+      return null;
+    }
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<>();
+    Metrics.snapshot().forEach((name, value) -> attributes.add(
+        new MBeanAttributeInfo(name, value.getClass().getName(), name, true, false, false)));
+    MBeanOperationInfo reset = new MBeanOperationInfo(RESET, "Set all counters and timers to zero",
+        null, "void", MBeanOperationInfo.ACTION);
+    return new MBeanInfo(getClass().getName(), "Ride metrics",
+        attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+  }
+}
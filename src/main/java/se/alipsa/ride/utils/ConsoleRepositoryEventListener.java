@@ -5,10 +5,25 @@ import org.apache.logging.log4j.Logger;
 import org.eclipse.aether.AbstractRepositoryListener;
 import org.eclipse.aether.RepositoryEvent;
 
+import java.util.function.Consumer;
+
 public class ConsoleRepositoryEventListener extends AbstractRepositoryListener {
 
    private Logger log = LogManager.getLogger();
 
+   private final Consumer<String> console;
+
+   public ConsoleRepositoryEventListener() {
+      this(null);
+   }
+
+   /**
+    * @param console if not null, downloaded artifacts are reported to it (e.g. to show download progress)
+    */
+   public ConsoleRepositoryEventListener(Consumer<String> console) {
+      this.console = console;
+   }
+
    @Override
    public void artifactInstalled(RepositoryEvent event) {
       log.debug("artifact {} installed to file {}", event.getArtifact(), event.getFile());
@@ -35,6 +50,9 @@ public class ConsoleRepositoryEventListener extends AbstractRepositoryListener {
    public void artifactDownloaded(RepositoryEvent event) {
       log.debug("downloaded artifact {} from repository {}", event.getArtifact(),
          event.getRepository());
+      if (console != null) {
+         console.accept("  downloaded " + event.getArtifact());
+      }
    }
 
    @Override
@@ -4,6 +4,11 @@ import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.Statements;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.WithItem;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -30,4 +35,54 @@ public class SqlParser {
       return new String[] {sql};
     }
   }
+
+  /**
+   * @return true if all the statements are plain selects (i.e. can be run independently of each other).
+   * A select that writes (select ... into) or locks (select ... for update) is not a plain select.
+   */
+  public static boolean isSelectsOnly(String[] statements) {
+    for (String sql : statements) {
+      try {
+        Statement statement = CCJSqlParserUtil.parse(sql);
+        if (!(statement instanceof Select) || !isReadOnly((Select) statement)) {
+          return false;
+        }
+      } catch (JSQLParserException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isReadOnly(Select select) {
+    if (select.getWithItemsList() != null) {
+      for (WithItem withItem : select.getWithItemsList()) {
+        if (!isReadOnly(withItem)) {
+          return false;
+        }
+      }
+    }
+    return isReadOnly(select.getSelectBody());
+  }
+
+  private static boolean isReadOnly(SelectBody body) {
+    if (body instanceof PlainSelect) {
+      PlainSelect plainSelect = (PlainSelect) body;
+      return plainSelect.getIntoTables() == null && !plainSelect.isForUpdate();
+    }
+    if (body instanceof SetOperationList) {
+      for (SelectBody select : ((SetOperationList) body).getSelects()) {
+        if (!isReadOnly(select)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (body instanceof WithItem) {
+      WithItem withItem = (WithItem) body;
+      return withItem.getSubSelect() == null || isReadOnly(withItem.getSubSelect().getSelectBody());
+    }
+    // anything else (e.g. values) is not known to be safe to run on a connection of its own
+    return false;
+  }
 }
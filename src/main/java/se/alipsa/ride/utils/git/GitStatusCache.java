@@ -0,0 +1,147 @@
+package se.alipsa.ride.utils.git;
+
+import static se.alipsa.ride.Constants.GitStatus.GIT_ADDED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_CHANGED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_CONFLICT;
+import static se.alipsa.ride.Constants.GitStatus.GIT_IGNORED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_MODIFIED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_NONE;
+import static se.alipsa.ride.Constants.GitStatus.GIT_UNCOMITTED_CHANGE;
+import static se.alipsa.ride.Constants.GitStatus.GIT_UNTRACKED;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import se.alipsa.ride.Constants.GitStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * The git status of the files in a repository by path (relative to the repository root, / separated).
+ * Only files that are not clean are kept. The status is computed on a background thread, the whole working
+ * tree once when the cache is (re)loaded and after that only the paths that are known to have changed, using
+ * path filters so that the rest of the working tree is not walked.
+ */
+public class GitStatusCache {
+
+  private static final Logger log = LogManager.getLogger(GitStatusCache.class);
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "ride-git-status");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Git git;
+  private volatile Map<String, GitStatus> statuses = new ConcurrentHashMap<>();
+
+  public GitStatusCache(Git git) {
+    this.git = git;
+  }
+
+  /**
+   * Open the repository in the background.
+   *
+   * @param onOpened called from the background thread with the (not yet loaded) cache
+   * @param onError called from the background thread if the repository could not be opened
+   */
+  public static void open(File rootDir, Consumer<GitStatusCache> onOpened, Consumer<IOException> onError) {
+    executor.execute(() -> {
+      try {
+        onOpened.accept(new GitStatusCache(Git.open(rootDir)));
+      } catch (IOException e) {
+        onError.accept(e);
+      }
+    });
+  }
+
+  public Git getGit() {
+    return git;
+  }
+
+  public GitStatus getStatus(String path) {
+    return statuses.getOrDefault(path, GIT_NONE);
+  }
+
+  /**
+   * Compute the status of the whole working tree in the background.
+   *
+   * @param onDone called from the background thread when the status is loaded
+   * @param onError called from the background thread if the status could not be computed
+   */
+  public void reload(Runnable onDone, Consumer<GitAPIException> onError) {
+    executor.execute(() -> {
+      try {
+        long start = System.currentTimeMillis();
+        statuses = toMap(git.status().call());
+        log.debug("Git status for {} loaded in {} ms", git.getRepository().getWorkTree(),
+            System.currentTimeMillis() - start);
+        onDone.run();
+      } catch (GitAPIException e) {
+        onError.accept(e);
+      }
+    });
+  }
+
+  /**
+   * Recompute the status of the given paths (a directory includes everything below it) in the background.
+   *
+   * @param onDone called from the background thread with the paths when their status has been updated
+   */
+  public void update(Collection<String> paths, Consumer<Collection<String>> onDone) {
+    if (paths.isEmpty()) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        StatusCommand statusCommand = git.status();
+        for (String path : paths) {
+          statusCommand.addPath(path);
+        }
+        Map<String, GitStatus> updated = toMap(statusCommand.call());
+        Map<String, GitStatus> current = statuses;
+        for (String path : paths) {
+          current.remove(path);
+          String dirPrefix = path + "/";
+          current.keySet().removeIf(p -> p.startsWith(dirPrefix));
+        }
+        current.putAll(updated);
+        onDone.accept(paths);
+      } catch (GitAPIException e) {
+        log.warn("Failed to update the git status of {}", paths, e);
+      }
+    });
+  }
+
+  /**
+   * A path can be in several of the sets in the status, the most important one wins.
+   */
+  private static Map<String, GitStatus> toMap(Status status) {
+    Map<String, GitStatus> map = new ConcurrentHashMap<>();
+    put(map, status.getIgnoredNotInIndex(), GIT_IGNORED);
+    put(map, status.getUntracked(), GIT_UNTRACKED);
+    put(map, status.getUncommittedChanges(), GIT_UNCOMITTED_CHANGE);
+    put(map, status.getModified(), GIT_MODIFIED);
+    put(map, status.getChanged(), GIT_CHANGED);
+    put(map, status.getAdded(), GIT_ADDED);
+    put(map, status.getConflicting(), GIT_CONFLICT);
+    return map;
+  }
+
+  private static void put(Map<String, GitStatus> map, Set<String> paths, GitStatus gitStatus) {
+    for (String path : paths) {
+      map.put(path, gitStatus);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package se.alipsa.ride.utils.maven;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.alipsa.ride.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Caches the resolved classpath of a pom on disk so that the dependencies do not have to be resolved
+ * again every time a session is started. The cache for a pom is keyed by a hash of its effective model
+ * (dependencies, managed dependencies and repositories); if that is unchanged and all the cached files still
+ * exist the cached classpath is used as is. Otherwise the whole dependency set is resolved again, which is
+ * cheap for the artifacts that are already in the local repository. Snapshots and version ranges can change
+ * without the pom changing so a model containing any of them is always resolved.
+ */
+public class DependencyCache {
+
+  private static final Logger log = LogManager.getLogger(DependencyCache.class);
+
+  private static final String MODEL_HASH = "model.hash";
+  private static final String CLASSPATH = "classpath";
+
+  private final File cacheDir;
+
+  /**
+   * Resolves all the dependencies of the pom and their transitive dependencies.
+   */
+  public interface Resolver {
+    List<File> resolve() throws DependenciesResolveException;
+  }
+
+  public DependencyCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  public static DependencyCache getDefault() {
+    return new DependencyCache(new File(FileUtils.getUserHome(), ".ride/dependency-cache"));
+  }
+
+  /**
+   * @param pomFile the pom the dependencies belong to
+   * @param model the parts of the effective model that affects the resolution, e.g. the coordinates
+   *              (groupId:artifactId:type:classifier:scope:version) of the dependencies and the url of the
+   *              repositories. The version of a dependency must be last.
+   * @param resolver used if the cached classpath cannot be used
+   * @return the files of all the dependencies and their transitive dependencies
+   */
+  public Set<File> resolve(File pomFile, Collection<String> model, Resolver resolver)
+      throws DependenciesResolveException {
+    File cacheFile = getCacheFile(pomFile);
+    Properties cache = load(cacheFile);
+    String modelHash = hash(new TreeSet<>(model));
+
+    if (modelHash.equals(cache.getProperty(MODEL_HASH)) && !isVolatile(model)) {
+      List<File> cached = toFiles(cache.getProperty(CLASSPATH));
+      if (cached != null) {
+        log.info("Using the cached classpath of {}", pomFile);
+        return new LinkedHashSet<>(cached);
+      }
+      log.debug("Some of the cached dependencies of {} no longer exist", pomFile);
+    }
+    List<File> resolved = resolver.resolve();
+    Properties updated = new Properties();
+    updated.setProperty(MODEL_HASH, modelHash);
+    updated.setProperty(CLASSPATH, toPath(resolved));
+    store(cacheFile, updated, pomFile);
+    return new LinkedHashSet<>(resolved);
+  }
+
+  File getCacheFile(File pomFile) {
+    return new File(cacheDir, hash(pomFile.getAbsolutePath()) + ".properties");
+  }
+
+  private static boolean isVolatile(Collection<String> model) {
+    for (String coordinates : model) {
+      String version = coordinates.substring(coordinates.lastIndexOf(':') + 1);
+      if (version.endsWith("-SNAPSHOT") || version.startsWith("[") || version.startsWith("(")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the files or null if any of them no longer exist (e.g. the local repository has been cleaned)
+   */
+  private static List<File> toFiles(String path) {
+    if (path == null) {
+      return null;
+    }
+    List<File> files = new ArrayList<>();
+    for (String name : path.split(File.pathSeparator)) {
+      if (name.isEmpty()) {
+        continue;
+      }
+      File file = new File(name);
+      if (!file.exists()) {
+        return null;
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  private static String toPath(List<File> files) {
+    List<String> names = new ArrayList<>();
+    for (File file : files) {
+      if (file != null) {
+        names.add(file.getAbsolutePath());
+      }
+    }
+    return String.join(File.pathSeparator, names);
+  }
+
+  private static Properties load(File cacheFile) {
+    Properties properties = new Properties();
+    if (cacheFile.exists()) {
+      try (InputStream in = Files.newInputStream(cacheFile.toPath())) {
+        properties.load(in);
+      } catch (IOException | IllegalArgumentException e) {
+        log.warn("Failed to read the dependency cache {}, resolving all dependencies", cacheFile, e);
+        properties.clear();
+      }
+    }
+    return properties;
+  }
+
+  private void store(File cacheFile, Properties properties, File pomFile) {
+    try {
+      Files.createDirectories(cacheDir.toPath());
+      // write to a temp file first so that a concurrent read never sees half a file
+      File tmpFile = new File(cacheDir, cacheFile.getName() + ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmpFile.toPath())) {
+        properties.store(out, "Resolved dependencies of " + pomFile.getAbsolutePath());
+      }
+      Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Failed to write the dependency cache {}", cacheFile, e);
+    }
+  }
+
+  private static String hash(Collection<String> values) {
+    return hash(String.join("\n", values));
+  }
+
+  private static String hash(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 16; i++) {
+        sb.append(String.format("%02x", bytes[i]));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every java implementation is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
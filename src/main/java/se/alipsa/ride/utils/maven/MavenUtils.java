@@ -33,22 +33,23 @@ import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
-import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResult;
-import org.eclipse.aether.resolution.DependencyRequest;
-import org.eclipse.aether.resolution.DependencyResolutionException;
-import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.filter.DependencyFilterUtils;
+import org.eclipse.aether.util.graph.visitor.FilteringDependencyVisitor;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
 import se.alipsa.ride.Ride;
 import se.alipsa.ride.utils.ConsoleRepositoryEventListener;
 import se.alipsa.ride.utils.FileUtils;
@@ -57,6 +58,11 @@ import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Since we have a dependency on AetherPackageLoader we use the same
@@ -72,6 +78,12 @@ public class MavenUtils {
 
   private static final Logger log = LogManager.getLogger();
 
+  /** the max number of artifacts downloaded at the same time */
+  private static final int MAX_DOWNLOAD_THREADS = 6;
+
+  private static RepositorySystem sharedRepositorySystem;
+  private static RepositorySystemSession sharedRepositorySystemSession;
+
    /**
     * Note:
     * The maven classloader must have Ride as parent otherwise executing R scripts will result in classes mixed from
@@ -112,7 +124,16 @@ public class MavenUtils {
   }
 
   public static ClassLoader getMavenDependenciesClassloader(File pomFile, ClassLoader possibleParent) throws Exception {
-    return getMavenClassLoader(parsePom(pomFile), resolveDependencies(pomFile), possibleParent);
+    return getMavenDependenciesClassloader(pomFile, possibleParent, log::info);
+  }
+
+  /**
+   * @param progress receives messages about the progress of the dependency resolution, e.g. to show in the console
+   */
+  public static ClassLoader getMavenDependenciesClassloader(File pomFile, ClassLoader possibleParent,
+                                                           Consumer<String> progress) throws Exception {
+    Model model = parsePom(pomFile);
+    return getMavenClassLoader(model, resolveDependencies(pomFile, model, progress), possibleParent);
   }
 
   public static InvocationResult runMaven(final File pomFile, String[] mvnArgs, InvocationOutputHandler consoleOutputHandler, InvocationOutputHandler warningOutputHandler) throws MavenInvocationException {
@@ -140,41 +161,143 @@ public class MavenUtils {
   }
 
 
+  /**
+   * Resolve the dependencies of the pom and their transitive dependencies. The resolved classpath is
+   * cached (see DependencyCache) so the dependencies are only resolved when the pom has changed.
+   */
   public static Set<File> resolveDependencies(File pomFile) throws SettingsBuildingException, ModelBuildingException,
       DependenciesResolveException {
-    RepositorySystem repositorySystem = getRepositorySystem();
-    RepositorySystemSession repositorySystemSession = getRepositorySystemSession(repositorySystem);
+    return resolveDependencies(pomFile, parsePom(pomFile), log::info);
+  }
 
-    Model model = parsePom(pomFile);
+  private static Set<File> resolveDependencies(File pomFile, Model model, Consumer<String> progress)
+      throws DependenciesResolveException {
     List<RemoteRepository> repositories = getRepositories(model);
-    Set<File> dependencies = new HashSet<>();
     log.trace("Maven model resolved: {}, parsing its dependencies...", model);
+    List<Dependency> dependencies = new ArrayList<>();
+    List<String> modelKeys = new ArrayList<>();
     for (org.apache.maven.model.Dependency d : model.getDependencies()) {
-      log.trace("processing dependency: {}", d);
-      Artifact artifact = new DefaultArtifact(d.getGroupId(), d.getArtifactId(), d.getType(), d.getVersion());
-
-      ///// Resolve main + transient
-      log.debug("resolving {}:{}:{}...", artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion() );
-      CollectRequest collectRequest = new CollectRequest(new Dependency(artifact, JavaScopes.COMPILE), repositories);
-      DependencyFilter filter = DependencyFilterUtils.classpathFilter(JavaScopes.COMPILE);
-      DependencyRequest request = new DependencyRequest(collectRequest, filter);
-
-      DependencyResult result = null;
-      try {
-        result = repositorySystem.resolveDependencies(repositorySystemSession, request);
-      } catch (DependencyResolutionException | RuntimeException e) {
-        log.warn("Error resolving dependent artifact: {}:{}:{}", d.getGroupId(), d.getArtifactId(), d.getVersion(), e);
-        throw new DependenciesResolveException("Error resolving dependent artifact: "+ d.getGroupId() + ":" + d.getArtifactId() + ":" + d.getVersion(), e);
+      // no scope means compile for a dependency
+      dependencies.add(toDependency(d, d.getScope() == null ? JavaScopes.COMPILE : d.getScope()));
+      modelKeys.add(modelKey(d));
+    }
+    List<Dependency> managedDependencies = new ArrayList<>();
+    if (model.getDependencyManagement() != null) {
+      for (org.apache.maven.model.Dependency d : model.getDependencyManagement().getDependencies()) {
+        // but for a managed dependency it means that the scope is not managed
+        managedDependencies.add(toDependency(d, d.getScope()));
+        modelKeys.add("managed " + modelKey(d));
       }
+    }
+    for (RemoteRepository repository : repositories) {
+      modelKeys.add("repository " + repository.getId() + "=" + repository.getUrl());
+    }
+    return DependencyCache.getDefault().resolve(pomFile, modelKeys,
+        () -> resolveDependencies(dependencies, managedDependencies, repositories, progress));
+  }
+
+  private static Dependency toDependency(org.apache.maven.model.Dependency d, String scope) {
+    Artifact artifact = new DefaultArtifact(d.getGroupId(), d.getArtifactId(), d.getClassifier(), d.getType(), d.getVersion());
+    return new Dependency(artifact, scope);
+  }
+
+  /**
+   * @return everything about the dependency that affects the resolution, with the version last
+   * (see DependencyCache)
+   */
+  private static String modelKey(org.apache.maven.model.Dependency d) {
+    return d.getGroupId() + ":" + d.getArtifactId() + ":" + d.getType() + ":" + d.getClassifier()
+        + ":" + d.getScope() + ":" + d.getVersion();
+  }
 
-      for (ArtifactResult artifactResult : result.getArtifactResults()) {
-        Artifact art = artifactResult.getArtifact();
-        log.debug("artifact {} resolved to {}", art, art.getFile());
-        dependencies.add(art.getFile());
+  /**
+   * Collect the whole dependency graph in one request, so that version conflicts between the dependencies are
+   * mediated the same way as in a maven build, and then download the artifacts in parallel.
+   */
+  private static List<File> resolveDependencies(List<Dependency> dependencies, List<Dependency> managedDependencies,
+                                                List<RemoteRepository> repositories, Consumer<String> progress)
+      throws DependenciesResolveException {
+    RepositorySystem repositorySystem = getSharedRepositorySystem();
+    DefaultRepositorySystemSession session;
+    try {
+      session = new DefaultRepositorySystemSession(getSharedRepositorySystemSession());
+    } catch (SettingsBuildingException e) {
+      throw new DependenciesResolveException("Failed to read the maven settings", e);
+    }
+    session.setRepositoryListener(new ConsoleRepositoryEventListener(progress));
+
+    progress.accept("* Collecting " + dependencies.size() + " maven dependencies...");
+    long start = System.currentTimeMillis();
+    CollectRequest collectRequest = new CollectRequest(dependencies, managedDependencies, repositories);
+    DependencyNode root;
+    try {
+      root = repositorySystem.collectDependencies(session, collectRequest).getRoot();
+    } catch (DependencyCollectionException | RuntimeException e) {
+      log.warn("Error collecting dependencies", e);
+      throw new DependenciesResolveException("Error collecting dependencies: " + e.getMessage(), e);
+    }
+
+    PreorderNodeListGenerator nodeList = new PreorderNodeListGenerator();
+    // the session classpath includes the test classes (see getClassPathElements) so every scope is included,
+    // the scopes still matter for the scope of the transitive dependencies and for mediating the versions
+    root.accept(new FilteringDependencyVisitor(nodeList, DependencyFilterUtils.classpathFilter(JavaScopes.TEST)));
+    List<ArtifactRequest> requests = new ArrayList<>();
+    for (DependencyNode node : nodeList.getNodes()) {
+      if (node.getDependency() != null) {
+        requests.add(new ArtifactRequest(node));
+      }
+    }
+
+    int threads = Math.max(1, Math.min(MAX_DOWNLOAD_THREADS, requests.size()));
+    progress.accept("* Resolving " + requests.size() + " artifacts using " + threads + " threads...");
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "ride-maven-resolver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<ArtifactResult>> results = new ArrayList<>();
+      for (ArtifactRequest request : requests) {
+        results.add(executor.submit(() -> repositorySystem.resolveArtifact(session, request)));
       }
+      List<File> files = new ArrayList<>();
+      for (int i = 0; i < results.size(); i++) {
+        Artifact artifact = requests.get(i).getArtifact();
+        try {
+          Artifact art = results.get(i).get().getArtifact();
+          log.debug("artifact {} resolved to {}", art, art.getFile());
+          files.add(art.getFile());
+        } catch (ExecutionException e) {
+          log.warn("Error resolving dependent artifact: {}", artifact, e.getCause());
+          throw new DependenciesResolveException("Error resolving dependent artifact: " + artifact, e.getCause());
+        }
+      }
+      progress.accept("* " + files.size() + " artifacts resolved in " + (System.currentTimeMillis() - start) + " ms");
+      return files;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DependenciesResolveException("Interrupted while resolving dependencies", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The repository system and session are expensive to create so they are created once, when the first
+   * dependency that is not cached is resolved, and then reused.
+   */
+  private static synchronized RepositorySystem getSharedRepositorySystem() {
+    if (sharedRepositorySystem == null) {
+      sharedRepositorySystem = getRepositorySystem();
+    }
+    return sharedRepositorySystem;
+  }
+
+  private static synchronized RepositorySystemSession getSharedRepositorySystemSession() throws SettingsBuildingException {
+    if (sharedRepositorySystemSession == null) {
+      sharedRepositorySystemSession = getRepositorySystemSession(getSharedRepositorySystem());
     }
-    /////
-    return dependencies;
+    return sharedRepositorySystemSession;
   }
 
   public static Model parsePom(File pomFile) throws ModelBuildingException {
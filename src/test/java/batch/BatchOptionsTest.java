@@ -0,0 +1,73 @@
+package batch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.ride.batch.BatchOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+public class BatchOptionsTest {
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  public void testParse() {
+    BatchOptions options = BatchOptions.parse("-p", "3", "--out", "reports", "--param", "year=2020",
+        "--param", "q=a=b", "--munin-url", "http://localhost:8088", "a.R", "dir");
+    assertEquals(3, options.getParallel());
+    assertEquals(new File("reports"), options.getOutputDir());
+    assertEquals("2020", options.getParams().get("year"));
+    assertEquals("a=b", options.getParams().get("q"), "Only the first = should separate name and value");
+    assertEquals("http://localhost:8088", options.getMuninBaseUrl());
+    assertEquals(Arrays.asList(new File("a.R"), new File("dir")), options.getInputs());
+    assertFalse(options.isUseMavenClassloader());
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> BatchOptions.parse());
+    assertThrows(IllegalArgumentException.class, () -> BatchOptions.parse("-p", "0", "a.R"));
+    assertThrows(IllegalArgumentException.class, () -> BatchOptions.parse("a.R", "--out"));
+    assertThrows(IllegalArgumentException.class, () -> BatchOptions.parse("--param", "year", "a.R"));
+    assertThrows(IllegalArgumentException.class, () -> BatchOptions.parse("--unknown", "a.R"));
+    assertTrue(BatchOptions.parse("--help").isHelp());
+  }
+
+  @Test
+  public void testCollectFiles() throws IOException {
+    File dir = new File(tempDir, "reports");
+    File sub = new File(dir, "sub");
+    assertTrue(sub.mkdirs());
+    File single = touch(new File(tempDir, "single.mdr"));
+    File sales = touch(new File(dir, "sales.mr"));
+    File stats = touch(new File(sub, "stats.R"));
+    touch(new File(dir, "notes.txt"));
+
+    Map<File, String> files = BatchOptions.parse(single.getPath(), dir.getPath()).collectFiles();
+    assertEquals(Arrays.asList(single, sales, stats), new ArrayList<>(files.keySet()));
+    assertEquals(Arrays.asList("single", "sales", "sub/stats"), new ArrayList<>(files.values()));
+  }
+
+  @Test
+  public void testSameOutputIsRejected() throws IOException {
+    File script = touch(new File(tempDir, "report.R"));
+    File mdr = touch(new File(tempDir, "report.mdr"));
+    assertThrows(IllegalArgumentException.class,
+        () -> BatchOptions.parse(script.getPath(), mdr.getPath()).collectFiles());
+    assertThrows(IllegalArgumentException.class,
+        () -> BatchOptions.parse(new File(tempDir, "missing.R").getPath()).collectFiles());
+  }
+
+  private static File touch(File file) throws IOException {
+    Files.write(file.toPath(), new byte[0]);
+    return file;
+  }
+}
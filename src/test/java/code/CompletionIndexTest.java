@@ -0,0 +1,96 @@
+package code;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.code.CompletionIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompletionIndexTest {
+
+  @Test
+  public void testPrefixMatches() {
+    CompletionIndex index = new CompletionIndex();
+    index.update(CompletionIndex.Kind.FUNCTION, Arrays.asList("paste", "paste0", "print", "Position", "apply"));
+    assertEquals(Arrays.asList("paste", "paste0"), names(index.complete("pas", 10)));
+    assertEquals(Arrays.asList("paste", "paste0", "Position", "print"), names(index.complete("p", 10)));
+    assertEquals(Arrays.asList("paste", "paste0"), names(index.complete("p", 2)));
+    assertTrue(index.complete("x", 10).isEmpty());
+  }
+
+  @Test
+  public void testCaseInsensitivePrefix() {
+    CompletionIndex index = new CompletionIndex();
+    index.update(CompletionIndex.Kind.FUNCTION, Arrays.asList("Sys.time", "sum"));
+    assertEquals(Arrays.asList("Sys.time"), names(index.complete("sys", 10)));
+  }
+
+  @Test
+  public void testHumpMatches() {
+    CompletionIndex index = new CompletionIndex();
+    index.update(CompletionIndex.Kind.FUNCTION, Arrays.asList("read.data.frame", "readDataFrame", "rdf", "rbind"));
+    List<String> matches = names(index.complete("rdf", 10));
+    assertEquals("rdf", matches.get(0), "The prefix match should be first");
+    assertTrue(matches.contains("read.data.frame"));
+    assertTrue(matches.contains("readDataFrame"));
+    assertFalse(matches.contains("rbind"));
+    assertTrue(names(index.complete("rd", 10)).contains("readDataFrame"));
+  }
+
+  @Test
+  public void testUsageRanking() {
+    CompletionIndex index = new CompletionIndex();
+    index.update(CompletionIndex.Kind.FUNCTION, Arrays.asList("summary", "sum", "substr"));
+    assertEquals("substr", index.complete("su", 10).get(0).getName());
+    index.recordUsage("summary");
+    index.recordUsage("summary");
+    index.recordUsage("sum");
+    assertEquals(Arrays.asList("summary", "sum", "substr"), names(index.complete("su", 10)));
+  }
+
+  @Test
+  public void testIncrementalUpdate() {
+    CompletionIndex index = new CompletionIndex();
+    index.update(CompletionIndex.Kind.KEYWORD, Arrays.asList("if", "in"));
+    Set<String> objects = new TreeSet<>(Arrays.asList("iris", "mtcars"));
+    assertTrue(index.update(CompletionIndex.Kind.OBJECT, objects));
+    assertFalse(index.update(CompletionIndex.Kind.OBJECT, objects), "Unchanged names should not change the index");
+    assertEquals(4, index.size());
+
+    objects = new TreeSet<>(Arrays.asList("iris", "df"));
+    assertTrue(index.update(CompletionIndex.Kind.OBJECT, objects));
+    assertEquals(4, index.size());
+    assertTrue(index.complete("mt", 10).isEmpty());
+    assertEquals(Arrays.asList("if", "in", "iris"), names(index.complete("i", 10)));
+    assertEquals(1, index.complete("df", 10).size());
+  }
+
+  @Test
+  public void testLargeIndex() {
+    CompletionIndex index = new CompletionIndex();
+    List<String> functions = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      functions.add("fun" + i + ".name" + (i % 10));
+    }
+    index.update(CompletionIndex.Kind.FUNCTION, functions);
+    index.complete("fun9", 50);
+    long start = System.nanoTime();
+    List<CompletionIndex.Entry> matches = index.complete("fun1234", 50);
+    long elapsed = System.nanoTime() - start;
+    assertEquals("fun1234.name4", matches.get(0).getName());
+    assertTrue(elapsed < 5_000_000, "Completion took " + elapsed / 1000 + " micro seconds");
+  }
+
+  private List<String> names(List<CompletionIndex.Entry> entries) {
+    List<String> names = new ArrayList<>();
+    for (CompletionIndex.Entry entry : entries) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+}
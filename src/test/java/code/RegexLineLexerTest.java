@@ -0,0 +1,98 @@
+package code;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.code.LineLexer;
+import se.alipsa.ride.code.RegexLineLexer;
+
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegexLineLexerTest {
+
+  private static final LineLexer LEXER = new RegexLineLexer(Pattern.compile(
+      "(?<KEYWORD>\\b(select|from)\\b)"
+          + "|(?<STRING>'[^']*')"
+          + "|(?<COMMENT>--.*)"
+          + "|(?<BLOCKCOMMENT>/\\*)"),
+      "KEYWORD", "keyword",
+      "STRING", "string",
+      "COMMENT", "comment")
+      .addBlock("BLOCKCOMMENT", ".*?\\*/", "comment");
+
+  @Test
+  public void testTokens() {
+    Lexed lexed = lex("select 'a' from x -- done", LineLexer.DEFAULT_STATE);
+    assertEquals("keyword:6 :1 string:3 :1 keyword:4 :3 comment:7", lexed.spans);
+    assertEquals(LineLexer.DEFAULT_STATE, lexed.state);
+  }
+
+  @Test
+  public void testEmptyLine() {
+    Lexed lexed = lex("", LineLexer.DEFAULT_STATE);
+    assertEquals("", lexed.spans);
+    assertEquals(LineLexer.DEFAULT_STATE, lexed.state);
+  }
+
+  @Test
+  public void testBlockSpanningLines() {
+    Lexed first = lex("select /* a", LineLexer.DEFAULT_STATE);
+    assertEquals("keyword:6 :1 comment:4", first.spans);
+    assertNotEquals(LineLexer.DEFAULT_STATE, first.state);
+
+    Lexed middle = lex("select from", first.state);
+    assertEquals("comment:11", middle.spans);
+    assertEquals(first.state, middle.state);
+
+    Lexed last = lex("end */ from", middle.state);
+    assertEquals("comment:6 :1 keyword:4", last.spans);
+    assertEquals(LineLexer.DEFAULT_STATE, last.state);
+  }
+
+  @Test
+  public void testBlockOnOneLine() {
+    Lexed lexed = lex("/* a */select", LineLexer.DEFAULT_STATE);
+    assertEquals("comment:7 keyword:6", lexed.spans);
+    assertEquals(LineLexer.DEFAULT_STATE, lexed.state);
+  }
+
+  private Lexed lex(String line, int state) {
+    StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+    Lexed lexed = new Lexed();
+    lexed.state = LEXER.lex(line, state, spansBuilder);
+    StyleSpans<Collection<String>> spans = spansBuilder.create();
+    assertEquals(line.length(), spans.length(), "The spans must cover the whole line");
+    StringBuilder sb = new StringBuilder();
+    String prevStyle = null;
+    int prevLength = 0;
+    for (StyleSpan<Collection<String>> span : spans) {
+      if (span.getLength() == 0) {
+        continue;
+      }
+      String style = String.join(",", span.getStyle());
+      if (style.equals(prevStyle)) {
+        prevLength += span.getLength();
+        continue;
+      }
+      if (prevStyle != null) {
+        sb.append(prevStyle).append(':').append(prevLength).append(' ');
+      }
+      prevStyle = style;
+      prevLength = span.getLength();
+    }
+    if (prevStyle != null) {
+      sb.append(prevStyle).append(':').append(prevLength);
+    }
+    lexed.spans = sb.toString();
+    return lexed;
+  }
+
+  private static class Lexed {
+    String spans;
+    int state;
+  }
+}
@@ -0,0 +1,72 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.console.ConsoleLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ConsoleLogTest {
+
+  private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  @Test
+  public void testAppendReadAndFind() throws IOException {
+    try (ConsoleLog log = new ConsoleLog()) {
+      StringBuilder block = new StringBuilder();
+      for (int i = 0; i < 150_000; i++) {
+        block.append("line ").append(i).append(" åäö\n");
+      }
+      log.append(block.toString());
+      log.append("the needle\n");
+      log.append(block.toString());
+      log.append("more text\n");
+      assertEquals(2, log.getSegmentCount());
+      assertEquals(block + "the needle\n", log.readSegment(0));
+      assertEquals(block + "more text\n", log.readSegment(1));
+
+      int[] hit = log.find("NEEDLE", 0, 0);
+      assertEquals(0, hit[0]);
+      assertEquals(block.length() + 4, hit[1]);
+      assertNull(log.find("needle", 0, hit[1] + 1));
+      assertArrayEquals(new int[]{1, block.length()}, log.find("MORE", 0, hit[1] + 1));
+      assertArrayEquals(new int[]{0, 7}, log.find("ÅÄÖ", 0, 0), "Non ascii should be matched ignoring case");
+
+      log.reset();
+      assertEquals(0, log.getSegmentCount());
+      assertEquals(0, log.getSize());
+    }
+  }
+
+  @Test
+  public void testOversizedAppendIsSplitIntoSegments() throws IOException {
+    try (ConsoleLog log = new ConsoleLog()) {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 600_000; i++) {
+        text.append("line ").append(i).append(" åäö\n");
+      }
+      // no line breaks at all, the split must still keep the surrogate pairs together
+      StringBuilder unbroken = new StringBuilder();
+      for (int i = 0; i < 1_000_000; i++) {
+        unbroken.append("x\uD83D\uDE00");
+      }
+      log.append(text.toString());
+      log.append(unbroken.toString());
+
+      assertTrue(log.getSegmentCount() > 3, "Expected several segments but was " + log.getSegmentCount());
+      StringBuilder read = new StringBuilder();
+      for (int i = 0; i < log.getSegmentCount(); i++) {
+        String segment = log.readSegment(i);
+        assertTrue(segment.getBytes(StandardCharsets.UTF_8).length <= SEGMENT_SIZE, "Segment " + i + " is too large");
+        read.append(segment);
+      }
+      assertEquals(text.toString() + unbroken, read.toString());
+      assertEquals(read.toString().getBytes(StandardCharsets.UTF_8).length, log.getSize());
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.console.LinePrefixer;
+
+public class LinePrefixerTest {
+
+  @Test
+  public void testOutputSplitAcrossWrites() {
+    LinePrefixer prefixer = new LinePrefixer("[session 2] ");
+    StringBuilder out = new StringBuilder();
+    // cat("a"); cat("b\n"); cat("c\nd"); cat("e\n")
+    for (String chunk : new String[]{"a", "b\n", "c\nd", "e\n"}) {
+      out.append(prefixer.apply(chunk));
+    }
+    assertEquals("[session 2] ab\n[session 2] c\n[session 2] de\n", out.toString());
+  }
+
+  @Test
+  public void testEmptyLinesAndNoPrefix() {
+    LinePrefixer prefixer = new LinePrefixer("> ");
+    assertEquals("> a\n\n> b\n", prefixer.apply("a\n\nb\n"));
+    assertEquals("\n", prefixer.apply("\n"));
+    assertEquals("a\nb", new LinePrefixer("").apply("a\nb"));
+  }
+}
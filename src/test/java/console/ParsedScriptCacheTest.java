@@ -0,0 +1,67 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.eval.Session;
+import org.renjin.eval.SessionBuilder;
+import org.renjin.sexp.ExpressionVector;
+import se.alipsa.ride.console.ParsedScriptCache;
+
+public class ParsedScriptCacheTest {
+
+  private final Session session = new SessionBuilder().build();
+
+  @Test
+  public void testUnchangedScriptIsParsedOnce() {
+    ParsedScriptCache cache = new ParsedScriptCache();
+    ExpressionVector first = cache.parse(session, "x <- 1\ny <- x + 1");
+    ExpressionVector second = cache.parse(session, "x <- 1\ny <- x + 1");
+    assertSame(first, second, "The parsed script should come from the cache");
+    assertEquals(2, first.length());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    assertNotSame(first, cache.parse(session, "x <- 2\ny <- x + 1"), "A changed script should be parsed");
+    assertEquals(2, cache.getMisses());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testSessionsDoNotShareParsedScripts() {
+    ParsedScriptCache cache = new ParsedScriptCache();
+    Session other = new SessionBuilder().build();
+    ExpressionVector first = cache.parse(session, "x <- 1");
+    ExpressionVector second = cache.parse(other, "x <- 1");
+    assertNotSame(first, second, "Each session should get its own parsed copy");
+    assertEquals(2, cache.getMisses());
+    assertSame(first, cache.parse(session, "x <- 1"));
+    assertSame(second, cache.parse(other, "x <- 1"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    ParsedScriptCache cache = new ParsedScriptCache(2, 100);
+    ExpressionVector a = cache.parse(session, "a <- 10001");
+    cache.parse(session, "b <- 10002");
+    assertSame(a, cache.parse(session, "a <- 10001"));
+    cache.parse(session, "c <- 10003");
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+
+    assertSame(a, cache.parse(session, "a <- 10001"), "The script used most recently should be kept");
+    long misses = cache.getMisses();
+    cache.parse(session, "b <- 10002");
+    assertEquals(misses + 1, cache.getMisses(), "The least recently used script should have been evicted");
+  }
+
+  @Test
+  public void testTooLongScriptIsNotCached() {
+    ParsedScriptCache cache = new ParsedScriptCache(2, 5);
+    cache.parse(session, "x <- 12345");
+    cache.parse(session, "x <- 12345");
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+}
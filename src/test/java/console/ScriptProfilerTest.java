@@ -0,0 +1,137 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.console.profiler.CallTreeNode;
+import se.alipsa.ride.console.profiler.Frame;
+import se.alipsa.ride.console.profiler.ScriptProfile;
+import se.alipsa.ride.console.profiler.ScriptProfiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ScriptProfilerTest {
+
+  @Test
+  public void testSamplesAreAttributedToTheExpression() {
+    ScriptProfiler profiler = new ScriptProfiler(5);
+    profiler.start();
+    profiler.profile(1, "x <- 1", () -> 1);
+    profiler.profile(2, "Sys.sleep(0.3)", () -> {
+      sleepInHere(300);
+      return null;
+    });
+    ScriptProfile profile = profiler.stop();
+    assertEquals(profile, profiler.stop(), "Stopping again should give the same profile");
+
+    List<ScriptProfile.Expression> expressions = profile.getExpressions();
+    assertEquals(2, expressions.size());
+    assertEquals("Sys.sleep(0.3)", expressions.get(1).getSource());
+    assertTrue(expressions.get(1).getWallMillis() >= 300, "wall time was " + expressions.get(1).getWallMillis());
+    assertTrue(profile.getSampleCount() > 10, "Expected more samples, got " + profile.getSampleCount());
+
+    boolean found = false;
+    for (ScriptProfile.HotSpot hotSpot : profile.getHotSpots()) {
+      if ("ScriptProfilerTest.sleepInHere".equals(hotSpot.getFrame().getName())) {
+        found = true;
+        assertEquals(Frame.Kind.JAVA, hotSpot.getFrame().getKind());
+        assertTrue(hotSpot.getTotalSamples() > 10);
+      }
+    }
+    assertTrue(found, "The sleeping method should be a hot spot");
+    assertTrue(profile.toFlameGraphHtml("test").contains("#2 Sys.sleep(0.3)"));
+  }
+
+  @Test
+  public void testInterpreterFramesAreLeftOut() {
+    StackTraceElement[] stack = {
+        element("java.net.SocketInputStream", "read"),
+        element("org.postgresql.core.PGStream", "receive"),
+        element("org.renjin.invoke.reflection.FunctionBinding", "invoke"),
+        element("org.renjin.eval.Context", "evaluate"),
+        element("org.renjin.primitives.Combine", "c"),
+        element("org.renjin.primitives.Combine", "c"),
+        element("org.renjin.eval.Context", "evaluate"),
+        element("se.alipsa.ride.console.ConsoleComponent", "lambda$evalProfiled$1"),
+        element("se.alipsa.ride.console.profiler.ScriptProfiler", "profile"),
+        element("se.alipsa.ride.console.ConsoleComponent", "evalProfiled"),
+        element("java.util.concurrent.FutureTask", "run"),
+        element("java.lang.Thread", "run")
+    };
+    ScriptProfiler profiler = new ScriptProfiler(10);
+    profiler.start();
+    Frame expression = new Frame("#1 c(1, 2)", Frame.Kind.EXPRESSION);
+    profiler.addSample(expression, stack, 0);
+    profiler.addSample(expression, new StackTraceElement[]{stack[4], stack[7], stack[8]}, 0);
+    ScriptProfile profile = profiler.stop();
+
+    List<ScriptProfile.HotSpot> hotSpots = profile.getHotSpots();
+    assertEquals(4, hotSpots.size(), "expression, Combine.c, PGStream.receive and SocketInputStream.read");
+    // same self time as the socket read but more in total
+    ScriptProfile.HotSpot combine = hotSpots.get(0);
+    assertEquals("Combine.c", combine.getFrame().getName());
+    assertEquals(Frame.Kind.BUILTIN, combine.getFrame().getKind());
+    assertEquals(1, combine.getSelfSamples());
+    assertEquals(2, combine.getTotalSamples());
+    assertEquals("SocketInputStream.read", hotSpots.get(1).getFrame().getName());
+    assertEquals(1, hotSpots.get(1).getSelfSamples());
+    // no self time, in everything
+    assertEquals(expression, hotSpots.get(2).getFrame());
+    assertEquals(2, hotSpots.get(2).getTotalSamples());
+    assertEquals("PGStream.receive", hotSpots.get(3).getFrame().getName());
+  }
+
+  @Test
+  public void testSamplesAreAttributedToTheRCalls() {
+    StackTraceElement[] stack = {
+        element("org.renjin.primitives.Combine", "c"),
+        element("org.renjin.eval.Context", "evaluate"),
+        element("se.alipsa.ride.console.profiler.TracedClosure", "apply"),
+        element("org.renjin.eval.Context", "evaluate"),
+        element("org.renjin.primitives.Sort", "sort"),
+        element("se.alipsa.ride.console.profiler.TracedClosure", "apply"),
+        element("org.renjin.eval.Context", "evaluate"),
+        element("se.alipsa.ride.console.profiler.ScriptProfiler", "profile"),
+        element("java.lang.Thread", "run")
+    };
+    ScriptProfiler profiler = new ScriptProfiler(10);
+    profiler.start();
+    Frame expression = new Frame("#1 outer()", Frame.Kind.EXPRESSION);
+    Frame outer = new Frame("outer", Frame.Kind.FUNCTION);
+    Frame inner = new Frame("inner", Frame.Kind.FUNCTION);
+    profiler.addSample(expression, Arrays.asList(outer, inner), stack, 0);
+    profiler.addSample(expression, Arrays.asList(outer, inner), new StackTraceElement[]{stack[2], stack[7]}, 0);
+    profiler.addSample(expression, Collections.singletonList(outer), new StackTraceElement[]{stack[5], stack[7]}, 0);
+    ScriptProfile profile = profiler.stop();
+
+    List<ScriptProfile.HotSpot> functions = profile.getFunctionHotSpots();
+    assertEquals(3, functions.size(), "only the expression and the R functions");
+    assertEquals(inner, functions.get(0).getFrame());
+    assertEquals(2, functions.get(0).getSelfSamples());
+    assertEquals(outer, functions.get(1).getFrame());
+    assertEquals(1, functions.get(1).getSelfSamples());
+    assertEquals(3, functions.get(1).getTotalSamples());
+
+    CallTreeNode innerNode = profile.getRoot().getChildren().iterator().next()
+        .getChildren().iterator().next()
+        .getChildren().iterator().next();
+    assertEquals(inner, innerNode.getFrame());
+    assertEquals(1, innerNode.getChildren().size(), "the jvm frames below the innermost call only");
+    assertEquals("Combine.c", innerNode.getChildren().iterator().next().getFrame().getName());
+  }
+
+  private static StackTraceElement element(String className, String method) {
+    return new StackTraceElement(className, method, null, -1);
+  }
+
+  private static void sleepInHere(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.console.ScriptQueue;
+import se.alipsa.ride.metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ScriptQueueTest {
+
+  @Test
+  public void testPriorityAndCoalescing() throws Exception {
+    ScriptQueue queue = new ScriptQueue();
+    List<String> executed = new CopyOnWriteArrayList<>();
+    CountDownLatch blocker = new CountDownLatch(1);
+
+    queue.submit(new FutureTask<>(() -> {
+      blocker.await();
+      return null;
+    }), "blocker", ScriptQueue.Priority.USER);
+
+    RunnableFuture<?> env1 = queue.submitCoalesced(task(executed, "env"), "env", ScriptQueue.Priority.BACKGROUND);
+    queue.submit(task(executed, "script1"), "script1", ScriptQueue.Priority.USER);
+    RunnableFuture<?> env2 = queue.submitCoalesced(task(executed, "env"), "env", ScriptQueue.Priority.BACKGROUND);
+    FutureTask<Object> cancelled = task(executed, "cancelled");
+    queue.submit(cancelled, "cancelled", ScriptQueue.Priority.USER);
+    FutureTask<Object> script2 = queue.submit(task(executed, "script2"), "script2", ScriptQueue.Priority.USER);
+
+    assertSame(env1, env2, "A duplicate request should return the task already waiting");
+    cancelled.cancel(false);
+    blocker.countDown();
+    env1.get(5, TimeUnit.SECONDS);
+    assertTrue(script2.isDone());
+    assertEquals(Arrays.asList("script1", "script2", "env"), executed);
+    queue.shutdown();
+  }
+
+  @Test
+  public void testInterruptRunning() throws Exception {
+    ScriptQueue queue = new ScriptQueue();
+    CountDownLatch started = new CountDownLatch(1);
+    List<Boolean> requested = new CopyOnWriteArrayList<>();
+    FutureTask<Object> sleeper = queue.submit(new FutureTask<>(() -> {
+      started.countDown();
+      try {
+        Thread.sleep(10000);
+      } catch (InterruptedException e) {
+        requested.add(queue.isInterruptRequested());
+      }
+      return null;
+    }), "sleeper", ScriptQueue.Priority.USER);
+    FutureTask<Object> next = queue.submit(new FutureTask<>(() -> {
+      requested.add(Thread.currentThread().isInterrupted() || queue.isInterruptRequested());
+      return null;
+    }), "next", ScriptQueue.Priority.USER);
+
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertNotNull(queue.interruptRunning());
+    sleeper.get(5, TimeUnit.SECONDS);
+    next.get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList(true, false), requested, "The interrupt should not carry over to the next task");
+    // the task is done before the queue has cleared it as the running one
+    for (int i = 0; i < 50 && queue.getRunningThread() != null; i++) {
+      Thread.sleep(20);
+    }
+    assertNull(queue.interruptRunning());
+    queue.shutdown();
+  }
+
+  @Test
+  public void testRejectedTaskIsNotCountedAsWaiting() {
+    ScriptQueue queue = new ScriptQueue();
+    queue.shutdown();
+    Number waiting = Metrics.snapshot().get("engine.queue.waiting");
+    List<String> executed = new CopyOnWriteArrayList<>();
+    assertThrows(RejectedExecutionException.class,
+        () -> queue.submit(task(executed, "script"), "script", ScriptQueue.Priority.USER));
+    assertThrows(RejectedExecutionException.class,
+        () -> queue.submitCoalesced(task(executed, "env"), "env", ScriptQueue.Priority.BACKGROUND));
+    assertThrows(RejectedExecutionException.class,
+        () -> queue.submitCoalesced(task(executed, "env"), "env", ScriptQueue.Priority.BACKGROUND),
+        "A rejected task should not be returned as the one already waiting");
+    assertEquals(waiting, Metrics.snapshot().get("engine.queue.waiting"));
+  }
+
+  private FutureTask<Object> task(List<String> executed, String name) {
+    return new FutureTask<>(() -> executed.add(name), null);
+  }
+}
@@ -0,0 +1,68 @@
+package console;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.renjin.eval.Session;
+import org.renjin.script.RenjinScriptEngine;
+import org.renjin.script.RenjinScriptEngineFactory;
+import org.renjin.sexp.Vector;
+import se.alipsa.ride.console.workspace.WorkspaceSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import javax.script.ScriptException;
+
+public class WorkspaceSnapshotTest {
+
+  @TempDir
+  File dir;
+
+  @Test
+  public void testRoundTrip() throws ScriptException, IOException {
+    assertRoundTrip(false);
+  }
+
+  @Test
+  public void testCompressedRoundTrip() throws ScriptException, IOException {
+    assertRoundTrip(true);
+  }
+
+  private void assertRoundTrip(boolean compress) throws ScriptException, IOException {
+    RenjinScriptEngine engine = new RenjinScriptEngineFactory().getScriptEngine();
+    // larger than a chunk so that the vector is split over several
+    engine.eval("d <- as.numeric(1:1000000) / 3");
+    engine.eval("i <- c(1L, NA, 3L)");
+    engine.eval("s <- c('a', NA, 'åäö')");
+    engine.eval("l <- c(TRUE, NA, FALSE)");
+    engine.eval("df <- data.frame(a = 1:3, b = c('x', 'y', 'z'), stringsAsFactors = FALSE)");
+    engine.eval("f <- factor(c('low', 'high', 'low'))");
+    engine.eval("m <- matrix(1:6, nrow = 2)");
+    engine.eval("fn <- function(x) x + 1");
+    Session session = engine.getSession();
+    File file = new File(dir, "test" + WorkspaceSnapshot.FILE_EXTENSION);
+    WorkspaceSnapshot.Summary saved = WorkspaceSnapshot.save(session.getTopLevelContext(),
+        session.getGlobalEnvironment(), file, compress);
+    assertEquals(8, saved.getVariables());
+    assertTrue(saved.getSkipped().isEmpty(), "Nothing should have been skipped: " + saved.getSkipped());
+
+    RenjinScriptEngine restored = new RenjinScriptEngineFactory().getScriptEngine();
+    Session restoredSession = restored.getSession();
+    WorkspaceSnapshot.Summary loaded = WorkspaceSnapshot.restore(restoredSession.getTopLevelContext(),
+        restoredSession.getGlobalEnvironment(), file);
+    assertEquals(8, loaded.getVariables());
+
+    String sample = "c(length(d), sum(d), d[777777])";
+    assertEquals(deparse(engine, sample), deparse(restored, sample));
+    for (String name : new String[]{"i", "s", "l", "df", "f", "m"}) {
+      assertEquals(deparse(engine, name), deparse(restored, name), name + " should be the same after the restore");
+    }
+    assertEquals(3.0, ((Vector) restored.eval("fn(2)")).getElementAsDouble(0));
+  }
+
+  private String deparse(RenjinScriptEngine engine, String expression) throws ScriptException {
+    return engine.eval("paste(deparse(" + expression + "), collapse = '')").toString();
+  }
+}
@@ -0,0 +1,119 @@
+package environment;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.environment.connections.ConnectionPool;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+  @Test
+  public void testConnectionIsReused() throws SQLException {
+    FakeDriver driver = new FakeDriver();
+    ConnectionPool pool = new ConnectionPool("test", driver.driver, "jdbc:fake", new Properties(), 0, 2, 600, null);
+    try (Connection con = pool.getConnection()) {
+      assertFalse(con.isClosed());
+    }
+    try (Connection con = pool.getConnection()) {
+      assertFalse(con.isClosed());
+    }
+    assertEquals(1, driver.connections.size(), "Number of physical connections");
+    assertEquals(1, pool.getIdleCount());
+    assertFalse(driver.connections.get(0).closed);
+  }
+
+  @Test
+  public void testConcurrentLeasesUseSeparateConnections() throws SQLException {
+    FakeDriver driver = new FakeDriver();
+    ConnectionPool pool = new ConnectionPool("test", driver.driver, "jdbc:fake", new Properties(), 0, 2, 600, null);
+    Connection con1 = pool.getConnection();
+    Connection con2 = pool.getConnection();
+    assertEquals(2, driver.connections.size());
+    assertEquals(2, pool.getOpenCount());
+    con1.close();
+    con2.close();
+    assertEquals(2, pool.getIdleCount());
+  }
+
+  @Test
+  public void testClosedLeaseCannotBeUsed() throws SQLException {
+    FakeDriver driver = new FakeDriver();
+    ConnectionPool pool = new ConnectionPool("test", driver.driver, "jdbc:fake", new Properties(), 0, 2, 600, null);
+    Connection con = pool.getConnection();
+    con.close();
+    assertTrue(con.isClosed());
+    assertThrows(SQLException.class, con::getAutoCommit);
+    // closing twice must not give the connection back twice
+    con.close();
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void testAutoCommitIsResetWhenGivenBack() throws SQLException {
+    FakeDriver driver = new FakeDriver();
+    ConnectionPool pool = new ConnectionPool("test", driver.driver, "jdbc:fake", new Properties(), 0, 2, 600, null);
+    try (Connection con = pool.getConnection()) {
+      con.setAutoCommit(false);
+    }
+    FakeConnection physical = driver.connections.get(0);
+    assertTrue(physical.autoCommit);
+    assertEquals(1, physical.rollbacks);
+  }
+
+  @Test
+  public void testBrokenConnectionIsDiscarded() throws SQLException {
+    FakeDriver driver = new FakeDriver();
+    ConnectionPool pool = new ConnectionPool("test", driver.driver, "jdbc:fake", new Properties(), 0, 2, 600, null);
+    Connection con = pool.getConnection();
+    driver.connections.get(0).closed = true;
+    con.close();
+    assertEquals(0, pool.getIdleCount());
+    assertEquals(0, pool.getOpenCount());
+    try (Connection con2 = pool.getConnection()) {
+      assertFalse(con2.isClosed());
+    }
+    assertEquals(2, driver.connections.size());
+  }
+
+  private static class FakeConnection {
+    boolean closed;
+    boolean autoCommit = true;
+    int rollbacks;
+
+    Connection proxy() {
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "close": closed = true; return null;
+              case "isClosed": return closed;
+              case "isValid": return !closed;
+              case "getAutoCommit": return autoCommit;
+              case "setAutoCommit": autoCommit = (Boolean) args[0]; return null;
+              case "rollback": rollbacks++; return null;
+              default: return null;
+            }
+          });
+    }
+  }
+
+  private static class FakeDriver {
+    final List<FakeConnection> connections = new ArrayList<>();
+    final Driver driver = (Driver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Driver.class},
+        (proxy, method, args) -> {
+          if ("connect".equals(method.getName())) {
+            FakeConnection con = new FakeConnection();
+            connections.add(con);
+            return con.proxy();
+          }
+          return null;
+        });
+  }
+}
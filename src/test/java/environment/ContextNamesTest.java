@@ -0,0 +1,81 @@
+package environment;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.environment.ContextNames;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContextNamesTest {
+
+  private int listed;
+
+  @Test
+  public void testExportsAreOnlyListedWhenAttached() throws Exception {
+    ContextNames contextNames = new ContextNames();
+    Object base = new Object();
+    Object stats = new Object();
+    Map<String, Object> packages = new LinkedHashMap<>();
+    packages.put("base", base);
+    packages.put("stats", stats);
+
+    ContextNames.Change change = contextNames.refresh(packages, Collections.emptyMap(), this::list);
+    assertEquals(2, listed);
+    assertEquals(new HashSet<>(Arrays.asList("baseFun", "statsFun", "sum")), change.getAddedFunctions());
+    assertEquals(new HashSet<>(Arrays.asList("baseObj", "statsObj")), change.getAddedObjects());
+
+    change = contextNames.refresh(packages, Collections.emptyMap(), this::list);
+    assertEquals(2, listed, "Nothing should be listed when the same packages are attached");
+    assertTrue(change.isEmpty());
+
+    // detach stats, sum is still exported by base
+    packages.remove("stats");
+    change = contextNames.refresh(packages, Collections.emptyMap(), this::list);
+    assertEquals(Collections.singleton("statsFun"), change.getRemovedFunctions());
+    assertEquals(Collections.singleton("statsObj"), change.getRemovedObjects());
+    assertTrue(change.getAddedFunctions().isEmpty());
+
+    // attaching it again gives a new environment
+    packages.put("stats", new Object());
+    change = contextNames.refresh(packages, Collections.emptyMap(), this::list);
+    assertEquals(3, listed);
+    assertEquals(Collections.singleton("statsFun"), change.getAddedFunctions());
+  }
+
+  @Test
+  public void testGlobalEnvironmentChanges() throws Exception {
+    ContextNames contextNames = new ContextNames();
+    Map<String, Object> packages = Collections.singletonMap("base", new Object());
+    Map<String, Boolean> globals = new HashMap<>();
+    globals.put("x", false);
+    globals.put("f", true);
+    globals.put("sum", true);
+    ContextNames.Change change = contextNames.refresh(packages, globals, this::list);
+    assertEquals(new HashSet<>(Arrays.asList("baseFun", "sum", "f")), change.getAddedFunctions());
+    assertEquals(new HashSet<>(Arrays.asList("baseObj", "x")), change.getAddedObjects());
+
+    globals.remove("sum");
+    globals.put("x", true);
+    globals.put("y", false);
+    change = contextNames.refresh(packages, globals, this::list);
+    assertTrue(change.getRemovedFunctions().isEmpty(), "sum is still exported by base");
+    assertEquals(Collections.singleton("x"), change.getAddedFunctions());
+    assertEquals(Collections.singleton("x"), change.getRemovedObjects());
+    assertEquals(Collections.singleton("y"), change.getAddedObjects());
+  }
+
+  private ContextNames.Exports list(String packageName) {
+    listed++;
+    if ("base".equals(packageName)) {
+      return new ContextNames.Exports(Arrays.asList("baseFun", "sum"), Collections.singletonList("baseObj"));
+    }
+    return new ContextNames.Exports(Arrays.asList(packageName + "Fun", "sum"),
+        Collections.singletonList(packageName + "Obj"));
+  }
+}
@@ -0,0 +1,124 @@
+package environment;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.environment.connections.ConnectionInfo;
+import se.alipsa.ride.environment.connections.MetaDataLoader;
+import se.alipsa.ride.environment.connections.MetaDataNode;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetaDataLoaderTest {
+
+  private static final String URL = "jdbc:h2:mem:metadatatest;DB_CLOSE_DELAY=-1";
+
+  private static Connection keepAlive;
+
+  @BeforeAll
+  public static void createTables() throws SQLException {
+    keepAlive = DriverManager.getConnection(URL, "sa", "");
+    try (Statement stm = keepAlive.createStatement()) {
+      stm.execute("create schema \"My Schema\"");
+      stm.execute("create table \"My Schema\".\"Mixed Case\" (id int, \"Some Name\" varchar(20))");
+      stm.execute("insert into \"My Schema\".\"Mixed Case\" values (1, 'one')");
+      stm.execute("create table PUBLIC.PLAIN (id int)");
+    }
+  }
+
+  @AfterAll
+  public static void dropDatabase() throws SQLException {
+    try (Statement stm = keepAlive.createStatement()) {
+      stm.execute("drop all objects");
+    }
+    keepAlive.close();
+  }
+
+  @Test
+  public void testTreeIsLoadedLevelByLevel() throws SQLException {
+    AtomicInteger connects = new AtomicInteger();
+    MetaDataLoader loader = loader(connects);
+    MetaDataNode root = MetaDataNode.connection("h2");
+
+    List<MetaDataNode> catalogs = loader.getChildren(root);
+    assertEquals(1, catalogs.size());
+    MetaDataNode catalog = catalogs.get(0);
+    assertEquals(MetaDataNode.Type.CATALOG, catalog.getType());
+    assertEquals(1, connects.get(), "Only the catalogs should have been read");
+
+    MetaDataNode schema = find(loader.getChildren(catalog), "My Schema");
+    assertEquals(MetaDataNode.Type.SCHEMA, schema.getType());
+
+    List<MetaDataNode> tables = loader.getChildren(schema);
+    assertEquals(1, tables.size());
+    MetaDataNode table = tables.get(0);
+    assertEquals(MetaDataNode.Type.TABLE, table.getType());
+    assertEquals("Mixed Case", table.getName());
+
+    List<MetaDataNode> columns = loader.getChildren(table);
+    assertEquals(2, columns.size());
+    assertEquals("ID", columns.get(0).getName());
+    assertEquals("Some Name", columns.get(1).getName());
+    assertTrue(columns.get(1).isLeaf());
+    assertEquals(4, connects.get());
+  }
+
+  @Test
+  public void testChildrenAreCachedUntilRefreshed() throws SQLException {
+    AtomicInteger connects = new AtomicInteger();
+    MetaDataLoader loader = loader(connects);
+    MetaDataNode root = MetaDataNode.connection("h2");
+    MetaDataNode catalog = loader.getChildren(root).get(0);
+    MetaDataNode schema = find(loader.getChildren(catalog), "PUBLIC");
+    List<MetaDataNode> tables = loader.getChildren(schema);
+    assertEquals(3, connects.get());
+
+    assertSame(tables, loader.getChildren(schema));
+    assertEquals(3, connects.get(), "The tables should have come from the cache");
+
+    loader.refresh(catalog);
+    assertNotSame(tables, loader.getChildren(schema));
+    assertEquals(4, connects.get(), "Refreshing a node should drop everything below it");
+    loader.getChildren(root);
+    assertEquals(4, connects.get(), "Refreshing a node should not drop its parent");
+  }
+
+  @Test
+  public void testQualifiedTableNameCanBeSelected() throws SQLException {
+    MetaDataLoader loader = loader(new AtomicInteger());
+    MetaDataNode catalog = loader.getChildren(MetaDataNode.connection("h2")).get(0);
+    MetaDataNode schema = find(loader.getChildren(catalog), "My Schema");
+    MetaDataNode table = loader.getChildren(schema).get(0);
+
+    String tableName = table.getQualifiedTableName();
+    assertEquals("\"" + catalog.getName() + "\".\"My Schema\".\"Mixed Case\"", tableName);
+    assertEquals(tableName, loader.getChildren(table).get(0).getQualifiedTableName());
+    assertNull(schema.getQualifiedTableName());
+    try (Statement stm = keepAlive.createStatement();
+         ResultSet rs = stm.executeQuery("SELECT * from " + tableName)) {
+      assertTrue(rs.next());
+      assertEquals("one", rs.getString("Some Name"));
+    }
+  }
+
+  private static MetaDataLoader loader(AtomicInteger connects) {
+    ConnectionInfo info = new ConnectionInfo("h2", "org.h2.Driver", URL, "sa", "");
+    return new MetaDataLoader(info, () -> {
+      connects.incrementAndGet();
+      return DriverManager.getConnection(URL, "sa", "");
+    });
+  }
+
+  private static MetaDataNode find(List<MetaDataNode> nodes, String name) {
+    return nodes.stream().filter(n -> name.equals(n.getName())).findFirst()
+        .orElseThrow(() -> new AssertionError(name + " not found in " + nodes));
+  }
+}
@@ -0,0 +1,86 @@
+package environment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.script.RenjinScriptEngine;
+import org.renjin.script.RenjinScriptEngineFactory;
+import org.renjin.sexp.ExternalPtr;
+import org.renjin.sexp.SEXP;
+import se.alipsa.ride.environment.VariableSummary;
+
+import java.util.AbstractList;
+import java.util.List;
+import javax.script.ScriptException;
+
+public class VariableSummaryTest {
+
+  private final RenjinScriptEngine engine = new RenjinScriptEngineFactory().getScriptEngine();
+
+  @Test
+  public void testLargeVectorIsNotFullyRead() throws ScriptException {
+    VariableSummary summary = summarize("x", "as.numeric(1:10000000)");
+    assertEquals("num", summary.getType());
+    assertEquals("[1:10000000]", summary.getDimensions());
+    assertEquals(80000000L, summary.getSize());
+    assertEquals("1, 2, 3, 4, 5, 6, 7, 8, 9, 10, ...", summary.getPreview());
+    assertTrue(summary.getDescription().startsWith("num [1:10000000] 76.3 MB"), summary.getDescription());
+  }
+
+  @Test
+  public void testDataFrame() throws ScriptException {
+    VariableSummary summary = summarize("df", "data.frame(a = 1:3, b = c('x', 'y', 'z'), stringsAsFactors = FALSE)");
+    assertEquals("data.frame", summary.getType());
+    assertEquals("[3 obs. of 2 variables]", summary.getDimensions());
+    assertEquals("$a int, $b chr", summary.getPreview());
+  }
+
+  @Test
+  public void testMatrixFactorAndNa() throws ScriptException {
+    assertEquals("[2 x 3]", summarize("m", "matrix(1:6, nrow = 2)").getDimensions());
+    assertEquals("\"a\", NA, \"c\"", summarize("s", "c('a', NA, 'c')").getPreview());
+    assertEquals("low, high, low", summarize("f", "factor(c('low', 'high', 'low'))").getPreview());
+    assertEquals("TRUE, FALSE", summarize("l", "c(TRUE, FALSE)").getPreview());
+  }
+
+  @Test
+  public void testLongStringsAreTruncated() throws ScriptException {
+    VariableSummary summary = summarize("s", "rep(paste(rep('a', 1000), collapse = ''), 100)");
+    assertTrue(summary.getPreview().length() <= 203, summary.getPreview());
+  }
+
+  @Test
+  public void testLargeJavaObjectIsNotConvertedToString() {
+    List<Integer> large = new AbstractList<Integer>() {
+      @Override
+      public Integer get(int index) {
+        return index;
+      }
+
+      @Override
+      public int size() {
+        return 10_000_000;
+      }
+
+      @Override
+      public String toString() {
+        throw new AssertionError("toString should not be called on the whole object");
+      }
+    };
+    VariableSummary summary = VariableSummary.summarize("x", new ExternalPtr<>(large));
+    assertEquals(large.getClass().getName() + " [10000000]", summary.getPreview());
+    assertEquals(-1, summary.getSize());
+  }
+
+  @Test
+  public void testFunctionShowsItsFormalsOnly() throws ScriptException {
+    VariableSummary summary = summarize("f", "function(x, y = 'a', z = x, ...) { x + paste(rep(y, 1000)) }");
+    assertEquals("closure", summary.getType());
+    assertEquals("function (x, y = \"a\", z = x, ...)", summary.getPreview());
+  }
+
+  private VariableSummary summarize(String name, String script) throws ScriptException {
+    return VariableSummary.summarize(name, (SEXP) engine.eval(script));
+  }
+}
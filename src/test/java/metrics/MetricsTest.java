@@ -0,0 +1,72 @@
+package metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.metrics.Counter;
+import se.alipsa.ride.metrics.LatencyTimer;
+import se.alipsa.ride.metrics.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class MetricsTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyTimer timer = Metrics.timer("test.percentiles");
+    for (int i = 1; i <= 1000; i++) {
+      timer.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+    assertEquals(1000, timer.getCount());
+    assertEquals(500.5, timer.getMeanNanos() / 1000, 0.001);
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), timer.getMaxNanos());
+    assertWithin(500_000, timer.getPercentileNanos(50));
+    assertWithin(950_000, timer.getPercentileNanos(95));
+    assertWithin(990_000, timer.getPercentileNanos(99));
+    assertEquals(timer.getMaxNanos(), timer.getPercentileNanos(100));
+  }
+
+  @Test
+  public void testSnapshotAndReset() {
+    Counter counter = Metrics.counter("test.counter");
+    counter.add(3);
+    counter.increment();
+    assertSame(counter, Metrics.counter("test.counter"), "The same name should give the same counter");
+    Metrics.timer("test.timer").record(TimeUnit.MILLISECONDS.toNanos(2));
+    Metrics.gauge("test.gauge", () -> 42);
+
+    Map<String, Number> snapshot = Metrics.snapshot();
+    assertEquals(4L, snapshot.get("test.counter"));
+    assertEquals(42L, snapshot.get("test.gauge"));
+    assertEquals(1L, snapshot.get("test.timer.count"));
+    assertEquals(2.0, snapshot.get("test.timer.maxMs"));
+    assertTrue(snapshot.containsKey("jvm.heap.usedMb"));
+
+    Metrics.reset();
+    snapshot = Metrics.snapshot();
+    assertEquals(0L, snapshot.get("test.counter"));
+    assertEquals(0L, snapshot.get("test.timer.count"));
+    assertEquals(42L, snapshot.get("test.gauge"), "A gauge is not affected by reset");
+  }
+
+  @Test
+  public void testMBean() throws JMException {
+    Metrics.registerMBean();
+    Metrics.counter("test.jmx").add(7);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+    assertEquals(7L, server.getAttribute(name, "test.jmx"));
+    server.invoke(name, "reset", null, null);
+    assertEquals(0L, server.getAttribute(name, "test.jmx"));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    // the buckets are an eighth of a power of two wide
+    assertTrue(actual >= expected && actual <= expected * 1.125, "Expected about " + expected + " but was " + actual);
+  }
+}
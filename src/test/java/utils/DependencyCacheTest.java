@@ -0,0 +1,114 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.ride.utils.maven.DependencyCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class DependencyCacheTest {
+
+  private static final String CENTRAL = "repository central=https://repo1.maven.org/maven2/";
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  public void testUnchangedModelIsNotResolvedAgain() throws Exception {
+    File pomFile = new File(tempDir, "pom.xml");
+    List<String> model = Arrays.asList("org.a:a:jar:1.0", "org.b:b:jar:2.0", CENTRAL);
+
+    FakeResolver resolver = new FakeResolver("org.a:a:jar:1.0", "org.b:b:jar:2.0");
+    Set<File> files = newCache().resolve(pomFile, model, resolver);
+    assertEquals(4, files.size());
+    assertEquals(1, resolver.calls);
+
+    Set<File> cached = newCache().resolve(pomFile, model, resolver);
+    assertEquals(files, cached);
+    assertEquals(new ArrayList<>(files), new ArrayList<>(cached), "The classpath order should be kept");
+    assertEquals(1, resolver.calls, "Nothing should be resolved when the model is unchanged");
+  }
+
+  @Test
+  public void testChangedModelIsResolved() throws Exception {
+    File pomFile = new File(tempDir, "pom.xml");
+    FakeResolver resolver = new FakeResolver("org.a:a:jar:1.0", "org.b:b:jar:2.0");
+    newCache().resolve(pomFile, Arrays.asList("org.a:a:jar:1.0", "org.b:b:jar:2.0", CENTRAL), resolver);
+
+    resolver = new FakeResolver("org.a:a:jar:1.0", "org.b:b:jar:2.1", "org.c:c:jar:1.0");
+    Set<File> files = newCache().resolve(pomFile,
+        Arrays.asList("org.a:a:jar:1.0", "org.b:b:jar:2.1", "org.c:c:jar:1.0", CENTRAL), resolver);
+    assertEquals(1, resolver.calls);
+    assertEquals(6, files.size());
+
+    resolver.calls = 0;
+    newCache().resolve(pomFile, Arrays.asList("org.a:a:jar:1.0", "org.b:b:jar:2.1", "org.c:c:jar:1.0",
+        CENTRAL, "repository other=https://repo.example.com/"), resolver);
+    assertEquals(1, resolver.calls, "A new repository should resolve the dependencies again");
+  }
+
+  @Test
+  public void testSnapshotsAndMissingFilesAreResolved() throws Exception {
+    File pomFile = new File(tempDir, "pom.xml");
+    List<String> model = Arrays.asList("org.a:a:jar:1.0", "org.b:b:jar:2.0", CENTRAL);
+    FakeResolver resolver = new FakeResolver("org.a:a:jar:1.0", "org.b:b:jar:2.0");
+    newCache().resolve(pomFile, model, resolver);
+
+    assertTrue(resolver.fileFor("org.a:a:jar:1.0", "").delete());
+    newCache().resolve(pomFile, model, resolver);
+    assertEquals(2, resolver.calls, "A missing jar should resolve the dependencies again");
+
+    List<String> snapshotModel = Arrays.asList("org.a:a:jar:1.0", "org.c:c:jar:1.0-SNAPSHOT", CENTRAL);
+    resolver = new FakeResolver("org.a:a:jar:1.0", "org.c:c:jar:1.0-SNAPSHOT");
+    newCache().resolve(pomFile, snapshotModel, resolver);
+    newCache().resolve(pomFile, snapshotModel, resolver);
+    assertEquals(2, resolver.calls, "Snapshots should always be resolved");
+  }
+
+  private DependencyCache newCache() {
+    return new DependencyCache(new File(tempDir, "cache"));
+  }
+
+  /**
+   * "Resolves" each dependency to a jar for itself and one for a transitive dependency
+   */
+  private class FakeResolver implements DependencyCache.Resolver {
+
+    private final List<String> dependencies;
+    int calls;
+
+    FakeResolver(String... dependencies) {
+      this.dependencies = Arrays.asList(dependencies);
+    }
+
+    @Override
+    public List<File> resolve() {
+      calls++;
+      List<File> files = new ArrayList<>();
+      try {
+        for (String coordinates : dependencies) {
+          File jar = fileFor(coordinates, "");
+          File transitive = fileFor(coordinates, "-transitive");
+          jar.createNewFile();
+          transitive.createNewFile();
+          files.add(jar);
+          files.add(transitive);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return files;
+    }
+
+    File fileFor(String coordinates, String suffix) {
+      return new File(tempDir, coordinates.replace(':', '_') + suffix + ".jar");
+    }
+  }
+}
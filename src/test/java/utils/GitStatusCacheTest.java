@@ -0,0 +1,132 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.ride.Constants.GitStatus.GIT_ADDED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_MODIFIED;
+import static se.alipsa.ride.Constants.GitStatus.GIT_NONE;
+import static se.alipsa.ride.Constants.GitStatus.GIT_UNTRACKED;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.ride.utils.git.GitStatusCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class GitStatusCacheTest {
+
+  @TempDir
+  File repoDir;
+
+  private Git git;
+  private GitStatusCache cache;
+
+  @BeforeEach
+  public void createRepo() throws GitAPIException, IOException {
+    git = Git.init().setDirectory(repoDir).call();
+    write("a.txt", "a");
+    write("b.txt", "b");
+    git.add().addFilepattern(".").call();
+    git.commit().setMessage("initial").setAuthor("test", "test@example.com")
+        .setCommitter("test", "test@example.com").call();
+    cache = new GitStatusCache(git);
+  }
+
+  @AfterEach
+  public void closeRepo() {
+    git.close();
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    write("a.txt", "changed");
+    write("new.txt", "new");
+    reload();
+    assertEquals(GIT_MODIFIED, cache.getStatus("a.txt"));
+    assertEquals(GIT_UNTRACKED, cache.getStatus("new.txt"));
+    assertEquals(GIT_NONE, cache.getStatus("b.txt"), "A clean file should not be in the cache");
+  }
+
+  @Test
+  public void testUpdateMergesTheGivenPaths() throws Exception {
+    write("a.txt", "changed");
+    write("new.txt", "new");
+    reload();
+
+    write("a.txt", "a");
+    write("b.txt", "changed");
+    write("dir/c.txt", "c");
+    git.add().addFilepattern("dir/c.txt").call();
+    Collection<String> updated = update(Arrays.asList("a.txt", "b.txt", "dir"));
+
+    assertEquals(Arrays.asList("a.txt", "b.txt", "dir"), updated);
+    assertEquals(GIT_NONE, cache.getStatus("a.txt"), "A file that is clean again should be removed");
+    assertEquals(GIT_MODIFIED, cache.getStatus("b.txt"));
+    assertEquals(GIT_ADDED, cache.getStatus("dir/c.txt"), "A directory should include the files below it");
+    assertEquals(GIT_UNTRACKED, cache.getStatus("new.txt"), "Paths not updated should be kept");
+  }
+
+  @Test
+  public void testUpdateOnlyLooksAtTheGivenPaths() throws Exception {
+    reload();
+    write("a.txt", "changed");
+    write("b.txt", "changed");
+    write("dir/c.txt", "c");
+    write("dir/d.txt", "d");
+    write("dirty/e.txt", "e");
+    update(Arrays.asList("a.txt", "dir/c.txt"));
+
+    assertEquals(GIT_MODIFIED, cache.getStatus("a.txt"));
+    assertEquals(GIT_UNTRACKED, cache.getStatus("dir/c.txt"));
+    assertEquals(GIT_NONE, cache.getStatus("b.txt"));
+    assertEquals(GIT_NONE, cache.getStatus("dir/d.txt"));
+    assertEquals(GIT_NONE, cache.getStatus("dirty/e.txt"),
+        "A path sharing a prefix with an updated path should not be included");
+
+    update(Arrays.asList("dir"));
+    assertEquals(GIT_UNTRACKED, cache.getStatus("dir/d.txt"));
+    assertEquals(GIT_NONE, cache.getStatus("dirty/e.txt"));
+  }
+
+  private void reload() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicReference<GitAPIException> error = new AtomicReference<>();
+    cache.reload(done::countDown, e -> {
+      error.set(e);
+      done.countDown();
+    });
+    assertTrue(done.await(30, TimeUnit.SECONDS), "Timed out waiting for the status to load");
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
+
+  private Collection<String> update(List<String> paths) throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicReference<Collection<String>> updated = new AtomicReference<>();
+    cache.update(paths, p -> {
+      updated.set(p);
+      done.countDown();
+    });
+    assertTrue(done.await(30, TimeUnit.SECONDS), "Timed out waiting for the status to update");
+    return updated.get();
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = new File(repoDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,41 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.ride.utils.SqlParser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqlParserTest {
+
+  @Test
+  public void testSplit() {
+    StringBuilder warnings = new StringBuilder();
+    String[] statements = SqlParser.split("select * from foo; select id, name from bar where id > 2;", warnings);
+    assertEquals(2, statements.length);
+    assertEquals(0, warnings.length());
+  }
+
+  @Test
+  public void testSelectsOnly() {
+    assertTrue(SqlParser.isSelectsOnly(new String[]{"select * from foo", "select id from bar where id > 2"}));
+    assertFalse(SqlParser.isSelectsOnly(new String[]{"select * from foo", "insert into bar (id) values (1)"}));
+    assertFalse(SqlParser.isSelectsOnly(new String[]{"create table baz (id int)"}));
+  }
+
+  @Test
+  public void testSelectIntoIsNotSelectOnly() {
+    assertFalse(SqlParser.isSelectsOnly(new String[]{"select * from foo", "select id, name into baz from bar"}));
+    assertFalse(SqlParser.isSelectsOnly(new String[]{"select id into baz from foo union select id from bar"}));
+    assertFalse(SqlParser.isSelectsOnly(new String[]{
+        "with x as (select id into baz from foo) select * from x"}));
+    assertTrue(SqlParser.isSelectsOnly(new String[]{
+        "with x as (select id from foo) select * from x union all select id from bar"}));
+  }
+
+  @Test
+  public void testSelectForUpdateIsNotSelectOnly() {
+    assertFalse(SqlParser.isSelectsOnly(new String[]{"select * from foo", "select * from bar where id = 1 for update"}));
+  }
+}
@@ -0,0 +1,60 @@
+package view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.script.RenjinScriptEngine;
+import org.renjin.script.RenjinScriptEngineFactory;
+import org.renjin.sexp.ListVector;
+import se.alipsa.ride.inout.viewer.ListVectorTableModel;
+
+import javax.script.ScriptException;
+
+public class ListVectorTableModelTest {
+
+  private final RenjinScriptEngine engine = new RenjinScriptEngineFactory().getScriptEngine();
+
+  @Test
+  public void testCellsAreFormattedByColumnType() throws ScriptException {
+    ListVectorTableModel model = model("data.frame("
+        + "f = factor(c('low', NA, 'high')), "
+        + "d = as.Date(c('2021-03-01', NA, '2021-12-31')), "
+        + "n = c(2, NA, 3), "
+        + "i = c(1L, NA, 3L), "
+        + "l = c(TRUE, NA, FALSE), "
+        + "s = c('a', NA, 'c'), "
+        + "stringsAsFactors = FALSE)");
+    assertEquals(3, model.getRowCount());
+    assertEquals("f", model.getHeaderList().get(0));
+    assertRow(model, 0, "low", "2021-03-01", "2", "1", "TRUE", "a");
+    assertRow(model, 1, "NA", "NA", "NA", "NA", "NA", "NA");
+    assertRow(model, 2, "high", "2021-12-31", "3", "3", "FALSE", "c");
+  }
+
+  @Test
+  public void testPosixctIsShownInItsTimeZone() throws ScriptException {
+    ListVectorTableModel model = model("data.frame("
+        + "utc = as.POSIXct(c('2021-03-01 12:30:00', NA), tz = 'UTC'), "
+        + "ny = as.POSIXct(c('2021-03-01 12:30:00', NA), tz = 'America/New_York'))");
+    assertRow(model, 0, "2021-03-01 12:30:00", "2021-03-01 12:30:00");
+    assertRow(model, 1, "NA", "NA");
+  }
+
+  @Test
+  public void testShortColumnsArePaddedWithNa() throws ScriptException {
+    ListVectorTableModel model = model("list(a = 1:3, b = c('x'))");
+    assertEquals(3, model.getRowCount());
+    assertRow(model, 2, "3", "NA");
+  }
+
+  private ListVectorTableModel model(String expression) throws ScriptException {
+    return new ListVectorTableModel((ListVector) engine.eval(expression));
+  }
+
+  private static void assertRow(ListVectorTableModel model, int row, String... expected) {
+    for (int column = 0; column < expected.length; column++) {
+      assertEquals(expected[column], model.format(model.getValue(row, column)),
+          "row " + row + ", column " + model.getHeaderList().get(column));
+    }
+  }
+}